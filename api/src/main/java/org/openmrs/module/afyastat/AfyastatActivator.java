@@ -12,18 +12,39 @@ package org.openmrs.module.afyastat;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.DaemonTokenAware;
+import org.openmrs.module.afyastat.handler.QueueInfoHandlerRegistry;
+import org.openmrs.module.afyastat.task.QueueInfoProcessor;
+import org.openmrs.module.afyastat.util.IngestionQueue;
+import org.openmrs.module.afyastat.utils.PayloadCompression;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
 
 /**
  * This class contains the logic that is run every time this module is either started or shutdown
  */
-public class AfyastatActivator extends BaseModuleActivator {
+public class AfyastatActivator extends BaseModuleActivator implements DaemonTokenAware {
 	
 	private Log log = LogFactory.getLog(this.getClass());
 	
+	private DaemonToken daemonToken;
+	
+	/**
+	 * @see DaemonTokenAware#setDaemonToken(DaemonToken)
+	 */
+	@Override
+	public void setDaemonToken(DaemonToken daemonToken) {
+		this.daemonToken = daemonToken;
+	}
+	
 	/**
 	 * @see #started()
 	 */
 	public void started() {
+		QueueInfoHandlerRegistry.initialize();
+		PayloadCompression.initialize();
+		IngestionQueue.start(daemonToken);
+		QueueInfoProcessor.setDaemonToken(daemonToken);
 		log.info("Started Afyastat");
 	}
 	
@@ -31,6 +52,11 @@ public class AfyastatActivator extends BaseModuleActivator {
 	 * @see #shutdown()
 	 */
 	public void shutdown() {
+		QueueInfoProcessor.setDaemonToken(null);
+		IngestionQueue.stop();
+		PayloadCompression.clear();
+		QueueInfoHandlerRegistry.clear();
+		ReferenceDataCache.clear();
 		log.info("Shutdown Afyastat");
 	}
 	
@@ -0,0 +1,78 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.advice;
+
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.FormService;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.ProviderService;
+import org.openmrs.api.UserService;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
+import org.springframework.aop.AfterReturningAdvice;
+
+import java.lang.reflect.Method;
+
+/**
+ * Advice on the core services dropping the values of the {@link ReferenceDataCache} which may have
+ * changed: the users, providers and username resolutions after a user or a provider is changed, the
+ * locations after a location or a global property (the default location) is changed, the person
+ * attribute types, concepts, forms, encounter types and encounter roles after one of them is changed.
+ * The encounters saved through the encounter service leave the caches untouched. See config.xml on
+ * how it is wired up.
+ */
+public class ReferenceDataChangeAdvice implements AfterReturningAdvice {
+	
+	private static final String[] CHANGE_METHOD_PREFIXES = { "save", "create", "retire", "unretire", "void", "unvoid",
+	        "purge", "set", "update" };
+	
+	@Override
+	public void afterReturning(final Object returnValue, final Method method, final Object[] args, final Object target) {
+		if (!isChange(method.getName())) {
+			return;
+		}
+		if (target instanceof UserService || target instanceof ProviderService) {
+			ReferenceDataCache.clearUsersAndProviders();
+		} else if (target instanceof LocationService) {
+			ReferenceDataCache.clearLocations();
+		} else if (target instanceof AdministrationService) {
+			if (method.getName().contains("GlobalPropert")) {
+				ReferenceDataCache.clearLocations();
+			}
+		} else if (target instanceof PersonService) {
+			if (method.getName().contains("PersonAttributeType")) {
+				ReferenceDataCache.clearPersonAttributeTypes();
+			}
+		} else if (target instanceof ConceptService) {
+			if (method.getName().contains("Concept")) {
+				ReferenceDataCache.clearConcepts();
+			}
+		} else if (target instanceof FormService) {
+			if (method.getName().contains("Form")) {
+				ReferenceDataCache.clearForms();
+			}
+		} else if (target instanceof EncounterService) {
+			if (method.getName().contains("EncounterType") || method.getName().contains("EncounterRole")) {
+				ReferenceDataCache.clearEncounterTypesAndRoles();
+			}
+		}
+	}
+	
+	private boolean isChange(final String methodName) {
+		for (String prefix : CHANGE_METHOD_PREFIXES) {
+			if (methodName.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -9,10 +9,13 @@
  */
 package org.openmrs.module.afyastat.api;
 
+import org.openmrs.Provider;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.afyastat.api.service.MedicQueData;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 /**
  * The main service of this module, which is exposed for other modules. See
  * moduleApplicationContext.xml on how it is wired up.
@@ -22,4 +25,45 @@ public interface AfyastatService extends OpenmrsService {
 	
 	public MedicQueData saveQueData(MedicQueData medicQueData);
 	
+	/**
+	 * Save all the queue data in one transaction, inserting them with a single jdbc batch.
+	 * 
+	 * @param medicQueData the queue data to save.
+	 * @return the number of saved queue data.
+	 */
+	public Integer saveQueDataBatch(List<MedicQueData> medicQueData);
+	
+	/**
+	 * Get the provider with the lowest id, retired or not. It is the fallback provider of the data
+	 * submitted by users who are not providers.
+	 * 
+	 * @return the first provider or null when there is no provider.
+	 */
+	@Transactional(readOnly = true)
+	public Provider getFirstProvider();
+	
+	/**
+	 * Compress the payloads of the next chunk of rows of a table in one transaction. Used to convert
+	 * the rows written before the compression of the payloads was enabled.
+	 * 
+	 * @param table medic_queue_data, medic_archive_data or medic_error_data.
+	 * @param lastId the id of the last row of the previous chunk, 0 to start from the first row.
+	 * @param chunkSize the maximum number of rows read.
+	 * @return the id of the last row of the chunk or null when the whole table is compressed.
+	 */
+	public Integer compressPayloads(String table, Integer lastId, Integer chunkSize);
+	
+	/**
+	 * Write the search tokens of the next chunk of rows of a table which have no tokens in one
+	 * transaction. The search of the queue, archive and error data reads these tokens instead of the
+	 * payloads, the rows saved, moved or deleted through the services keep their tokens up to date
+	 * themselves, only the rows written before have to be indexed this way.
+	 * 
+	 * @param table medic_queue_data, medic_archive_data or medic_error_data.
+	 * @param lastId the id of the last row of the previous chunk, 0 to start from the first row.
+	 * @param chunkSize the maximum number of rows read.
+	 * @return the id of the last row of the chunk or null when the whole table is indexed.
+	 */
+	public Integer indexSearchTokens(String table, Integer lastId, Integer chunkSize);
+	
 }
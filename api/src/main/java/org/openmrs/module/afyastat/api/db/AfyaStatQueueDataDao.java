@@ -2,6 +2,111 @@ package org.openmrs.module.afyastat.api.db;
 
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  */
-public interface AfyaStatQueueDataDao extends InfoDao<AfyaStatQueueData> {}
+public interface AfyaStatQueueDataDao extends InfoDao<AfyaStatQueueData> {
+	
+	/**
+	 * Get the next chunk of queue data ordered by id, starting after the given id (keyset paging).
+	 * 
+	 * @param discriminator the discriminator of the queue data, null to return all discriminators.
+	 * @param lastId the id of the last queue data from the previous chunk, null to start from the
+	 *            beginning.
+	 * @param chunkSize the maximum number of queue data to return.
+	 * @return list of queue data with id greater than the last id.
+	 * @should return queue data ordered by id after the last id.
+	 * @should return at most chunk size queue data.
+	 */
+	List<AfyaStatQueueData> getQueueDataChunk(final String discriminator, final Integer lastId, final Integer chunkSize);
+	
+	/**
+	 * Get the distinct discriminators of the queue data currently waiting in the queue.
+	 * 
+	 * @return list of the discriminators in the queue.
+	 */
+	List<String> getQueuedDiscriminators();
+	
+	/**
+	 * Atomically claim the next chunk of queue data for a processor. Only queue data that were never
+	 * claimed or whose lease already expired are claimed, so queue data abandoned by a crashed
+	 * processor become claimable again once their lease expires.
+	 * 
+	 * @param discriminator the discriminator of the queue data.
+	 * @param lastId the id of the last queue data from the previous chunk, null to start from the
+	 *            beginning.
+	 * @param chunkSize the maximum number of queue data to claim.
+	 * @param claimedBy the processor claiming the queue data.
+	 * @param leaseSeconds the number of seconds the claim is held.
+	 * @return the number of queue data claimed.
+	 * @should claim queue data which were never claimed.
+	 * @should claim queue data with expired lease.
+	 * @should not claim queue data with active lease.
+	 */
+	Integer claimQueueData(final String discriminator, final Integer lastId, final Integer chunkSize,
+	        final String claimedBy, final Integer leaseSeconds);
+	
+	/**
+	 * Get the queue data claimed by a processor, ordered by id.
+	 * 
+	 * @param discriminator the discriminator of the queue data.
+	 * @param lastId the id of the last queue data from the previous chunk, null to start from the
+	 *            beginning.
+	 * @param claimedBy the processor holding the claim.
+	 * @return list of queue data claimed by the processor with id greater than the last id.
+	 */
+	List<AfyaStatQueueData> getClaimedQueueData(final String discriminator, final Integer lastId, final String claimedBy);
+	
+	/**
+	 * Release all the claims held by a processor so the queue data can be claimed again right away.
+	 * 
+	 * @param claimedBy the processor holding the claim.
+	 * @return the number of queue data released.
+	 */
+	Integer releaseQueueData(final String claimedBy);
+	
+	/**
+	 * Extend the lease on queue data still claimed by a processor, so the lease of a slow chunk can't
+	 * expire while the processor is working on it.
+	 * 
+	 * @param queueDataIds the ids of the queue data about to be processed.
+	 * @param claimedBy the processor holding the claim.
+	 * @param leaseSeconds the number of seconds the claim is held from now on.
+	 * @return the ids of the queue data still claimed by the processor, ordered by id.
+	 * @should extend the lease of queue data claimed by the processor.
+	 * @should not return queue data claimed by another processor.
+	 */
+	List<Integer> renewQueueDataClaim(final List<Integer> queueDataIds, final String claimedBy,
+	        final Integer leaseSeconds);
+	
+	/**
+	 * Get the status of the data created from a CHT document, looking for the document in the
+	 * archive, error and queue tables with a single query.
+	 * 
+	 * @param documentId the identity of the CHT document.
+	 * @return 'archived', 'errored' or 'queued', null when no data was created from the document.
+	 * @should return the status of the table holding the document.
+	 * @should return null when the document is unknown.
+	 */
+	String getDataStatusByDocumentId(final String documentId);
+	
+	/**
+	 * Get the status of the data with the form data uuid, looking for the form data in the archive,
+	 * error and queue tables with a single query.
+	 * 
+	 * @param formDataUuid the form data uuid.
+	 * @return 'archived', 'errored' or 'queued', null when there is no data with the form data uuid.
+	 */
+	String getDataStatusByFormDataUuid(final String formDataUuid);
+	
+	/**
+	 * Get the identities of the CHT documents which already have data in the queue, archive or error
+	 * tables.
+	 * 
+	 * @param documentIds the identities of the CHT documents to look for.
+	 * @return the identities which were found.
+	 */
+	List<String> getExistingDocumentIds(final Collection<String> documentIds);
+}
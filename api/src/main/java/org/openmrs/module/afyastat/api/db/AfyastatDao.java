@@ -9,10 +9,52 @@
  */
 package org.openmrs.module.afyastat.api.db;
 
+import org.openmrs.Provider;
 import org.openmrs.module.afyastat.api.service.MedicQueData;
 
+import java.util.List;
+
 public interface AfyastatDao {
 	
 	public MedicQueData saveQueData(MedicQueData medicQueData);
 	
+	/**
+	 * Insert all the queue data with a single jdbc batch.
+	 * 
+	 * @param medicQueData the queue data to insert.
+	 * @return the number of inserted queue data.
+	 */
+	public Integer saveQueDataBatch(List<MedicQueData> medicQueData);
+	
+	/**
+	 * Get the provider with the lowest id, retired or not, without loading the other providers.
+	 * 
+	 * @return the first provider or null when there is no provider.
+	 */
+	public Provider getFirstProvider();
+	
+	/**
+	 * Compress the uncompressed payloads of the next chunk of rows of a table, in the order of their
+	 * ids.
+	 * 
+	 * @param table medic_queue_data, medic_archive_data or medic_error_data.
+	 * @param lastId the id of the last row of the previous chunk, 0 to start from the first row.
+	 * @param chunkSize the maximum number of rows read.
+	 * @return the id of the last row of the chunk or null when no row after the last id has an
+	 *         uncompressed payload.
+	 */
+	public Integer compressPayloads(String table, Integer lastId, Integer chunkSize);
+	
+	/**
+	 * Write the search tokens of the next chunk of rows of a table which have no tokens, in the order
+	 * of their ids.
+	 * 
+	 * @param table medic_queue_data, medic_archive_data or medic_error_data.
+	 * @param lastId the id of the last row of the previous chunk, 0 to start from the first row.
+	 * @param chunkSize the maximum number of rows read.
+	 * @return the id of the last row of the chunk or null when no row without tokens comes after the
+	 *         last id.
+	 */
+	public Integer indexSearchTokens(String table, Integer lastId, Integer chunkSize);
+	
 }
@@ -1,7 +1,96 @@
 package org.openmrs.module.afyastat.api.db;
 
+import org.openmrs.User;
 import org.openmrs.module.afyastat.model.ArchiveInfo;
 
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
 /**
  */
-public interface ArchiveInfoDao extends InfoDao<ArchiveInfo> {}
+public interface ArchiveInfoDao extends InfoDao<ArchiveInfo> {
+	
+	/**
+	 * Move the queue data to the archive inside the database. The archive data are copied from the
+	 * queue data with a single insert select and the queue data are then removed with a single
+	 * delete, so the payloads are never loaded into the session. An archive data keeps the uuid of its
+	 * queue data, through which its search tokens are written in the same transaction. The uuid is not
+	 * a unique key of the partitioned archive, so a queue data whose uuid is already archived is not
+	 * copied again, and the queue data are then kept in the queue by failing the whole move.
+	 * 
+	 * @param queueDataIds the ids of the queue data to be archived.
+	 * @param message the archive message.
+	 * @param creator the user archiving the queue data.
+	 * @return the number of queue data archived.
+	 * @should copy the queue data to the archive and delete them from the queue.
+	 * @should ignore ids which are no longer in the queue.
+	 * @should fail and keep the queue data when the uuid of a queue data is already archived.
+	 */
+	Integer archiveQueueData(final List<Integer> queueDataIds, final String message, final User creator);
+	
+	/**
+	 * Get the oldest archive data archived before the date with an id greater than the given id, in the
+	 * order of their ids. Only the partitions before the date are read when the archive is partitioned.
+	 * 
+	 * @param archivedBefore the date the archive data were archived before.
+	 * @param afterId the id the archive data come after, 0 to start from the oldest.
+	 * @param maxResults the maximum number of archive data returned.
+	 * @return the archive data archived before the date.
+	 * @should return at most max results archive data archived before the date ordered by id.
+	 */
+	List<ArchiveInfo> getDataArchivedBefore(final Date archivedBefore, final Integer afterId, final Integer maxResults);
+	
+	/**
+	 * Get the archive data with matching search term, newest archived first, which were archived before
+	 * the archive data with the given date archived and id. The date archived bounds the partitions
+	 * read when the archive is partitioned.
+	 * 
+	 * @param search the search term.
+	 * @param dateArchived the date archived of the last archive data of the previous page, null for the
+	 *            first page.
+	 * @param id the id of the last archive data of the previous page, null for the first page.
+	 * @param maxResults the maximum number of archive data returned.
+	 * @return the archive data ordered by date archived then id, newest first.
+	 * @should return the archive data archived before the position ordered by date archived and id.
+	 */
+	List<ArchiveInfo> getDataBeforeDateArchived(final String search, final Date dateArchived, final Integer id,
+	        final Integer maxResults);
+	
+	/**
+	 * Delete the archive data with a single delete, without loading them into the session.
+	 * 
+	 * @param archiveDataIds the ids of the archive data.
+	 * @param archivedBefore the date the archive data were archived before, which limits the delete to
+	 *            the partitions before the date.
+	 * @return the number of archive data deleted.
+	 * @should delete the archive data with the ids.
+	 */
+	Integer purgeDataByIds(final List<Integer> archiveDataIds, final Date archivedBefore);
+	
+	/**
+	 * Get the range partitions of the archive table on <code>date_archived</code>.
+	 * 
+	 * @return the partition names mapped to the dates the archive data of the partitions were archived
+	 *         before, oldest first. The last partition maps to null. Empty when the archive table is not
+	 *         partitioned.
+	 */
+	Map<String, Date> getPartitions();
+	
+	/**
+	 * Split the empty last partition of the archive table into one partition per month, up to the
+	 * month of the date.
+	 * 
+	 * @param until a date in the last month to get a partition.
+	 * @return the number of partitions added, 0 when the archive table is not partitioned.
+	 */
+	Integer addPartitions(final Date until);
+	
+	/**
+	 * Drop a monthly partition of the archive table along with its archive data, without deleting the
+	 * rows one by one.
+	 * 
+	 * @param partitionName the name of the partition.
+	 */
+	void dropPartition(final String partitionName);
+}
@@ -13,10 +13,82 @@
  */
 package org.openmrs.module.afyastat.api.db;
 
+import org.openmrs.User;
 import org.openmrs.module.afyastat.model.ErrorInfo;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  */
 public interface ErrorInfoDao extends InfoDao<ErrorInfo> {
 	
+	/**
+	 * Move the queue data to the error queue inside the database. The error data is copied from the
+	 * queue data with a single insert select and the queue data is then removed, so the payload is
+	 * never written back from the session. The message, the error messages and the location, provider,
+	 * form name and patient uuid (when they are set) are taken from the error info.
+	 * 
+	 * @param queueDataId the id of the queue data to be moved.
+	 * @param errorInfo the error info holding the error details, the payload is not read from it.
+	 * @param creator the user moving the queue data.
+	 * @return the number of queue data moved.
+	 * @should copy the queue data and the error messages to the error queue and delete the queue data.
+	 * @should return zero when the queue data is no longer in the queue.
+	 */
+	Integer moveQueueDataToError(final Integer queueDataId, final ErrorInfo errorInfo, final User creator);
+	
+	/**
+	 * Move a batch of queue data to the error queue inside the database, see
+	 * {@link #moveQueueDataToError(Integer, ErrorInfo, User)}. The error data of the whole batch are
+	 * copied with one insert select, their error messages with one insert select and the queue data
+	 * are removed with one delete.
+	 * 
+	 * @param errorInfos the error info of every queue data to be moved, by the id of the queue data.
+	 * @param creator the user moving the queue data.
+	 * @return the number of queue data moved.
+	 * @should copy every queue data and its error messages to the error queue and delete the queue data.
+	 * @should skip the queue data no longer in the queue.
+	 */
+	Integer moveQueueDataToError(final Map<Integer, ErrorInfo> errorInfos, final User creator);
+	
+	/**
+	 * Get the newest error data of the patient with the discriminator.
+	 * 
+	 * @param patientUuid the patient uuid.
+	 * @param discriminator the discriminator of the error data.
+	 * @return the newest matching error data or null when the patient has none.
+	 */
+	ErrorInfo getDataByPatientUuid(final String patientUuid, final String discriminator);
+	
+	/**
+	 * Get the newest error data with the discriminator of each of the patients, in as few queries as
+	 * possible.
+	 * 
+	 * @param patientUuids the patient uuids.
+	 * @param discriminator the discriminator of the error data.
+	 * @return the newest matching error data by patient uuid, without the patients which have none.
+	 */
+	Map<String, ErrorInfo> getDataByPatientUuids(final Collection<String> patientUuids, final String discriminator);
+	
+	/**
+	 * Get the uuids of the error data of the patient with the discriminator, oldest first.
+	 * 
+	 * @param patientUuid the patient uuid, null for all the patients.
+	 * @param discriminator the discriminator of the error data, null for all the discriminators.
+	 * @return the uuids of the matching error data.
+	 */
+	List<String> getDataUuids(final String patientUuid, final String discriminator);
+	
+	/**
+	 * Move the error data back to the queue inside the database. The queue data are copied from the
+	 * error data with a single insert select, keeping the uuids of the error data, then the error
+	 * messages and the error data are removed.
+	 * 
+	 * @param errorDataUuids the uuids of the error data to be moved.
+	 * @param creator the user moving the error data.
+	 * @return the number of error data moved.
+	 */
+	Integer requeueData(final List<String> errorDataUuids, final User creator);
 }
@@ -15,6 +15,8 @@ package org.openmrs.module.afyastat.api.db;
 
 import org.openmrs.module.afyastat.model.Info;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -94,4 +96,34 @@ public interface InfoDao<T extends Info> extends SingleClassInfoDao<T> {
 	 * @return total number of data in the database.
 	 */
 	Number countData(final String search);
+	
+	/**
+	 * Get the data with matching search term created before the given data, newest first. The data
+	 * created at the same time are ordered by id, so a page starts right after the last data of the
+	 * previous page without reading the data of the previous pages.
+	 * 
+	 * @param search the search term.
+	 * @param dateCreated the date created of the last data of the previous page, null for the first
+	 *            page.
+	 * @param id the id of the last data of the previous page, null for the first page.
+	 * @param maxResults the maximum number of data to return.
+	 * @return list of data created before the given data.
+	 */
+	List<T> getDataBefore(final String search, final Date dateCreated, final Integer id, final Integer maxResults);
+	
+	/**
+	 * Get the data with the given uuids.
+	 * 
+	 * @param uuids the data uuids.
+	 * @return the data with the matching uuids, ordered by id.
+	 */
+	List<T> getDataByUuids(final Collection<String> uuids);
+	
+	/**
+	 * Get the estimated number of data from the table statistics of the database, without counting
+	 * the rows. The data are counted when the database has no statistics.
+	 * 
+	 * @return the estimated number of data in the database.
+	 */
+	Number estimateData();
 }
@@ -15,15 +15,38 @@ package org.openmrs.module.afyastat.api.db.hibernate;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.jdbc.Work;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
 import org.openmrs.api.db.DAOException;
 import org.openmrs.module.afyastat.api.db.AfyastatDao;
 import org.openmrs.module.afyastat.api.service.MedicQueData;
+import org.openmrs.module.afyastat.utils.PayloadCompression;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 
 public class HibernateAfyaStatDAO implements AfyastatDao {
 	
 	protected final Log log = LogFactory.getLog(this.getClass());
 	
+	private static final List<String> PAYLOAD_TABLES = Arrays.asList("medic_queue_data", "medic_archive_data",
+	    "medic_error_data");
+	
 	private SessionFactory sessionFactory;
 	
 	/**
@@ -48,7 +71,157 @@ public class HibernateAfyaStatDAO implements AfyastatDao {
 	@Override
 	public MedicQueData saveQueData(MedicQueData medicQueData) throws DAOException {
 		
-		sessionFactory.getCurrentSession().saveOrUpdate(medicQueData);
+		Session session = sessionFactory.getCurrentSession();
+		session.saveOrUpdate(medicQueData);
+		SearchTokenIndex.indexData(session, "medic_queue_data", Collections.singletonList(medicQueData.getUuid()));
 		return medicQueData;
 	}
+	
+	/**
+	 * Hibernate can't batch the inserts of an entity with a native (identity) id, so the queue data
+	 * are written with a plain jdbc batch on the connection of the current session.
+	 * 
+	 * @see AfyastatDao#saveQueDataBatch(java.util.List)
+	 */
+	@Override
+	public Integer saveQueDataBatch(final List<MedicQueData> medicQueData) throws DAOException {
+		if (medicQueData == null || medicQueData.isEmpty()) {
+			return 0;
+		}
+		final User authenticatedUser = Context.getAuthenticatedUser();
+		final Timestamp dateCreated = new Timestamp(new Date().getTime());
+		final int[] saved = new int[1];
+		final List<String> uuids = new ArrayList<String>();
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+		session.doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				PreparedStatement statement = connection.prepareStatement("insert into medic_queue_data (discriminator, "
+				        + "data_source, payload, creator, location, provider, form_name, form_data_uuid, date_created, "
+				        + "uuid, patient_uuid, document_id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+				try {
+					for (MedicQueData queueData : medicQueData) {
+						User creator = queueData.getCreator() != null ? queueData.getCreator() : authenticatedUser;
+						statement.setString(1, queueData.getDiscriminator());
+						setId(statement, 2, queueData.getDataSource());
+						statement.setString(3, PayloadCompression.encode(queueData.getPayload()));
+						setId(statement, 4, creator);
+						setId(statement, 5, queueData.getLocation());
+						setId(statement, 6, queueData.getProvider());
+						statement.setString(7, queueData.getFormName());
+						statement.setString(8, queueData.getFormDataUuid());
+						statement.setTimestamp(9, dateCreated);
+						statement.setString(10, queueData.getUuid());
+						statement.setString(11, queueData.getPatientUuid());
+						statement.setString(12, queueData.getDocumentId());
+						statement.addBatch();
+						uuids.add(queueData.getUuid());
+					}
+					for (int count : statement.executeBatch()) {
+						saved[0] += count == PreparedStatement.SUCCESS_NO_INFO ? 1 : count;
+					}
+				}
+				finally {
+					statement.close();
+				}
+			}
+		});
+		SearchTokenIndex.indexData(session, "medic_queue_data", uuids);
+		return saved[0];
+	}
+	
+	/**
+	 * @see AfyastatDao#getFirstProvider()
+	 */
+	@Override
+	public Provider getFirstProvider() throws DAOException {
+		return (Provider) sessionFactory.getCurrentSession().createCriteria(Provider.class)
+		        .addOrder(Order.asc("providerId")).setMaxResults(1).uniqueResult();
+	}
+	
+	/**
+	 * The rows are read and updated with plain jdbc, a row is only updated when its payload is still
+	 * the one which was compressed.
+	 * 
+	 * @see AfyastatDao#compressPayloads(String, Integer, Integer)
+	 */
+	@Override
+	public Integer compressPayloads(final String table, final Integer lastId, final Integer chunkSize)
+	        throws DAOException {
+		if (!PAYLOAD_TABLES.contains(table)) {
+			throw new DAOException("The table " + table + " has no payloads to compress");
+		}
+		final Integer[] chunkLastId = new Integer[1];
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+		session.doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				PreparedStatement select = connection.prepareStatement("select id, payload from " + table
+				        + " where id > ? and payload not like ? order by id limit ?");
+				PreparedStatement update = connection.prepareStatement("update " + table
+				        + " set payload = ? where id = ? and payload = ?");
+				try {
+					select.setInt(1, lastId);
+					select.setString(2, PayloadCompression.MARKER + "%");
+					select.setInt(3, chunkSize);
+					int updates = 0;
+					ResultSet resultSet = select.executeQuery();
+					try {
+						while (resultSet.next()) {
+							chunkLastId[0] = resultSet.getInt(1);
+							String payload = resultSet.getString(2);
+							String compressed = PayloadCompression.compress(payload);
+							if (!compressed.equals(payload)) {
+								update.setString(1, compressed);
+								update.setInt(2, chunkLastId[0]);
+								update.setString(3, payload);
+								update.addBatch();
+								updates++;
+							}
+						}
+					}
+					finally {
+						resultSet.close();
+					}
+					if (updates > 0) {
+						update.executeBatch();
+					}
+				}
+				finally {
+					select.close();
+					update.close();
+				}
+			}
+		});
+		return chunkLastId[0];
+	}
+	
+	/**
+	 * The rows saved, moved or deleted through the daos have their tokens written or deleted in the
+	 * same transaction, the backfill only reads the rows which have no tokens.
+	 * 
+	 * @see AfyastatDao#indexSearchTokens(String, Integer, Integer)
+	 * @see SearchTokenIndex#backfillData(Session, String, Integer, Integer)
+	 */
+	@Override
+	public Integer indexSearchTokens(final String table, final Integer lastId, final Integer chunkSize)
+	        throws DAOException {
+		if (!PAYLOAD_TABLES.contains(table)) {
+			throw new DAOException("The table " + table + " is not one of the queue, archive or error tables");
+		}
+		return SearchTokenIndex.backfillData(sessionFactory.getCurrentSession(), table, lastId, chunkSize);
+	}
+	
+	private static void setId(final PreparedStatement statement, final int index, final OpenmrsObject object)
+	        throws SQLException {
+		if (object == null || object.getId() == null) {
+			statement.setNull(index, Types.INTEGER);
+		} else {
+			statement.setInt(index, object.getId());
+		}
+	}
 }
@@ -13,10 +13,22 @@
  */
 package org.openmrs.module.afyastat.api.db.hibernate;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Criteria;
+import org.hibernate.SQLQuery;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StandardBasicTypes;
 import org.openmrs.module.afyastat.api.db.AfyaStatQueueDataDao;
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  */
@@ -30,4 +42,182 @@ public class HibernateAfyaStatQueueDataDao extends HibernateInfoDao<AfyaStatQueu
 	protected HibernateAfyaStatQueueDataDao() {
 		super(AfyaStatQueueData.class);
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see AfyaStatQueueDataDao#getQueueDataChunk(String, Integer, Integer)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<AfyaStatQueueData> getQueueDataChunk(final String discriminator, final Integer lastId,
+	        final Integer chunkSize) {
+		Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
+		if (StringUtils.isNotEmpty(discriminator)) {
+			criteria.add(Restrictions.eq("discriminator", discriminator));
+		}
+		if (lastId != null) {
+			criteria.add(Restrictions.gt("id", lastId));
+		}
+		criteria.addOrder(Order.asc("id"));
+		criteria.setMaxResults(chunkSize);
+		return criteria.list();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see AfyaStatQueueDataDao#getQueuedDiscriminators()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getQueuedDiscriminators() {
+		Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
+		criteria.setProjection(Projections.distinct(Projections.property("discriminator")));
+		return criteria.list();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see AfyaStatQueueDataDao#claimQueueData(String, Integer, Integer, String, Integer)
+	 */
+	@Override
+	@Transactional
+	public Integer claimQueueData(final String discriminator, final Integer lastId, final Integer chunkSize,
+	        final String claimedBy, final Integer leaseSeconds) {
+		// a single update statement, so two processors can never claim the same queue data. the database
+		// clock is used for the lease to keep the processors on different nodes in agreement.
+		String sql = "update medic_queue_data set claimed_by = :claimedBy, "
+		        + "lease_expiry = date_add(now(), interval :leaseSeconds second) "
+		        + "where discriminator = :discriminator and id > :lastId "
+		        + "and (lease_expiry is null or lease_expiry < now()) order by id limit :chunkSize";
+		SQLQuery query = getSessionFactory().getCurrentSession().createSQLQuery(sql);
+		query.setString("claimedBy", claimedBy);
+		query.setInteger("leaseSeconds", leaseSeconds);
+		query.setString("discriminator", discriminator);
+		query.setInteger("lastId", lastId == null ? 0 : lastId);
+		query.setInteger("chunkSize", chunkSize);
+		return query.executeUpdate();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see AfyaStatQueueDataDao#getClaimedQueueData(String, Integer, String)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<AfyaStatQueueData> getClaimedQueueData(final String discriminator, final Integer lastId,
+	        final String claimedBy) {
+		Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
+		criteria.add(Restrictions.eq("discriminator", discriminator));
+		criteria.add(Restrictions.eq("claimedBy", claimedBy));
+		if (lastId != null) {
+			criteria.add(Restrictions.gt("id", lastId));
+		}
+		criteria.addOrder(Order.asc("id"));
+		return criteria.list();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see AfyaStatQueueDataDao#releaseQueueData(String)
+	 */
+	@Override
+	@Transactional
+	public Integer releaseQueueData(final String claimedBy) {
+		String sql = "update medic_queue_data set claimed_by = null, lease_expiry = null "
+		        + "where claimed_by = :claimedBy";
+		SQLQuery query = getSessionFactory().getCurrentSession().createSQLQuery(sql);
+		query.setString("claimedBy", claimedBy);
+		return query.executeUpdate();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see AfyaStatQueueDataDao#renewQueueDataClaim(java.util.List, String, Integer)
+	 */
+	@Override
+	@Transactional
+	@SuppressWarnings("unchecked")
+	public List<Integer> renewQueueDataClaim(final List<Integer> queueDataIds, final String claimedBy,
+	        final Integer leaseSeconds) {
+		if (queueDataIds == null || queueDataIds.isEmpty()) {
+			return new ArrayList<Integer>();
+		}
+		// only the queue data of the batch are touched, the rest of the chunk may be locked by other workers.
+		String sql = "update medic_queue_data set lease_expiry = date_add(now(), interval :leaseSeconds second) "
+		        + "where id in (:queueDataIds) and claimed_by = :claimedBy";
+		SQLQuery query = getSessionFactory().getCurrentSession().createSQLQuery(sql);
+		query.setInteger("leaseSeconds", leaseSeconds);
+		query.setParameterList("queueDataIds", queueDataIds);
+		query.setString("claimedBy", claimedBy);
+		query.executeUpdate();
+		// read the claims from the database, the queue data in the session may hold an older claim.
+		String claimedSql = "select id from medic_queue_data where id in (:queueDataIds) and claimed_by = :claimedBy "
+		        + "order by id";
+		SQLQuery claimedQuery = getSessionFactory().getCurrentSession().createSQLQuery(claimedSql);
+		claimedQuery.addScalar("id", StandardBasicTypes.INTEGER);
+		claimedQuery.setParameterList("queueDataIds", queueDataIds);
+		claimedQuery.setString("claimedBy", claimedBy);
+		return claimedQuery.list();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see AfyaStatQueueDataDao#getDataStatusByDocumentId(String)
+	 */
+	@Override
+	public String getDataStatusByDocumentId(final String documentId) {
+		return getDataStatus("document_id", documentId);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see AfyaStatQueueDataDao#getDataStatusByFormDataUuid(String)
+	 */
+	@Override
+	public String getDataStatusByFormDataUuid(final String formDataUuid) {
+		return getDataStatus("form_data_uuid", formDataUuid);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see AfyaStatQueueDataDao#getExistingDocumentIds(java.util.Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getExistingDocumentIds(final Collection<String> documentIds) {
+		if (documentIds == null || documentIds.isEmpty()) {
+			return new ArrayList<String>();
+		}
+		String sql = "select document_id from medic_queue_data where document_id in (:documentIds) "
+		        + "union select document_id from medic_archive_data where document_id in (:documentIds) "
+		        + "union select document_id from medic_error_data where document_id in (:documentIds)";
+		SQLQuery query = getSessionFactory().getCurrentSession().createSQLQuery(sql);
+		query.addScalar("document_id", StandardBasicTypes.STRING);
+		query.setParameterList("documentIds", documentIds);
+		return query.list();
+	}
+	
+	private String getDataStatus(final String column, final String value) {
+		if (StringUtils.isEmpty(value)) {
+			return null;
+		}
+		// a single round trip, every exists stops at the first matching index entry instead of loading the data.
+		String sql = "select case when exists (select 1 from medic_archive_data where " + column + " = :value) "
+		        + "then 'archived' when exists (select 1 from medic_error_data where " + column + " = :value) "
+		        + "then 'errored' when exists (select 1 from medic_queue_data where " + column + " = :value) "
+		        + "then 'queued' end as status";
+		SQLQuery query = getSessionFactory().getCurrentSession().createSQLQuery(sql);
+		query.addScalar("status", StandardBasicTypes.STRING);
+		query.setString("value", value);
+		return (String) query.uniqueResult();
+	}
 }
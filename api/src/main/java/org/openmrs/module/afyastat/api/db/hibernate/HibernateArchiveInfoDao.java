@@ -15,13 +15,37 @@ package org.openmrs.module.afyastat.api.db.hibernate;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Criteria;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StandardBasicTypes;
+import org.joda.time.LocalDate;
+import org.openmrs.User;
+import org.openmrs.api.db.DAOException;
 import org.openmrs.module.afyastat.api.db.ArchiveInfoDao;
+import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 import org.openmrs.module.afyastat.model.ArchiveInfo;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  */
 public class HibernateArchiveInfoDao extends HibernateInfoDao<ArchiveInfo> implements ArchiveInfoDao {
 	
+	/**
+	 * The partition holding the archive data archived after the last monthly partition.
+	 */
+	private static final String LAST_PARTITION = "pmax";
+	
+	private static final Pattern MONTHLY_PARTITION = Pattern.compile("p\\d{6}");
+	
 	private final Log log = LogFactory.getLog(HibernateArchiveInfoDao.class);
 	
 	/**
@@ -30,4 +54,227 @@ public class HibernateArchiveInfoDao extends HibernateInfoDao<ArchiveInfo> imple
 	protected HibernateArchiveInfoDao() {
 		super(ArchiveInfo.class);
 	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ArchiveInfoDao#archiveQueueData(java.util.List, String, org.openmrs.User)
+	 */
+	@Override
+	@Transactional
+	@SuppressWarnings("unchecked")
+	public Integer archiveQueueData(final List<Integer> queueDataIds, final String message, final User creator) {
+		if (queueDataIds == null || queueDataIds.isEmpty()) {
+			return 0;
+		}
+		Session session = getSessionFactory().getCurrentSession();
+		// pending changes must reach the queue table before it is copied.
+		session.flush();
+		SQLQuery uuidQuery = session.createSQLQuery("select uuid from medic_queue_data where id in (:queueDataIds)");
+		uuidQuery.addScalar("uuid", StandardBasicTypes.STRING);
+		uuidQuery.setParameterList("queueDataIds", queueDataIds);
+		List<String> uuids = uuidQuery.list();
+		
+		// the uuid of the partitioned archive is not a unique key, a queue data archived already is not copied again.
+		String insert = "insert into medic_archive_data (discriminator, data_source, payload, message, date_archived, "
+		        + "creator, date_created, uuid, patient_uuid, form_data_uuid, document_id) "
+		        + "select q.discriminator, q.data_source, q.payload, :message, now(), :creator, now(), q.uuid, "
+		        + "q.patient_uuid, q.form_data_uuid, q.document_id from medic_queue_data q where q.id in (:queueDataIds) "
+		        + "and not exists (select 1 from medic_archive_data a where a.uuid = q.uuid)";
+		SQLQuery insertQuery = session.createSQLQuery(insert);
+		insertQuery.addSynchronizedEntityClass(ArchiveInfo.class);
+		insertQuery.setString("message", message);
+		insertQuery.setInteger("creator", creator.getUserId());
+		insertQuery.setParameterList("queueDataIds", queueDataIds);
+		int archived = insertQuery.executeUpdate();
+		if (archived < uuids.size()) {
+			// deleting the queue data which were not copied would lose their payloads, roll back the move instead.
+			throw new DAOException((uuids.size() - archived) + " of the queue data to be archived are already archived");
+		}
+		SearchTokenIndex.indexData(session, "medic_archive_data", uuids);
+		
+		SQLQuery deleteQuery = session.createSQLQuery("delete from medic_queue_data where id in (:queueDataIds)");
+		deleteQuery.addSynchronizedEntityClass(AfyaStatQueueData.class);
+		deleteQuery.setParameterList("queueDataIds", queueDataIds);
+		deleteQuery.executeUpdate();
+		SearchTokenIndex.purgeData(session, "medic_queue_data", queueDataIds);
+		return archived;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ArchiveInfoDao#getDataArchivedBefore(java.util.Date, Integer, Integer)
+	 */
+	@Override
+	public List<ArchiveInfo> getDataArchivedBefore(final Date archivedBefore, final Integer afterId,
+	        final Integer maxResults) {
+		Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ArchiveInfo.class);
+		criteria.add(Restrictions.lt("dateArchived", archivedBefore));
+		criteria.add(Restrictions.gt("id", afterId));
+		criteria.addOrder(Order.asc("id"));
+		criteria.setMaxResults(maxResults);
+		return criteria.list();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ArchiveInfoDao#getDataBeforeDateArchived(String, java.util.Date, Integer, Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@SuppressWarnings("unchecked")
+	public List<ArchiveInfo> getDataBeforeDateArchived(final String search, final Date dateArchived, final Integer id,
+	        final Integer maxResults) {
+		Criteria criteria = createSearchCriteria(search);
+		if (dateArchived != null && id != null) {
+			// the bound on date archived alone prunes the newer partitions and reads the
+			// (date_archived, id) index as a range.
+			criteria.add(Restrictions.le("dateArchived", dateArchived));
+			criteria.add(Restrictions.or(Restrictions.lt("dateArchived", dateArchived), Restrictions.lt("id", id)));
+		}
+		criteria.addOrder(Order.desc("dateArchived"));
+		criteria.addOrder(Order.desc("id"));
+		criteria.setMaxResults(maxResults);
+		return criteria.list();
+	}
+	
+	/**
+	 * Get the archive data with matching search term for a particular page, newest archived first, so
+	 * the pages are read from the (date_archived, id) index of the partitioned archive.
+	 * 
+	 * @param search the search term.
+	 * @param pageNumber the page number.
+	 * @param pageSize the size of the page.
+	 * @return list of archive data for the page.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<ArchiveInfo> getPagedData(final String search, final Integer pageNumber, final Integer pageSize) {
+		Criteria criteria = createSearchCriteria(search);
+		if (pageNumber != null) {
+			criteria.setFirstResult((pageNumber - 1) * pageSize);
+		}
+		if (pageSize != null) {
+			criteria.setMaxResults(pageSize);
+		}
+		criteria.addOrder(Order.desc("dateArchived"));
+		criteria.addOrder(Order.desc("id"));
+		return criteria.list();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ArchiveInfoDao#purgeDataByIds(java.util.List, java.util.Date)
+	 */
+	@Override
+	@Transactional
+	@SuppressWarnings("unchecked")
+	public Integer purgeDataByIds(final List<Integer> archiveDataIds, final Date archivedBefore) {
+		if (archiveDataIds == null || archiveDataIds.isEmpty()) {
+			return 0;
+		}
+		Session session = getSessionFactory().getCurrentSession();
+		SQLQuery idQuery = session.createSQLQuery(
+		    "select id from medic_archive_data where id in (:archiveDataIds) and date_archived < :archivedBefore");
+		idQuery.addScalar("id", StandardBasicTypes.INTEGER);
+		idQuery.setParameterList("archiveDataIds", archiveDataIds);
+		idQuery.setTimestamp("archivedBefore", archivedBefore);
+		List<Integer> ids = idQuery.list();
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		
+		SQLQuery deleteQuery = session.createSQLQuery(
+		    "delete from medic_archive_data where id in (:archiveDataIds) and date_archived < :archivedBefore");
+		deleteQuery.addSynchronizedEntityClass(ArchiveInfo.class);
+		deleteQuery.setParameterList("archiveDataIds", ids);
+		deleteQuery.setTimestamp("archivedBefore", archivedBefore);
+		int purged = deleteQuery.executeUpdate();
+		SearchTokenIndex.purgeData(session, "medic_archive_data", ids);
+		return purged;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ArchiveInfoDao#getPartitions()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@SuppressWarnings("unchecked")
+	public Map<String, Date> getPartitions() {
+		String sql = "select partition_name as name, case when partition_description = 'MAXVALUE' then null "
+		        + "else from_days(partition_description) end as archived_before from information_schema.partitions "
+		        + "where table_schema = database() and table_name = 'medic_archive_data' and partition_name is not null "
+		        + "order by partition_ordinal_position";
+		SQLQuery query = getSessionFactory().getCurrentSession().createSQLQuery(sql);
+		query.addScalar("name", StandardBasicTypes.STRING);
+		query.addScalar("archived_before", StandardBasicTypes.DATE);
+		Map<String, Date> partitions = new LinkedHashMap<String, Date>();
+		for (Object[] partition : (List<Object[]>) query.list()) {
+			partitions.put((String) partition[0], (Date) partition[1]);
+		}
+		return partitions;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ArchiveInfoDao#addPartitions(java.util.Date)
+	 */
+	@Override
+	@Transactional
+	public Integer addPartitions(final Date until) {
+		Map<String, Date> partitions = getPartitions();
+		if (!partitions.containsKey(LAST_PARTITION)) {
+			return 0;
+		}
+		LocalDate month = new LocalDate().withDayOfMonth(1);
+		for (Date archivedBefore : partitions.values()) {
+			if (archivedBefore != null) {
+				month = new LocalDate(archivedBefore);
+			}
+		}
+		StringBuilder definitions = new StringBuilder();
+		int added = 0;
+		LocalDate lastMonth = new LocalDate(until).withDayOfMonth(1);
+		while (!month.isAfter(lastMonth)) {
+			definitions.append("partition ").append(getPartitionName(month)).append(" values less than (to_days('")
+			        .append(month.plusMonths(1).toString("yyyy-MM-dd")).append("')), ");
+			month = month.plusMonths(1);
+			added++;
+		}
+		if (added > 0) {
+			// the last partition is kept empty, so splitting it doesn't copy any archive data.
+			getSessionFactory().getCurrentSession().createSQLQuery(
+			    "alter table medic_archive_data reorganize partition " + LAST_PARTITION + " into (" + definitions
+			            + "partition " + LAST_PARTITION + " values less than maxvalue)").executeUpdate();
+		}
+		return added;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ArchiveInfoDao#dropPartition(String)
+	 */
+	@Override
+	@Transactional
+	public void dropPartition(final String partitionName) {
+		if (!MONTHLY_PARTITION.matcher(partitionName).matches()) {
+			throw new IllegalArgumentException("Not a monthly partition of the archive: " + partitionName);
+		}
+		Session session = getSessionFactory().getCurrentSession();
+		SearchTokenIndex.purgeArchivePartition(session, partitionName);
+		SQLQuery dropQuery = session.createSQLQuery("alter table medic_archive_data drop partition " + partitionName);
+		dropQuery.addSynchronizedEntityClass(ArchiveInfo.class);
+		dropQuery.executeUpdate();
+	}
+	
+	private String getPartitionName(final LocalDate month) {
+		return "p" + month.toString("yyyyMM");
+	}
 }
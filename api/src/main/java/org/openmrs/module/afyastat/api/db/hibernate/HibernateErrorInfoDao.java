@@ -13,20 +13,44 @@
  */
 package org.openmrs.module.afyastat.api.db.hibernate;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
-import org.hibernate.criterion.*;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StandardBasicTypes;
+import org.openmrs.User;
 import org.openmrs.module.afyastat.api.db.ErrorInfoDao;
+import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 import org.openmrs.module.afyastat.model.ErrorInfo;
+import org.openmrs.module.afyastat.model.ErrorMessagesInfo;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  */
 public class HibernateErrorInfoDao extends HibernateInfoDao<ErrorInfo> implements ErrorInfoDao {
 	
+	/**
+	 * Maximum number of patient uuids in the in list of one query.
+	 */
+	private static final int MAX_PATIENT_UUIDS = 500;
+	
+	/**
+	 * Maximum number of queue data moved to the error queue by one insert select.
+	 */
+	private static final int MAX_ERROR_DATA = 100;
+	
 	private final Log log = LogFactory.getLog(HibernateErrorInfoDao.class);
 	
 	/**
@@ -37,62 +61,225 @@ public class HibernateErrorInfoDao extends HibernateInfoDao<ErrorInfo> implement
 	}
 	
 	/**
-	 * Get ErrorData with matching search term for particular page.
+	 * {@inheritDoc}
 	 * 
-	 * @param search the search term.
-	 * @param pageNumber the page number.
-	 * @param pageSize the size of the page.
-	 * @return list of data for the page.
+	 * @see ErrorInfoDao#moveQueueDataToError(Integer, org.openmrs.module.afyastat.model.ErrorInfo,
+	 *      org.openmrs.User)
 	 */
 	@Override
-	@SuppressWarnings("unchecked")
-	public List<ErrorInfo> getPagedData(final String search, final Integer pageNumber, final Integer pageSize) {
-		Criteria criteria = createCriteria(search);
-		if (pageNumber != null) {
-			criteria.setFirstResult((pageNumber - 1) * pageSize);
+	@Transactional
+	public Integer moveQueueDataToError(final Integer queueDataId, final ErrorInfo errorInfo, final User creator) {
+		return moveQueueDataToError(Collections.singletonMap(queueDataId, errorInfo), creator);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ErrorInfoDao#moveQueueDataToError(java.util.Map, org.openmrs.User)
+	 */
+	@Override
+	@Transactional
+	public Integer moveQueueDataToError(final Map<Integer, ErrorInfo> errorInfos, final User creator) {
+		if (errorInfos == null || errorInfos.isEmpty()) {
+			return 0;
+		}
+		Session session = getSessionFactory().getCurrentSession();
+		// pending changes must reach the queue table before it is copied.
+		session.flush();
+		List<Map.Entry<Integer, ErrorInfo>> entries = new ArrayList<Map.Entry<Integer, ErrorInfo>>(errorInfos.entrySet());
+		List<String> errorDataUuids = new ArrayList<String>();
+		int moved = 0;
+		for (int i = 0; i < entries.size(); i += MAX_ERROR_DATA) {
+			List<Map.Entry<Integer, ErrorInfo>> chunk = entries.subList(i, Math.min(i + MAX_ERROR_DATA, entries.size()));
+			moved += insertErrorData(session, chunk, creator);
+			insertErrorMessages(session, chunk, creator);
+			
+			List<Integer> queueDataIds = new ArrayList<Integer>();
+			for (Map.Entry<Integer, ErrorInfo> entry : chunk) {
+				queueDataIds.add(entry.getKey());
+				errorDataUuids.add(entry.getValue().getUuid());
+			}
+			SQLQuery deleteQuery = session.createSQLQuery("delete from medic_queue_data where id in (:queueDataIds)");
+			deleteQuery.addSynchronizedEntityClass(AfyaStatQueueData.class);
+			deleteQuery.setParameterList("queueDataIds", queueDataIds);
+			deleteQuery.executeUpdate();
+		}
+		SearchTokenIndex.indexData(session, "medic_error_data", errorDataUuids);
+		SearchTokenIndex.purgeData(session, "medic_queue_data", errorInfos.keySet());
+		return moved;
+	}
+	
+	/**
+	 * Copy the queue data to the error queue with one insert select, joining the queue data with the
+	 * error details of every queue data passed as a derived table.
+	 */
+	private int insertErrorData(final Session session, final List<Map.Entry<Integer, ErrorInfo>> errorInfos,
+	        final User creator) {
+		StringBuilder errorDetails = new StringBuilder();
+		for (int i = 0; i < errorInfos.size(); i++) {
+			errorDetails.append(i == 0 ? "select ? as id, ? as message, ? as location, ? as provider, ? as form_name, "
+			        + "? as patient_uuid, ? as uuid" : " union all select ?, ?, ?, ?, ?, ?, ?");
+		}
+		String insert = "insert into medic_error_data (discriminator, data_source, payload, message, date_processed, "
+		        + "location, provider, form_name, patient_uuid, form_data_uuid, document_id, creator, date_created, uuid) "
+		        + "select q.discriminator, q.data_source, q.payload, e.message, now(), coalesce(e.location, q.location), "
+		        + "coalesce(e.provider, q.provider), coalesce(e.form_name, q.form_name), "
+		        + "coalesce(e.patient_uuid, q.patient_uuid), q.form_data_uuid, q.document_id, ?, now(), e.uuid "
+		        + "from medic_queue_data q join (" + errorDetails + ") e on e.id = q.id order by q.id";
+		SQLQuery insertQuery = session.createSQLQuery(insert);
+		insertQuery.addSynchronizedEntityClass(ErrorInfo.class);
+		int position = 0;
+		insertQuery.setInteger(position++, creator.getUserId());
+		for (Map.Entry<Integer, ErrorInfo> entry : errorInfos) {
+			ErrorInfo errorInfo = entry.getValue();
+			insertQuery.setInteger(position++, entry.getKey());
+			insertQuery.setString(position++, errorInfo.getMessage());
+			insertQuery.setParameter(position++, errorInfo.getLocation() == null ? null : errorInfo.getLocation()
+			        .getLocationId(), StandardBasicTypes.INTEGER);
+			insertQuery.setParameter(position++, errorInfo.getProvider() == null ? null : errorInfo.getProvider()
+			        .getProviderId(), StandardBasicTypes.INTEGER);
+			insertQuery.setParameter(position++, errorInfo.getFormName(), StandardBasicTypes.STRING);
+			insertQuery.setParameter(position++, errorInfo.getPatientUuid(), StandardBasicTypes.STRING);
+			insertQuery.setString(position++, errorInfo.getUuid());
+		}
+		return insertQuery.executeUpdate();
+	}
+	
+	/**
+	 * Copy the error messages of the error data with one insert select. The error data are located
+	 * through their uuid, the generated ids are never read back.
+	 */
+	private void insertErrorMessages(final Session session, final List<Map.Entry<Integer, ErrorInfo>> errorInfos,
+	        final User creator) {
+		List<String> parameters = new ArrayList<String>();
+		for (Map.Entry<Integer, ErrorInfo> entry : errorInfos) {
+			if (entry.getValue().getErrorMessages() != null) {
+				for (ErrorMessagesInfo errorMessagesInfo : entry.getValue().getErrorMessages()) {
+					Collections.addAll(parameters, entry.getValue().getUuid(), errorMessagesInfo.getMessage(),
+					    errorMessagesInfo.getUuid());
+				}
+			}
+		}
+		if (parameters.isEmpty()) {
+			return;
+		}
+		StringBuilder errorMessages = new StringBuilder();
+		for (int i = 0; i < parameters.size(); i += 3) {
+			errorMessages.append(i == 0 ? "select ? as error_data_uuid, ? as message, ? as uuid"
+			        : " union all select ?, ?, ?");
 		}
-		if (pageSize != null) {
-			criteria.setMaxResults(pageSize);
+		String insert = "insert into medic_error_message (medic_error_data_id, message, creator, date_created, uuid) "
+		        + "select d.id, m.message, ?, now(), m.uuid from medic_error_data d join (" + errorMessages
+		        + ") m on m.error_data_uuid = d.uuid";
+		SQLQuery insertQuery = session.createSQLQuery(insert);
+		insertQuery.addSynchronizedEntityClass(ErrorMessagesInfo.class);
+		int position = 0;
+		insertQuery.setInteger(position++, creator.getUserId());
+		for (String parameter : parameters) {
+			insertQuery.setString(position++, parameter);
 		}
+		insertQuery.executeUpdate();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ErrorInfoDao#getDataByPatientUuid(String, String)
+	 */
+	@Override
+	public ErrorInfo getDataByPatientUuid(final String patientUuid, final String discriminator) {
+		Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ErrorInfo.class);
+		criteria.add(Restrictions.eq("patientUuid", patientUuid));
+		criteria.add(Restrictions.eq("discriminator", discriminator));
 		criteria.addOrder(Order.desc("dateCreated"));
-		return criteria.list();
+		criteria.addOrder(Order.desc("id"));
+		criteria.setMaxResults(1);
+		return (ErrorInfo) criteria.uniqueResult();
 	}
 	
 	/**
-	 * Get the total number of ErrorData with matching search term.
+	 * {@inheritDoc}
 	 * 
-	 * @param search the search term.
-	 * @return total number of data in the database.
+	 * @see ErrorInfoDao#getDataByPatientUuids(java.util.Collection, String)
 	 */
 	@Override
-	public Number countData(final String search) {
-		Criteria criteria = createCriteria(search);
-		criteria.setProjection(Projections.rowCount());
-		return (Number) criteria.uniqueResult();
+	@SuppressWarnings("unchecked")
+	public Map<String, ErrorInfo> getDataByPatientUuids(final Collection<String> patientUuids, final String discriminator) {
+		Map<String, ErrorInfo> errorData = new HashMap<String, ErrorInfo>();
+		List<String> uuids = new ArrayList<String>(new LinkedHashSet<String>(patientUuids));
+		for (int i = 0; i < uuids.size(); i += MAX_PATIENT_UUIDS) {
+			Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ErrorInfo.class);
+			criteria.add(Restrictions.in("patientUuid", uuids.subList(i, Math.min(i + MAX_PATIENT_UUIDS, uuids.size()))));
+			criteria.add(Restrictions.eq("discriminator", discriminator));
+			criteria.addOrder(Order.desc("dateCreated"));
+			criteria.addOrder(Order.desc("id"));
+			// the newest error data of a patient comes first, the older ones are skipped.
+			for (ErrorInfo errorInfo : (List<ErrorInfo>) criteria.list()) {
+				if (!errorData.containsKey(errorInfo.getPatientUuid())) {
+					errorData.put(errorInfo.getPatientUuid(), errorInfo);
+				}
+			}
+		}
+		return errorData;
 	}
 	
-	private Criteria createCriteria(String search) {
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ErrorInfoDao#getDataUuids(String, String)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<String> getDataUuids(final String patientUuid, final String discriminator) {
 		Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(ErrorInfo.class);
-		criteria.createAlias("location", "location", CriteriaSpecification.LEFT_JOIN);
-		criteria.createAlias("provider", "provider", CriteriaSpecification.LEFT_JOIN);
-		
-		if (StringUtils.isNotEmpty(search)) {
-			criteria.createAlias("errorMessages", "errorMessages", CriteriaSpecification.LEFT_JOIN);
-			Disjunction disjunction = Restrictions.disjunction();
-			disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("discriminator", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("location.name", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("patientUuid", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("formName", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("provider.identifier", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("provider.name", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("errorMessages.message", search, MatchMode.ANYWHERE));
-			if (StringUtils.isNumeric(search)) {
-				disjunction.add(Restrictions.eq("location.locationId", Integer.parseInt(search)));
-			}
-			criteria.add(disjunction);
+		if (patientUuid != null) {
+			criteria.add(Restrictions.eq("patientUuid", patientUuid));
+		}
+		if (discriminator != null) {
+			criteria.add(Restrictions.eq("discriminator", discriminator));
+		}
+		criteria.setProjection(Projections.property("uuid"));
+		criteria.addOrder(Order.asc("id"));
+		return criteria.list();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see ErrorInfoDao#requeueData(java.util.List, org.openmrs.User)
+	 */
+	@Override
+	@Transactional
+	public Integer requeueData(final List<String> errorDataUuids, final User creator) {
+		if (errorDataUuids == null || errorDataUuids.isEmpty()) {
+			return 0;
 		}
+		Session session = getSessionFactory().getCurrentSession();
+		// pending changes must reach the error table before it is copied.
+		session.flush();
+		String insert = "insert into medic_queue_data (discriminator, data_source, payload, location, provider, "
+		        + "form_name, patient_uuid, form_data_uuid, document_id, creator, date_created, uuid) "
+		        + "select discriminator, data_source, payload, location, provider, form_name, patient_uuid, "
+		        + "form_data_uuid, document_id, :creator, now(), uuid from medic_error_data "
+		        + "where uuid in (:errorDataUuids) order by id";
+		SQLQuery insertQuery = session.createSQLQuery(insert);
+		insertQuery.addSynchronizedEntityClass(AfyaStatQueueData.class);
+		insertQuery.setInteger("creator", creator.getUserId());
+		insertQuery.setParameterList("errorDataUuids", errorDataUuids);
+		int requeued = insertQuery.executeUpdate();
+		SearchTokenIndex.indexData(session, "medic_queue_data", errorDataUuids);
+		SearchTokenIndex.purgeDataByUuids(session, "medic_error_data", errorDataUuids);
+		
+		SQLQuery deleteMessagesQuery = session.createSQLQuery("delete from medic_error_message where medic_error_data_id "
+		        + "in (select id from medic_error_data where uuid in (:errorDataUuids))");
+		deleteMessagesQuery.addSynchronizedEntityClass(ErrorMessagesInfo.class);
+		deleteMessagesQuery.setParameterList("errorDataUuids", errorDataUuids);
+		deleteMessagesQuery.executeUpdate();
 		
-		return criteria;
+		SQLQuery deleteQuery = session.createSQLQuery("delete from medic_error_data where uuid in (:errorDataUuids)");
+		deleteQuery.addSynchronizedEntityClass(ErrorInfo.class);
+		deleteQuery.setParameterList("errorDataUuids", errorDataUuids);
+		deleteQuery.executeUpdate();
+		return requeued;
 	}
 }
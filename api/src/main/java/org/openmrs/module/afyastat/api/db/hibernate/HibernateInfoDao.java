@@ -17,17 +17,32 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Criteria;
+import org.hibernate.SQLQuery;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.*;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+import org.openmrs.Location;
 import org.openmrs.module.afyastat.api.db.InfoDao;
+import org.openmrs.module.afyastat.handler.QueueInfoHandlerRegistry;
+import org.openmrs.module.afyastat.model.AuditableInfo;
 import org.openmrs.module.afyastat.model.Info;
 import org.openmrs.module.afyastat.model.handler.InfoHandler;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
+import org.openmrs.module.afyastat.utils.SearchTokens;
 import org.openmrs.util.HandlerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  */
@@ -36,6 +51,13 @@ public abstract class HibernateInfoDao<T extends Info> extends HibernateSingleCl
 	@Autowired
 	protected SessionFactory sessionFactory;
 	
+	private static final int MAX_LOCATION_ID_LENGTH = 9;
+	
+	/**
+	 * Maximum number of uuids in the in list of one query.
+	 */
+	private static final int MAX_UUIDS = 500;
+	
 	private final Log log = LogFactory.getLog(HibernateInfoDao.class);
 	
 	/**
@@ -138,7 +160,8 @@ public abstract class HibernateInfoDao<T extends Info> extends HibernateSingleCl
 	}
 	
 	/**
-	 * Save data into the database.
+	 * Save data into the database. The search tokens of queue, archive and error data are written in
+	 * the same transaction.
 	 * 
 	 * @param data the data.
 	 * @return saved data.
@@ -154,11 +177,15 @@ public abstract class HibernateInfoDao<T extends Info> extends HibernateSingleCl
 			}
 			saveOrUpdate(data);
 		}
+		if (data instanceof AuditableInfo) {
+			SearchTokenIndex.indexData(getSessionFactory().getCurrentSession(), getTableName(),
+			    Collections.singletonList(((AuditableInfo) data).getUuid()));
+		}
 		return data;
 	}
 	
 	/**
-	 * Delete data from the database.
+	 * Delete data from the database, along with the search tokens of queue, archive and error data.
 	 * 
 	 * @param data the data
 	 * @should remove data from the database
@@ -173,6 +200,10 @@ public abstract class HibernateInfoDao<T extends Info> extends HibernateSingleCl
 			}
 		}
 		delete(data);
+		if (data instanceof AuditableInfo && ((AuditableInfo) data).getId() != null) {
+			SearchTokenIndex.purgeData(getSessionFactory().getCurrentSession(), getTableName(),
+			    Collections.singletonList(((AuditableInfo) data).getId()));
+		}
 	}
 	
 	/**
@@ -186,25 +217,7 @@ public abstract class HibernateInfoDao<T extends Info> extends HibernateSingleCl
 	@Override
 	@SuppressWarnings("unchecked")
 	public List<T> getPagedData(final String search, final Integer pageNumber, final Integer pageSize) {
-		Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
-		criteria.createAlias("location", "location", CriteriaSpecification.LEFT_JOIN);
-		criteria.createAlias("provider", "provider", CriteriaSpecification.LEFT_JOIN);
-		
-		if (StringUtils.isNotEmpty(search)) {
-			Disjunction disjunction = Restrictions.disjunction();
-			disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("discriminator", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("location.name", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("patientUuid", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("formName", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("provider.identifier", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("provider.name", search, MatchMode.ANYWHERE));
-			if (StringUtils.isNumeric(search)) {
-				disjunction.add(Restrictions.eq("location.locationId", Integer.parseInt(search)));
-			}
-			criteria.add(disjunction);
-			
-		}
+		Criteria criteria = createSearchCriteria(search);
 		if (pageNumber != null) {
 			criteria.setFirstResult((pageNumber - 1) * pageSize);
 		}
@@ -223,26 +236,124 @@ public abstract class HibernateInfoDao<T extends Info> extends HibernateSingleCl
 	 */
 	@Override
 	public Number countData(final String search) {
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(mappedClass);
-		criteria.createAlias("location", "location", CriteriaSpecification.LEFT_JOIN);
-		criteria.createAlias("provider", "provider", CriteriaSpecification.LEFT_JOIN);
+		Criteria criteria = createSearchCriteria(search);
+		criteria.setProjection(Projections.rowCount());
+		return (Number) criteria.uniqueResult();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoDao#getDataBefore(String, java.util.Date, Integer, Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	@SuppressWarnings("unchecked")
+	public List<T> getDataBefore(final String search, final Date dateCreated, final Integer id, final Integer maxResults) {
+		Criteria criteria = createSearchCriteria(search);
+		if (dateCreated != null && id != null) {
+			// the bound on date created alone lets the (date_created, id) index be read as a range.
+			criteria.add(Restrictions.le("dateCreated", dateCreated));
+			criteria.add(Restrictions.or(Restrictions.lt("dateCreated", dateCreated), Restrictions.lt("id", id)));
+		}
+		criteria.addOrder(Order.desc("dateCreated"));
+		criteria.addOrder(Order.desc("id"));
+		criteria.setMaxResults(maxResults);
+		return criteria.list();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoDao#getDataByUuids(java.util.Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<T> getDataByUuids(final Collection<String> uuids) {
+		List<T> data = new ArrayList<T>();
+		List<String> distinctUuids = new ArrayList<String>(new LinkedHashSet<String>(uuids));
+		for (int i = 0; i < distinctUuids.size(); i += MAX_UUIDS) {
+			Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
+			criteria.add(Restrictions.in("uuid", distinctUuids.subList(i, Math.min(i + MAX_UUIDS, distinctUuids.size()))));
+			criteria.addOrder(Order.asc("id"));
+			data.addAll(criteria.list());
+		}
+		return data;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoDao#estimateData()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Number estimateData() {
+		SQLQuery query = getSessionFactory().getCurrentSession().createSQLQuery(
+		    "select table_rows from information_schema.tables where table_schema = database() and table_name = :table");
+		query.setString("table", getTableName());
+		Number estimate = (Number) query.uniqueResult();
+		return estimate == null ? countData(null) : estimate;
+	}
+	
+	/**
+	 * Create the criteria of the data matching the search term, without scanning the payloads. The
+	 * term is split into words, each of which must be the start of a search token of the data, see
+	 * {@link SearchTokens}. The data are also matched when the term is a uuid found in the uuid,
+	 * patient uuid, form data uuid or document id columns, a discriminator found in the discriminator
+	 * column or the id of a location found in the location column.
+	 * 
+	 * @param search the search term.
+	 * @return the criteria of the matching data.
+	 */
+	protected Criteria createSearchCriteria(final String search) {
+		Criteria criteria = getSessionFactory().getCurrentSession().createCriteria(mappedClass);
+		String term = StringUtils.trimToEmpty(search);
+		if (term.isEmpty()) {
+			return criteria;
+		}
+		Location location = null;
+		if (term.length() <= MAX_LOCATION_ID_LENGTH && StringUtils.isNumeric(term) && hasProperty("location")) {
+			location = ReferenceDataCache.getLocation(Integer.parseInt(term));
+		}
+		
+		Disjunction matches = Restrictions.disjunction();
+		if (SearchTokens.isUuid(term)) {
+			matches.add(Restrictions.eq("uuid", term));
+			matches.add(Restrictions.eq("patientUuid", term));
+			matches.add(Restrictions.eq("formDataUuid", term));
+			matches.add(Restrictions.eq("documentId", term));
+		}
+		if (QueueInfoHandlerRegistry.getHandler(term) != null) {
+			matches.add(Restrictions.eq("discriminator", term));
+		}
+		if (location != null) {
+			matches.add(Restrictions.eq("location", location));
+		}
 		
-		if (StringUtils.isNotEmpty(search)) {
-			Disjunction disjunction = Restrictions.disjunction();
-			disjunction.add(Restrictions.ilike("payload", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("discriminator", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("location.name", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("patientUuid", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("formName", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("provider.identifier", search, MatchMode.ANYWHERE));
-			disjunction.add(Restrictions.ilike("provider.name", search, MatchMode.ANYWHERE));
-			if (StringUtils.isNumeric(search)) {
-				disjunction.add(Restrictions.eq("location.locationId", Integer.parseInt(search)));
+		Set<String> words = SearchTokens.tokenize(term);
+		if (!words.isEmpty()) {
+			Conjunction tokens = Restrictions.conjunction();
+			String table = getTableName();
+			for (String word : words) {
+				tokens.add(Restrictions.sqlRestriction("{alias}.uuid in (select data_uuid from medic_data_search_token "
+				        + "where data_table = ? and token like ?)", new Object[] { table, word + "%" }, new Type[] {
+				        StandardBasicTypes.STRING, StandardBasicTypes.STRING }));
 			}
-			criteria.add(disjunction);
+			matches.add(tokens);
+		} else {
+			matches.add(Restrictions.sqlRestriction("1 = 0"));
 		}
-		criteria.setProjection(Projections.rowCount());
-		return (Number) criteria.uniqueResult();
+		criteria.add(matches);
+		return criteria;
+	}
+	
+	private String getTableName() {
+		return ((AbstractEntityPersister) getSessionFactory().getClassMetadata(mappedClass)).getTableName();
+	}
+	
+	private boolean hasProperty(final String propertyName) {
+		return Arrays.asList(getSessionFactory().getClassMetadata(mappedClass).getPropertyNames()).contains(propertyName);
 	}
 	
 	public void detachDataFromHibernateSession(final T data) {
@@ -0,0 +1,92 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.api.db.hibernate;
+
+import org.hibernate.HibernateException;
+import org.hibernate.usertype.UserType;
+import org.openmrs.module.afyastat.utils.PayloadCompression;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Hibernate type of the payload columns, which may hold compressed payloads. The payload is
+ * decompressed as it is read and compressed as it is written when the compression is enabled, so
+ * <code>getPayload()</code> always returns the json. See {@link PayloadCompression} for the stored
+ * format.
+ */
+public class PayloadUserType implements UserType {
+	
+	private static final int[] SQL_TYPES = { Types.VARCHAR };
+	
+	@Override
+	public int[] sqlTypes() {
+		return SQL_TYPES;
+	}
+	
+	@Override
+	public Class returnedClass() {
+		return String.class;
+	}
+	
+	@Override
+	public boolean equals(final Object x, final Object y) throws HibernateException {
+		return x == null ? y == null : x.equals(y);
+	}
+	
+	@Override
+	public int hashCode(final Object x) throws HibernateException {
+		return x.hashCode();
+	}
+	
+	@Override
+	public Object nullSafeGet(final ResultSet rs, final String[] names, final Object owner) throws HibernateException,
+	        SQLException {
+		return PayloadCompression.decode(rs.getString(names[0]));
+	}
+	
+	@Override
+	public void nullSafeSet(final PreparedStatement st, final Object value, final int index) throws HibernateException,
+	        SQLException {
+		if (value == null) {
+			st.setNull(index, Types.VARCHAR);
+		} else {
+			st.setString(index, PayloadCompression.encode((String) value));
+		}
+	}
+	
+	@Override
+	public Object deepCopy(final Object value) throws HibernateException {
+		return value;
+	}
+	
+	@Override
+	public boolean isMutable() {
+		return false;
+	}
+	
+	@Override
+	public Serializable disassemble(final Object value) throws HibernateException {
+		return (Serializable) value;
+	}
+	
+	@Override
+	public Object assemble(final Serializable cached, final Object owner) throws HibernateException {
+		return cached;
+	}
+	
+	@Override
+	public Object replace(final Object original, final Object target, final Object owner) throws HibernateException {
+		return original;
+	}
+}
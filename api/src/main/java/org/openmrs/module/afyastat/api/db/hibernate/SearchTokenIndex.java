@@ -0,0 +1,357 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.api.db.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
+import org.openmrs.module.afyastat.utils.PayloadCompression;
+import org.openmrs.module.afyastat.utils.SearchTokens;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes and deletes the rows of the <code>medic_data_search_token</code> table, see
+ * {@link SearchTokens}. The daos call it on the connection of the transaction which saves, moves or
+ * deletes the queue, archive and error data, so the search finds a row as soon as it is committed
+ * and never after it is gone. The tokens are taken from the discriminator, the form name, the
+ * location and provider names, the error messages and the values of the payload.
+ */
+final class SearchTokenIndex {
+	
+	static final List<String> TABLES = Arrays.asList("medic_queue_data", "medic_archive_data", "medic_error_data");
+	
+	/**
+	 * Maximum number of rows in the in list of one query.
+	 */
+	private static final int MAX_ROWS = 500;
+	
+	private SearchTokenIndex() {
+	}
+	
+	/**
+	 * Index the rows of a table with the given uuids, replacing the tokens they were indexed with.
+	 * The pending changes of the session are flushed first.
+	 * 
+	 * @param session the session of the transaction.
+	 * @param table the table of the rows, the other tables than the queue, archive and error tables
+	 *            are skipped.
+	 * @param uuids the uuids of the rows.
+	 */
+	static void indexData(final Session session, final String table, final Collection<String> uuids) {
+		if (!TABLES.contains(table) || uuids.isEmpty()) {
+			return;
+		}
+		final List<String> distinctUuids = new ArrayList<String>(new LinkedHashSet<String>(uuids));
+		session.flush();
+		session.doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				for (int i = 0; i < distinctUuids.size(); i += MAX_ROWS) {
+					List<String> chunk = distinctUuids.subList(i, Math.min(i + MAX_ROWS, distinctUuids.size()));
+					Map<Integer, IndexedRow> rows = readRows(connection, table, "d.uuid in (" + placeholders(chunk.size())
+					        + ")", chunk.toArray());
+					deleteTokens(connection, table, rows.keySet());
+					insertTokens(connection, table, rows, "insert");
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Index the next chunk of rows of a table which have no tokens, the rows written before their
+	 * tokens were maintained by the daos.
+	 * 
+	 * @param session the session of the transaction.
+	 * @param table medic_queue_data, medic_archive_data or medic_error_data.
+	 * @param lastId the id of the last row of the previous chunk, 0 to start from the first row.
+	 * @param chunkSize the maximum number of rows read.
+	 * @return the id of the last row of the chunk or null when no row without tokens comes after the
+	 *         last id.
+	 */
+	static Integer backfillData(final Session session, final String table, final Integer lastId,
+	        final Integer chunkSize) {
+		final Integer[] chunkLastId = new Integer[1];
+		session.flush();
+		session.doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				Map<Integer, IndexedRow> rows = readRows(connection, table, "d.id > ? and not exists (select 1 from "
+				        + "medic_data_search_token t where t.data_table = ? and t.data_id = d.id) order by d.id limit ?",
+				    lastId, table, chunkSize);
+				for (Integer id : rows.keySet()) {
+					chunkLastId[0] = id;
+				}
+				// a row saved meanwhile is already indexed, its tokens are kept.
+				insertTokens(connection, table, rows, "insert ignore");
+			}
+		});
+		return chunkLastId[0];
+	}
+	
+	/**
+	 * Delete the tokens of the rows of a table with the given ids.
+	 * 
+	 * @param session the session of the transaction.
+	 * @param table the table of the rows, the other tables than the queue, archive and error tables
+	 *            are skipped.
+	 * @param ids the ids of the deleted rows.
+	 */
+	static void purgeData(final Session session, final String table, final Collection<Integer> ids) {
+		if (!TABLES.contains(table) || ids.isEmpty()) {
+			return;
+		}
+		session.doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				deleteTokens(connection, table, ids);
+			}
+		});
+	}
+	
+	/**
+	 * Delete the tokens of the rows of a table with the given uuids, before the rows are deleted.
+	 * 
+	 * @param session the session of the transaction.
+	 * @param table medic_queue_data, medic_archive_data or medic_error_data.
+	 * @param uuids the uuids of the rows.
+	 */
+	static void purgeDataByUuids(final Session session, final String table, final Collection<String> uuids) {
+		if (!TABLES.contains(table) || uuids.isEmpty()) {
+			return;
+		}
+		final List<String> distinctUuids = new ArrayList<String>(new LinkedHashSet<String>(uuids));
+		session.flush();
+		session.doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				for (int i = 0; i < distinctUuids.size(); i += MAX_ROWS) {
+					List<String> chunk = distinctUuids.subList(i, Math.min(i + MAX_ROWS, distinctUuids.size()));
+					List<Integer> ids = new ArrayList<Integer>();
+					PreparedStatement select = connection.prepareStatement("select id from " + table + " where uuid in ("
+					        + placeholders(chunk.size()) + ")");
+					try {
+						setParameters(select, chunk.toArray());
+						ResultSet resultSet = select.executeQuery();
+						try {
+							while (resultSet.next()) {
+								ids.add(resultSet.getInt(1));
+							}
+						}
+						finally {
+							resultSet.close();
+						}
+					}
+					finally {
+						select.close();
+					}
+					deleteTokens(connection, table, ids);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Delete the tokens of the rows of a partition of the archive, chunk by chunk of ids, before the
+	 * partition is dropped. Dropping a partition commits the transaction, the tokens are deleted
+	 * first so the search never returns a dropped row.
+	 * 
+	 * @param session the session of the transaction.
+	 * @param partitionName the name of a partition of medic_archive_data.
+	 */
+	static void purgeArchivePartition(final Session session, final String partitionName) {
+		session.doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				Integer firstId = null;
+				Integer lastId = null;
+				PreparedStatement select = connection.prepareStatement("select min(id), max(id) from medic_archive_data "
+				        + "partition (" + partitionName + ")");
+				try {
+					ResultSet resultSet = select.executeQuery();
+					try {
+						if (resultSet.next() && resultSet.getObject(1) != null) {
+							firstId = resultSet.getInt(1);
+							lastId = resultSet.getInt(2);
+						}
+					}
+					finally {
+						resultSet.close();
+					}
+				}
+				finally {
+					select.close();
+				}
+				if (firstId == null) {
+					return;
+				}
+				PreparedStatement delete = connection.prepareStatement("delete t from medic_data_search_token t "
+				        + "join medic_archive_data partition (" + partitionName + ") a on t.data_table = ? "
+				        + "and t.data_id = a.id where a.id between ? and ?");
+				try {
+					for (int id = firstId; id <= lastId; id += MAX_ROWS * 10) {
+						delete.setString(1, "medic_archive_data");
+						delete.setInt(2, id);
+						delete.setInt(3, Math.min(lastId, id + MAX_ROWS * 10 - 1));
+						delete.executeUpdate();
+					}
+				}
+				finally {
+					delete.close();
+				}
+			}
+		});
+	}
+	
+	private static Map<Integer, IndexedRow> readRows(final Connection connection, final String table,
+	        final String condition, final Object... parameters) throws SQLException {
+		String columns = "medic_archive_data".equals(table) ? "null, null, null, null"
+		        : "d.form_name, l.name, p.identifier, p.name";
+		String joins = "medic_archive_data".equals(table) ? "" : " left join location l on l.location_id = "
+		        + "d.location left join provider p on p.provider_id = d.provider";
+		Map<Integer, IndexedRow> rows = new LinkedHashMap<Integer, IndexedRow>();
+		PreparedStatement select = connection.prepareStatement("select d.id, d.uuid, d.discriminator, " + columns
+		        + ", d.payload from " + table + " d" + joins + " where " + condition);
+		try {
+			setParameters(select, parameters);
+			ResultSet resultSet = select.executeQuery();
+			try {
+				while (resultSet.next()) {
+					IndexedRow row = new IndexedRow(resultSet.getString(2));
+					for (int column = 3; column <= 7; column++) {
+						SearchTokens.addTokens(row.tokens, resultSet.getString(column));
+					}
+					SearchTokens.addPayloadTokens(row.tokens, PayloadCompression.decode(resultSet.getString(8)));
+					rows.put(resultSet.getInt(1), row);
+				}
+			}
+			finally {
+				resultSet.close();
+			}
+		}
+		finally {
+			select.close();
+		}
+		if ("medic_error_data".equals(table) && !rows.isEmpty()) {
+			addErrorMessageTokens(connection, rows);
+		}
+		return rows;
+	}
+	
+	private static void addErrorMessageTokens(final Connection connection, final Map<Integer, IndexedRow> rows)
+	        throws SQLException {
+		PreparedStatement select = connection.prepareStatement("select medic_error_data_id, message from "
+		        + "medic_error_message where medic_error_data_id in (" + placeholders(rows.size()) + ")");
+		try {
+			setParameters(select, rows.keySet().toArray());
+			ResultSet resultSet = select.executeQuery();
+			try {
+				while (resultSet.next()) {
+					SearchTokens.addTokens(rows.get(resultSet.getInt(1)).tokens, resultSet.getString(2));
+				}
+			}
+			finally {
+				resultSet.close();
+			}
+		}
+		finally {
+			select.close();
+		}
+	}
+	
+	private static void insertTokens(final Connection connection, final String table, final Map<Integer, IndexedRow> rows,
+	        final String insert) throws SQLException {
+		if (rows.isEmpty()) {
+			return;
+		}
+		PreparedStatement statement = connection.prepareStatement(insert + " into medic_data_search_token "
+		        + "(data_table, data_id, data_uuid, token) values (?, ?, ?, ?)");
+		try {
+			for (Map.Entry<Integer, IndexedRow> row : rows.entrySet()) {
+				for (String token : row.getValue().tokens) {
+					statement.setString(1, table);
+					statement.setInt(2, row.getKey());
+					statement.setString(3, row.getValue().uuid);
+					statement.setString(4, token);
+					statement.addBatch();
+				}
+			}
+			statement.executeBatch();
+		}
+		finally {
+			statement.close();
+		}
+	}
+	
+	private static void deleteTokens(final Connection connection, final String table, final Collection<Integer> ids)
+	        throws SQLException {
+		if (ids.isEmpty()) {
+			return;
+		}
+		// the primary key starts with (data_table, data_id), every delete reads the tokens of one row.
+		PreparedStatement delete = connection.prepareStatement("delete from medic_data_search_token "
+		        + "where data_table = ? and data_id = ?");
+		try {
+			for (Integer id : ids) {
+				delete.setString(1, table);
+				delete.setInt(2, id);
+				delete.addBatch();
+			}
+			delete.executeBatch();
+		}
+		finally {
+			delete.close();
+		}
+	}
+	
+	private static void setParameters(final PreparedStatement statement, final Object... parameters)
+	        throws SQLException {
+		for (int i = 0; i < parameters.length; i++) {
+			statement.setObject(i + 1, parameters[i]);
+		}
+	}
+	
+	private static String placeholders(final int count) {
+		StringBuilder placeholders = new StringBuilder("?");
+		for (int i = 1; i < count; i++) {
+			placeholders.append(", ?");
+		}
+		return placeholders.toString();
+	}
+	
+	/**
+	 * The uuid and the tokens of a row read for indexing.
+	 */
+	private static class IndexedRow {
+		
+		private final String uuid;
+		
+		private final Set<String> tokens = new LinkedHashSet<String>();
+		
+		IndexedRow(final String uuid) {
+			this.uuid = uuid;
+		}
+	}
+}
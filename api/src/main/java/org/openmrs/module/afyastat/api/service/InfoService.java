@@ -4,10 +4,14 @@ import org.openmrs.Person;
 import org.openmrs.Role;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.afyastat.model.*;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.validation.constraints.NotNull;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  */
@@ -78,6 +82,92 @@ public interface InfoService extends OpenmrsService {
 	 */
 	List<AfyaStatQueueData> getPagedQueueData(final String search, final Integer pageNumber, final Integer pageSize);
 	
+	/**
+	 * Get a page of queue data with matching search term, newest first, starting after the page of the
+	 * cursor. Unlike {@link #getPagedQueueData(String, Integer, Integer)} the deeper pages are as cheap
+	 * as the first one.
+	 * 
+	 * @param search the search term.
+	 * @param cursor the next cursor of the previous page, null for the first page.
+	 * @param pageSize the size of the page.
+	 * @return the page of queue data and the cursor of the next page.
+	 */
+	InfoPage<AfyaStatQueueData> getQueueDataPage(final String search, final String cursor, final Integer pageSize);
+	
+	/**
+	 * Get the approximate number of the queue data with matching search term, cheap enough to be shown
+	 * with every page. Without a search term the number is estimated from the table statistics, the
+	 * count of a search term is cached for a minute.
+	 * 
+	 * @param search the search term.
+	 * @return the approximate number of the queue data in the database.
+	 */
+	Number estimateQueueData(final String search);
+	
+	/**
+	 * Get the next chunk of queue data ordered by id, starting after the given id. Used to drain
+	 * the queue without loading all the queue data into memory.
+	 * 
+	 * @param discriminator the discriminator of the queue data, null to return all discriminators.
+	 * @param lastId the id of the last queue data from the previous chunk, null to start from the
+	 *            beginning.
+	 * @param chunkSize the maximum number of queue data to return.
+	 * @return list of queue data with id greater than the last id.
+	 */
+	List<AfyaStatQueueData> getQueueDataChunk(final String discriminator, final Integer lastId, final Integer chunkSize);
+	
+	/**
+	 * Get the distinct discriminators of the queue data currently waiting in the queue.
+	 * 
+	 * @return list of the discriminators in the queue.
+	 */
+	List<String> getQueuedDiscriminators();
+	
+	/**
+	 * Atomically claim the next chunk of queue data for a processor. Only queue data that were never
+	 * claimed or whose lease already expired are claimed.
+	 * 
+	 * @param discriminator the discriminator of the queue data.
+	 * @param lastId the id of the last queue data from the previous chunk, null to start from the
+	 *            beginning.
+	 * @param chunkSize the maximum number of queue data to claim.
+	 * @param claimedBy the processor claiming the queue data.
+	 * @param leaseSeconds the number of seconds the claim is held.
+	 * @return the number of queue data claimed.
+	 */
+	Integer claimQueueData(final String discriminator, final Integer lastId, final Integer chunkSize,
+	        final String claimedBy, final Integer leaseSeconds);
+	
+	/**
+	 * Get the queue data claimed by a processor, ordered by id.
+	 * 
+	 * @param discriminator the discriminator of the queue data.
+	 * @param lastId the id of the last queue data from the previous chunk, null to start from the
+	 *            beginning.
+	 * @param claimedBy the processor holding the claim.
+	 * @return list of queue data claimed by the processor with id greater than the last id.
+	 */
+	List<AfyaStatQueueData> getClaimedQueueData(final String discriminator, final Integer lastId, final String claimedBy);
+	
+	/**
+	 * Release all the claims held by a processor.
+	 * 
+	 * @param claimedBy the processor holding the claim.
+	 * @return the number of queue data released.
+	 */
+	Integer releaseQueueData(final String claimedBy);
+	
+	/**
+	 * Extend the lease on queue data still claimed by a processor.
+	 * 
+	 * @param queueDataIds the ids of the queue data about to be processed.
+	 * @param claimedBy the processor holding the claim.
+	 * @param leaseSeconds the number of seconds the claim is held from now on.
+	 * @return the ids of the queue data still claimed by the processor, ordered by id.
+	 */
+	List<Integer> renewQueueDataClaim(final List<Integer> queueDataIds, final String claimedBy,
+	        final Integer leaseSeconds);
+	
 	/**
 	 * Return the error data with the given id.
 	 * 
@@ -108,6 +198,15 @@ public interface InfoService extends OpenmrsService {
 	 */
 	ErrorInfo getRegistrationErrorDataByPatientUuid(final String patientUuid);
 	
+	/**
+	 * Return the registration error data of each of the patients, read in batches instead of one
+	 * query per patient. The patients without registration error data are left out.
+	 * 
+	 * @param patientUuids the patient uuids.
+	 * @return the newest registration error data by patient uuid.
+	 */
+	Map<String, ErrorInfo> getRegistrationErrorDataByPatientUuids(final Collection<String> patientUuids);
+	
 	/**
 	 * Return all saved error data.
 	 * 
@@ -126,6 +225,25 @@ public interface InfoService extends OpenmrsService {
 	 */
 	ErrorInfo saveErrorData(final ErrorInfo ErrorInfo);
 	
+	/**
+	 * Move the queue data to the error queue without loading its payload into the session. The
+	 * error details are taken from the error info.
+	 * 
+	 * @param queueDataId the id of the queue data.
+	 * @param errorInfo the error info holding the message, the error messages and the extracted
+	 *            location, provider, form name and patient uuid.
+	 * @return the number of queue data moved.
+	 */
+	Integer moveQueueDataToError(final Integer queueDataId, final ErrorInfo errorInfo);
+	
+	/**
+	 * Move a batch of queue data to the error queue without loading their payloads into the session.
+	 * 
+	 * @param errorInfos the error info of every queue data, by the id of the queue data.
+	 * @return the number of queue data moved.
+	 */
+	Integer moveQueueDataToError(final Map<Integer, ErrorInfo> errorInfos);
+	
 	/**
 	 * Delete error data from the database.
 	 * 
@@ -153,6 +271,28 @@ public interface InfoService extends OpenmrsService {
 	 */
 	List<ErrorInfo> getPagedErrorData(final String search, final Integer pageNumber, final Integer pageSize);
 	
+	/**
+	 * Get a page of error data with matching search term, newest first, starting after the page of the
+	 * cursor. Unlike {@link #getPagedErrorData(String, Integer, Integer)} the deeper pages are as cheap
+	 * as the first one.
+	 * 
+	 * @param search the search term.
+	 * @param cursor the next cursor of the previous page, null for the first page.
+	 * @param pageSize the size of the page.
+	 * @return the page of error data and the cursor of the next page.
+	 */
+	InfoPage<ErrorInfo> getErrorDataPage(final String search, final String cursor, final Integer pageSize);
+	
+	/**
+	 * Get the approximate number of the error data with matching search term, cheap enough to be shown
+	 * with every page. Without a search term the number is estimated from the table statistics, the
+	 * count of a search term is cached for a minute.
+	 * 
+	 * @param search the search term.
+	 * @return the approximate number of the error data in the database.
+	 */
+	Number estimateErrorData(final String search);
+	
 	/**
 	 * Return the archive data with the given id.
 	 * 
@@ -221,6 +361,78 @@ public interface InfoService extends OpenmrsService {
 	 */
 	ArchiveInfo saveArchiveData(final ArchiveInfo ArchiveInfo);
 	
+	/**
+	 * Move the queue data to the archive with one insert select and one delete, without loading the
+	 * payloads into the session.
+	 * 
+	 * @param queueDataIds the ids of the queue data.
+	 * @param message the archive message.
+	 * @return the number of queue data archived.
+	 */
+	Integer archiveQueueData(final List<Integer> queueDataIds, final String message);
+	
+	/**
+	 * Move the oldest archive data archived before the date to the cold storage files, then delete
+	 * them from the archive with a single delete. Only one batch is moved per call, so the archive
+	 * table is never locked for long.
+	 * 
+	 * @param archivedBefore the date the archive data were archived before.
+	 * @param batchSize the maximum number of archive data moved.
+	 * @return the number of archive data moved, 0 when none is left to move.
+	 * @should write the archive data to the cold storage before deleting them.
+	 */
+	Integer moveArchiveDataToColdStorage(final Date archivedBefore, final Integer batchSize);
+	
+	/**
+	 * Copy the oldest archive data archived before the date with an id greater than the given id to
+	 * the cold storage files, without deleting them from the archive.
+	 * 
+	 * @param archivedBefore the date the archive data were archived before.
+	 * @param afterId the id the archive data come after, 0 to start from the oldest.
+	 * @param batchSize the maximum number of archive data copied.
+	 * @return the id of the last archive data copied, null when none is left to copy.
+	 * @should copy the archive data after the id to the cold storage.
+	 */
+	Integer exportArchiveDataToColdStorage(final Date archivedBefore, final Integer afterId, final Integer batchSize);
+	
+	/**
+	 * Get the monthly range partitions of the archive on the date the archive data were archived.
+	 * 
+	 * @return the partition names mapped to the dates the archive data of the partitions were archived
+	 *         before, oldest first. The last partition maps to null. Empty when the archive is not
+	 *         partitioned.
+	 */
+	Map<String, Date> getArchivePartitions();
+	
+	/**
+	 * Add the monthly partitions of the archive up to the month of the date.
+	 * 
+	 * @param until a date in the last month to get a partition.
+	 * @return the number of partitions added, 0 when the archive is not partitioned.
+	 */
+	Integer addArchivePartitions(final Date until);
+	
+	/**
+	 * Drop a monthly partition of the archive with all its archive data. The archive data should be
+	 * exported to the cold storage first.
+	 * 
+	 * @param partitionName the name of the partition.
+	 * @should drop the partition with the name.
+	 */
+	void dropArchivePartition(final String partitionName);
+	
+	/**
+	 * Restore the archive data with the given form data uuid from the cold storage files into the
+	 * archive. The restored archive data keep their uuids and are archived again now, so they stay in
+	 * the archive for another retention window.
+	 * 
+	 * @param formDataUuid the form data uuid.
+	 * @return the archive data with the matching formDataUuid restored from the cold storage.
+	 * @should restore the archive data with the matching formDataUuid.
+	 * @should skip the archive data which are still in the archive.
+	 */
+	List<ArchiveInfo> rehydrateArchiveData(final String formDataUuid);
+	
 	/**
 	 * Delete archive data from the database.
 	 * 
@@ -248,6 +460,28 @@ public interface InfoService extends OpenmrsService {
 	 */
 	List<ArchiveInfo> getPagedArchiveData(final String search, final Integer pageNumber, final Integer pageSize);
 	
+	/**
+	 * Get a page of archive data with matching search term, newest first, starting after the page of the
+	 * cursor. Unlike {@link #getPagedArchiveData(String, Integer, Integer)} the deeper pages are as cheap
+	 * as the first one.
+	 * 
+	 * @param search the search term.
+	 * @param cursor the next cursor of the previous page, null for the first page.
+	 * @param pageSize the size of the page.
+	 * @return the page of archive data and the cursor of the next page.
+	 */
+	InfoPage<ArchiveInfo> getArchiveDataPage(final String search, final String cursor, final Integer pageSize);
+	
+	/**
+	 * Get the approximate number of the archive data with matching search term, cheap enough to be shown
+	 * with every page. Without a search term the number is estimated from the table statistics, the
+	 * count of a search term is cached for a minute.
+	 * 
+	 * @param search the search term.
+	 * @return the approximate number of the archive data in the database.
+	 */
+	Number estimateArchiveData(final String search);
+	
 	/**
 	 * Return the data source with the given id.
 	 * 
@@ -507,9 +741,21 @@ public interface InfoService extends OpenmrsService {
 	 *            patient.
 	 * @return List of QueueData - A list of newly submitted QueuedData.
 	 */
+	@Transactional
 	List<AfyaStatQueueData> mergeDuplicatePatient(@NotNull final String errorDataUuid,
 	        @NotNull final String existingPatientUuid, @NotNull String payload);
 	
+	/**
+	 * Move all the error data of the patient with the discriminator back to the queue, with set based
+	 * statements in a single transaction. At least one of the filters must be given.
+	 * 
+	 * @param patientUuid the patient uuid, null for all the patients.
+	 * @param discriminator the discriminator of the error data, null for all the discriminators.
+	 * @return the number of error data moved to the queue.
+	 */
+	@Transactional
+	Integer requeueErrorData(final String patientUuid, final String discriminator);
+	
 	/**
 	 * Get formDataStatus for form data with given form data uuid.
 	 * 
@@ -521,4 +767,25 @@ public interface InfoService extends OpenmrsService {
 	 * @should return with status 'unknown' if form data with given formDataUuid cannot be traced
 	 */
 	FormInfoStatus getFormDataStatusByFormDataUuid(String formDataUuid);
+	
+	/**
+	 * Get formDataStatus for the data created from the CHT document with the given identity.
+	 * 
+	 * @param documentId the identity of the CHT document, its _id followed by its _rev when it has one.
+	 * @return the formDataStatus for the data created from the document
+	 * @should return with status 'archived' if the document was archived
+	 * @should return with status 'errored' if the document was placed on error queue
+	 * @should return with status 'queued' if the document is on queue waiting to be processed
+	 * @should return with status 'unknown' if the document was never received
+	 */
+	FormInfoStatus getFormDataStatusByDocumentId(String documentId);
+	
+	/**
+	 * Get the identities of the CHT documents which were already received, so their data is in the
+	 * queue, archive or error tables.
+	 * 
+	 * @param documentIds the identities of the CHT documents.
+	 * @return the identities of the documents which were already received.
+	 */
+	Set<String> getExistingDocumentIds(Collection<String> documentIds);
 }
@@ -29,6 +29,8 @@ public class MedicQueData extends BaseOpenmrsData {
 	
 	private String formDataUuid;
 	
+	private String documentId;
+	
 	public MedicQueData() {
 		prePersist();
 	}
@@ -131,4 +133,12 @@ public class MedicQueData extends BaseOpenmrsData {
 		this.formDataUuid = formDataUuid;
 	}
 	
+	public String getDocumentId() {
+		return documentId;
+	}
+	
+	public void setDocumentId(String documentId) {
+		this.documentId = documentId;
+	}
+	
 }
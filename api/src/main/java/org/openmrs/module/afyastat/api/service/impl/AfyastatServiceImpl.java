@@ -11,11 +11,14 @@ package org.openmrs.module.afyastat.api.service.impl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.Provider;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.afyastat.api.AfyastatService;
 import org.openmrs.module.afyastat.api.db.hibernate.HibernateAfyaStatDAO;
 import org.openmrs.module.afyastat.api.service.MedicQueData;
 
+import java.util.List;
+
 public class AfyastatServiceImpl extends BaseOpenmrsService implements AfyastatService {
 	
 	protected final Log log = LogFactory.getLog(this.getClass());
@@ -35,6 +38,27 @@ public class AfyastatServiceImpl extends BaseOpenmrsService implements AfyastatS
 		return queueDataDao.saveQueData(medicQueData);
 	}
 	
+	@Override
+	public Integer saveQueDataBatch(List<MedicQueData> medicQueData) {
+		return queueDataDao.saveQueDataBatch(medicQueData);
+	}
+	
+	@Override
+	public Provider getFirstProvider() {
+		return queueDataDao.getFirstProvider();
+	}
+	
+	@Override
+	public Integer compressPayloads(String table, Integer lastId, Integer chunkSize) {
+		return queueDataDao.compressPayloads(table, lastId, chunkSize);
+	}
+	
+	@Override
+	public Integer indexSearchTokens(String table, Integer lastId, Integer chunkSize) {
+		return queueDataDao.indexSearchTokens(table, lastId, chunkSize);
+	}
+
+	
 	@Override
 	public void onStartup() {
 		
@@ -14,8 +14,12 @@
 package org.openmrs.module.afyastat.api.service.impl;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.openmrs.Person;
 import org.openmrs.Role;
+import org.openmrs.User;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.afyastat.api.db.ArchiveInfoDao;
@@ -24,23 +28,49 @@ import org.openmrs.module.afyastat.api.db.NotificationInfoDao;
 import org.openmrs.module.afyastat.api.db.AfyaDataSourceDao;
 import org.openmrs.module.afyastat.api.db.AfyaStatQueueDataDao;
 import org.openmrs.module.afyastat.api.db.ErrorMessagesInfoDao;
+import org.openmrs.module.afyastat.api.db.InfoDao;
 import org.openmrs.module.afyastat.api.service.InfoService;
 import org.openmrs.module.afyastat.api.service.RegistrationInfoService;
 import org.openmrs.module.afyastat.exception.StreamProcessorException;
+import org.openmrs.module.afyastat.handler.QueueInfoHandlerRegistry;
+import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
 import org.openmrs.module.afyastat.model.*;
 import org.openmrs.module.afyastat.model.ErrorInfo;
 import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
-import org.openmrs.util.HandlerUtil;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
+import org.openmrs.module.afyastat.util.ArchiveColdStorage;
+import org.openmrs.module.afyastat.utils.BoundedCache;
+import org.openmrs.module.afyastat.utils.PageCursor;
+import org.openmrs.util.OpenmrsUtil;
 
 import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  */
 public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 	
+	/**
+	 * Counts of the search terms of the data pages, shown with every page.
+	 */
+	private static final BoundedCache<String, Number> DATA_COUNTS = new BoundedCache<String, Number>("dataCounts", 256,
+	        60 * 1000L);
+	
+	private static final String REGISTRATION_DISCRIMINATOR = "json-registration";
+	
+	private static final int REQUEUE_BATCH_SIZE = 500;
+	
+	private final Log log = LogFactory.getLog(InfoServiceImpl.class);
+	
 	private ErrorInfoDao errorInfoDao;
 	
 	private AfyaStatQueueDataDao afyaStatQueueDataDao;
@@ -187,6 +217,105 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 		return afyaStatQueueDataDao.getPagedData(search, pageNumber, pageSize);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoService#getQueueDataPage(String, String, Integer)
+	 */
+	@Override
+	public InfoPage<AfyaStatQueueData> getQueueDataPage(final String search, final String cursor, final Integer pageSize) {
+		return getDataPage(afyaStatQueueDataDao, search, cursor, pageSize);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoService#estimateQueueData(String)
+	 */
+	@Override
+	public Number estimateQueueData(final String search) {
+		return estimateData(afyaStatQueueDataDao, search);
+	}
+	
+	/**
+	 * Get the next chunk of queue data ordered by id, starting after the given id.
+	 * 
+	 * @param discriminator the discriminator of the queue data, null to return all discriminators.
+	 * @param lastId the id of the last queue data from the previous chunk.
+	 * @param chunkSize the maximum number of queue data to return.
+	 * @return list of queue data with id greater than the last id.
+	 */
+	@Override
+	public List<AfyaStatQueueData> getQueueDataChunk(final String discriminator, final Integer lastId,
+	        final Integer chunkSize) {
+		return getAfyaStatQueueDataDao().getQueueDataChunk(discriminator, lastId, chunkSize);
+	}
+	
+	/**
+	 * Get the distinct discriminators of the queue data currently waiting in the queue.
+	 * 
+	 * @return list of the discriminators in the queue.
+	 */
+	@Override
+	public List<String> getQueuedDiscriminators() {
+		return getAfyaStatQueueDataDao().getQueuedDiscriminators();
+	}
+	
+	/**
+	 * Atomically claim the next chunk of queue data for a processor.
+	 * 
+	 * @param discriminator the discriminator of the queue data.
+	 * @param lastId the id of the last queue data from the previous chunk.
+	 * @param chunkSize the maximum number of queue data to claim.
+	 * @param claimedBy the processor claiming the queue data.
+	 * @param leaseSeconds the number of seconds the claim is held.
+	 * @return the number of queue data claimed.
+	 */
+	@Override
+	public Integer claimQueueData(final String discriminator, final Integer lastId, final Integer chunkSize,
+	        final String claimedBy, final Integer leaseSeconds) {
+		return getAfyaStatQueueDataDao().claimQueueData(discriminator, lastId, chunkSize, claimedBy, leaseSeconds);
+	}
+	
+	/**
+	 * Get the queue data claimed by a processor, ordered by id.
+	 * 
+	 * @param discriminator the discriminator of the queue data.
+	 * @param lastId the id of the last queue data from the previous chunk.
+	 * @param claimedBy the processor holding the claim.
+	 * @return list of queue data claimed by the processor with id greater than the last id.
+	 */
+	@Override
+	public List<AfyaStatQueueData> getClaimedQueueData(final String discriminator, final Integer lastId,
+	        final String claimedBy) {
+		return getAfyaStatQueueDataDao().getClaimedQueueData(discriminator, lastId, claimedBy);
+	}
+	
+	/**
+	 * Release all the claims held by a processor.
+	 * 
+	 * @param claimedBy the processor holding the claim.
+	 * @return the number of queue data released.
+	 */
+	@Override
+	public Integer releaseQueueData(final String claimedBy) {
+		return getAfyaStatQueueDataDao().releaseQueueData(claimedBy);
+	}
+	
+	/**
+	 * Extend the lease on queue data still claimed by a processor.
+	 * 
+	 * @param queueDataIds the ids of the queue data about to be processed.
+	 * @param claimedBy the processor holding the claim.
+	 * @param leaseSeconds the number of seconds the claim is held from now on.
+	 * @return the ids of the queue data still claimed by the processor, ordered by id.
+	 */
+	@Override
+	public List<Integer> renewQueueDataClaim(final List<Integer> queueDataIds, final String claimedBy,
+	        final Integer leaseSeconds) {
+		return getAfyaStatQueueDataDao().renewQueueDataClaim(queueDataIds, claimedBy, leaseSeconds);
+	}
+	
 	/**
 	 * Return the error data with the given id.
 	 * 
@@ -223,14 +352,17 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 	 */
 	@Override
 	public ErrorInfo getRegistrationErrorDataByPatientUuid(String patientUuid) {
-		
-		List<ErrorInfo> errors = getErrorInfoDao().getPagedData(patientUuid, null, null);
-		for (ErrorInfo errorData : errors) {
-			if (StringUtils.equals("json-registration", errorData.getDiscriminator())) {
-				return errorData;
-			}
-		}
-		return null;
+		return getErrorInfoDao().getDataByPatientUuid(patientUuid, REGISTRATION_DISCRIMINATOR);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoService#getRegistrationErrorDataByPatientUuids(java.util.Collection)
+	 */
+	@Override
+	public Map<String, ErrorInfo> getRegistrationErrorDataByPatientUuids(final Collection<String> patientUuids) {
+		return getErrorInfoDao().getDataByPatientUuids(patientUuids, REGISTRATION_DISCRIMINATOR);
 	}
 	
 	/**
@@ -257,6 +389,29 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 		return getErrorInfoDao().saveData(errorInfo);
 	}
 	
+	/**
+	 * Move the queue data to the error queue without loading its payload into the session.
+	 * 
+	 * @param queueDataId the id of the queue data.
+	 * @param errorInfo the error info holding the error details.
+	 * @return the number of queue data moved.
+	 */
+	@Override
+	public Integer moveQueueDataToError(final Integer queueDataId, final ErrorInfo errorInfo) {
+		return getErrorInfoDao().moveQueueDataToError(queueDataId, errorInfo, Context.getAuthenticatedUser());
+	}
+	
+	/**
+	 * Move a batch of queue data to the error queue without loading their payloads into the session.
+	 * 
+	 * @param errorInfos the error info of every queue data, by the id of the queue data.
+	 * @return the number of queue data moved.
+	 */
+	@Override
+	public Integer moveQueueDataToError(final Map<Integer, ErrorInfo> errorInfos) {
+		return getErrorInfoDao().moveQueueDataToError(errorInfos, Context.getAuthenticatedUser());
+	}
+	
 	/**
 	 * Delete error data from the database.
 	 * 
@@ -293,6 +448,26 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 		return errorInfoDao.getPagedData(search, pageNumber, pageSize);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoService#getErrorDataPage(String, String, Integer)
+	 */
+	@Override
+	public InfoPage<ErrorInfo> getErrorDataPage(final String search, final String cursor, final Integer pageSize) {
+		return getDataPage(errorInfoDao, search, cursor, pageSize);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoService#estimateErrorData(String)
+	 */
+	@Override
+	public Number estimateErrorData(final String search) {
+		return estimateData(errorInfoDao, search);
+	}
+	
 	/**
 	 * Return the archive data with the given id.
 	 * 
@@ -358,6 +533,134 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 		return getArchiveInfoDao().saveData(archiveInfo);
 	}
 	
+	/**
+	 * Move the queue data to the archive without loading the payloads into the session.
+	 * 
+	 * @param queueDataIds the ids of the queue data.
+	 * @param message the archive message.
+	 * @return the number of queue data archived.
+	 */
+	@Override
+	public Integer archiveQueueData(final List<Integer> queueDataIds, final String message) {
+		return getArchiveInfoDao().archiveQueueData(queueDataIds, message, Context.getAuthenticatedUser());
+	}
+	
+	/**
+	 * Move one batch of the archive data archived before the date to the cold storage files. The
+	 * files are synced to the disk before the archive data are deleted.
+	 * 
+	 * @param archivedBefore the date the archive data were archived before.
+	 * @param batchSize the maximum number of archive data moved.
+	 * @return the number of archive data moved.
+	 */
+	@Override
+	public Integer moveArchiveDataToColdStorage(final Date archivedBefore, final Integer batchSize) {
+		List<ArchiveInfo> archiveData = getArchiveInfoDao().getDataArchivedBefore(archivedBefore, 0, batchSize);
+		if (archiveData.isEmpty()) {
+			return 0;
+		}
+		writeToColdStorage(archiveData);
+		List<Integer> archiveDataIds = new ArrayList<Integer>();
+		for (ArchiveInfo archiveInfo : archiveData) {
+			archiveDataIds.add(archiveInfo.getId());
+		}
+		return getArchiveInfoDao().purgeDataByIds(archiveDataIds, archivedBefore);
+	}
+	
+	/**
+	 * Copy one batch of the archive data archived before the date to the cold storage files.
+	 * 
+	 * @param archivedBefore the date the archive data were archived before.
+	 * @param afterId the id the archive data come after.
+	 * @param batchSize the maximum number of archive data copied.
+	 * @return the id of the last archive data copied.
+	 */
+	@Override
+	public Integer exportArchiveDataToColdStorage(final Date archivedBefore, final Integer afterId,
+	        final Integer batchSize) {
+		List<ArchiveInfo> archiveData = getArchiveInfoDao().getDataArchivedBefore(archivedBefore, afterId, batchSize);
+		if (archiveData.isEmpty()) {
+			return null;
+		}
+		writeToColdStorage(archiveData);
+		return archiveData.get(archiveData.size() - 1).getId();
+	}
+	
+	@Override
+	public Map<String, Date> getArchivePartitions() {
+		return getArchiveInfoDao().getPartitions();
+	}
+	
+	@Override
+	public Integer addArchivePartitions(final Date until) {
+		return getArchiveInfoDao().addPartitions(until);
+	}
+	
+	@Override
+	public void dropArchivePartition(final String partitionName) {
+		getArchiveInfoDao().dropPartition(partitionName);
+	}
+	
+	/**
+	 * Restore the archive data with the form data uuid from the cold storage files.
+	 * 
+	 * @param formDataUuid the form data uuid.
+	 * @return the restored archive data.
+	 */
+	@Override
+	public List<ArchiveInfo> rehydrateArchiveData(final String formDataUuid) {
+		List<ArchiveInfo> coldArchiveData;
+		try {
+			coldArchiveData = getArchiveColdStorage().findByFormDataUuid(formDataUuid);
+		}
+		catch (IOException e) {
+			throw new APIException("Unable to read the archive data from the cold storage", e);
+		}
+		// the uuid is not a unique key of the partitioned archive, the archived uuids are skipped here.
+		Set<String> archivedUuids = new HashSet<String>();
+		List<String> coldUuids = new ArrayList<String>();
+		for (ArchiveInfo archiveInfo : coldArchiveData) {
+			coldUuids.add(archiveInfo.getUuid());
+		}
+		for (ArchiveInfo archiveInfo : getArchiveInfoDao().getDataByUuids(coldUuids)) {
+			archivedUuids.add(archiveInfo.getUuid());
+		}
+		List<ArchiveInfo> restored = new ArrayList<ArchiveInfo>();
+		for (ArchiveInfo archiveInfo : coldArchiveData) {
+			if (!archivedUuids.add(archiveInfo.getUuid())) {
+				continue;
+			}
+			AfyaDataSource dataSource = archiveInfo.getDataSource() == null ? null : getAfyaDataSourceDao().getById(
+			    archiveInfo.getDataSource().getId());
+			if (dataSource == null) {
+				log.warn("Unable to restore the archive data " + archiveInfo.getUuid() + ", its data source is gone");
+				continue;
+			}
+			User creator = archiveInfo.getCreator() == null ? null : Context.getUserService().getUser(
+			    archiveInfo.getCreator().getUserId());
+			archiveInfo.setId(null);
+			archiveInfo.setDataSource(dataSource);
+			archiveInfo.setCreator(creator != null ? creator : Context.getAuthenticatedUser());
+			archiveInfo.setDateArchived(new Date());
+			restored.add(getArchiveInfoDao().saveData(archiveInfo));
+		}
+		return restored;
+	}
+	
+	private void writeToColdStorage(final List<ArchiveInfo> archiveData) {
+		try {
+			getArchiveColdStorage().write(archiveData);
+		}
+		catch (IOException e) {
+			throw new APIException("Unable to write the archive data to the cold storage", e);
+		}
+	}
+	
+	private ArchiveColdStorage getArchiveColdStorage() throws IOException {
+		return new ArchiveColdStorage(OpenmrsUtil.getDirectoryInApplicationDataDirectory(AfyaStatMetadata.MODULE_ID
+		        + File.separator + "archive"));
+	}
+	
 	/**
 	 * Delete archive data from the database.
 	 * 
@@ -394,6 +697,38 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 		return archiveInfoDao.getPagedData(search, pageNumber, pageSize);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoService#getArchiveDataPage(String, String, Integer)
+	 */
+	@Override
+	public InfoPage<ArchiveInfo> getArchiveDataPage(final String search, final String cursor, final Integer pageSize) {
+		if (pageSize == null || pageSize < 1) {
+			throw new APIException("The page size must be a positive number");
+		}
+		// the archive is partitioned on the date archived, so its pages are keyed on the date archived.
+		PageCursor position = PageCursor.decode(cursor);
+		List<ArchiveInfo> data = archiveInfoDao.getDataBeforeDateArchived(search,
+		    position == null ? null : position.getDate(), position == null ? null : position.getId(), pageSize + 1);
+		if (data.size() <= pageSize) {
+			return new InfoPage<ArchiveInfo>(data, null);
+		}
+		data = new ArrayList<ArchiveInfo>(data.subList(0, pageSize));
+		ArchiveInfo last = data.get(pageSize - 1);
+		return new InfoPage<ArchiveInfo>(data, PageCursor.encode(last.getDateArchived(), last.getId()));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoService#estimateArchiveData(String)
+	 */
+	@Override
+	public Number estimateArchiveData(final String search) {
+		return estimateData(archiveInfoDao, search);
+	}
+	
 	/**
 	 * Return the data source with the given id.
 	 * 
@@ -675,14 +1010,10 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 		
 		AfyaStatQueueData queueData = new AfyaStatQueueData(errorInfo);
 		
-		List<QueueInfoHandler> queueDataHandlers = HandlerUtil.getHandlersForType(QueueInfoHandler.class,
-		    AfyaStatQueueData.class);
-		for (QueueInfoHandler queueDataHandler : queueDataHandlers) {
-			
+		QueueInfoHandler queueDataHandler = QueueInfoHandlerRegistry.getHandler(queueData);
+		if (queueDataHandler != null) {
 			try {
-				if (queueDataHandler.accept(queueData)) {
-					queueDataHandler.validate(queueData);
-				}
+				queueDataHandler.validate(new QueueInfoHandlerContext(queueData));
 			}
 			catch (Exception ex) {
 				errorMessages = createErrorMessageList((StreamProcessorException) ex);
@@ -694,15 +1025,8 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 	
 	@Override
 	public List<String> getDiscriminatorTypes() {
-		List<String> discriminatorTypes = new ArrayList<String>();
-		List<QueueInfoHandler> queueDataHandlers = HandlerUtil.getHandlersForType(QueueInfoHandler.class,
-		    AfyaStatQueueData.class);
-		for (QueueInfoHandler queueDataHandler : queueDataHandlers) {
-			String discriminator = queueDataHandler.getDiscriminator();
-			// collect all discriminator value and return it to the web interface
-			discriminatorTypes.add(discriminator);
-		}
-		return discriminatorTypes;
+		// collect all discriminator value and return it to the web interface
+		return QueueInfoHandlerRegistry.getDiscriminators();
 	}
 	
 	private List<ErrorMessagesInfo> createErrorMessageList(StreamProcessorException ex) {
@@ -718,7 +1042,6 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 	@Override
 	public List<AfyaStatQueueData> mergeDuplicatePatient(@NotNull final String errorDataUuid,
 	        @NotNull final String existingPatientUuid, @NotNull final String payload) {
-		List<AfyaStatQueueData> requeued = new ArrayList<AfyaStatQueueData>();
 		ErrorInfo errorInfo = this.getErrorDataByUuid(errorDataUuid);
 		errorInfo.setPayload(payload);
 		String submittedPatientUuid = errorInfo.getPatientUuid();
@@ -728,19 +1051,38 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 		errorInfo = this.saveErrorData(errorInfo);
 		
 		registerTemporaryUuid(submittedPatientUuid, existingPatientUuid);
-		AfyaStatQueueData afyaStatQueueData = new AfyaStatQueueData(errorInfo);
-		afyaStatQueueData = this.saveQueueData(afyaStatQueueData);
-		this.purgeErrorData(errorInfo);
-		requeued.add(afyaStatQueueData);
 		
-		// Fetch all ErrorData associated with the patient UUID (the one determined to be of a duplicate patient).
-		int countOfErrors = this.countErrorData(submittedPatientUuid).intValue();
-		List<ErrorInfo> allToRequeue = this.getPagedErrorData(submittedPatientUuid, 1, countOfErrors);
-		for (ErrorInfo errorData1 : allToRequeue) {
-			afyaStatQueueData = new AfyaStatQueueData(errorData1);
-			afyaStatQueueData = this.saveQueueData(afyaStatQueueData);
-			this.purgeErrorData(errorData1);
-			requeued.add(afyaStatQueueData);
+		// the updated error data and all the error data of the duplicate patient are moved back together.
+		Set<String> errorDataUuids = new LinkedHashSet<String>();
+		errorDataUuids.add(errorInfo.getUuid());
+		if (StringUtils.isNotBlank(submittedPatientUuid)) {
+			errorDataUuids.addAll(getErrorInfoDao().getDataUuids(submittedPatientUuid, null));
+		}
+		moveErrorDataToQueue(new ArrayList<String>(errorDataUuids));
+		getErrorInfoDao().detachDataFromHibernateSession(errorInfo);
+		return getAfyaStatQueueDataDao().getDataByUuids(errorDataUuids);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @see InfoService#requeueErrorData(String, String)
+	 */
+	@Override
+	public Integer requeueErrorData(final String patientUuid, final String discriminator) {
+		if (StringUtils.isBlank(patientUuid) && StringUtils.isBlank(discriminator)) {
+			throw new APIException("The patient uuid or the discriminator of the error data must be given");
+		}
+		return moveErrorDataToQueue(getErrorInfoDao().getDataUuids(StringUtils.trimToNull(patientUuid),
+		    StringUtils.trimToNull(discriminator)));
+	}
+	
+	private Integer moveErrorDataToQueue(final List<String> errorDataUuids) {
+		User creator = Context.getAuthenticatedUser();
+		int requeued = 0;
+		for (int i = 0; i < errorDataUuids.size(); i += REQUEUE_BATCH_SIZE) {
+			requeued += getErrorInfoDao().requeueData(
+			    errorDataUuids.subList(i, Math.min(i + REQUEUE_BATCH_SIZE, errorDataUuids.size())), creator);
 		}
 		return requeued;
 	}
@@ -757,16 +1099,51 @@ public class InfoServiceImpl extends BaseOpenmrsService implements InfoService {
 	}
 	
 	public FormInfoStatus getFormDataStatusByFormDataUuid(String formDataUuid) {
-		FormInfoStatus formDataStatus = new FormInfoStatus(formDataUuid);
-		if (getArchiveDataByFormDataUuid(formDataUuid).size() > 0) {
-			formDataStatus.setStatus("archived");
-		} else if (getErrorDataByFormDataUuid(formDataUuid).size() > 0) {
-			formDataStatus.setStatus("errored");
-		} else if (getQueueDataByFormDataUuid(formDataUuid).size() > 0) {
-			formDataStatus.setStatus("queued");
-		} else {
-			formDataStatus.setStatus("unknown");
+		return createFormInfoStatus(formDataUuid, getAfyaStatQueueDataDao().getDataStatusByFormDataUuid(formDataUuid));
+	}
+	
+	@Override
+	public FormInfoStatus getFormDataStatusByDocumentId(String documentId) {
+		return createFormInfoStatus(documentId, getAfyaStatQueueDataDao().getDataStatusByDocumentId(documentId));
+	}
+	
+	@Override
+	public Set<String> getExistingDocumentIds(Collection<String> documentIds) {
+		return new HashSet<String>(getAfyaStatQueueDataDao().getExistingDocumentIds(documentIds));
+	}
+	
+	private <T extends AuditableInfo> InfoPage<T> getDataPage(final InfoDao<T> dao, final String search,
+	        final String cursor, final Integer pageSize) {
+		if (pageSize == null || pageSize < 1) {
+			throw new APIException("The page size must be a positive number");
 		}
+		PageCursor position = PageCursor.decode(cursor);
+		// one more data is read to find out whether there is a next page.
+		List<T> data = dao.getDataBefore(search, position == null ? null : position.getDate(),
+		    position == null ? null : position.getId(), pageSize + 1);
+		if (data.size() <= pageSize) {
+			return new InfoPage<T>(data, null);
+		}
+		data = new ArrayList<T>(data.subList(0, pageSize));
+		return new InfoPage<T>(data, PageCursor.encode(data.get(pageSize - 1)));
+	}
+	
+	private Number estimateData(final InfoDao<?> dao, final String search) {
+		if (StringUtils.isBlank(search)) {
+			return dao.estimateData();
+		}
+		return DATA_COUNTS.get(dao.getClass().getName() + ":" + search.trim(), new BoundedCache.Loader<String, Number>() {
+			
+			@Override
+			public Number load(final String key) {
+				return dao.countData(search);
+			}
+		});
+	}
+	
+	private FormInfoStatus createFormInfoStatus(String uuid, String status) {
+		FormInfoStatus formDataStatus = new FormInfoStatus(uuid);
+		formDataStatus.setStatus(status != null ? status : "unknown");
 		return formDataStatus;
 	}
 }
@@ -23,15 +23,18 @@ import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.JsonNodeFactory;
 import org.openmrs.*;
 import org.openmrs.annotation.Handler;
-import org.openmrs.api.ConceptService;
 import org.openmrs.api.PersonService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.afyastat.api.service.RegistrationInfoService;
 import org.openmrs.module.afyastat.exception.StreamProcessorException;
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 import org.openmrs.module.afyastat.model.RegistrationInfo;
-import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.ConcurrentQueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
 import org.openmrs.module.afyastat.utils.JsonFormatUtils;
+import org.openmrs.module.afyastat.utils.JsonPayload;
+import org.openmrs.module.afyastat.utils.PayloadPaths;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
 import org.openmrs.module.afyastat.utils.PatientLookUpUtils;
 
 import org.springframework.stereotype.Component;
@@ -46,52 +49,50 @@ import static org.openmrs.module.afyastat.utils.PersonCreationsUtils.getPersonAt
  */
 @Component
 @Handler(supports = AfyaStatQueueData.class, order = 6)
-public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
+public class DemographicsUpdateQueueInfoHandler implements ConcurrentQueueInfoHandler {
 	
 	private static final String DISCRIMINATOR_VALUE = "json-demographics-update";
 	
 	private final Log log = LogFactory.getLog(DemographicsUpdateQueueInfoHandler.class);
 	
-	private Patient unsavedPatient;
+	private static final String UNSAVED_PATIENT = "unsavedPatient";
 	
-	private Patient savedPatient;
-	
-	private String payload;
-	
-	private StreamProcessorException queueProcessorException;
+	private static final String SAVED_PATIENT = "savedPatient";
 	
 	@Override
-	public void process(final AfyaStatQueueData queueData) throws StreamProcessorException {
-		log.info("Processing demographics update form data: " + queueData.getUuid());
+	public QueueInfoHandlerContext process(final QueueInfoHandlerContext context) throws StreamProcessorException {
+		log.info("Processing demographics update form data: " + context.getQueueData().getUuid());
 		try {
-			if (validate(queueData)) {
-				updatePatientDemographicObs();
-				updateSavedPatientDemographics();
-				Context.getPatientService().savePatient(savedPatient);
-				
-				String temporaryUuid = getTemporaryPatientUuidFromPayload();
-				if (StringUtils.isNotEmpty(temporaryUuid)) {
-					saveRegistrationData(temporaryUuid);
-				}
+			validate(context);
+			updatePatientDemographicObs(context);
+			updateSavedPatientDemographics(context);
+			Context.getPatientService().savePatient(getSavedPatient(context));
+			
+			String temporaryUuid = getTemporaryPatientUuidFromPayload(context);
+			if (StringUtils.isNotEmpty(temporaryUuid)) {
+				saveRegistrationData(context, temporaryUuid);
 			}
 		}
 		catch (Exception e) {
 			if (!e.getClass().equals(StreamProcessorException.class)) {
-				queueProcessorException.addException(e);
+				context.getException().addException(e);
 			}
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
+		return context;
 	}
 	
-	private String getTemporaryPatientUuidFromPayload() {
-		return JsonFormatUtils.readAsString(payload, "$['demographicsupdate']['demographicsupdate.temporal_patient_uuid']");
+	private String getTemporaryPatientUuidFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		return JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.TEMPORAL_PATIENT_UUID);
 	}
 	
-	private void saveRegistrationData(String temporaryUuid) {
+	private void saveRegistrationData(final QueueInfoHandlerContext context, String temporaryUuid) {
+		Patient savedPatient = getSavedPatient(context);
 		RegistrationInfoService registrationDataService = Context.getService(RegistrationInfoService.class);
 		RegistrationInfo registrationData = registrationDataService.getRegistrationDataByTemporaryUuid(temporaryUuid);
 		if (registrationData == null) {
@@ -103,7 +104,9 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		}
 	}
 	
-	private void updateSavedPatientDemographics() {
+	private void updateSavedPatientDemographics(final QueueInfoHandlerContext context) {
+		Patient savedPatient = getSavedPatient(context);
+		Patient unsavedPatient = getUnsavedPatient(context);
 		if (unsavedPatient.getIdentifiers() != null) {
 			for (final PatientIdentifier identifier : unsavedPatient.getIdentifiers()) {
 				boolean identifierExists = false;
@@ -157,13 +160,13 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		
 	}
 	
-	private void updatePatientDemographicObs() {
+	private void updatePatientDemographicObs(final QueueInfoHandlerContext context) {
+		Patient savedPatient = getSavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
 		Patient p = Context.getPatientService().getPatientByUuid(savedPatient.getUuid());
-		ConceptService cs = Context.getConceptService();
-		String occupation = JsonFormatUtils.readAsString(payload, "$['observation']['1542^OCCUPATION^99DCT']");
-		String civilStatus = JsonFormatUtils.readAsString(payload, "$['observation']['1054^CIVIL STATUS^99DCT']");
-		String educationLevel = JsonFormatUtils.readAsString(payload,
-		    "$['observation']['1712^HIGHEST EDUCATION LEVEL^99DCT']");
+		String occupation = JsonFormatUtils.readAsString(payload, PayloadPaths._Observation.OCCUPATION);
+		String civilStatus = JsonFormatUtils.readAsString(payload, PayloadPaths._Observation.CIVIL_STATUS);
+		String educationLevel = JsonFormatUtils.readAsString(payload, PayloadPaths._Observation.HIGHEST_EDUCATION_LEVEL);
 		Integer occupationConAns = handleEditObsValues(occupation.replace("^", "_"));
 		Integer civilStatusConAns = handleEditObsValues(civilStatus.replace("^", "_"));
 		Integer educationLevelConAns = handleEditObsValues(educationLevel.replace("^", "_"));
@@ -172,8 +175,8 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 			Obs occupationObs = new Obs();
 			occupationObs.setPerson(p);
 			occupationObs.setObsDatetime(new Date());
-			occupationObs.setConcept(cs.getConcept(1542)); // occupation concept
-			occupationObs.setValueCoded(cs.getConcept(occupationConAns));
+			occupationObs.setConcept(ReferenceDataCache.getConcept(1542)); // occupation concept
+			occupationObs.setValueCoded(ReferenceDataCache.getConcept(occupationConAns));
 			Context.getObsService().saveObs(occupationObs, null);
 		}
 		
@@ -181,8 +184,8 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 			Obs civilStatusObs = new Obs();
 			civilStatusObs.setPerson(p);
 			civilStatusObs.setObsDatetime(new Date());
-			civilStatusObs.setConcept(cs.getConcept(1054)); // civil status concept
-			civilStatusObs.setValueCoded(cs.getConcept(civilStatusConAns));
+			civilStatusObs.setConcept(ReferenceDataCache.getConcept(1054)); // civil status concept
+			civilStatusObs.setValueCoded(ReferenceDataCache.getConcept(civilStatusConAns));
 			Context.getObsService().saveObs(civilStatusObs, null);
 		}
 		
@@ -190,92 +193,102 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 			Obs eduLevelObs = new Obs();
 			eduLevelObs.setPerson(p);
 			eduLevelObs.setObsDatetime(new Date());
-			eduLevelObs.setConcept(cs.getConcept(1712)); // education level concept
-			eduLevelObs.setValueCoded(cs.getConcept(educationLevelConAns));
+			eduLevelObs.setConcept(ReferenceDataCache.getConcept(1712)); // education level concept
+			eduLevelObs.setValueCoded(ReferenceDataCache.getConcept(educationLevelConAns));
 			Context.getObsService().saveObs(eduLevelObs, null);
 		}
 		
 	}
 	
 	@Override
-	public boolean validate(AfyaStatQueueData queueData) {
-		log.info("Processing demographics Update form data: " + queueData.getUuid());
-		queueProcessorException = new StreamProcessorException();
+	public QueueInfoHandlerContext validate(final QueueInfoHandlerContext context) {
+		log.info("Processing demographics Update form data: " + context.getQueueData().getUuid());
 		try {
-			payload = queueData.getPayload();
-			Patient candidatePatient = getCandidatePatientFromPayload();
-			savedPatient = PatientLookUpUtils.findSavedPatient(candidatePatient, true);
+			Patient candidatePatient = getCandidatePatientFromPayload(context);
+			Patient savedPatient = PatientLookUpUtils.findSavedPatient(candidatePatient, true);
 			if (savedPatient == null) {
-				queueProcessorException.addException(new Exception("Unable to uniquely identify patient for this "
+				context.getException().addException(new Exception("Unable to uniquely identify patient for this "
 				        + "demographic update form data. "));
 			} else {
-				unsavedPatient = new Patient();
-				populateUnsavedPatientDemographicsFromPayload();
+				context.setAttribute(SAVED_PATIENT, savedPatient);
+				context.setAttribute(UNSAVED_PATIENT, new Patient());
+				populateUnsavedPatientDemographicsFromPayload(context);
 			}
-			return true;
+			return context;
 		}
 		catch (Exception e) {
-			queueProcessorException.addException(e);
-			return false;
+			context.getException().addException(e);
+			return context;
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
 	}
 	
+	private Patient getUnsavedPatient(final QueueInfoHandlerContext context) {
+		return (Patient) context.getAttribute(UNSAVED_PATIENT);
+	}
+	
+	private Patient getSavedPatient(final QueueInfoHandlerContext context) {
+		return (Patient) context.getAttribute(SAVED_PATIENT);
+	}
+	
 	@Override
 	public String getDiscriminator() {
 		return DISCRIMINATOR_VALUE;
 	}
 	
-	private Patient getCandidatePatientFromPayload() {
+	private Patient getCandidatePatientFromPayload(final QueueInfoHandlerContext context) {
 		Patient candidatePatient = new Patient();
 		
-		String uuid = getCandidatePatientUuidFromPayload();
+		String uuid = getCandidatePatientUuidFromPayload(context);
 		candidatePatient.setUuid(uuid);
 		
-		PatientIdentifier medicalRecordNumber = getMedicalRecordNumberFromPayload();
+		PatientIdentifier medicalRecordNumber = getMedicalRecordNumberFromPayload(context);
 		if (medicalRecordNumber != null) {
 			medicalRecordNumber.setPreferred(true);
 			candidatePatient.addIdentifier(medicalRecordNumber);
 		}
 		
-		PersonName personName = getCandidatePatientPersonNameFromPayload();
+		PersonName personName = getCandidatePatientPersonNameFromPayload(context);
 		candidatePatient.addName(personName);
 		
-		String gender = getCandidatePatientGenderFromPayload();
+		String gender = getCandidatePatientGenderFromPayload(context);
 		candidatePatient.setGender(gender);
 		
-		Date birthDate = getCandidatePatientBirthDateFromPayload();
+		Date birthDate = getCandidatePatientBirthDateFromPayload(context);
 		candidatePatient.setBirthdate(birthDate);
 		
 		return candidatePatient;
 	}
 	
-	private String getCandidatePatientUuidFromPayload() {
-		return JsonFormatUtils.readAsString(payload, "$['patient']['patient.uuid']");
+	private String getCandidatePatientUuidFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		return JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.UUID);
 	}
 	
-	private PatientIdentifier getMedicalRecordNumberFromPayload() {
+	private PatientIdentifier getMedicalRecordNumberFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		JSONObject medicalRecordNumberObject = (JSONObject) JsonFormatUtils.readAsObject(payload,
-		    "$['patient']['patient.medical_record_number']");
-		return createPatientIdentifier(medicalRecordNumberObject);
+		    PayloadPaths._Patient.MEDICAL_RECORD_NUMBER);
+		return createPatientIdentifier(context, medicalRecordNumberObject);
 	}
 	
-	private PersonName getCandidatePatientPersonNameFromPayload() {
+	private PersonName getCandidatePatientPersonNameFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		PersonName personName = new PersonName();
-		String givenName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.given_name']");
+		String givenName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.GIVEN_NAME);
 		if (StringUtils.isNotBlank(givenName)) {
 			personName.setGivenName(givenName);
 		}
-		String familyName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.family_name']");
+		String familyName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.FAMILY_NAME);
 		if (StringUtils.isNotBlank(familyName)) {
 			personName.setFamilyName(familyName);
 		}
 		
-		String middleName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.middle_name']");
+		String middleName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.MIDDLE_NAME);
 		if (StringUtils.isNotBlank(middleName)) {
 			personName.setMiddleName(middleName);
 		}
@@ -283,60 +296,67 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		return personName;
 	}
 	
-	private String getCandidatePatientGenderFromPayload() {
-		return JsonFormatUtils.readAsString(payload, "$['patient']['patient.sex']");
+	private String getCandidatePatientGenderFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		return JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.SEX);
 	}
 	
-	private Date getCandidatePatientBirthDateFromPayload() {
-		return JsonFormatUtils.readAsDate(payload, "$['patient']['patient.birth_date']");
+	private Date getCandidatePatientBirthDateFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		return JsonFormatUtils.readAsDate(payload, PayloadPaths._Patient.BIRTH_DATE);
 	}
 	
-	private void populateUnsavedPatientDemographicsFromPayload() {
-		setUnsavedPatientIdentifiersFromPayload();
-		setUnsavedPatientBirthDateFromPayload();
-		setUnsavedPatientBirthDateEstimatedFromPayload();
-		setUnsavedPatientGenderFromPayload();
-		setUnsavedPatientNameFromPayload();
-		setUnsavedPatientAddressesFromPayload();
-		setUnsavedPatientPersonAttributesFromPayload();
-		setUnsavedPatientChangedByFromPayload();
+	private void populateUnsavedPatientDemographicsFromPayload(final QueueInfoHandlerContext context) {
+		setUnsavedPatientIdentifiersFromPayload(context);
+		setUnsavedPatientBirthDateFromPayload(context);
+		setUnsavedPatientBirthDateEstimatedFromPayload(context);
+		setUnsavedPatientGenderFromPayload(context);
+		setUnsavedPatientNameFromPayload(context);
+		setUnsavedPatientAddressesFromPayload(context);
+		setUnsavedPatientPersonAttributesFromPayload(context);
+		setUnsavedPatientChangedByFromPayload(context);
 	}
 	
-	private void setUnsavedPatientIdentifiersFromPayload() {
-		List<PatientIdentifier> demographicsUpdateIdentifiers = getDemographicsUpdatePatientIdentifiersFromPayload();
+	private void setUnsavedPatientIdentifiersFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		List<PatientIdentifier> demographicsUpdateIdentifiers = getDemographicsUpdatePatientIdentifiersFromPayload(context);
 		if (!demographicsUpdateIdentifiers.isEmpty()) {
 			Set<PatientIdentifier> patientIdentifiers = new HashSet<PatientIdentifier>();
 			patientIdentifiers.addAll(demographicsUpdateIdentifiers);
-			setIdentifierTypeLocation(patientIdentifiers);
+			setIdentifierTypeLocation(context, patientIdentifiers);
 			unsavedPatient.addIdentifiers(patientIdentifiers);
 		}
 	}
 	
-	private List<PatientIdentifier> getDemographicsUpdatePatientIdentifiersFromPayload() {
+	private List<PatientIdentifier> getDemographicsUpdatePatientIdentifiersFromPayload(
+	        final QueueInfoHandlerContext context) {
 		List<PatientIdentifier> identifiers = new ArrayList<PatientIdentifier>();
-		PatientIdentifier demographicsUpdateMedicalRecordNumberIdentifier = getDemographicsUpdateMedicalRecordNumberIdentifierFromPayload();
+		PatientIdentifier demographicsUpdateMedicalRecordNumberIdentifier = getDemographicsUpdateMedicalRecordNumberIdentifierFromPayload(
+		    context);
 		if (demographicsUpdateMedicalRecordNumberIdentifier != null) {
 			identifiers.add(demographicsUpdateMedicalRecordNumberIdentifier);
 		}
 		
-		identifiers.addAll(getOtherDemographicsUpdatePatientIdentifiersFromPayload());
-		identifiers.addAll(getLegacyOtherDemographicsUpdatePatientIdentifiersFromPayload());
+		identifiers.addAll(getOtherDemographicsUpdatePatientIdentifiersFromPayload(context));
+		identifiers.addAll(getLegacyOtherDemographicsUpdatePatientIdentifiersFromPayload(context));
 		return identifiers;
 	}
 	
-	private PatientIdentifier getDemographicsUpdateMedicalRecordNumberIdentifierFromPayload() {
+	private PatientIdentifier getDemographicsUpdateMedicalRecordNumberIdentifierFromPayload(
+	        final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		PatientIdentifier medicalRecordNumber = null;
 		Object medicalRecordNumberObject = JsonFormatUtils.readAsObject(payload,
-		    "$['demographicsupdate']['demographicsupdate.medical_record_number']");
+		    PayloadPaths._DemographicsUpdate.MEDICAL_RECORD_NUMBER);
 		if (medicalRecordNumberObject instanceof JSONObject) {
-			medicalRecordNumber = createPatientIdentifier((JSONObject) medicalRecordNumberObject);
+			medicalRecordNumber = createPatientIdentifier(context, (JSONObject) medicalRecordNumberObject);
 		} else if (medicalRecordNumberObject instanceof String) {
 			
 			//process as legacy demographics update medical record number
 			String medicalRecordNumberValueString = (String) medicalRecordNumberObject;
 			if (StringUtils.isNotEmpty(medicalRecordNumberValueString)) {
 				String identifierTypeName = "AMRS Universal ID";
-				PatientIdentifier preferredPatientIdentifier = createPatientIdentifier(identifierTypeName,
+				PatientIdentifier preferredPatientIdentifier = createPatientIdentifier(context, identifierTypeName,
 				    medicalRecordNumberValueString);
 				if (preferredPatientIdentifier != null) {
 					preferredPatientIdentifier.setPreferred(true);
@@ -347,30 +367,32 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		return medicalRecordNumber;
 	}
 	
-	private List<PatientIdentifier> getOtherDemographicsUpdatePatientIdentifiersFromPayload() {
+	private List<PatientIdentifier> getOtherDemographicsUpdatePatientIdentifiersFromPayload(
+	        final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		List<PatientIdentifier> otherIdentifiers = new ArrayList<PatientIdentifier>();
 		try {
 			Object otheridentifierObject = JsonFormatUtils.readAsObject(payload,
-			    "$['demographicsupdate']['demographicsupdate.otheridentifier']");
+			    PayloadPaths._DemographicsUpdate.OTHER_IDENTIFIER);
 			if (JsonFormatUtils.isJSONArrayObject(otheridentifierObject)) {
 				for (Object otherIdentifier : (JSONArray) otheridentifierObject) {
-					PatientIdentifier identifier = createPatientIdentifier((JSONObject) otherIdentifier);
+					PatientIdentifier identifier = createPatientIdentifier(context, (JSONObject) otherIdentifier);
 					if (identifier != null) {
 						otherIdentifiers.add(identifier);
 					}
 				}
 			} else {
-				PatientIdentifier identifier = createPatientIdentifier((JSONObject) otheridentifierObject);
+				PatientIdentifier identifier = createPatientIdentifier(context, (JSONObject) otheridentifierObject);
 				if (identifier != null) {
 					otherIdentifiers.add(identifier);
 				}
 			}
 			
-			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, "$['demographicsupdate']");
+			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, PayloadPaths.DEMOGRAPHICS_UPDATE);
 			Set keys = patientObject.keySet();
 			for (Object key : keys) {
 				if (((String) key).startsWith("demographicsupdate.otheridentifier^")) {
-					PatientIdentifier identifier = createPatientIdentifier((JSONObject) patientObject.get(key));
+					PatientIdentifier identifier = createPatientIdentifier(context, (JSONObject) patientObject.get(key));
 					if (identifier != null) {
 						otherIdentifiers.add(identifier);
 					}
@@ -383,19 +405,21 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		return otherIdentifiers;
 	}
 	
-	private List<PatientIdentifier> getLegacyOtherDemographicsUpdatePatientIdentifiersFromPayload() {
+	private List<PatientIdentifier> getLegacyOtherDemographicsUpdatePatientIdentifiersFromPayload(
+	        final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		List<PatientIdentifier> legacyIdentifiers = new ArrayList<PatientIdentifier>();
 		Object identifierTypeNameObject = JsonFormatUtils.readAsObject(payload,
-		    "$['demographicsupdate']['demographicsupdate.other_identifier_type']");
+		    PayloadPaths._DemographicsUpdate.OTHER_IDENTIFIER_TYPE);
 		Object identifierValueObject = JsonFormatUtils.readAsObject(payload,
-		    "$['demographicsupdate']['demographicsupdate.other_identifier_value']");
+		    PayloadPaths._DemographicsUpdate.OTHER_IDENTIFIER_VALUE);
 		
 		if (identifierTypeNameObject instanceof JSONArray) {
 			JSONArray identifierTypeName = (JSONArray) identifierTypeNameObject;
 			JSONArray identifierValue = (JSONArray) identifierValueObject;
 			for (int i = 0; i < identifierTypeName.size(); i++) {
-				PatientIdentifier identifier = createPatientIdentifier(identifierTypeName.get(i).toString(), identifierValue
-				        .get(i).toString());
+				PatientIdentifier identifier = createPatientIdentifier(context, identifierTypeName.get(i).toString(),
+				    identifierValue.get(i).toString());
 				if (identifier != null) {
 					legacyIdentifiers.add(identifier);
 				}
@@ -403,7 +427,7 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		} else if (identifierTypeNameObject instanceof String) {
 			String identifierTypeName = (String) identifierTypeNameObject;
 			String identifierValue = (String) identifierValueObject;
-			PatientIdentifier identifier = createPatientIdentifier(identifierTypeName, identifierValue);
+			PatientIdentifier identifier = createPatientIdentifier(context, identifierTypeName, identifierValue);
 			if (identifier != null) {
 				legacyIdentifiers.add(identifier);
 			}
@@ -412,7 +436,7 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		return legacyIdentifiers;
 	}
 	
-	private PatientIdentifier createPatientIdentifier(JSONObject identifierObject) {
+	private PatientIdentifier createPatientIdentifier(final QueueInfoHandlerContext context, JSONObject identifierObject) {
 		if (identifierObject == null) {
 			return null;
 		}
@@ -421,22 +445,23 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		String identifierUuid = (String) getElementFromJsonObject(identifierObject, "identifier_type_uuid");
 		String identifierValue = (String) getElementFromJsonObject(identifierObject, "identifier_value");
 		
-		return createPatientIdentifier(identifierUuid, identifierTypeName, identifierValue);
+		return createPatientIdentifier(context, identifierUuid, identifierTypeName, identifierValue);
 	}
 	
-	private PatientIdentifier createPatientIdentifier(String identifierTypeName, String identifierValue) {
-		return createPatientIdentifier(null, identifierTypeName, identifierValue);
+	private PatientIdentifier createPatientIdentifier(final QueueInfoHandlerContext context, String identifierTypeName,
+	        String identifierValue) {
+		return createPatientIdentifier(context, null, identifierTypeName, identifierValue);
 	}
 	
-	private PatientIdentifier createPatientIdentifier(String identifierTypeUuid, String identifierTypeName,
-	        String identifierValue) {
+	private PatientIdentifier createPatientIdentifier(final QueueInfoHandlerContext context, String identifierTypeUuid,
+	        String identifierTypeName, String identifierValue) {
 		if (StringUtils.isBlank(identifierTypeUuid) && StringUtils.isBlank(identifierTypeName)) {
-			queueProcessorException.addException(new Exception(
+			context.getException().addException(new Exception(
 			        "Cannot create identifier. Identifier type name or uuid must be supplied"));
 		}
 		
 		if (StringUtils.isBlank(identifierValue)) {
-			queueProcessorException.addException(new Exception(
+			context.getException().addException(new Exception(
 			        "Cannot create identifier. Supplied identifier value is blank for identifier type name:'"
 			                + identifierTypeName + "', uuid:'" + identifierTypeUuid + "'"));
 		}
@@ -447,7 +472,7 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 			identifierType = Context.getPatientService().getPatientIdentifierTypeByName(identifierTypeName);
 		}
 		if (identifierType == null) {
-			queueProcessorException.addException(new Exception("Unable to find identifier type with name:'"
+			context.getException().addException(new Exception("Unable to find identifier type with name:'"
 			        + identifierTypeName + "', uuid:'" + identifierTypeUuid + "'"));
 		} else {
 			PatientIdentifier patientIdentifier = new PatientIdentifier();
@@ -458,18 +483,20 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		return null;
 	}
 	
-	private void setIdentifierTypeLocation(final Set<PatientIdentifier> patientIdentifiers) {
-		String locationIdString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.location_id']");
+	private void setIdentifierTypeLocation(final QueueInfoHandlerContext context,
+	        final Set<PatientIdentifier> patientIdentifiers) {
+		JsonPayload payload = context.getParsedPayload();
+		String locationIdString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.LOCATION_ID);
 		Location location = null;
 		int locationId;
 		
 		if (locationIdString != null) {
 			locationId = Integer.parseInt(locationIdString);
-			location = Context.getLocationService().getLocation(locationId);
+			location = ReferenceDataCache.getLocation(locationId);
 		}
 		
 		if (location == null) {
-			queueProcessorException.addException(new Exception("Unable to find encounter location using the id: "
+			context.getException().addException(new Exception("Unable to find encounter location using the id: "
 			        + locationIdString));
 		} else {
 			Iterator<PatientIdentifier> iterator = patientIdentifiers.iterator();
@@ -480,43 +507,49 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		}
 	}
 	
-	private void setUnsavedPatientBirthDateFromPayload() {
-		Date birthDate = JsonFormatUtils.readAsDate(payload, "$['demographicsupdate']['demographicsupdate.birth_date']");
+	private void setUnsavedPatientBirthDateFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		Date birthDate = JsonFormatUtils.readAsDate(payload, PayloadPaths._DemographicsUpdate.BIRTH_DATE);
 		if (birthDate != null) {
 			unsavedPatient.setBirthdate(birthDate);
 			
 		}
 	}
 	
-	private void setUnsavedPatientBirthDateEstimatedFromPayload() {
+	private void setUnsavedPatientBirthDateEstimatedFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
 		boolean birthdateEstimated = JsonFormatUtils.readAsBoolean(payload,
-		    "$['demographicsupdate']['demographicsupdate.birthdate_estimated']");
+		    PayloadPaths._DemographicsUpdate.BIRTHDATE_ESTIMATED);
 		unsavedPatient.setBirthdateEstimated(birthdateEstimated);
 	}
 	
-	private void setUnsavedPatientGenderFromPayload() {
-		String gender = JsonFormatUtils.readAsString(payload, "$['demographicsupdate']['demographicsupdate.sex']");
+	private void setUnsavedPatientGenderFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		String gender = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.SEX);
 		if (StringUtils.isNotBlank(gender)) {
 			unsavedPatient.setGender(gender);
 		}
 	}
 	
-	private void setUnsavedPatientNameFromPayload() {
+	private void setUnsavedPatientNameFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
 		
 		PersonName personName = new PersonName();
-		String givenName = JsonFormatUtils.readAsString(payload, "$['demographicsupdate']['demographicsupdate.given_name']");
+		String givenName = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.GIVEN_NAME);
 		if (StringUtils.isNotBlank(givenName)) {
 			personName.setGivenName(givenName);
 		}
 		
-		String familyName = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.family_name']");
+		String familyName = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.FAMILY_NAME);
 		if (StringUtils.isNotBlank(familyName)) {
 			personName.setFamilyName(familyName);
 		}
 		
-		String middleName = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.middle_name']");
+		String middleName = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.MIDDLE_NAME);
 		if (StringUtils.isNotBlank(middleName)) {
 			personName.setMiddleName(middleName);
 		}
@@ -526,12 +559,14 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		}
 	}
 	
-	private void setUnsavedPatientAddressesFromPayload() {
+	private void setUnsavedPatientAddressesFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
 		Set<PersonAddress> addresses = new TreeSet<PersonAddress>();
 		
 		try {
 			Object patientAddressObject = JsonFormatUtils.readAsObject(payload,
-			    "$['demographicsupdate']['demographicsupdate.personaddress']");
+			    PayloadPaths._DemographicsUpdate.PERSON_ADDRESS);
 			if (JsonFormatUtils.isJSONArrayObject(patientAddressObject)) {
 				for (Object personAddressJSONObject : (JSONArray) patientAddressObject) {
 					PersonAddress patientAddress = getPersonAddressFromJsonObject((JSONObject) personAddressJSONObject);
@@ -546,7 +581,7 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 				}
 			}
 			
-			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, "$['demographicsupdate']");
+			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, PayloadPaths.DEMOGRAPHICS_UPDATE);
 			Set keys = patientObject.keySet();
 			for (Object key : keys) {
 				if (((String) key).startsWith("demographicsupdate.personaddress^")) {
@@ -557,7 +592,7 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 				}
 			}
 			
-			PersonAddress legacyPersonAddress = getLegacyPatientAddressFromPayload();
+			PersonAddress legacyPersonAddress = getLegacyPatientAddressFromPayload(context);
 			if (legacyPersonAddress != null) {
 				addresses.add(legacyPersonAddress);
 			}
@@ -572,61 +607,60 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		}
 	}
 	
-	private PersonAddress getLegacyPatientAddressFromPayload() {
+	private PersonAddress getLegacyPatientAddressFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		PersonAddress personAddress = null;
 		
-		String county = JsonFormatUtils.readAsString(payload, "$['demographicsupdate']['demographicsupdate.county']");
+		String county = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.COUNTY);
 		if (StringUtils.isNotEmpty(county)) {
 			if (personAddress == null)
 				personAddress = new PersonAddress();
 			personAddress.setCountyDistrict(county);
 		}
 		
-		String subCounty = JsonFormatUtils.readAsString(payload, "$['demographicsupdate']['demographicsupdate.sub_county']");
+		String subCounty = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.SUB_COUNTY);
 		if (StringUtils.isNotEmpty(subCounty)) {
 			if (personAddress == null)
 				personAddress = new PersonAddress();
 			personAddress.setStateProvince(subCounty);
 		}
 		
-		String ward = JsonFormatUtils.readAsString(payload, "$['demographicsupdate']['demographicsupdate.ward']");
+		String ward = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.WARD);
 		if (StringUtils.isNotEmpty(ward)) {
 			if (personAddress == null)
 				personAddress = new PersonAddress();
 			personAddress.setAddress4(ward);
 		}
 		
-		String landMark = JsonFormatUtils.readAsString(payload, "$['demographicsupdate']['demographicsupdate.landmark']");
+		String landMark = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.LANDMARK);
 		if (StringUtils.isNotEmpty(landMark)) {
 			if (personAddress == null)
 				personAddress = new PersonAddress();
 			personAddress.setAddress2(landMark);
 		}
 		
-		String postalAddress = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.postal_address']");
+		String postalAddress = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.POSTAL_ADDRESS);
 		if (StringUtils.isNotEmpty(postalAddress)) {
 			if (personAddress == null)
 				personAddress = new PersonAddress();
 			personAddress.setAddress1(postalAddress);
 		}
 		
-		String location = JsonFormatUtils.readAsString(payload, "$['demographicsupdate']['demographicsupdate.location']");
+		String location = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.LOCATION);
 		if (StringUtils.isNotEmpty(location)) {
 			if (personAddress == null)
 				personAddress = new PersonAddress();
 			personAddress.setAddress6(location);
 		}
 		
-		String subLocation = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.sub_location']");
+		String subLocation = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.SUB_LOCATION);
 		if (StringUtils.isNotEmpty(subLocation)) {
 			if (personAddress == null)
 				personAddress = new PersonAddress();
 			personAddress.setAddress5(subLocation);
 		}
 		
-		String village = JsonFormatUtils.readAsString(payload, "$['demographicsupdate']['demographicsupdate.village']");
+		String village = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.VILLAGE);
 		if (StringUtils.isNotEmpty(village)) {
 			if (personAddress == null)
 				personAddress = new PersonAddress();
@@ -635,11 +669,13 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		return personAddress;
 	}
 	
-	private void setUnsavedPatientPersonAttributesFromPayload() {
+	private void setUnsavedPatientPersonAttributesFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
 		Set<PersonAttribute> attributes = new TreeSet<PersonAttribute>();
 		try {
 			Object patientAttributeObject = JsonFormatUtils.readAsObject(payload,
-			    "$['demographicsupdate']['demographicsupdate.personattribute']");
+			    PayloadPaths._DemographicsUpdate.PERSON_ATTRIBUTE);
 			if (JsonFormatUtils.isJSONArrayObject(patientAttributeObject)) {
 				for (Object personAdttributeJSONObject : (JSONArray) patientAttributeObject) {
 					try {
@@ -649,7 +685,7 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 						}
 					}
 					catch (Exception e) {
-						queueProcessorException.addException(e);
+						context.getException().addException(e);
 					}
 				}
 			} else {
@@ -660,11 +696,11 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 					}
 				}
 				catch (Exception e) {
-					queueProcessorException.addException(e);
+					context.getException().addException(e);
 				}
 			}
 			
-			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, "$['demographicsupdate']");
+			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, PayloadPaths.DEMOGRAPHICS_UPDATE);
 			Set keys = patientObject.keySet();
 			for (Object key : keys) {
 				if (((String) key).startsWith("demographicsupdate.personattribute^")) {
@@ -676,12 +712,12 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 						}
 					}
 					catch (Exception e) {
-						queueProcessorException.addException(e);
+						context.getException().addException(e);
 					}
 				}
 			}
 			
-			attributes.addAll(getLegacyPersonAttributes());
+			attributes.addAll(getLegacyPersonAttributes(context));
 		}
 		catch (InvalidPathException ex) {
 			log.error("Error while parsing person attribute", ex);
@@ -692,62 +728,60 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		}
 	}
 	
-	private Set<PersonAttribute> getLegacyPersonAttributes() {
+	private Set<PersonAttribute> getLegacyPersonAttributes(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		Set<PersonAttribute> attributes = new TreeSet<PersonAttribute>();
-		String mothersName = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.mothers_name']");
+		String mothersName = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.MOTHERS_NAME);
 		if (StringUtils.isNotEmpty(mothersName))
-			attributes.add(createPersonAttribute("Mother's Name", null, mothersName));
+			attributes.add(createPersonAttribute(context, "Mother's Name", null, mothersName));
 		
-		String phoneNumber = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.phone_number']");
+		String phoneNumber = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.PHONE_NUMBER);
 		if (StringUtils.isNotEmpty(phoneNumber))
-			attributes.add(createPersonAttribute("Telephone contact", null, phoneNumber));
+			attributes.add(createPersonAttribute(context, "Telephone contact", null, phoneNumber));
 		
 		String nearestHealthFacility = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.nearest_health_center']");
+		    PayloadPaths._DemographicsUpdate.NEAREST_HEALTH_CENTER);
 		if (StringUtils.isNotEmpty(nearestHealthFacility))
-			attributes.add(createPersonAttribute(null, JsonRegistrationQueueInfoHandler.NEAREST_HEALTH_CENTER,
+			attributes.add(createPersonAttribute(context, null, JsonRegistrationQueueInfoHandler.NEAREST_HEALTH_CENTER,
 			    nearestHealthFacility));
 		
 		String alternativePhoneNumber = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.alternate_phone_contact']");
+		    PayloadPaths._DemographicsUpdate.ALTERNATE_PHONE_CONTACT);
 		if (StringUtils.isNotEmpty(alternativePhoneNumber))
-			attributes.add(createPersonAttribute(null, JsonRegistrationQueueInfoHandler.ALTERNATE_PHONE_CONTACT,
+			attributes.add(createPersonAttribute(context, null, JsonRegistrationQueueInfoHandler.ALTERNATE_PHONE_CONTACT,
 			    alternativePhoneNumber));
 		
-		String emailAddress = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.email_address']");
+		String emailAddress = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.EMAIL_ADDRESS);
 		if (StringUtils.isNotEmpty(emailAddress))
-			attributes.add(createPersonAttribute(null, JsonRegistrationQueueInfoHandler.EMAIL_ADDRESS, emailAddress));
+			attributes.add(createPersonAttribute(context, null, JsonRegistrationQueueInfoHandler.EMAIL_ADDRESS,
+			    emailAddress));
 		
-		String nxtOfKinName = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.next_of_kin_name']");
+		String nxtOfKinName = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.NEXT_OF_KIN_NAME);
 		if (StringUtils.isNotEmpty(nxtOfKinName))
-			attributes.add(createPersonAttribute(null, JsonRegistrationQueueInfoHandler.NEXT_OF_KIN_NAME, nxtOfKinName));
+			attributes.add(createPersonAttribute(context, null, JsonRegistrationQueueInfoHandler.NEXT_OF_KIN_NAME,
+			    nxtOfKinName));
 		
-		String nxtOfKinContact = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.next_of_kin_contact']");
+		String nxtOfKinContact = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.NEXT_OF_KIN_CONTACT);
 		if (StringUtils.isNotEmpty(nxtOfKinContact))
-			attributes
-			        .add(createPersonAttribute(null, JsonRegistrationQueueInfoHandler.NEXT_OF_KIN_CONTACT, nxtOfKinContact));
+			attributes.add(createPersonAttribute(context, null, JsonRegistrationQueueInfoHandler.NEXT_OF_KIN_CONTACT,
+			    nxtOfKinContact));
 		
-		String nxtOfKinAddress = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.next_of_kin_address']");
+		String nxtOfKinAddress = JsonFormatUtils.readAsString(payload, PayloadPaths._DemographicsUpdate.NEXT_OF_KIN_ADDRESS);
 		if (StringUtils.isNotEmpty(nxtOfKinAddress))
-			attributes
-			        .add(createPersonAttribute(null, JsonRegistrationQueueInfoHandler.NEXT_OF_KIN_ADDRESS, nxtOfKinAddress));
+			attributes.add(createPersonAttribute(context, null, JsonRegistrationQueueInfoHandler.NEXT_OF_KIN_ADDRESS,
+			    nxtOfKinAddress));
 		
 		String nxtOfKinRelationship = JsonFormatUtils.readAsString(payload,
-		    "$['demographicsupdate']['demographicsupdate.next_of_kin_relationship']");
+		    PayloadPaths._DemographicsUpdate.NEXT_OF_KIN_RELATIONSHIP);
 		if (StringUtils.isNotEmpty(nxtOfKinRelationship))
-			attributes.add(createPersonAttribute(null, JsonRegistrationQueueInfoHandler.NEXT_OF_KIN_RELATIONSHIP,
+			attributes.add(createPersonAttribute(context, null, JsonRegistrationQueueInfoHandler.NEXT_OF_KIN_RELATIONSHIP,
 			    nxtOfKinRelationship));
 		
 		return attributes;
 	}
 	
-	private PersonAttribute createPersonAttribute(String attributeTypeName, String attributeTypeUuid, String attributeValue) {
+	private PersonAttribute createPersonAttribute(final QueueInfoHandlerContext context, String attributeTypeName,
+	        String attributeTypeUuid, String attributeValue) {
 		PersonService personService = Context.getPersonService();
 		PersonAttributeType attributeType = null;
 		
@@ -760,7 +794,7 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		}
 		
 		if (attributeType == null) {
-			queueProcessorException.addException(new Exception("Unable to find Person Attribute Type by name: '"
+			context.getException().addException(new Exception("Unable to find Person Attribute Type by name: '"
 			        + attributeTypeName + "' , uuid: '" + attributeTypeUuid + "'"));
 		}
 		
@@ -770,31 +804,33 @@ public class DemographicsUpdateQueueInfoHandler implements QueueInfoHandler {
 		return personAttribute;
 	}
 	
-	private void setUnsavedPatientChangedByFromPayload() {
-		String userString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.user_system_id']");
-		String providerString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.provider_id']");
+	private void setUnsavedPatientChangedByFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		String userString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.USER_SYSTEM_ID);
+		String providerString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.PROVIDER_ID);
 		
-		User user = Context.getUserService().getUserByUsername(userString);
+		User user = ReferenceDataCache.getUserByUsername(userString);
 		if (user == null) {
-			providerString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.provider_id']");
-			user = Context.getUserService().getUserByUsername(providerString);
+			providerString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.PROVIDER_ID);
+			user = ReferenceDataCache.getUserByUsername(providerString);
 		}
 		if (user == null) {
-			queueProcessorException.addException(new Exception("Unable to find user using the User Id: " + userString
+			context.getException().addException(new Exception("Unable to find user using the User Id: " + userString
 			        + " or Provider Id: " + providerString));
 		} else {
 			unsavedPatient.setChangedBy(user);
 		}
 	}
 	
-	private boolean isBirthDateChangeValidated() {
-		return JsonFormatUtils.readAsBoolean(payload,
-		    "$['demographicsupdate']['demographicsupdate.birthdate_change_validated']");
+	private boolean isBirthDateChangeValidated(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		return JsonFormatUtils.readAsBoolean(payload, PayloadPaths._DemographicsUpdate.BIRTHDATE_CHANGE_VALIDATED);
 	}
 	
-	private boolean isGenderChangeValidated() {
-		return JsonFormatUtils.readAsBoolean(payload,
-		    "$['demographicsupdate']['demographicsupdate.gender_change_validated']");
+	private boolean isGenderChangeValidated(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		return JsonFormatUtils.readAsBoolean(payload, PayloadPaths._DemographicsUpdate.GENDER_CHANGE_VALIDATED);
 	}
 	
 	private Integer handleEditObsValues(String obsValue) {
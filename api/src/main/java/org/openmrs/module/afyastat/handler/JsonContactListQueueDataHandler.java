@@ -23,8 +23,11 @@ import org.openmrs.module.afyastat.api.service.RegistrationInfoService;
 import org.openmrs.module.afyastat.exception.StreamProcessorException;
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 import org.openmrs.module.afyastat.model.RegistrationInfo;
-import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.ConcurrentQueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
 import org.openmrs.module.afyastat.utils.JsonFormatUtils;
+import org.openmrs.module.afyastat.utils.JsonPayload;
+import org.openmrs.module.afyastat.utils.PayloadPaths;
 import org.openmrs.module.hivtestingservices.api.HTSService;
 import org.openmrs.module.hivtestingservices.api.PatientContact;
 
@@ -34,90 +37,94 @@ import java.util.Date;
  * Processes contact list from CHT
  */
 @Handler(supports = AfyaStatQueueData.class, order = 11)
-public class JsonContactListQueueDataHandler implements QueueInfoHandler {
+public class JsonContactListQueueDataHandler implements ConcurrentQueueInfoHandler {
 	
 	private static final String DISCRIMINATOR_VALUE = "json-patientcontact";
 	
 	private final Log log = LogFactory.getLog(JsonContactListQueueDataHandler.class);
 	
-	private PatientContact unsavedPatientContact;
-	
-	private String payload;
-	
-	private StreamProcessorException queueProcessorException;
+	private static final String UNSAVED_PATIENT_CONTACT = "unsavedPatientContact";
 	
 	@Override
-	public void process(final AfyaStatQueueData queueData) throws StreamProcessorException {
-		log.info("Processing patient contact form data: " + queueData.getUuid());
-		queueProcessorException = new StreamProcessorException();
+	public QueueInfoHandlerContext process(final QueueInfoHandlerContext context) throws StreamProcessorException {
+		log.info("Processing patient contact form data: " + context.getQueueData().getUuid());
 		try {
-			if (validate(queueData)) {
-				registerUnsavedPatientContact();
-			}
+			validate(context);
+			registerUnsavedPatientContact(context);
 		}
 		catch (Exception e) {
 			if (!e.getClass().equals(StreamProcessorException.class)) {
-				queueProcessorException.addException(new Exception("Exception while process payload ", e));
+				context.getException().addException(new Exception("Exception while process payload ", e));
 			}
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
+		return context;
 	}
 	
 	@Override
-	public boolean validate(AfyaStatQueueData queueData) {
-		log.info("Processing contact list form data: " + queueData.getUuid());
-		queueProcessorException = new StreamProcessorException();
+	public QueueInfoHandlerContext validate(final QueueInfoHandlerContext context) {
+		log.info("Processing contact list form data: " + context.getQueueData().getUuid());
 		try {
-			payload = queueData.getPayload();
-			unsavedPatientContact = new PatientContact();
-			populateUnsavedPatientContactFromPayload();
-			return true;
+			context.setAttribute(UNSAVED_PATIENT_CONTACT, new PatientContact());
+			populateUnsavedPatientContactFromPayload(context);
+			return context;
 		}
 		catch (Exception e) {
-			queueProcessorException.addException(new Exception("Exception while validating payload ", e));
-			return false;
+			context.getException().addException(new Exception("Exception while validating payload ", e));
+			return context;
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
 	}
 	
+	private PatientContact getUnsavedPatientContact(final QueueInfoHandlerContext context) {
+		return (PatientContact) context.getAttribute(UNSAVED_PATIENT_CONTACT);
+	}
+	
 	@Override
 	public String getDiscriminator() {
 		return DISCRIMINATOR_VALUE;
 	}
 	
-	private void populateUnsavedPatientContactFromPayload() {
-		setPatientContactFromPayload();
+	private void populateUnsavedPatientContactFromPayload(final QueueInfoHandlerContext context) {
+		setPatientContactFromPayload(context);
 	}
 	
-	private void setPatientContactFromPayload() {
-		String givenName = JsonFormatUtils.readAsString(payload, "$['f_name']");
-		String middleName = JsonFormatUtils.readAsString(payload, "$['o_name']");
-		String familyName = JsonFormatUtils.readAsString(payload, "$['s_name']");
-		Integer relType = relationshipTypeConverter(JsonFormatUtils.readAsString(payload, "$['contact_relationship']"));
-		String baselineStatus = JsonFormatUtils.readAsString(payload, "$['baseline_hiv_status']");
-		Date nextTestDate = JsonFormatUtils.readAsDate(payload, "$['booking_date']", JsonFormatUtils.DATE_PATTERN_MEDIC);
-		Date birthDate = JsonFormatUtils.readAsDate(payload, "$['date_of_birth']", JsonFormatUtils.DATE_PATTERN_MEDIC);
-		String sex = gender(JsonFormatUtils.readAsString(payload, "$['sex']"));
-		String phoneNumber = JsonFormatUtils.readAsString(payload, "$['phone']");
-		Integer maritalStatus = maritalStatusConverter(JsonFormatUtils.readAsString(payload, "$['marital_status']"));
+	private void setPatientContactFromPayload(final QueueInfoHandlerContext context) {
+		PatientContact unsavedPatientContact = getUnsavedPatientContact(context);
+		JsonPayload payload = context.getParsedPayload();
+		String givenName = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactList.GIVEN_NAME);
+		String middleName = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactList.MIDDLE_NAME);
+		String familyName = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactList.FAMILY_NAME);
+		Integer relType = relationshipTypeConverter(JsonFormatUtils.readAsString(payload,
+		    PayloadPaths._ContactList.CONTACT_RELATIONSHIP));
+		String baselineStatus = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactList.BASELINE_HIV_STATUS);
+		Date nextTestDate = JsonFormatUtils.readAsDate(payload, PayloadPaths._ContactList.BOOKING_DATE,
+		    JsonFormatUtils.DATE_PATTERN_MEDIC);
+		Date birthDate = JsonFormatUtils.readAsDate(payload, PayloadPaths._ContactList.DATE_OF_BIRTH,
+		    JsonFormatUtils.DATE_PATTERN_MEDIC);
+		String sex = gender(JsonFormatUtils.readAsString(payload, PayloadPaths._ContactList.SEX));
+		String phoneNumber = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactList.PHONE);
+		Integer maritalStatus = maritalStatusConverter(JsonFormatUtils.readAsString(payload,
+		    PayloadPaths._ContactList.MARITAL_STATUS));
 		Integer livingWithPatient = livingWithPartnerConverter(JsonFormatUtils.readAsString(payload,
-		    "$['living_with_client']"));
-		Integer pnsApproach = pnsApproachConverter(JsonFormatUtils.readAsString(payload, "$['pns_approach']"));
-		String physicalAddress = JsonFormatUtils.readAsString(payload, "$['physical_address']");
+		    PayloadPaths._ContactList.LIVING_WITH_CLIENT));
+		Integer pnsApproach = pnsApproachConverter(JsonFormatUtils.readAsString(payload,
+		    PayloadPaths._ContactList.PNS_APPROACH));
+		String physicalAddress = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactList.PHYSICAL_ADDRESS);
 		
 		Integer patientRelatedTo = null;
-		String indexKemrUuid = JsonFormatUtils.readAsString(payload, "$['parent']['kemr_uuid']");
+		String indexKemrUuid = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactList.PARENT_KEMR_UUID);
 		patientRelatedTo = org.apache.commons.lang3.StringUtils.isNotBlank(indexKemrUuid) ? getPatientRelatedToContact(indexKemrUuid)
-		        : getPatientRelatedToContact(JsonFormatUtils.readAsString(payload, "$['parent']['_id']"));
-		String uuid = JsonFormatUtils.readAsString(payload, "$['_id']");
+		        : getPatientRelatedToContact(JsonFormatUtils.readAsString(payload, PayloadPaths._ContactList.PARENT_ID));
+		String uuid = JsonFormatUtils.readAsString(payload, PayloadPaths.DOCUMENT_ID);
 		Boolean voided = false;
 		
 		if (org.apache.commons.lang3.StringUtils.isNotBlank(baselineStatus)) {
@@ -152,10 +159,11 @@ public class JsonContactListQueueDataHandler implements QueueInfoHandler {
 		unsavedPatientContact.setVoided(voided);
 	}
 	
-	private void registerUnsavedPatientContact() {
+	private void registerUnsavedPatientContact(final QueueInfoHandlerContext context) {
+		PatientContact unsavedPatientContact = getUnsavedPatientContact(context);
 		HTSService htsService = Context.getService(HTSService.class);
 		RegistrationInfoService registrationDataService = Context.getService(RegistrationInfoService.class);
-		String temporaryUuid = getPatientContactUuidFromPayload();
+		String temporaryUuid = getPatientContactUuidFromPayload(context);
 		RegistrationInfo registrationData = registrationDataService.getRegistrationDataByTemporaryUuid(temporaryUuid);
 		if (registrationData == null) {
 			registrationData = new RegistrationInfo();
@@ -174,8 +182,9 @@ public class JsonContactListQueueDataHandler implements QueueInfoHandler {
 		}
 	}
 	
-	private String getPatientContactUuidFromPayload() {
-		return JsonFormatUtils.readAsString(payload, "$['_id']");
+	private String getPatientContactUuidFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		return JsonFormatUtils.readAsString(payload, PayloadPaths.DOCUMENT_ID);
 	}
 	
 	private Integer getPatientRelatedToContact(String uuid) {
@@ -20,103 +20,99 @@ import org.openmrs.annotation.Handler;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.afyastat.exception.StreamProcessorException;
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
-import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.ConcurrentQueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
 import org.openmrs.module.afyastat.utils.JsonFormatUtils;
+import org.openmrs.module.afyastat.utils.JsonPayload;
+import org.openmrs.module.afyastat.utils.PayloadPaths;
 import org.openmrs.module.hivtestingservices.api.ContactTrace;
 import org.openmrs.module.hivtestingservices.api.HTSService;
 import org.openmrs.module.hivtestingservices.api.PatientContact;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /**
  * TODO: Write brief description about the class here.
  */
 @Handler(supports = AfyaStatQueueData.class, order = 12)
-public class JsonContactTraceQueueDataHandler implements QueueInfoHandler {
+public class JsonContactTraceQueueDataHandler implements ConcurrentQueueInfoHandler {
 	
 	private static final String DISCRIMINATOR_VALUE = "json-contacttrace";
 	
-	private static final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-	
 	private final Log log = LogFactory.getLog(JsonContactTraceQueueDataHandler.class);
 	
-	private ContactTrace unsavedContactTrace;
-	
-	private String payload;
-	
-	private StreamProcessorException queueProcessorException;
+	private static final String UNSAVED_CONTACT_TRACE = "unsavedContactTrace";
 	
 	@Override
-	public void process(final AfyaStatQueueData queueData) throws StreamProcessorException {
-		log.info("Processing contact trace form data: " + queueData.getUuid());
-		queueProcessorException = new StreamProcessorException();
+	public QueueInfoHandlerContext process(final QueueInfoHandlerContext context) throws StreamProcessorException {
+		log.info("Processing contact trace form data: " + context.getQueueData().getUuid());
 		try {
-			if (validate(queueData)) {
-				registerUnsavedContactTrace();
-			}
+			validate(context);
+			registerUnsavedContactTrace(context);
 		}
 		catch (Exception e) {
 			if (!e.getClass().equals(StreamProcessorException.class)) {
-				queueProcessorException.addException(new Exception("Exception while process payload ", e));
+				context.getException().addException(new Exception("Exception while process payload ", e));
 			}
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
+		return context;
 	}
 	
 	@Override
-	public boolean validate(AfyaStatQueueData queueData) {
-		log.info("Processing contact trace form data: " + queueData.getUuid());
-		queueProcessorException = new StreamProcessorException();
+	public QueueInfoHandlerContext validate(final QueueInfoHandlerContext context) {
+		log.info("Processing contact trace form data: " + context.getQueueData().getUuid());
 		try {
-			payload = queueData.getPayload();
-			unsavedContactTrace = new ContactTrace();
-			populateUnsavedContactTraceFromPayload();
-			return true;
+			context.setAttribute(UNSAVED_CONTACT_TRACE, new ContactTrace());
+			populateUnsavedContactTraceFromPayload(context);
+			return context;
 		}
 		catch (Exception e) {
-			queueProcessorException.addException(new Exception("Exception while validating payload ", e));
-			return false;
+			context.getException().addException(new Exception("Exception while validating payload ", e));
+			return context;
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
 	}
 	
+	private ContactTrace getUnsavedContactTrace(final QueueInfoHandlerContext context) {
+		return (ContactTrace) context.getAttribute(UNSAVED_CONTACT_TRACE);
+	}
+	
 	@Override
 	public String getDiscriminator() {
 		return DISCRIMINATOR_VALUE;
 	}
 	
-	private void populateUnsavedContactTraceFromPayload() {
-		setContactTraceFromPayload();
+	private void populateUnsavedContactTraceFromPayload(final QueueInfoHandlerContext context) {
+		setContactTraceFromPayload(context);
 	}
 	
-	private void setContactTraceFromPayload() {
+	private void setContactTraceFromPayload(final QueueInfoHandlerContext context) {
+		ContactTrace unsavedContactTrace = getUnsavedContactTrace(context);
+		JsonPayload payload = context.getParsedPayload();
 		HTSService contact = Context.getService(HTSService.class);
-		Date traceDate = JsonFormatUtils.readAsDate(payload, "$['fields']['group_follow_up']['date_last_contact']");
+		Date traceDate = JsonFormatUtils.readAsDate(payload, PayloadPaths._ContactTrace.DATE_LAST_CONTACT);
 		String contactType = contactTypeConverter(JsonFormatUtils.readAsString(payload,
-		    "$['fields']['group_follow_up']['follow_up_type']"));
+		    PayloadPaths._ContactTrace.FOLLOW_UP_TYPE));
 		String status = contactStatusConverter(JsonFormatUtils.readAsString(payload,
-		    "$['fields']['group_follow_up']['status_visit']"));
+		    PayloadPaths._ContactTrace.STATUS_VISIT));
 		String reasonUncontacted = reasonUncontactedConverter(JsonFormatUtils.readAsString(payload,
-		    "$['fields']['group_follow_up']['is_not_available_reason_other']"));
-		String uniquePatientNo = JsonFormatUtils.readAsString(payload,
-		    "$['fields']['group_follow_up']['unique_patient_number']");
-		String facilityLinkedTo = JsonFormatUtils.readAsString(payload,
-		    "$['fields']['group_follow_up']['facility_linked_to']");
+		    PayloadPaths._ContactTrace.IS_NOT_AVAILABLE_REASON_OTHER));
+		String uniquePatientNo = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactTrace.UNIQUE_PATIENT_NUMBER);
+		String facilityLinkedTo = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactTrace.FACILITY_LINKED_TO);
 		String healthWorkerHandedTo = JsonFormatUtils.readAsString(payload,
-		    "$['fields']['group_follow_up']['health_care_worker_handed_to']");
-		String remarks = JsonFormatUtils.readAsString(payload, "$['fields']['group_follow_up']['remarks']");
-		String uuid = JsonFormatUtils.readAsString(payload, "$['_id']");
-		Integer contactId = getContactId(JsonFormatUtils.readAsString(payload, "$['fields']['inputs']['contact']['_id']"));
+		    PayloadPaths._ContactTrace.HEALTH_CARE_WORKER_HANDED_TO);
+		String remarks = JsonFormatUtils.readAsString(payload, PayloadPaths._ContactTrace.REMARKS);
+		String uuid = JsonFormatUtils.readAsString(payload, PayloadPaths.DOCUMENT_ID);
+		Integer contactId = getContactId(JsonFormatUtils.readAsString(payload, PayloadPaths._ContactTrace.CONTACT_ID));
 		Boolean voided = false;
 		
 		unsavedContactTrace.setDate(traceDate);
@@ -132,7 +128,8 @@ public class JsonContactTraceQueueDataHandler implements QueueInfoHandler {
 		unsavedContactTrace.setVoided(voided);
 	}
 	
-	private void registerUnsavedContactTrace() {
+	private void registerUnsavedContactTrace(final QueueInfoHandlerContext context) {
+		ContactTrace unsavedContactTrace = getUnsavedContactTrace(context);
 		HTSService htsService = Context.getService(HTSService.class);
 		try {
 			htsService.saveClientTrace(unsavedContactTrace);
@@ -27,12 +27,14 @@ import org.openmrs.module.afyastat.api.service.RegistrationInfoService;
 import org.openmrs.module.afyastat.exception.StreamProcessorException;
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 import org.openmrs.module.afyastat.model.RegistrationInfo;
-import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.ConcurrentQueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
 import org.openmrs.module.afyastat.utils.JsonFormatUtils;
+import org.openmrs.module.afyastat.utils.JsonPayload;
+import org.openmrs.module.afyastat.utils.PayloadPaths;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
 import org.openmrs.module.afyastat.utils.PatientLookUpUtils;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 import static org.openmrs.module.afyastat.utils.JsonFormatUtils.getElementFromJsonObject;
@@ -43,112 +45,107 @@ import static org.openmrs.module.afyastat.utils.PersonCreationsUtils.getPersonAt
  * TODO: Write brief description about the class here.
  */
 @Handler(supports = AfyaStatQueueData.class, order = 1)
-public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler {
+public class JsonGenericRegistrationQueueInfoHandler implements ConcurrentQueueInfoHandler {
 	
 	private static final String TAG = "JsonGenericRegistrationQueueDataHandler";
 	
 	private static final String DISCRIMINATOR_VALUE = "json-generic-registration";
 	
-	private static final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-	
 	private final Log log = LogFactory.getLog(JsonGenericRegistrationQueueInfoHandler.class);
 	
-	private Patient unsavedPatient;
-	
-	private String payload;
-	
-	Set<PersonAttribute> personAttributes;
-	
-	private StreamProcessorException queueProcessorException;
+	private static final String UNSAVED_PATIENT = "unsavedPatient";
 	
 	@Override
-	public void process(final AfyaStatQueueData queueData) throws StreamProcessorException {
+	public QueueInfoHandlerContext process(final QueueInfoHandlerContext context) throws StreamProcessorException {
+		AfyaStatQueueData queueData = context.getQueueData();
 		log.info("Processing registration form data: " + queueData.getUuid());
-		queueProcessorException = new StreamProcessorException();
 		try {
-			if (validate(queueData)) {
-				registerUnsavedPatient();
-				
-				Object obsObject = JsonFormatUtils.readAsObject(queueData.getPayload(), "$['observation']");
-				if (obsObject != null) {
-					AfyaStatQueueData encounterQueueData = new AfyaStatQueueData();
-					encounterQueueData.setDiscriminator("json-encounter");
-					encounterQueueData.setDataSource(queueData.getDataSource());
-					encounterQueueData.setPayload(queueData.getPayload());
-					encounterQueueData.setCreator(queueData.getCreator());
-					encounterQueueData.setDateCreated(queueData.getDateCreated());
-					encounterQueueData.setUuid(UUID.randomUUID().toString());
-					encounterQueueData.setFormName(queueData.getFormName());
-					encounterQueueData.setLocation(queueData.getLocation());
-					encounterQueueData.setProvider(queueData.getProvider());
-					encounterQueueData.setPatientUuid(queueData.getPatientUuid());
-					encounterQueueData.setFormDataUuid(queueData.getFormDataUuid());
-					Context.getService(InfoService.class).saveQueueData(encounterQueueData);
-				}
+			validate(context);
+			registerUnsavedPatient(context);
+			
+			Object obsObject = JsonFormatUtils.readAsObject(context.getParsedPayload(), PayloadPaths.OBSERVATION);
+			if (obsObject != null) {
+				AfyaStatQueueData encounterQueueData = new AfyaStatQueueData();
+				encounterQueueData.setDiscriminator("json-encounter");
+				encounterQueueData.setDataSource(queueData.getDataSource());
+				encounterQueueData.setPayload(queueData.getPayload());
+				encounterQueueData.setCreator(queueData.getCreator());
+				encounterQueueData.setDateCreated(queueData.getDateCreated());
+				encounterQueueData.setUuid(UUID.randomUUID().toString());
+				encounterQueueData.setFormName(queueData.getFormName());
+				encounterQueueData.setLocation(queueData.getLocation());
+				encounterQueueData.setProvider(queueData.getProvider());
+				encounterQueueData.setPatientUuid(queueData.getPatientUuid());
+				encounterQueueData.setFormDataUuid(queueData.getFormDataUuid());
+				Context.getService(InfoService.class).saveQueueData(encounterQueueData);
 			}
 		}
 		catch (Exception e) {
-			/*Custom exception thrown by the validate function should not be added again into @queueProcessorException.
-			 It should add the runtime dao Exception while saving the data into @queueProcessorException collection */
+			/*Custom exception thrown by the validate function should not be added again into the context exception.
+			 It should add the runtime dao Exception while saving the data into the context exception collection */
 			if (!e.getClass().equals(StreamProcessorException.class)) {
-				queueProcessorException.addException(e);
+				context.getException().addException(e);
 			}
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
+		return context;
 	}
 	
 	@Override
-	public boolean validate(AfyaStatQueueData queueData) {
-		log.info("Processing registration form data: " + queueData.getUuid());
-		queueProcessorException = new StreamProcessorException();
+	public QueueInfoHandlerContext validate(final QueueInfoHandlerContext context) {
+		log.info("Processing registration form data: " + context.getQueueData().getUuid());
 		try {
-			payload = queueData.getPayload();
-			unsavedPatient = new Patient();
-			populateUnsavedPatientFromPayload();
-			validateUnsavedPatient();
-			return true;
+			context.setAttribute(UNSAVED_PATIENT, new Patient());
+			populateUnsavedPatientFromPayload(context);
+			validateUnsavedPatient(context);
+			return context;
 		}
 		catch (Exception e) {
-			queueProcessorException.addException(e);
-			return false;
+			context.getException().addException(e);
+			return context;
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
 	}
 	
+	private Patient getUnsavedPatient(final QueueInfoHandlerContext context) {
+		return (Patient) context.getAttribute(UNSAVED_PATIENT);
+	}
+	
 	@Override
 	public String getDiscriminator() {
 		return DISCRIMINATOR_VALUE;
 	}
 	
-	private void validateUnsavedPatient() {
-		if (!JsonFormatUtils.readAsBoolean(payload, "$['skipPatientMatching']")) {
-			Patient savedPatient = findSimilarSavedPatient();
+	private void validateUnsavedPatient(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		if (!JsonFormatUtils.readAsBoolean(payload, PayloadPaths.SKIP_PATIENT_MATCHING)) {
+			Patient savedPatient = findSimilarSavedPatient(context);
 			if (savedPatient != null) {
-				queueProcessorException.addException(new Exception(
+				context.getException().addException(new Exception(
 				        "Found a patient with similar characteristic :  patientId = " + savedPatient.getPatientId()
 				                + " Identifier Id = " + savedPatient.getPatientIdentifier().getIdentifier()));
 			}
 		}
 	}
 	
-	private void populateUnsavedPatientFromPayload() {
-		setPatientIdentifiersFromPayload();
-		setPatientBirthDateFromPayload();
-		setPatientBirthDateEstimatedFromPayload();
-		setPatientGenderFromPayload();
-		setPatientDeadFromPayload();
-		setPatientNameFromPayload();
-		setPatientAddressesFromPayload();
-		setPersonAttributesFromPayload();
-		setUnsavedPatientCreatorFromPayload();
+	private void populateUnsavedPatientFromPayload(final QueueInfoHandlerContext context) {
+		setPatientIdentifiersFromPayload(context);
+		setPatientBirthDateFromPayload(context);
+		setPatientBirthDateEstimatedFromPayload(context);
+		setPatientGenderFromPayload(context);
+		setPatientDeadFromPayload(context);
+		setPatientNameFromPayload(context);
+		setPatientAddressesFromPayload(context);
+		setPersonAttributesFromPayload(context);
+		setUnsavedPatientCreatorFromPayload(context);
 	}
 	
 	/*private MuzimaSetting getIdentifierAutogenerationSetting(){
@@ -172,7 +169,8 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 	    return autogenerationSetting;
 	}*/
 	
-	private void setPatientIdentifiersFromPayload() {
+	private void setPatientIdentifiersFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
 		Set<PatientIdentifier> patientIdentifiers = new TreeSet<PatientIdentifier>();
 		//  MuzimaSetting autogenerationSetting = getIdentifierAutogenerationSetting();
 		boolean shouldAutogenerateIdentifier = false;
@@ -182,13 +180,13 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 		PatientIdentifier preferredIdentifier;
 		
 		//preferredIdentifier = getAutogeneratedIdentifier();
-		PatientIdentifier medicalRecordNumberFromPayload = getMedicalRecordNumberFromPayload();
+		PatientIdentifier medicalRecordNumberFromPayload = getMedicalRecordNumberFromPayload(context);
 		if (medicalRecordNumberFromPayload != null) {
 			patientIdentifiers.add(medicalRecordNumberFromPayload);
 		}
-		preferredIdentifier = getMedicalRecordNumberFromPayload();
+		preferredIdentifier = getMedicalRecordNumberFromPayload(context);
 		if (preferredIdentifier == null) {
-			queueProcessorException.addException(new Exception("Could not retrieve medical record number from payload"));
+			context.getException().addException(new Exception("Could not retrieve medical record number from payload"));
 		}
 		
 		if (preferredIdentifier != null) {
@@ -196,11 +194,11 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 			patientIdentifiers.add(preferredIdentifier);
 		}
 		
-		List<PatientIdentifier> otherIdentifiers = getOtherPatientIdentifiersFromPayload();
+		List<PatientIdentifier> otherIdentifiers = getOtherPatientIdentifiersFromPayload(context);
 		if (!otherIdentifiers.isEmpty()) {
 			patientIdentifiers.addAll(otherIdentifiers);
 		}
-		setIdentifierTypeLocation(patientIdentifiers);
+		setIdentifierTypeLocation(context, patientIdentifiers);
 		unsavedPatient.setIdentifiers(patientIdentifiers);
 	}
 	
@@ -248,35 +246,37 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 	    return null;
 	}*/
 	
-	private PatientIdentifier getMedicalRecordNumberFromPayload() {
+	private PatientIdentifier getMedicalRecordNumberFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		JSONObject medicalRecordNumberObject = (JSONObject) JsonFormatUtils.readAsObject(payload,
-		    "$['patient']['patient.medical_record_number']");
-		return createPatientIdentifier(medicalRecordNumberObject);
+		    PayloadPaths._Patient.MEDICAL_RECORD_NUMBER);
+		return createPatientIdentifier(context, medicalRecordNumberObject);
 	}
 	
-	private List<PatientIdentifier> getOtherPatientIdentifiersFromPayload() {
+	private List<PatientIdentifier> getOtherPatientIdentifiersFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		List<PatientIdentifier> otherIdentifiers = new ArrayList<PatientIdentifier>();
 		try {
-			Object otheridentifierObject = JsonFormatUtils.readAsObject(payload, "$['patient']['patient.otheridentifier']");
+			Object otheridentifierObject = JsonFormatUtils.readAsObject(payload, PayloadPaths._Patient.OTHER_IDENTIFIER);
 			if (JsonFormatUtils.isJSONArrayObject(otheridentifierObject)) {
 				for (Object otherIdentifier : (JSONArray) otheridentifierObject) {
-					PatientIdentifier identifier = createPatientIdentifier((JSONObject) otherIdentifier);
+					PatientIdentifier identifier = createPatientIdentifier(context, (JSONObject) otherIdentifier);
 					if (identifier != null) {
 						otherIdentifiers.add(identifier);
 					}
 				}
 			} else {
-				PatientIdentifier identifier = createPatientIdentifier((JSONObject) otheridentifierObject);
+				PatientIdentifier identifier = createPatientIdentifier(context, (JSONObject) otheridentifierObject);
 				if (identifier != null) {
 					otherIdentifiers.add(identifier);
 				}
 			}
 			
-			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, "$['patient']");
+			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, PayloadPaths.PATIENT);
 			Set keys = patientObject.keySet();
 			for (Object key : keys) {
 				if (((String) key).startsWith("patient.otheridentifier^")) {
-					PatientIdentifier identifier = createPatientIdentifier((JSONObject) patientObject.get(key));
+					PatientIdentifier identifier = createPatientIdentifier(context, (JSONObject) patientObject.get(key));
 					if (identifier != null) {
 						otherIdentifiers.add(identifier);
 					}
@@ -289,7 +289,7 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 		return otherIdentifiers;
 	}
 	
-	private PatientIdentifier createPatientIdentifier(JSONObject identifierObject) {
+	private PatientIdentifier createPatientIdentifier(final QueueInfoHandlerContext context, JSONObject identifierObject) {
 		if (identifierObject == null) {
 			return null;
 		}
@@ -298,18 +298,18 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 		String identifierUuid = (String) getElementFromJsonObject(identifierObject, "identifier_type_uuid");
 		String identifierValue = (String) getElementFromJsonObject(identifierObject, "identifier_value");
 		
-		return createPatientIdentifier(identifierUuid, identifierTypeName, identifierValue);
+		return createPatientIdentifier(context, identifierUuid, identifierTypeName, identifierValue);
 	}
 	
-	private PatientIdentifier createPatientIdentifier(String identifierTypeUuid, String identifierTypeName,
-	        String identifierValue) {
+	private PatientIdentifier createPatientIdentifier(final QueueInfoHandlerContext context, String identifierTypeUuid,
+	        String identifierTypeName, String identifierValue) {
 		if (StringUtils.isBlank(identifierTypeUuid) && StringUtils.isBlank(identifierTypeName)) {
-			queueProcessorException.addException(new Exception(
+			context.getException().addException(new Exception(
 			        "Cannot create identifier. Identifier type name or uuid must be supplied"));
 		}
 		
 		if (StringUtils.isBlank(identifierValue)) {
-			queueProcessorException.addException(new Exception(
+			context.getException().addException(new Exception(
 			        "Cannot create identifier. Supplied identifier value is blank for identifier type name:'"
 			                + identifierTypeName + "', uuid:'" + identifierTypeUuid + "'"));
 		}
@@ -321,7 +321,7 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 			identifierType = Context.getPatientService().getPatientIdentifierTypeByName(identifierTypeName);
 		}
 		if (identifierType == null) {
-			queueProcessorException.addException(new Exception("Unable to find identifier type with name:'"
+			context.getException().addException(new Exception("Unable to find identifier type with name:'"
 			        + identifierTypeName + "', uuid:'" + identifierTypeUuid + "'"));
 		} else {
 			PatientIdentifier patientIdentifier = new PatientIdentifier();
@@ -332,18 +332,20 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 		return null;
 	}
 	
-	private void setIdentifierTypeLocation(final Set<PatientIdentifier> patientIdentifiers) {
-		String locationIdString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.location_id']");
+	private void setIdentifierTypeLocation(final QueueInfoHandlerContext context,
+	        final Set<PatientIdentifier> patientIdentifiers) {
+		JsonPayload payload = context.getParsedPayload();
+		String locationIdString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.LOCATION_ID);
 		Location location = null;
 		int locationId;
 		
 		if (locationIdString != null) {
 			locationId = Integer.parseInt(locationIdString);
-			location = Context.getLocationService().getLocation(locationId);
+			location = ReferenceDataCache.getLocation(locationId);
 		}
 		
 		if (location == null) {
-			queueProcessorException.addException(new Exception("Unable to find encounter location using the id: "
+			context.getException().addException(new Exception("Unable to find encounter location using the id: "
 			        + locationIdString));
 		} else {
 			Iterator<PatientIdentifier> iterator = patientIdentifiers.iterator();
@@ -354,32 +356,42 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 		}
 	}
 	
-	private void setPatientBirthDateFromPayload() {
-		Date birthDate = JsonFormatUtils.readAsDate(payload, "$['patient']['patient.birth_date']");
+	private void setPatientBirthDateFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		Date birthDate = JsonFormatUtils.readAsDate(payload, PayloadPaths._Patient.BIRTH_DATE);
 		unsavedPatient.setBirthdate(birthDate);
 	}
 	
-	private void setPatientBirthDateEstimatedFromPayload() {
-		boolean birthdateEstimated = JsonFormatUtils.readAsBoolean(payload, "$['patient']['patient.birthdate_estimated']");
+	private void setPatientBirthDateEstimatedFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		boolean birthdateEstimated = JsonFormatUtils.readAsBoolean(payload, PayloadPaths._Patient.BIRTHDATE_ESTIMATED);
 		unsavedPatient.setBirthdateEstimated(birthdateEstimated);
 	}
 	
-	private void setPatientGenderFromPayload() {
-		String gender = JsonFormatUtils.readAsString(payload, "$['patient']['patient.sex']");
+	private void setPatientGenderFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		String gender = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.SEX);
 		unsavedPatient.setGender(gender);
 	}
 	
-	private void setPatientDeadFromPayload() {
-		Boolean isDead = JsonFormatUtils.readAsBoolean(payload, "$['patient']['patient.persondead']");
+	private void setPatientDeadFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		Boolean isDead = JsonFormatUtils.readAsBoolean(payload, PayloadPaths._Patient.PERSON_DEAD);
 		unsavedPatient.setDead(isDead);
 	}
 	
-	private void setPatientNameFromPayload() {
-		String givenName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.given_name']");
-		String familyName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.family_name']");
+	private void setPatientNameFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		String givenName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.GIVEN_NAME);
+		String familyName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.FAMILY_NAME);
 		String middleName = "";
 		try {
-			middleName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.middle_name']");
+			middleName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.MIDDLE_NAME);
 		}
 		catch (Exception e) {
 			log.error(e);
@@ -391,9 +403,10 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 		unsavedPatient.addName(personName);
 	}
 	
-	private void registerUnsavedPatient() {
+	private void registerUnsavedPatient(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
 		RegistrationInfoService registrationDataService = Context.getService(RegistrationInfoService.class);
-		String temporaryUuid = getPatientUuidFromPayload();
+		String temporaryUuid = getPatientUuidFromPayload(context);
 		RegistrationInfo registrationData = registrationDataService.getRegistrationDataByTemporaryUuid(temporaryUuid);
 		if (registrationData == null) {
 			registrationData = new RegistrationInfo();
@@ -405,15 +418,18 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 		}
 	}
 	
-	private String getPatientUuidFromPayload() {
-		return JsonFormatUtils.readAsString(payload, "$['patient']['patient.uuid']");
+	private String getPatientUuidFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		return JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.UUID);
 	}
 	
-	private void setPatientAddressesFromPayload() {
+	private void setPatientAddressesFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
 		Set<PersonAddress> addresses = new TreeSet<PersonAddress>();
 		
 		try {
-			Object patientAddressObject = JsonFormatUtils.readAsObject(payload, "$['patient']['patient.personaddress']");
+			Object patientAddressObject = JsonFormatUtils.readAsObject(payload, PayloadPaths._Patient.PERSON_ADDRESS);
 			if (JsonFormatUtils.isJSONArrayObject(patientAddressObject)) {
 				for (Object personAddressJSONObject : (JSONArray) patientAddressObject) {
 					PersonAddress patientAddress = getPersonAddressFromJsonObject((JSONObject) personAddressJSONObject);
@@ -428,7 +444,7 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 				}
 			}
 			
-			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, "$['patient']");
+			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, PayloadPaths.PATIENT);
 			Set keys = patientObject.keySet();
 			for (Object key : keys) {
 				if (((String) key).startsWith("patient.personaddress^")) {
@@ -449,10 +465,12 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 		
 	}
 	
-	private void setPersonAttributesFromPayload() {
+	private void setPersonAttributesFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
 		Set<PersonAttribute> attributes = new TreeSet<PersonAttribute>();
 		try {
-			Object patientAttributeObject = JsonFormatUtils.readAsObject(payload, "$['patient']['patient.personattribute']");
+			Object patientAttributeObject = JsonFormatUtils.readAsObject(payload, PayloadPaths._Patient.PERSON_ATTRIBUTE);
 			if (JsonFormatUtils.isJSONArrayObject(patientAttributeObject)) {
 				for (Object personAdttributeJSONObject : (JSONArray) patientAttributeObject) {
 					try {
@@ -462,7 +480,7 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 						}
 					}
 					catch (Exception e) {
-						queueProcessorException.addException(e);
+						context.getException().addException(e);
 						log.error(e);
 					}
 				}
@@ -474,12 +492,12 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 					}
 				}
 				catch (Exception e) {
-					queueProcessorException.addException(e);
+					context.getException().addException(e);
 					log.error(e);
 				}
 			}
 			
-			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, "$['patient']");
+			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, PayloadPaths.PATIENT);
 			Set keys = patientObject.keySet();
 			for (Object key : keys) {
 				if (((String) key).startsWith("patient.personattribute^")) {
@@ -491,7 +509,7 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 						}
 					}
 					catch (Exception e) {
-						queueProcessorException.addException(e);
+						context.getException().addException(e);
 						log.error(e);
 					}
 				}
@@ -506,24 +524,27 @@ public class JsonGenericRegistrationQueueInfoHandler implements QueueInfoHandler
 		}
 	}
 	
-	private void setUnsavedPatientCreatorFromPayload() {
-		String userString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.user_system_id']");
-		String providerString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.provider_id']");
+	private void setUnsavedPatientCreatorFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		String userString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.USER_SYSTEM_ID);
+		String providerString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.PROVIDER_ID);
 		
-		User user = Context.getUserService().getUserByUsername(userString);
+		User user = ReferenceDataCache.getUserByUsername(userString);
 		if (user == null) {
-			providerString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.provider_id']");
-			user = Context.getUserService().getUserByUsername(providerString);
+			providerString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.PROVIDER_ID);
+			user = ReferenceDataCache.getUserByUsername(providerString);
 		}
 		if (user == null) {
-			queueProcessorException.addException(new Exception("Unable to find user using the User Id: " + userString
+			context.getException().addException(new Exception("Unable to find user using the User Id: " + userString
 			        + " or Provider Id: " + providerString));
 		} else {
 			unsavedPatient.setCreator(user);
 		}
 	}
 	
-	private Patient findSimilarSavedPatient() {
+	private Patient findSimilarSavedPatient(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
 		Patient savedPatient = null;
 		if (unsavedPatient.getNames().isEmpty()) {
 			PatientIdentifier identifier = unsavedPatient.getPatientIdentifier();
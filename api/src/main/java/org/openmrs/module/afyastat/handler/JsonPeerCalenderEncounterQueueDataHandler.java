@@ -28,14 +28,17 @@ import org.openmrs.module.afyastat.api.service.RegistrationInfoService;
 import org.openmrs.module.afyastat.exception.StreamProcessorException;
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 import org.openmrs.module.afyastat.model.RegistrationInfo;
-import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.ConcurrentQueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
 import org.openmrs.module.afyastat.utils.JsonFormatUtils;
+import org.openmrs.module.afyastat.utils.JsonPayload;
+import org.openmrs.module.afyastat.utils.PayloadPaths;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
 import org.openmrs.module.afyastat.utils.PatientLookUpUtils;
 import org.openmrs.module.kenyaemr.util.EmrUtils;
 import org.openmrs.util.OpenmrsUtil;
 import org.springframework.stereotype.Component;
 
-import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -45,69 +48,65 @@ import java.util.*;
  */
 @Component
 @Handler(supports = AfyaStatQueueData.class, order = 5)
-public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandler {
+public class JsonPeerCalenderEncounterQueueDataHandler implements ConcurrentQueueInfoHandler {
 	
 	private static final String DISCRIMINATOR_VALUE = "json-peerCalendar";
 	
-	private static final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+	private static final String DATE_PATTERN = "yyyy-MM-dd";
 	
-	private static final DateFormat dateTimeFormat = new SimpleDateFormat("dd-MM-yyyy HH:mm");
+	private static final String DATE_TIME_PATTERN = "dd-MM-yyyy HH:mm";
 	
 	private final Log log = LogFactory.getLog(JsonPeerCalenderEncounterQueueDataHandler.class);
 	
 	private static final String DEFAULT_ENCOUNTER_ROLE_UUID = "a0b03050-c99b-11e0-9572-0800200c9a66";
 	
-	private StreamProcessorException queueProcessorException;
+	private static final String ENCOUNTER = "encounter";
 	
-	private Encounter encounter;
+	private static final String LAST_PEER_CALENDAR_ENCOUNTER = "lastPeerCalendarEncounter";
 	
 	public static final String peerCalendarFormUuid = "7492cffe-5874-4144-a1e6-c9e455472a35";
 	
 	public static final String peerCalendarEncounterType = "c4f9db39-2c18-49a6-bf9b-b243d673c64d";
 	
-	private Encounter lastPeerCalendarEncounter;
-	
-	int currentMonthFromPayload;
-	
-	int lastMonthPeerCalendarFilled;
-	
 	/**
-	 * @param queueData
+	 * @param context
 	 * @return
 	 */
 	@Override
-	public boolean validate(AfyaStatQueueData queueData) {
+	public QueueInfoHandlerContext validate(final QueueInfoHandlerContext context) {
+		AfyaStatQueueData queueData = context.getQueueData();
 		try {
-			queueProcessorException = new StreamProcessorException();
 			log.info("Processing encounter form data: " + queueData.getUuid());
-			encounter = new Encounter();
-			String payload = queueData.getPayload();
-			processUpdateEncounter(payload);
-			if (lastPeerCalendarEncounter != null && currentMonthFromPayload == lastMonthPeerCalendarFilled) {
-				Object obsObject = JsonFormatUtils.readAsObject(queueData.getPayload(), "$['observation']");
-				processObs(lastPeerCalendarEncounter, null, obsObject);
+			Encounter encounter = new Encounter();
+			JsonPayload payload = context.getParsedPayload();
+			Encounter lastPeerCalendarEncounter = processUpdateEncounter(payload);
+			if (lastPeerCalendarEncounter != null) {
+				context.setAttribute(LAST_PEER_CALENDAR_ENCOUNTER, lastPeerCalendarEncounter);
+				Object obsObject = JsonFormatUtils.readAsObject(payload, PayloadPaths.OBSERVATION);
+				processObs(context, lastPeerCalendarEncounter, null, obsObject);
 				
 			} else {
+				context.setAttribute(ENCOUNTER, encounter);
 				//Object encounterObject = JsonUtils.readAsObject(queueData.getPayload(), "$['encounter']");
-				processEncounter(encounter, payload);
+				processEncounter(context, encounter, payload);
 				
 				//Object patientObject = JsonUtils.readAsObject(queueData.getPayload(), "$['patient']");
-				processPatient(encounter, payload);
+				processPatient(context, encounter, payload);
 				
-				Object obsObject = JsonFormatUtils.readAsObject(queueData.getPayload(), "$['observation']");
-				processObs(encounter, null, obsObject);
+				Object obsObject = JsonFormatUtils.readAsObject(payload, PayloadPaths.OBSERVATION);
+				processObs(context, encounter, null, obsObject);
 			}
 			
-			return true;
+			return context;
 			
 		}
 		catch (Exception e) {
-			queueProcessorException.addException(e);
-			return false;
+			context.getException().addException(e);
+			return context;
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
 	}
@@ -118,39 +117,41 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 	}
 	
 	@Override
-	public void process(final AfyaStatQueueData queueData) throws StreamProcessorException {
+	public QueueInfoHandlerContext process(final QueueInfoHandlerContext context) throws StreamProcessorException {
 		
 		try {
-			if (validate(queueData)) {
-				if (lastPeerCalendarEncounter != null && currentMonthFromPayload == lastMonthPeerCalendarFilled) {
-					Context.getEncounterService().saveEncounter(lastPeerCalendarEncounter);
-					
-				} else {
-					assignToVisit(encounter);
-					Context.getEncounterService().saveEncounter(encounter);
-				}
+			validate(context);
+			Encounter lastPeerCalendarEncounter = (Encounter) context.getAttribute(LAST_PEER_CALENDAR_ENCOUNTER);
+			if (lastPeerCalendarEncounter != null) {
+				Context.getEncounterService().saveEncounter(lastPeerCalendarEncounter);
+				
+			} else {
+				Encounter encounter = (Encounter) context.getAttribute(ENCOUNTER);
+				assignToVisit(encounter);
+				Context.getEncounterService().saveEncounter(encounter);
 			}
 		}
 		catch (Exception e) {
 			if (!e.getClass().equals(StreamProcessorException.class))
-				queueProcessorException.addException(e);
+				context.getException().addException(e);
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
+		return context;
 	}
 	
 	/**
 	 * @param encounter
-	 * @param patientObject
+	 * @param patientPayload
 	 */
-	private void processPatient(final Encounter encounter, final Object patientObject) {
+	private void processPatient(final QueueInfoHandlerContext context, final Encounter encounter,
+	        final JsonPayload patientPayload) {
 		Patient unsavedPatient = new Patient();
-		String patientPayload = patientObject.toString();
 		
-		String uuid = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.uuid']");
+		String uuid = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.UUID);
 		unsavedPatient.setUuid(uuid);
 		
 		PatientService patientService = Context.getPatientService();
@@ -179,7 +180,7 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 		}
 		
 		if (candidatePatient == null) {
-			queueProcessorException.addException(new Exception(
+			context.getException().addException(new Exception(
 			        "Unable to uniquely identify patient for this encounter form data. "));
 		} else {
 			encounter.setPatient(candidatePatient);
@@ -191,7 +192,8 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 	 * @param parentObs - Obs
 	 * @param obsObject - Object
 	 */
-	private void processObs(final Encounter encounter, final Obs parentObs, final Object obsObject) {
+	private void processObs(final QueueInfoHandlerContext context, final Encounter encounter, final Obs parentObs,
+	        final Object obsObject) {
 		if (obsObject instanceof JSONObject) {
 			JSONObject obsJsonObject = (JSONObject) obsObject;
 			for (String conceptQuestion : obsJsonObject.keySet()) {
@@ -203,16 +205,16 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 					continue;
 				
 				int conceptId = Integer.parseInt(conceptElements[0]);
-				Concept concept = Context.getConceptService().getConcept(conceptId);
+				Concept concept = ReferenceDataCache.getConcept(conceptId);
 				if (concept == null) {
-					queueProcessorException.addException(new Exception("Unable to find Concept for Question with ID: "
+					context.getException().addException(new Exception("Unable to find Concept for Question with ID: "
 					        + conceptId));
 				} else {
 					if (concept.isSet()) {
 						Obs obsGroup = new Obs();
 						obsGroup.setConcept(concept);
 						Object childObsObject = obsJsonObject.get(conceptQuestion);
-						processObsObject(encounter, obsGroup, childObsObject);
+						processObsObject(context, encounter, obsGroup, childObsObject);
 						if (parentObs != null) {
 							parentObs.addGroupMember(obsGroup);
 						}
@@ -221,17 +223,17 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 						if (valueObject instanceof JSONArray) {
 							JSONArray jsonArray = (JSONArray) valueObject;
 							for (Object arrayElement : jsonArray) {
-								createObs(encounter, parentObs, concept, arrayElement);
+								createObs(context, encounter, parentObs, concept, arrayElement);
 							}
 						} else {
-							createObs(encounter, parentObs, concept, valueObject);
+							createObs(context, encounter, parentObs, concept, valueObject);
 						}
 					}
 				}
 			}
 		} else if (obsObject instanceof LinkedHashMap) {
 			Object obsAsJsonObject = new JSONObject((Map<String, ?>) obsObject);
-			processObs(encounter, parentObs, obsAsJsonObject);
+			processObs(context, encounter, parentObs, obsAsJsonObject);
 		}
 	}
 	
@@ -241,7 +243,8 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 	 * @param concept - Concept
 	 * @param o - java.lang.Object
 	 */
-	private void createObs(final Encounter encounter, final Obs parentObs, final Concept concept, final Object o) {
+	private void createObs(final QueueInfoHandlerContext context, final Encounter encounter, final Obs parentObs,
+	        final Concept concept, final Object o) {
 		String value = null;
 		Obs obs = new Obs();
 		obs.setConcept(concept);
@@ -271,9 +274,9 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 			} else if (concept.getDatatype().isCoded() || concept.getDatatype().isBoolean()) {
 				String[] valueCodedElements = StringUtils.split(value, "\\^");
 				int valueCodedId = Integer.parseInt(valueCodedElements[0]);
-				Concept valueCoded = Context.getConceptService().getConcept(valueCodedId);
+				Concept valueCoded = ReferenceDataCache.getConcept(valueCodedId);
 				if (valueCoded == null) {
-					queueProcessorException.addException(new Exception("Unable to find concept for value coded with id: "
+					context.getException().addException(new Exception("Unable to find concept for value coded with id: "
 					        + valueCodedId));
 				} else {
 					obs.setValueCoded(valueCoded);
@@ -294,44 +297,43 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 	 * @param parentObs Obs
 	 * @param childObsObject - java.lang.Object
 	 */
-	private void processObsObject(final Encounter encounter, final Obs parentObs, final Object childObsObject) {
+	private void processObsObject(final QueueInfoHandlerContext context, final Encounter encounter, final Obs parentObs,
+	        final Object childObsObject) {
 		//Object o = JsonUtils.readAsObject(childObsObject.toString(), "$");
 		if (childObsObject instanceof JSONArray) {
 			JSONArray jsonArray = (JSONArray) childObsObject;
 			for (Object arrayElement : jsonArray) {
 				Obs obsGroup = new Obs();
 				obsGroup.setConcept(parentObs.getConcept());
-				processObs(encounter, obsGroup, arrayElement);
+				processObs(context, encounter, obsGroup, arrayElement);
 				encounter.addObs(obsGroup);
 			}
 		} else if (childObsObject instanceof JSONObject) {
-			processObs(encounter, parentObs, childObsObject);
+			processObs(context, encounter, parentObs, childObsObject);
 			encounter.addObs(parentObs);
 		} else if (childObsObject instanceof LinkedHashMap) {
 			Object childObsAsJsonObject = new JSONObject((Map<String, ?>) childObsObject);
-			processObs(encounter, parentObs, childObsAsJsonObject);
+			processObs(context, encounter, parentObs, childObsAsJsonObject);
 			encounter.addObs(parentObs);
 		}
 	}
 	
 	/**
 	 * @param encounter - Encounter
-	 * @param encounterObject - java.lang.Object
+	 * @param encounterPayload - the parsed payload
 	 * @throws StreamProcessorException
 	 */
-	private void processEncounter(final Encounter encounter, final Object encounterObject) throws StreamProcessorException {
-		String encounterPayload = encounterObject.toString();
-		
-		String formUuid = JsonFormatUtils.readAsString(encounterPayload, "$['encounter']['encounter.form_uuid']");
-		Form form = Context.getFormService().getFormByUuid(formUuid);
+	private void processEncounter(final QueueInfoHandlerContext context, final Encounter encounter,
+	        final JsonPayload encounterPayload) throws StreamProcessorException {
+		String formUuid = JsonFormatUtils.readAsString(encounterPayload, PayloadPaths._Encounter.FORM_UUID);
+		Form form = ReferenceDataCache.getFormByUuid(formUuid);
 		if (form == null) {
 			log.info("Unable to find form using the uuid: " + formUuid + ". Setting the form field to null!");
-			String encounterTypeString = JsonFormatUtils.readAsString(encounterPayload,
-			    "$['encounter']['encounter.type_id']");
+			String encounterTypeString = JsonFormatUtils.readAsString(encounterPayload, PayloadPaths._Encounter.TYPE_ID);
 			int encounterTypeId = NumberUtils.toInt(encounterTypeString, -999);
-			EncounterType encounterType = Context.getEncounterService().getEncounterType(encounterTypeId);
+			EncounterType encounterType = ReferenceDataCache.getEncounterType(encounterTypeId);
 			if (encounterType == null) {
-				queueProcessorException.addException(new Exception("Unable to find encounter type using the id: "
+				context.getException().addException(new Exception("Unable to find encounter type using the id: "
 				        + encounterTypeString));
 			} else {
 				encounter.setEncounterType(encounterType);
@@ -343,69 +345,72 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 		}
 		
 		String encounterRoleString = JsonFormatUtils.readAsString(encounterPayload,
-		    "$['encounter']['encounter.provider_role_uuid']");
+		    PayloadPaths._Encounter.PROVIDER_ROLE_UUID);
 		EncounterRole encounterRole = null;
 		
 		if (StringUtils.isBlank(encounterRoleString)) {
-			encounterRole = Context.getEncounterService().getEncounterRoleByUuid(DEFAULT_ENCOUNTER_ROLE_UUID);
+			encounterRole = ReferenceDataCache.getEncounterRoleByUuid(DEFAULT_ENCOUNTER_ROLE_UUID);
 		} else {
-			encounterRole = Context.getEncounterService().getEncounterRoleByUuid(encounterRoleString);
+			encounterRole = ReferenceDataCache.getEncounterRoleByUuid(encounterRoleString);
 		}
 		
 		if (encounterRole == null) {
-			queueProcessorException.addException(new Exception("Unable to find encounter role using the uuid: ["
+			context.getException().addException(new Exception("Unable to find encounter role using the uuid: ["
 			        + encounterRoleString + "] or the default role [" + DEFAULT_ENCOUNTER_ROLE_UUID + "]"));
 		}
 		
-		String providerString = JsonFormatUtils.readAsString(encounterPayload, "$['encounter']['encounter.provider_id']");
-		Provider provider = Context.getProviderService().getProviderByIdentifier(providerString);
+		String providerString = JsonFormatUtils.readAsString(encounterPayload, PayloadPaths._Encounter.PROVIDER_ID);
+		Provider provider = ReferenceDataCache.getProviderByIdentifier(providerString);
 		if (provider == null) {
-			queueProcessorException.addException(new Exception("Unable to find provider using the id: " + providerString));
+			context.getException().addException(new Exception("Unable to find provider using the id: " + providerString));
 		} else {
 			encounter.setProvider(encounterRole, provider);
 		}
 		
-		String userString = JsonFormatUtils.readAsString(encounterPayload, "$['encounter']['encounter.user_system_id']");
-		User user = Context.getUserService().getUserByUsername(userString);
+		String userString = JsonFormatUtils.readAsString(encounterPayload, PayloadPaths._Encounter.USER_SYSTEM_ID);
+		User user = ReferenceDataCache.getUserByUsername(userString);
 		
 		if (user == null) {
-			user = Context.getUserService().getUserByUsername(providerString);
+			user = ReferenceDataCache.getUserByUsername(providerString);
 		}
 		if (user == null) {
-			queueProcessorException.addException(new Exception("Unable to find user using the User Id: " + userString
+			context.getException().addException(new Exception("Unable to find user using the User Id: " + userString
 			        + " or Provider Id: " + providerString));
 		} else {
 			encounter.setCreator(user);
 		}
 		
-		String locationString = JsonFormatUtils.readAsString(encounterPayload, "$['encounter']['encounter.location_id']");
+		String locationString = JsonFormatUtils.readAsString(encounterPayload, PayloadPaths._Encounter.LOCATION_ID);
 		int locationId = NumberUtils.toInt(locationString, -999);
-		Location location = Context.getLocationService().getLocation(locationId);
+		Location location = ReferenceDataCache.getLocation(locationId);
 		if (location == null) {
-			queueProcessorException.addException(new Exception("Unable to find encounter location using the id: "
+			context.getException().addException(new Exception("Unable to find encounter location using the id: "
 			        + locationString));
 		} else {
 			encounter.setLocation(location);
 		}
 		
 		String jsonPayloadTimezone = JsonFormatUtils.readAsString(encounterPayload,
-		    "$['encounter']['encounter.device_time_zone']");
+		    PayloadPaths._Encounter.DEVICE_TIME_ZONE);
 		Date encounterDatetime = JsonFormatUtils.readAsDateTime(encounterPayload,
-		    "$['encounter']['encounter.encounter_datetime']", dateTimeFormat, jsonPayloadTimezone);
+		    PayloadPaths._Encounter.ENCOUNTER_DATETIME, new SimpleDateFormat(DATE_TIME_PATTERN), jsonPayloadTimezone);
 		encounter.setEncounterDatetime(encounterDatetime);
 	}
 	
-	private void processUpdateEncounter(final Object patientObject) {
-		String patientPayload = patientObject.toString();
-		String uuid = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.uuid']");
+	/**
+	 * @param patientPayload - the parsed payload
+	 * @return the last peer calendar encounter of the patient when it was filled in the same month
+	 *         as the payload, otherwise null
+	 */
+	private Encounter processUpdateEncounter(final JsonPayload patientPayload) {
+		String uuid = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.UUID);
 		Patient patient = null;
-		String jsonPayloadTimezone = JsonFormatUtils.readAsString(patientPayload,
-		    "$['encounter']['encounter.device_time_zone']");
+		String jsonPayloadTimezone = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Encounter.DEVICE_TIME_ZONE);
 		Date currentEncounterDatetime = JsonFormatUtils.readAsDateTime(patientPayload,
-		    "$['encounter']['encounter.encounter_datetime']", dateTimeFormat, jsonPayloadTimezone);
+		    PayloadPaths._Encounter.ENCOUNTER_DATETIME, new SimpleDateFormat(DATE_TIME_PATTERN), jsonPayloadTimezone);
 		Calendar cal = Calendar.getInstance();
 		cal.setTime(currentEncounterDatetime);
-		currentMonthFromPayload = cal.get(Calendar.MONTH);
+		int currentMonthFromPayload = cal.get(Calendar.MONTH);
 		
 		RegistrationInfoService regDataService = Context.getService(RegistrationInfoService.class);
 		RegistrationInfo regData = regDataService.getRegistrationDataByTemporaryUuid(uuid);
@@ -416,17 +421,19 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 			
 		}
 		
-		lastPeerCalendarEncounter = EmrUtils.lastEncounter(patient,
-		    Context.getEncounterService().getEncounterTypeByUuid(peerCalendarEncounterType), Context.getFormService()
-		            .getFormByUuid(peerCalendarFormUuid));
+		Encounter lastPeerCalendarEncounter = EmrUtils.lastEncounter(patient,
+		    ReferenceDataCache.getEncounterTypeByUuid(peerCalendarEncounterType),
+		    ReferenceDataCache.getFormByUuid(peerCalendarFormUuid));
 		if (lastPeerCalendarEncounter != null) {
 			Date datetime = lastPeerCalendarEncounter.getEncounterDatetime();
 			cal = Calendar.getInstance();
 			cal.setTime(datetime);
-			lastMonthPeerCalendarFilled = cal.get(Calendar.MONTH);
-			
+			int lastMonthPeerCalendarFilled = cal.get(Calendar.MONTH);
+			if (currentMonthFromPayload == lastMonthPeerCalendarFilled) {
+				return lastPeerCalendarEncounter;
+			}
 		}
-		
+		return null;
 	}
 	
 	/**
@@ -436,7 +443,7 @@ public class JsonPeerCalenderEncounterQueueDataHandler implements QueueInfoHandl
 	private Date parseDate(final String dateValue) {
 		Date date = null;
 		try {
-			date = dateFormat.parse(dateValue);
+			date = new SimpleDateFormat(DATE_PATTERN).parse(dateValue);
 		}
 		catch (ParseException e) {
 			log.error("Unable to parse date data for encounter!", e);
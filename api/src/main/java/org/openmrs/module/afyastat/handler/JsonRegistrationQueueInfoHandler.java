@@ -26,21 +26,22 @@ import org.codehaus.jackson.node.JsonNodeFactory;
 import org.codehaus.jackson.node.ObjectNode;
 import org.openmrs.*;
 import org.openmrs.annotation.Handler;
-import org.openmrs.api.ConceptService;
 import org.openmrs.api.PersonService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.afyastat.api.service.RegistrationInfoService;
 import org.openmrs.module.afyastat.exception.StreamProcessorException;
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 import org.openmrs.module.afyastat.model.RegistrationInfo;
-import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.ConcurrentQueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
 import org.openmrs.module.afyastat.utils.JsonFormatUtils;
+import org.openmrs.module.afyastat.utils.JsonPayload;
+import org.openmrs.module.afyastat.utils.PayloadPaths;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
 import org.openmrs.module.afyastat.utils.PatientLookUpUtils;
 import org.openmrs.module.idgen.service.IdentifierSourceService;
 
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 import static org.openmrs.module.afyastat.utils.JsonFormatUtils.getElementFromJsonObject;
@@ -49,21 +50,13 @@ import static org.openmrs.module.afyastat.utils.JsonFormatUtils.getElementFromJs
  * TODO: Write brief description about the class here.
  */
 @Handler(supports = AfyaStatQueueData.class, order = 1)
-public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
+public class JsonRegistrationQueueInfoHandler implements ConcurrentQueueInfoHandler {
 	
 	private static final String DISCRIMINATOR_VALUE = "json-registration";
 	
-	private static final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-	
 	private final Log log = LogFactory.getLog(JsonRegistrationQueueInfoHandler.class);
 	
-	private Patient unsavedPatient;
-	
-	private String payload;
-	
-	Set<PersonAttribute> personAttributes;
-	
-	private StreamProcessorException queueProcessorException;
+	private static final String UNSAVED_PATIENT = "unsavedPatient";
 	
 	public static final String NEXT_OF_KIN_ADDRESS = "7cf22bec-d90a-46ad-9f48-035952261294";
 	
@@ -88,102 +81,106 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 	public static final String GUARDIAN_LAST_NAME = "0803abbd-2be4-4091-80b3-80c6940303df";
 	
 	@Override
-	public void process(final AfyaStatQueueData queueData) throws StreamProcessorException {
+	public QueueInfoHandlerContext process(final QueueInfoHandlerContext context) throws StreamProcessorException {
+		AfyaStatQueueData queueData = context.getQueueData();
 		log.info("Processing registration form data: " + queueData.getUuid());
-		queueProcessorException = new StreamProcessorException();
 		try {
-			if (validate(queueData)) {
-				registerUnsavedPatient();
-				
-				Object obsObject = JsonFormatUtils.readAsObject(queueData.getPayload(), "$['observation']");
-				if (obsObject != null) {
-					registerUnsavedObs(obsObject, queueData);
-				}
+			validate(context);
+			registerUnsavedPatient(context);
+			
+			Object obsObject = JsonFormatUtils.readAsObject(context.getParsedPayload(), PayloadPaths.OBSERVATION);
+			if (obsObject != null) {
+				registerUnsavedObs(obsObject, queueData);
 			}
 		}
 		catch (Exception e) {
-			/*Custom exception thrown by the validate function should not be added again into @queueProcessorException.
-			 It should add the runtime dao Exception while saving the data into @queueProcessorException collection */
+			/*Custom exception thrown by the validate function should not be added again into the context exception.
+			 It should add the runtime dao Exception while saving the data into the context exception collection */
 			if (!e.getClass().equals(StreamProcessorException.class)) {
-				queueProcessorException.addException(new Exception("Exception while process payload ", e));
+				context.getException().addException(new Exception("Exception while process payload ", e));
 			}
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
+		return context;
 	}
 	
 	@Override
-	public boolean validate(AfyaStatQueueData queueData) {
-		log.info("Processing registration form data: " + queueData.getUuid());
-		queueProcessorException = new StreamProcessorException();
+	public QueueInfoHandlerContext validate(final QueueInfoHandlerContext context) {
+		log.info("Processing registration form data: " + context.getQueueData().getUuid());
 		try {
-			payload = queueData.getPayload();
-			unsavedPatient = new Patient();
-			populateUnsavedPatientFromPayload();
-			validateUnsavedPatient();
-			return true;
+			context.setAttribute(UNSAVED_PATIENT, new Patient());
+			populateUnsavedPatientFromPayload(context);
+			validateUnsavedPatient(context);
+			return context;
 		}
 		catch (Exception e) {
-			queueProcessorException.addException(new Exception("Exception while validating payload ", e));
-			return false;
+			context.getException().addException(new Exception("Exception while validating payload ", e));
+			return context;
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
 	}
 	
+	private Patient getUnsavedPatient(final QueueInfoHandlerContext context) {
+		return (Patient) context.getAttribute(UNSAVED_PATIENT);
+	}
+	
 	@Override
 	public String getDiscriminator() {
 		return DISCRIMINATOR_VALUE;
 	}
 	
-	private void validateUnsavedPatient() {
-		if (!JsonFormatUtils.readAsBoolean(payload, "$['skipPatientMatching']")) {
-			Patient savedPatient = findSimilarSavedPatient();
+	private void validateUnsavedPatient(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		if (!JsonFormatUtils.readAsBoolean(payload, PayloadPaths.SKIP_PATIENT_MATCHING)) {
+			Patient savedPatient = findSimilarSavedPatient(context);
 			if (savedPatient != null) {
-				queueProcessorException.addException(new Exception(
+				context.getException().addException(new Exception(
 				        "Found a patient with similar characteristic :  patientId = " + savedPatient.getPatientId()
 				                + " Identifier Id = " + savedPatient.getPatientIdentifier().getIdentifier()));
 			}
 		}
 	}
 	
-	private void populateUnsavedPatientFromPayload() {
-		setPatientIdentifiersFromPayload();
-		setPatientBirthDateFromPayload();
-		setPatientBirthDateEstimatedFromPayload();
-		setPatientGenderFromPayload();
-		setPatientNameFromPayload();
-		setPatientAddressesFromPayload();
-		setPersonAttributesFromPayload();
-		setUnsavedPatientCreatorFromPayload();
+	private void populateUnsavedPatientFromPayload(final QueueInfoHandlerContext context) {
+		setPatientIdentifiersFromPayload(context);
+		setPatientBirthDateFromPayload(context);
+		setPatientBirthDateEstimatedFromPayload(context);
+		setPatientGenderFromPayload(context);
+		setPatientNameFromPayload(context);
+		setPatientAddressesFromPayload(context);
+		setPersonAttributesFromPayload(context);
+		setUnsavedPatientCreatorFromPayload(context);
 	}
 	
-	private void setPatientIdentifiersFromPayload() {
+	private void setPatientIdentifiersFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
 		Set<PatientIdentifier> patientIdentifiers = new TreeSet<PatientIdentifier>();
-		PatientIdentifier preferredIdentifier = getPreferredPatientIdentifierFromPayload();
+		PatientIdentifier preferredIdentifier = getPreferredPatientIdentifierFromPayload(context);
 		if (preferredIdentifier != null) {
 			patientIdentifiers.add(preferredIdentifier);
 		}
-		List<PatientIdentifier> otherIdentifiers = getOtherPatientIdentifiersFromPayload();
+		List<PatientIdentifier> otherIdentifiers = getOtherPatientIdentifiersFromPayload(context);
 		if (!otherIdentifiers.isEmpty()) {
 			patientIdentifiers.addAll(otherIdentifiers);
 		}
-		setIdentifierTypeLocation(patientIdentifiers);
+		setIdentifierTypeLocation(context, patientIdentifiers);
 		unsavedPatient.setIdentifiers(patientIdentifiers);
 	}
 	
-	private PatientIdentifier getPreferredPatientIdentifierFromPayload() {
+	private PatientIdentifier getPreferredPatientIdentifierFromPayload(final QueueInfoHandlerContext context) {
 		//        String identifierValue = JsonUtils.readAsString(payload, "$['patient']['patient.medical_record_number']");
 		//        String identifierTypeName = "AMRS Universal ID";
 		
 		// PatientIdentifier preferredPatientIdentifier = createPatientIdentifier(identifierTypeName, identifierValue);
-		PatientIdentifier preferredPatientIdentifier = generateOpenMRSID();//createPatientIdentifier(identifierTypeName, identifierValue);
+		PatientIdentifier preferredPatientIdentifier = generateOpenMRSID(context);//createPatientIdentifier(identifierTypeName, identifierValue);
 		if (preferredPatientIdentifier != null) {
 			preferredPatientIdentifier.setPreferred(true);
 			return preferredPatientIdentifier;
@@ -192,29 +189,30 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 		}
 	}
 	
-	private List<PatientIdentifier> getOtherPatientIdentifiersFromPayload() {
+	private List<PatientIdentifier> getOtherPatientIdentifiersFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		List<PatientIdentifier> otherIdentifiers = new ArrayList<PatientIdentifier>();
 		try {
-			Object otheridentifierObject = JsonFormatUtils.readAsObject(payload, "$['patient']['patient.otheridentifier']");
+			Object otheridentifierObject = JsonFormatUtils.readAsObject(payload, PayloadPaths._Patient.OTHER_IDENTIFIER);
 			if (JsonFormatUtils.isJSONArrayObject(otheridentifierObject)) {
 				for (Object otherIdentifier : (JSONArray) otheridentifierObject) {
-					PatientIdentifier identifier = createPatientIdentifier((JSONObject) otherIdentifier);
+					PatientIdentifier identifier = createPatientIdentifier(context, (JSONObject) otherIdentifier);
 					if (identifier != null) {
 						otherIdentifiers.add(identifier);
 					}
 				}
 			} else {
-				PatientIdentifier identifier = createPatientIdentifier((JSONObject) otheridentifierObject);
+				PatientIdentifier identifier = createPatientIdentifier(context, (JSONObject) otheridentifierObject);
 				if (identifier != null) {
 					otherIdentifiers.add(identifier);
 				}
 			}
 			
-			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, "$['patient']");
+			JSONObject patientObject = (JSONObject) JsonFormatUtils.readAsObject(payload, PayloadPaths.PATIENT);
 			Set keys = patientObject.keySet();
 			for (Object key : keys) {
 				if (((String) key).startsWith("patient.otheridentifier^")) {
-					PatientIdentifier identifier = createPatientIdentifier((JSONObject) patientObject.get(key));
+					PatientIdentifier identifier = createPatientIdentifier(context, (JSONObject) patientObject.get(key));
 					if (identifier != null) {
 						otherIdentifiers.add(identifier);
 					}
@@ -227,7 +225,7 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 		return otherIdentifiers;
 	}
 	
-	private PatientIdentifier createPatientIdentifier(JSONObject identifierObject) {
+	private PatientIdentifier createPatientIdentifier(final QueueInfoHandlerContext context, JSONObject identifierObject) {
 		if (identifierObject == null) {
 			return null;
 		}
@@ -236,18 +234,18 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 		String identifierUuid = (String) getElementFromJsonObject(identifierObject, "identifier_type_uuid");
 		String identifierValue = (String) getElementFromJsonObject(identifierObject, "identifier_value");
 		
-		return createPatientIdentifier(identifierUuid, identifierTypeName, identifierValue);
+		return createPatientIdentifier(context, identifierUuid, identifierTypeName, identifierValue);
 	}
 	
-	private PatientIdentifier createPatientIdentifier(String identifierTypeUuid, String identifierTypeName,
-	        String identifierValue) {
+	private PatientIdentifier createPatientIdentifier(final QueueInfoHandlerContext context, String identifierTypeUuid,
+	        String identifierTypeName, String identifierValue) {
 		if (StringUtils.isBlank(identifierTypeUuid) && StringUtils.isBlank(identifierTypeName)) {
-			queueProcessorException.addException(new Exception(
+			context.getException().addException(new Exception(
 			        "Cannot create identifier. Identifier type name or uuid must be supplied"));
 		}
 		
 		if (StringUtils.isBlank(identifierValue)) {
-			queueProcessorException.addException(new Exception(
+			context.getException().addException(new Exception(
 			        "Cannot create identifier. Supplied identifier value is blank for identifier type name:'"
 			                + identifierTypeName + "', uuid:'" + identifierTypeUuid + "'"));
 		}
@@ -259,7 +257,7 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 			identifierType = Context.getPatientService().getPatientIdentifierTypeByName(identifierTypeName);
 		}
 		if (identifierType == null) {
-			queueProcessorException.addException(new Exception("Unable to find identifier type with name:'"
+			context.getException().addException(new Exception("Unable to find identifier type with name:'"
 			        + identifierTypeName + "', uuid:'" + identifierTypeUuid + "'"));
 		} else {
 			PatientIdentifier patientIdentifier = new PatientIdentifier();
@@ -270,18 +268,20 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 		return null;
 	}
 	
-	private void setIdentifierTypeLocation(final Set<PatientIdentifier> patientIdentifiers) {
-		String locationIdString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.location_id']");
+	private void setIdentifierTypeLocation(final QueueInfoHandlerContext context,
+	        final Set<PatientIdentifier> patientIdentifiers) {
+		JsonPayload payload = context.getParsedPayload();
+		String locationIdString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.LOCATION_ID);
 		Location location = null;
 		int locationId;
 		
 		if (locationIdString != null) {
 			locationId = Integer.parseInt(locationIdString);
-			location = Context.getLocationService().getLocation(locationId);
+			location = ReferenceDataCache.getLocation(locationId);
 		}
 		
 		if (location == null) {
-			queueProcessorException.addException(new Exception("Unable to find encounter location using the id: "
+			context.getException().addException(new Exception("Unable to find encounter location using the id: "
 			        + locationIdString));
 		} else {
 			Iterator<PatientIdentifier> iterator = patientIdentifiers.iterator();
@@ -292,27 +292,35 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 		}
 	}
 	
-	private void setPatientBirthDateFromPayload() {
-		Date birthDate = JsonFormatUtils.readAsDate(payload, "$['patient']['patient.birth_date']");
+	private void setPatientBirthDateFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		Date birthDate = JsonFormatUtils.readAsDate(payload, PayloadPaths._Patient.BIRTH_DATE);
 		unsavedPatient.setBirthdate(birthDate);
 	}
 	
-	private void setPatientBirthDateEstimatedFromPayload() {
-		boolean birthdateEstimated = JsonFormatUtils.readAsBoolean(payload, "$['patient']['patient.birthdate_estimated']");
+	private void setPatientBirthDateEstimatedFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		boolean birthdateEstimated = JsonFormatUtils.readAsBoolean(payload, PayloadPaths._Patient.BIRTHDATE_ESTIMATED);
 		unsavedPatient.setBirthdateEstimated(birthdateEstimated);
 	}
 	
-	private void setPatientGenderFromPayload() {
-		String gender = JsonFormatUtils.readAsString(payload, "$['patient']['patient.sex']");
+	private void setPatientGenderFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		String gender = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.SEX);
 		unsavedPatient.setGender(gender);
 	}
 	
-	private void setPatientNameFromPayload() {
-		String givenName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.given_name']");
-		String familyName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.family_name']");
+	private void setPatientNameFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		String givenName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.GIVEN_NAME);
+		String familyName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.FAMILY_NAME);
 		String middleName = "";
 		try {
-			middleName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.middle_name']");
+			middleName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.MIDDLE_NAME);
 		}
 		catch (Exception e) {
 			log.error(e);
@@ -325,9 +333,10 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 		unsavedPatient.addName(personName);
 	}
 	
-	private void registerUnsavedPatient() {
+	private void registerUnsavedPatient(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
 		RegistrationInfoService registrationDataService = Context.getService(RegistrationInfoService.class);
-		String temporaryUuid = getPatientUuidFromPayload();
+		String temporaryUuid = getPatientUuidFromPayload(context);
 		RegistrationInfo registrationData = registrationDataService.getRegistrationDataByTemporaryUuid(temporaryUuid);
 		if (registrationData == null) {
 			registrationData = new RegistrationInfo();
@@ -339,34 +348,37 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 		}
 	}
 	
-	private String getPatientUuidFromPayload() {
-		return JsonFormatUtils.readAsString(payload, "$['patient']['patient.uuid']");
+	private String getPatientUuidFromPayload(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
+		return JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.UUID);
 	}
 	
-	private void setPatientAddressesFromPayload() {
+	private void setPatientAddressesFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
 		PersonAddress patientAddress = new PersonAddress();
 		
-		String county = JsonFormatUtils.readAsString(payload, "$['patient']['patient.county']");
+		String county = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.COUNTY);
 		patientAddress.setCountyDistrict(county);
 		
-		String subCounty = JsonFormatUtils.readAsString(payload, "$['patient']['patient.sub_county']");
+		String subCounty = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.SUB_COUNTY);
 		patientAddress.setStateProvince(subCounty);
 		
-		String ward = JsonFormatUtils.readAsString(payload, "$['patient']['patient.ward']");
+		String ward = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.WARD);
 		patientAddress.setAddress4(ward);
 		
-		String location = JsonFormatUtils.readAsString(payload, "$['patient']['patient.location']");
+		String location = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.LOCATION);
 		patientAddress.setAddress6(location);
-		String postalAddress = JsonFormatUtils.readAsString(payload, "$['patient']['patient.postal_address']");
+		String postalAddress = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.POSTAL_ADDRESS);
 		patientAddress.setAddress1(postalAddress);
 		
-		String landMark = JsonFormatUtils.readAsString(payload, "$['patient']['patient.landmark']");
+		String landMark = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.LANDMARK);
 		patientAddress.setAddress2(landMark);
 		
-		String sub_location = JsonFormatUtils.readAsString(payload, "$['patient']['patient.sub_location']");
+		String sub_location = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.SUB_LOCATION);
 		patientAddress.setAddress5(sub_location);
 		
-		String village = JsonFormatUtils.readAsString(payload, "$['patient']['patient.village']");
+		String village = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.VILLAGE);
 		patientAddress.setCityVillage(village);
 		
 		Set<PersonAddress> addresses = new TreeSet<PersonAddress>();
@@ -374,93 +386,99 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 		unsavedPatient.setAddresses(addresses);
 	}
 	
-	private void setPersonAttributesFromPayload() {
-		personAttributes = new TreeSet<PersonAttribute>();
+	private void setPersonAttributesFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		Set<PersonAttribute> personAttributes = new TreeSet<PersonAttribute>();
 		PersonService personService = Context.getPersonService();
 		
-		String mothersName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.mothers_name']");
-		setAsAttribute("Mother's Name", mothersName);
+		String mothersName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.MOTHERS_NAME);
+		setAsAttribute(context, personAttributes, "Mother's Name", mothersName);
 		
-		String phoneNumber = JsonFormatUtils.readAsString(payload, "$['patient']['patient.phone_number']");
-		setAsAttribute("Telephone contact", phoneNumber);
+		String phoneNumber = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.PHONE_NUMBER);
+		setAsAttribute(context, personAttributes, "Telephone contact", phoneNumber);
 		
 		//        String phoneNumber = JsonUtils.readAsString(payload, "$['patient']['patient.phone_number']");
 		//        setAsAttributeByUUID(TELEPHONE_CONTACT,phoneNumber);
 		
-		String nearestHealthCenter = JsonFormatUtils.readAsString(payload, "$['patient']['patient.nearest_health_center']");
-		setAsAttributeByUUID(NEAREST_HEALTH_CENTER, nearestHealthCenter);
+		String nearestHealthCenter = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.NEAREST_HEALTH_CENTER);
+		setAsAttributeByUUID(context, personAttributes, NEAREST_HEALTH_CENTER, nearestHealthCenter);
 		
-		String emailAddress = JsonFormatUtils.readAsString(payload, "$['patient']['patient.email_address']");
-		setAsAttributeByUUID(EMAIL_ADDRESS, emailAddress);
+		String emailAddress = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.EMAIL_ADDRESS);
+		setAsAttributeByUUID(context, personAttributes, EMAIL_ADDRESS, emailAddress);
 		
-		String guardianFirstName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.guardian_first_name']");
-		setAsAttributeByUUID(GUARDIAN_FIRST_NAME, guardianFirstName);
+		String guardianFirstName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.GUARDIAN_FIRST_NAME);
+		setAsAttributeByUUID(context, personAttributes, GUARDIAN_FIRST_NAME, guardianFirstName);
 		
-		String guardianLastName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.guardian_last_name']");
-		setAsAttributeByUUID(GUARDIAN_LAST_NAME, guardianLastName);
+		String guardianLastName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.GUARDIAN_LAST_NAME);
+		setAsAttributeByUUID(context, personAttributes, GUARDIAN_LAST_NAME, guardianLastName);
 		
 		String alternativePhoneContact = JsonFormatUtils.readAsString(payload,
-		    "$['patient']['patient.alternate_phone_contact']");
-		setAsAttributeByUUID(ALTERNATE_PHONE_CONTACT, alternativePhoneContact);
+		    PayloadPaths._Patient.ALTERNATE_PHONE_CONTACT);
+		setAsAttributeByUUID(context, personAttributes, ALTERNATE_PHONE_CONTACT, alternativePhoneContact);
 		
-		String nextOfKinName = JsonFormatUtils.readAsString(payload, "$['patient']['patient.next_of_kin_name']");
-		setAsAttributeByUUID(NEXT_OF_KIN_NAME, nextOfKinName);
+		String nextOfKinName = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.NEXT_OF_KIN_NAME);
+		setAsAttributeByUUID(context, personAttributes, NEXT_OF_KIN_NAME, nextOfKinName);
 		
-		String nextOfKinRelationship = JsonFormatUtils.readAsString(payload,
-		    "$['patient']['patient.next_of_kin_relationship']");
-		setAsAttributeByUUID(NEXT_OF_KIN_RELATIONSHIP, nextOfKinRelationship);
+		String nextOfKinRelationship = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.NEXT_OF_KIN_RELATIONSHIP);
+		setAsAttributeByUUID(context, personAttributes, NEXT_OF_KIN_RELATIONSHIP, nextOfKinRelationship);
 		
-		String nextOfKinContact = JsonFormatUtils.readAsString(payload, "$['patient']['patient.next_of_kin_contact']");
-		setAsAttributeByUUID(NEXT_OF_KIN_CONTACT, nextOfKinContact);
+		String nextOfKinContact = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.NEXT_OF_KIN_CONTACT);
+		setAsAttributeByUUID(context, personAttributes, NEXT_OF_KIN_CONTACT, nextOfKinContact);
 		
-		String nextOfKinAddress = JsonFormatUtils.readAsString(payload, "$['patient']['patient.next_of_kin_address']");
-		setAsAttributeByUUID(NEXT_OF_KIN_ADDRESS, nextOfKinAddress);
+		String nextOfKinAddress = JsonFormatUtils.readAsString(payload, PayloadPaths._Patient.NEXT_OF_KIN_ADDRESS);
+		setAsAttributeByUUID(context, personAttributes, NEXT_OF_KIN_ADDRESS, nextOfKinAddress);
 		
 		unsavedPatient.setAttributes(personAttributes);
 	}
 	
-	private void setAsAttributeByUUID(String uuid, String value) {
+	private void setAsAttributeByUUID(final QueueInfoHandlerContext context, Set<PersonAttribute> personAttributes,
+	        String uuid, String value) {
 		PersonService personService = Context.getPersonService();
 		PersonAttributeType attributeType = personService.getPersonAttributeTypeByUuid(uuid);
 		if (attributeType != null && value != null && org.apache.commons.lang3.StringUtils.isNotBlank(value)) {
 			PersonAttribute personAttribute = new PersonAttribute(attributeType, value);
 			personAttributes.add(personAttribute);
 		} else if (attributeType == null) {
-			queueProcessorException
+			context.getException()
 			        .addException(new Exception("Unable to find Person Attribute type by uuid '" + uuid + "'"));
 		}
 	}
 	
-	private void setAsAttribute(String attributeTypeName, String value) {
+	private void setAsAttribute(final QueueInfoHandlerContext context, Set<PersonAttribute> personAttributes,
+	        String attributeTypeName, String value) {
 		PersonService personService = Context.getPersonService();
 		PersonAttributeType attributeType = personService.getPersonAttributeTypeByName(attributeTypeName);
 		if (attributeType != null && value != null && org.apache.commons.lang3.StringUtils.isNotBlank(value)) {
 			PersonAttribute personAttribute = new PersonAttribute(attributeType, value);
 			personAttributes.add(personAttribute);
 		} else if (attributeType == null) {
-			queueProcessorException.addException(new Exception("Unable to find Person Attribute type by name '"
+			context.getException().addException(new Exception("Unable to find Person Attribute type by name '"
 			        + attributeTypeName + "'"));
 		}
 	}
 	
-	private void setUnsavedPatientCreatorFromPayload() {
-		String userString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.user_system_id']");
-		String providerString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.provider_id']");
+	private void setUnsavedPatientCreatorFromPayload(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
+		JsonPayload payload = context.getParsedPayload();
+		String userString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.USER_SYSTEM_ID);
+		String providerString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.PROVIDER_ID);
 		
-		User user = Context.getUserService().getUserByUsername(userString);
+		User user = ReferenceDataCache.getUserByUsername(userString);
 		if (user == null) {
-			providerString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.provider_id']");
-			user = Context.getUserService().getUserByUsername(providerString);
+			providerString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.PROVIDER_ID);
+			user = ReferenceDataCache.getUserByUsername(providerString);
 		}
 		if (user == null) {
-			queueProcessorException.addException(new Exception("Unable to find user using the User Id: " + userString
+			context.getException().addException(new Exception("Unable to find user using the User Id: " + userString
 			        + " or Provider Id: " + providerString));
 		} else {
 			unsavedPatient.setCreator(user);
 		}
 	}
 	
-	private Patient findSimilarSavedPatient() {
+	private Patient findSimilarSavedPatient(final QueueInfoHandlerContext context) {
+		Patient unsavedPatient = getUnsavedPatient(context);
 		Patient savedPatient = null;
 		if (unsavedPatient.getNames().isEmpty()) {
 			PatientIdentifier identifier = unsavedPatient.getPatientIdentifier();
@@ -484,17 +502,18 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 	/**
 	 * Can't save patients unless they have required OpenMRS IDs
 	 */
-	private PatientIdentifier generateOpenMRSID() {
+	private PatientIdentifier generateOpenMRSID(final QueueInfoHandlerContext context) {
+		JsonPayload payload = context.getParsedPayload();
 		PatientIdentifierType openmrsIDType = Context.getPatientService().getPatientIdentifierTypeByUuid(
 		    "dfacd928-0370-4315-99d7-6ec1c9f7ae76");
 		
-		String locationIdString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.location_id']");
+		String locationIdString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.LOCATION_ID);
 		Location location = null;
 		int locationId;
 		
 		if (locationIdString != null) {
 			locationId = Integer.parseInt(locationIdString);
-			location = Context.getLocationService().getLocation(locationId);
+			location = ReferenceDataCache.getLocation(locationId);
 		}
 		
 		String generated = Context.getService(IdentifierSourceService.class).generateIdentifier(openmrsIDType,
@@ -514,7 +533,6 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 			e.printStackTrace();
 		}
 		if (obNode != null) {
-			ConceptService cs = Context.getConceptService();
 			RegistrationInfoService regDataService = Context.getService(RegistrationInfoService.class);
 			RegistrationInfo regData = regDataService.getRegistrationDataByTemporaryUuid(queueData.getPatientUuid());
 			if (regData != null) {
@@ -528,12 +546,12 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 						valueCoded = handleObsValues(entry.getValue().getTextValue().replace("^", "_"));
 						if (valueCoded != null && p != null) {
 							Obs o = new Obs();
-							o.setConcept(cs.getConcept(1712));
+							o.setConcept(ReferenceDataCache.getConcept(1712));
 							o.setDateCreated(queueData.getDateCreated());
 							o.setCreator(queueData.getCreator());
 							o.setObsDatetime(queueData.getDateCreated());
 							o.setPerson(p);
-							o.setValueCoded(cs.getConcept(valueCoded));
+							o.setValueCoded(ReferenceDataCache.getConcept(valueCoded));
 							Context.getObsService().saveObs(o, null);
 							
 						}
@@ -544,12 +562,12 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 						valueCoded = handleObsValues(entry.getValue().getTextValue().replace("^", "_"));
 						if (valueCoded != null && p != null) {
 							Obs o = new Obs();
-							o.setConcept(cs.getConcept(1542));
+							o.setConcept(ReferenceDataCache.getConcept(1542));
 							o.setDateCreated(queueData.getDateCreated());
 							o.setCreator(queueData.getCreator());
 							o.setObsDatetime(queueData.getDateCreated());
 							o.setPerson(p);
-							o.setValueCoded(cs.getConcept(valueCoded));
+							o.setValueCoded(ReferenceDataCache.getConcept(valueCoded));
 							Context.getObsService().saveObs(o, null);
 							
 						}
@@ -560,12 +578,12 @@ public class JsonRegistrationQueueInfoHandler implements QueueInfoHandler {
 						valueCoded = handleObsValues(entry.getValue().getTextValue().replace("^", "_"));
 						if (valueCoded != null && p != null) {
 							Obs o = new Obs();
-							o.setConcept(cs.getConcept(1054));
+							o.setConcept(ReferenceDataCache.getConcept(1054));
 							o.setDateCreated(queueData.getDateCreated());
 							o.setCreator(queueData.getCreator());
 							o.setObsDatetime(queueData.getDateCreated());
 							o.setPerson(p);
-							o.setValueCoded(cs.getConcept(valueCoded));
+							o.setValueCoded(ReferenceDataCache.getConcept(valueCoded));
 							Context.getObsService().saveObs(o, null);
 							
 						}
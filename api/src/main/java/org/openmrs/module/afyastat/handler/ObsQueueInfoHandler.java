@@ -20,20 +20,22 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.*;
 import org.openmrs.annotation.Handler;
-import org.openmrs.api.LocationService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.afyastat.api.service.RegistrationInfoService;
 import org.openmrs.module.afyastat.exception.StreamProcessorException;
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 import org.openmrs.module.afyastat.model.RegistrationInfo;
-import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.ConcurrentQueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
 import org.openmrs.module.afyastat.utils.JsonFormatUtils;
+import org.openmrs.module.afyastat.utils.JsonPayload;
+import org.openmrs.module.afyastat.utils.PayloadPaths;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
 import org.openmrs.module.afyastat.utils.PatientLookUpUtils;
 
 import org.springframework.stereotype.Component;
 
-import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -42,43 +44,42 @@ import java.util.*;
  */
 @Component
 @Handler(supports = AfyaStatQueueData.class, order = 3)
-public class ObsQueueInfoHandler implements QueueInfoHandler {
+public class ObsQueueInfoHandler implements ConcurrentQueueInfoHandler {
 	
 	public static final String DISCRIMINATOR_VALUE = "json-individual-obs";
 	
-	private static final DateFormat dateFormat = new SimpleDateFormat("dd-MM-yyyy");
+	private static final String DATE_PATTERN = "dd-MM-yyyy";
 	
-	private static final DateFormat dateTimeFormat = new SimpleDateFormat("dd-MM-yyyy HH:mm");
+	private static final String DATE_TIME_PATTERN = "dd-MM-yyyy HH:mm";
 	
-	private final Log log = LogFactory.getLog(ObsQueueInfoHandler.class);
-	
-	private StreamProcessorException queueProcessorException;
+	private static final String INDIVIDUAL_OBS_LIST = "individualObsList";
 	
-	private List<Obs> individualObsList;
+	private final Log log = LogFactory.getLog(ObsQueueInfoHandler.class);
 	
 	/**
-	 * @param queueData - QueueData
+	 * @param context - QueueInfoHandlerContext
+	 * @return QueueInfoHandlerContext
 	 * @throws StreamProcessorException
 	 */
 	@Override
-	public void process(final AfyaStatQueueData queueData) throws StreamProcessorException {
-		log.info("Processing encounter form data: " + queueData.getUuid());
+	public QueueInfoHandlerContext process(final QueueInfoHandlerContext context) throws StreamProcessorException {
+		log.info("Processing encounter form data: " + context.getQueueData().getUuid());
 		try {
-			if (validate(queueData)) {
-				for (Obs individualObs : individualObsList) {
-					Context.getObsService().saveObs(individualObs, null);
-				}
+			validate(context);
+			for (Obs individualObs : getIndividualObsList(context)) {
+				Context.getObsService().saveObs(individualObs, null);
 			}
 		}
 		catch (Exception e) {
 			if (!e.getClass().equals(StreamProcessorException.class))
-				queueProcessorException.addException(e);
+				context.getException().addException(e);
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
+		return context;
 	}
 	
 	/**
@@ -91,30 +92,31 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 	}
 	
 	/**
-	 * @param queueData - QueueDate
-	 * @return boolean
+	 * @param context - QueueInfoHandlerContext
+	 * @return QueueInfoHandlerContext
 	 */
 	@Override
-	public boolean validate(AfyaStatQueueData queueData) {
+	public QueueInfoHandlerContext validate(final QueueInfoHandlerContext context) {
+		AfyaStatQueueData queueData = context.getQueueData();
 		try {
-			queueProcessorException = new StreamProcessorException();
 			log.info("Processing encounter form data: " + queueData.getUuid());
-			String payload = queueData.getPayload();
-			individualObsList = new ArrayList();
+			JsonPayload payload = context.getParsedPayload();
+			List<Obs> individualObsList = new ArrayList<Obs>();
+			context.setAttribute(INDIVIDUAL_OBS_LIST, individualObsList);
 			
-			Object obsObject = JsonFormatUtils.readAsObject(queueData.getPayload(), "$['observation']");
-			processObs(null, obsObject);
+			Object obsObject = JsonFormatUtils.readAsObject(payload, PayloadPaths.OBSERVATION);
+			processObs(context, null, obsObject);
 			
-			String userString = JsonFormatUtils.readAsString(payload, "$['encounter']['encounter.user_system_id']");
-			User user = Context.getUserService().getUserByUsername(userString);
+			String userString = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.USER_SYSTEM_ID);
+			User user = ReferenceDataCache.getUserByUsername(userString);
 			if (user == null) {
-				queueProcessorException.addException(new Exception("Unable to find user using the User Id: " + userString));
+				context.getException().addException(new Exception("Unable to find user using the User Id: " + userString));
 			}
 			
-			String jsonPayloadTimezone = JsonFormatUtils.readAsString(payload,
-			    "$['encounter']['encounter.device_time_zone']");
+			String jsonPayloadTimezone = JsonFormatUtils.readAsString(payload, PayloadPaths._Encounter.DEVICE_TIME_ZONE);
 			Date encounterDatetime = JsonFormatUtils.readAsDateTime(payload,
-			    "$['encounter']['encounter.encounter_datetime']", dateTimeFormat, jsonPayloadTimezone);
+			    PayloadPaths._Encounter.ENCOUNTER_DATETIME, new SimpleDateFormat(DATE_TIME_PATTERN),
+			    jsonPayloadTimezone);
 			for (Obs obs : individualObsList) {
 				if (obs.getObsDatetime() == null) {
 					obs.setObsDatetime(encounterDatetime);
@@ -122,22 +124,27 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 				obs.setCreator(user);
 			}
 			
-			processPatient(payload);
+			processPatient(context, payload);
 			
-			return true;
+			return context;
 		}
 		catch (Exception e) {
-			queueProcessorException.addException(e);
-			return false;
+			context.getException().addException(e);
+			return context;
 		}
 		finally {
-			if (queueProcessorException.anyExceptions()) {
-				throw queueProcessorException;
+			if (context.anyExceptions()) {
+				throw context.getException();
 			}
 		}
 	}
 	
-	private void processObs(final Obs parentObs, final Object obsObject) {
+	@SuppressWarnings("unchecked")
+	private List<Obs> getIndividualObsList(final QueueInfoHandlerContext context) {
+		return (List<Obs>) context.getAttribute(INDIVIDUAL_OBS_LIST);
+	}
+	
+	private void processObs(final QueueInfoHandlerContext context, final Obs parentObs, final Object obsObject) {
 		if (obsObject instanceof JSONObject) {
 			JSONObject obsJsonObject = (JSONObject) obsObject;
 			for (String conceptQuestion : obsJsonObject.keySet()) {
@@ -145,16 +152,16 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 				if (conceptElements.length < 3)
 					continue;
 				int conceptId = Integer.parseInt(conceptElements[0]);
-				Concept concept = Context.getConceptService().getConcept(conceptId);
+				Concept concept = ReferenceDataCache.getConcept(conceptId);
 				if (concept == null) {
-					queueProcessorException.addException(new Exception("Unable to find Concept for Question with ID: "
+					context.getException().addException(new Exception("Unable to find Concept for Question with ID: "
 					        + conceptId));
 				} else {
 					if (concept.isSet()) {
 						Obs obsGroup = new Obs();
 						obsGroup.setConcept(concept);
 						Object childObsObject = obsJsonObject.get(conceptQuestion);
-						processObsObject(obsGroup, childObsObject);
+						processObsObject(context, obsGroup, childObsObject);
 						if (parentObs != null) {
 							parentObs.addGroupMember(obsGroup);
 						}
@@ -163,17 +170,17 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 						if (valueObject instanceof JSONArray) {
 							JSONArray jsonArray = (JSONArray) valueObject;
 							for (Object arrayElement : jsonArray) {
-								createObs(parentObs, concept, arrayElement);
+								createObs(context, parentObs, concept, arrayElement);
 							}
 						} else {
-							createObs(parentObs, concept, valueObject);
+							createObs(context, parentObs, concept, valueObject);
 						}
 					}
 				}
 			}
 		} else if (obsObject instanceof LinkedHashMap) {
 			Object obsAsJsonObject = new JSONObject((Map<String, ?>) obsObject);
-			processObs(parentObs, obsAsJsonObject);
+			processObs(context, parentObs, obsAsJsonObject);
 		}
 	}
 	
@@ -181,7 +188,8 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 	 * @param concept - Concept
 	 * @param o - java.lang.Object
 	 */
-	private void createObs(final Obs parentObs, final Concept concept, final Object o) {
+	private void createObs(final QueueInfoHandlerContext context, final Obs parentObs, final Concept concept,
+	        final Object o) {
 		String value = null;
 		Obs obs = new Obs();
 		obs.setConcept(concept);
@@ -208,9 +216,9 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 		} else if (concept.getDatatype().isCoded()) {
 			String[] valueCodedElements = StringUtils.split(value, "\\^");
 			int valueCodedId = Integer.parseInt(valueCodedElements[0]);
-			Concept valueCoded = Context.getConceptService().getConcept(valueCodedId);
+			Concept valueCoded = ReferenceDataCache.getConcept(valueCodedId);
 			if (valueCoded == null) {
-				queueProcessorException.addException(new Exception("Unable to find concept for value coded with id: "
+				context.getException().addException(new Exception("Unable to find concept for value coded with id: "
 				        + valueCodedId));
 			} else {
 				obs.setValueCoded(valueCoded);
@@ -218,7 +226,7 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 		} else if (concept.getDatatype().isText()) {
 			obs.setValueText(value);
 		}
-		individualObsList.add(obs);
+		getIndividualObsList(context).add(obs);
 		if (parentObs != null) {
 			parentObs.addGroupMember(obs);
 		}
@@ -228,23 +236,23 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 	 * @param parentObs Obs
 	 * @param childObsObject - java.lang.Object
 	 */
-	private void processObsObject(final Obs parentObs, final Object childObsObject) {
+	private void processObsObject(final QueueInfoHandlerContext context, final Obs parentObs, final Object childObsObject) {
 		//Object o = JsonUtils.readAsObject(childObsObject.toString(), "$");
 		if (childObsObject instanceof JSONArray) {
 			JSONArray jsonArray = (JSONArray) childObsObject;
 			for (Object arrayElement : jsonArray) {
 				Obs obsGroup = new Obs();
 				obsGroup.setConcept(parentObs.getConcept());
-				processObs(obsGroup, arrayElement);
-				individualObsList.add(obsGroup);
+				processObs(context, obsGroup, arrayElement);
+				getIndividualObsList(context).add(obsGroup);
 			}
 		} else if (childObsObject instanceof JSONObject) {
-			processObs(parentObs, childObsObject);
-			individualObsList.add(parentObs);
+			processObs(context, parentObs, childObsObject);
+			getIndividualObsList(context).add(parentObs);
 		} else if (childObsObject instanceof LinkedHashMap) {
 			Object childObsAsJsonObject = new JSONObject((Map<String, ?>) childObsObject);
-			processObs(parentObs, childObsAsJsonObject);
-			individualObsList.add(parentObs);
+			processObs(context, parentObs, childObsAsJsonObject);
+			getIndividualObsList(context).add(parentObs);
 		}
 	}
 	
@@ -256,23 +264,21 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 		return DISCRIMINATOR_VALUE;
 	}
 	
-	private void processPatient(final Object patientObject) {
+	private void processPatient(final QueueInfoHandlerContext context, final JsonPayload patientPayload) {
 		Patient unsavedPatient = new Patient();
-		String patientPayload = patientObject.toString();
 		
-		String uuid = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.uuid']");
+		String uuid = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.UUID);
 		unsavedPatient.setUuid(uuid);
 		
 		PatientService patientService = Context.getPatientService();
-		LocationService locationService = Context.getLocationService();
 		PatientIdentifierType defaultIdentifierType = patientService.getPatientIdentifierType(1);
 		
-		String identifier = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.medical_record_number']");
-		String identifierTypeUuid = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.identifier_type']");
-		String locationUuid = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.identifier_location']");
+		String identifier = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.MEDICAL_RECORD_NUMBER);
+		String identifierTypeUuid = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.IDENTIFIER_TYPE);
+		String locationUuid = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.IDENTIFIER_LOCATION);
 		
 		PatientIdentifier patientIdentifier = new PatientIdentifier();
-		Location location = StringUtils.isNotBlank(locationUuid) ? locationService.getLocationByUuid(locationUuid) : null;
+		Location location = StringUtils.isNotBlank(locationUuid) ? ReferenceDataCache.getLocationByUuid(locationUuid) : null;
 		patientIdentifier.setLocation(location);
 		PatientIdentifierType patientIdentifierType = StringUtils.isNotBlank(identifierTypeUuid) ? patientService
 		        .getPatientIdentifierTypeByUuid(identifierTypeUuid) : defaultIdentifierType;
@@ -280,18 +286,18 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 		patientIdentifier.setIdentifier(identifier);
 		unsavedPatient.addIdentifier(patientIdentifier);
 		
-		Date birthdate = JsonFormatUtils.readAsDate(patientPayload, "$['patient']['patient.birth_date']");
+		Date birthdate = JsonFormatUtils.readAsDate(patientPayload, PayloadPaths._Patient.BIRTH_DATE);
 		boolean birthdateEstimated = JsonFormatUtils.readAsBoolean(patientPayload,
-		    "$['patient']['patient.birthdate_estimated']");
-		String gender = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.sex']");
+		    PayloadPaths._Patient.BIRTHDATE_ESTIMATED);
+		String gender = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.SEX);
 		
 		unsavedPatient.setBirthdate(birthdate);
 		unsavedPatient.setBirthdateEstimated(birthdateEstimated);
 		unsavedPatient.setGender(gender);
 		
-		String givenName = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.given_name']");
-		String middleName = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.middle_name']");
-		String familyName = JsonFormatUtils.readAsString(patientPayload, "$['patient']['patient.family_name']");
+		String givenName = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.GIVEN_NAME);
+		String middleName = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.MIDDLE_NAME);
+		String familyName = JsonFormatUtils.readAsString(patientPayload, PayloadPaths._Patient.FAMILY_NAME);
 		
 		PersonName personName = new PersonName();
 		personName.setGivenName(givenName);
@@ -321,10 +327,10 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 		}
 		
 		if (candidatePatient == null) {
-			queueProcessorException.addException(new Exception(
+			context.getException().addException(new Exception(
 			        "Unable to uniquely identify patient for this encounter form data. "));
 		} else {
-			for (Obs obs : individualObsList) {
+			for (Obs obs : getIndividualObsList(context)) {
 				obs.setPerson(candidatePatient);
 			}
 		}
@@ -337,7 +343,7 @@ public class ObsQueueInfoHandler implements QueueInfoHandler {
 	private Date parseDate(final String dateValue) {
 		Date date = null;
 		try {
-			date = dateFormat.parse(dateValue);
+			date = new SimpleDateFormat(DATE_PATTERN).parse(dateValue);
 		}
 		catch (ParseException e) {
 			log.error("Unable to parse date data for encounter!", e);
@@ -0,0 +1,106 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.afyastat.handler;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.afyastat.model.AfyaStatQueueData;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
+import org.openmrs.util.HandlerUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry mapping each queue data discriminator to the handler responsible for it. The registry
+ * is built once when the module is started and keeps the handlers in their processing order, so
+ * the queue processor can route every queue data with a single lookup.
+ */
+public class QueueInfoHandlerRegistry {
+	
+	private static final Log log = LogFactory.getLog(QueueInfoHandlerRegistry.class);
+	
+	private static volatile Map<String, QueueInfoHandler> handlers;
+	
+	private QueueInfoHandlerRegistry() {
+	}
+	
+	/**
+	 * Resolve all the registered queue data handlers and index them by their discriminator.
+	 */
+	public static synchronized void initialize() {
+		Map<String, QueueInfoHandler> registry = new LinkedHashMap<String, QueueInfoHandler>();
+		List<QueueInfoHandler> queueDataHandlers = HandlerUtil.getHandlersForType(QueueInfoHandler.class,
+		    AfyaStatQueueData.class);
+		for (QueueInfoHandler queueDataHandler : queueDataHandlers) {
+			String discriminator = queueDataHandler.getDiscriminator();
+			if (registry.containsKey(discriminator)) {
+				log.warn("Ignoring handler " + queueDataHandler.getClass().getName() + ", discriminator " + discriminator
+				        + " is already handled by " + registry.get(discriminator).getClass().getName());
+			} else {
+				registry.put(discriminator, queueDataHandler);
+			}
+		}
+		handlers = Collections.unmodifiableMap(registry);
+		log.info("Registered " + handlers.size() + " queue data handlers: " + handlers.keySet());
+	}
+	
+	/**
+	 * Drop the registered handlers. The registry will be rebuilt on the next access.
+	 */
+	public static synchronized void clear() {
+		handlers = null;
+	}
+	
+	/**
+	 * Get the handler for the discriminator.
+	 * 
+	 * @param discriminator the discriminator of the queue data.
+	 * @return the handler for the discriminator or null when no handler is registered.
+	 */
+	public static QueueInfoHandler getHandler(final String discriminator) {
+		return getHandlers().get(discriminator);
+	}
+	
+	/**
+	 * Get the handler for the queue data.
+	 * 
+	 * @param queueData the queue data.
+	 * @return the handler for the queue data or null when no handler is registered.
+	 */
+	public static QueueInfoHandler getHandler(final AfyaStatQueueData queueData) {
+		return getHandler(queueData.getDiscriminator());
+	}
+	
+	/**
+	 * Get all the registered discriminators in the order their handlers should be processed.
+	 * 
+	 * @return ordered list of the discriminators.
+	 */
+	public static List<String> getDiscriminators() {
+		return new ArrayList<String>(getHandlers().keySet());
+	}
+	
+	private static Map<String, QueueInfoHandler> getHandlers() {
+		Map<String, QueueInfoHandler> registry = handlers;
+		if (registry == null) {
+			initialize();
+			registry = handlers;
+		}
+		return registry;
+	}
+}
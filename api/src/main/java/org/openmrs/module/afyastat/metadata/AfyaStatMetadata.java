@@ -38,6 +38,40 @@ public class AfyaStatMetadata extends AbstractMetadataBundle {
 	
 	public static final String MEDIC_MOBILE_PWD = "medic.chtPwd";
 	
+	public static final String MEDIC_QUEUE_PROCESSING_CHUNK_SIZE = "medic.queueProcessingChunkSize";
+	
+	public static final String MEDIC_QUEUE_PROCESSING_WORKERS = "medic.queueProcessingWorkers";
+	
+	public static final String MEDIC_QUEUE_PROCESSING_LEASE_SECONDS = "medic.queueProcessingLeaseSeconds";
+	
+	public static final String MEDIC_QUEUE_PROCESSING_BATCH_SIZE = "medic.queueProcessingBatchSize";
+	
+	public static final String MEDIC_REFERENCE_DATA_CACHE_SIZE = "medic.referenceDataCacheSize";
+	
+	public static final String MEDIC_REFERENCE_DATA_CACHE_TTL_SECONDS = "medic.referenceDataCacheTtlSeconds";
+	
+	public static final String MEDIC_MAX_REQUEST_BODY_SIZE = "medic.maxRequestBodySize";
+	
+	public static final String MEDIC_ASYNC_INGESTION = "medic.asyncIngestion";
+	
+	public static final String MEDIC_ASYNC_INGESTION_QUEUE_CAPACITY = "medic.asyncIngestionQueueCapacity";
+	
+	public static final String MEDIC_ASYNC_INGESTION_WORKERS = "medic.asyncIngestionWorkers";
+	
+	public static final String MEDIC_ASYNC_INGESTION_BATCH_SIZE = "medic.asyncIngestionBatchSize";
+	
+	public static final String MEDIC_COMPRESS_PUSH_REQUESTS = "medic.compressPushRequests";
+	
+	public static final String MEDIC_COMPRESS_PAYLOADS = "medic.compressPayloads";
+	
+	public static final String MEDIC_PAYLOAD_COMPRESSION_CHUNK_SIZE = "medic.payloadCompressionChunkSize";
+	
+	public static final String MEDIC_ARCHIVE_RETENTION_DAYS = "medic.archiveRetentionDays";
+	
+	public static final String MEDIC_ARCHIVE_PURGE_BATCH_SIZE = "medic.archivePurgeBatchSize";
+	
+	public static final String MEDIC_SEARCH_INDEX_CHUNK_SIZE = "medic.searchIndexChunkSize";
+	
 	public static final String TELEPHONE_CONTACT = "b2c38640-2603-4629-aebd-3b54f33f1e3a";
 	
 	public static final class _PatientIdentifierType {
@@ -55,6 +89,44 @@ public class AfyaStatMetadata extends AbstractMetadataBundle {
 		install(globalProperty(MEDIC_MOBILE_SERVER_URL, "Server URL for Medic Mobile CHT", null));
 		install(globalProperty(MEDIC_MOBILE_USER, "Medic Mobile CHT user", null));
 		install(globalProperty(MEDIC_MOBILE_PWD, "Medic Mobile CHT pwd", null));
+		install(globalProperty(MEDIC_QUEUE_PROCESSING_CHUNK_SIZE,
+		    "Number of queue data rows loaded into memory at a time by the queue data processor", "500"));
+		install(globalProperty(MEDIC_QUEUE_PROCESSING_WORKERS,
+		    "Number of workers processing queue data concurrently, partitioned by patient. 1 processes serially", "1"));
+		install(globalProperty(MEDIC_QUEUE_PROCESSING_LEASE_SECONDS,
+		    "Number of seconds a queue data processor holds its claim on a chunk of queue data", "900"));
+		install(globalProperty(MEDIC_QUEUE_PROCESSING_BATCH_SIZE,
+		    "Number of queue data committed together in one transaction by the queue data processor. 1 disables batching",
+		    "1"));
+		install(globalProperty(MEDIC_REFERENCE_DATA_CACHE_SIZE,
+		    "Maximum number of concepts, forms, locations, providers or users kept in each reference data cache", "1000"));
+		install(globalProperty(MEDIC_REFERENCE_DATA_CACHE_TTL_SECONDS,
+		    "Number of seconds metadata looked up by the queue data processor is kept in the reference data cache", "600"));
+		install(globalProperty(MEDIC_MAX_REQUEST_BODY_SIZE,
+		    "Maximum size in bytes of a request body accepted by the CHT data endpoints", "33554432"));
+		install(globalProperty(MEDIC_ASYNC_INGESTION,
+		    "true to acknowledge CHT documents right away and ingest them in the background. Read when the module starts",
+		    "false"));
+		install(globalProperty(MEDIC_ASYNC_INGESTION_QUEUE_CAPACITY,
+		    "Number of CHT documents waiting for the background ingestion before new documents are refused", "1000"));
+		install(globalProperty(MEDIC_ASYNC_INGESTION_WORKERS, "Number of workers of the background ingestion", "2"));
+		install(globalProperty(MEDIC_ASYNC_INGESTION_BATCH_SIZE,
+		    "Number of CHT documents saved together by a worker of the background ingestion", "50"));
+		install(globalProperty(MEDIC_COMPRESS_PUSH_REQUESTS,
+		    "true to gzip the contacts pushed to the CHT server. The server has to accept gzip request bodies", "false"));
+		install(globalProperty(MEDIC_COMPRESS_PAYLOADS,
+		    "true to store the payloads of the queue, archive and error data compressed. Existing payloads are "
+		            + "compressed in the background by the Medic Payload Compression task", "false"));
+		install(globalProperty(MEDIC_PAYLOAD_COMPRESSION_CHUNK_SIZE,
+		    "Number of existing payloads compressed in one transaction by the Medic Payload Compression task", "500"));
+		install(globalProperty(MEDIC_ARCHIVE_RETENTION_DAYS,
+		    "Number of days the archive data are kept in the database before the Medic Archive Retention task moves "
+		            + "them to the cold storage files. 0 keeps them in the database", "0"));
+		install(globalProperty(MEDIC_ARCHIVE_PURGE_BATCH_SIZE,
+		    "Number of archive data moved to the cold storage files in one transaction by the Medic Archive Retention task",
+		    "500"));
+		install(globalProperty(MEDIC_SEARCH_INDEX_CHUNK_SIZE,
+		    "Number of queue, archive or error data indexed in one transaction by the Medic Search Index task", "500"));
 		
 		install(patientIdentifierType("CHT Record Reference UUID", "Record reference UUID from CHT", null, null, null,
 		    PatientIdentifierType.LocationBehavior.NOT_USED, false, _PatientIdentifierType.CHT_RECORD_UUID));
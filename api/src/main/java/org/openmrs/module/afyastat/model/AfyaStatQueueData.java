@@ -3,26 +3,68 @@
  * Version 1.0 (the "License"); you may not use this file except in
  * compliance with the License. You may obtain a copy of the License at
  * http://license.openmrs.org
- *
+ * 
  * Software distributed under the License is distributed on an "AS IS"
  * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
  * License for the specific language governing rights and limitations
  * under the License.
- *
+ * 
  * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
  */
 package org.openmrs.module.afyastat.model;
 
+import java.util.Date;
+
 /**
  * It is a model class. It should extend either {@link org.openmrs.BaseOpenmrsObject} or
  * {@link org.openmrs.BaseOpenmrsMetadata}.
  */
 public class AfyaStatQueueData extends AuditableInfo {
 	
+	private String claimedBy;
+	
+	private Date leaseExpiry;
+	
 	public AfyaStatQueueData() {
 	}
 	
 	public AfyaStatQueueData(final AuditableInfo data) {
 		super(data);
 	}
+	
+	/**
+	 * Get the queue data processor currently holding the claim on this queue data.
+	 * 
+	 * @return the processor holding the claim or null when the queue data was never claimed.
+	 */
+	public String getClaimedBy() {
+		return claimedBy;
+	}
+	
+	/**
+	 * Set the queue data processor currently holding the claim on this queue data.
+	 * 
+	 * @param claimedBy the processor holding the claim.
+	 */
+	public void setClaimedBy(final String claimedBy) {
+		this.claimedBy = claimedBy;
+	}
+	
+	/**
+	 * Get the time when the claim on this queue data expires and other processors can claim it.
+	 * 
+	 * @return the expiry time of the claim.
+	 */
+	public Date getLeaseExpiry() {
+		return leaseExpiry;
+	}
+	
+	/**
+	 * Set the time when the claim on this queue data expires and other processors can claim it.
+	 * 
+	 * @param leaseExpiry the expiry time of the claim.
+	 */
+	public void setLeaseExpiry(final Date leaseExpiry) {
+		this.leaseExpiry = leaseExpiry;
+	}
 }
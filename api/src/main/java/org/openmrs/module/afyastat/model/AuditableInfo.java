@@ -39,6 +39,8 @@ public abstract class AuditableInfo extends BaseOpenmrsData implements Info {
 	
 	private String formDataUuid;
 	
+	private String documentId;
+	
 	/**
 	 * **** Audit information ******
 	 */
@@ -55,6 +57,7 @@ public abstract class AuditableInfo extends BaseOpenmrsData implements Info {
 		setFormName(data.getFormName());
 		setPatientUuid(data.getPatientUuid());
 		setFormDataUuid(data.getFormDataUuid());
+		setDocumentId(data.getDocumentId());
 	}
 	
 	/**
@@ -167,4 +170,23 @@ public abstract class AuditableInfo extends BaseOpenmrsData implements Info {
 	public void setFormDataUuid(String formDataUuid) {
 		this.formDataUuid = formDataUuid;
 	}
+	
+	/**
+	 * Get the identity of the CHT document this data was created from, the document <code>_id</code>
+	 * followed by its <code>_rev</code> when the document has one.
+	 * 
+	 * @return the identity of the CHT document.
+	 */
+	public String getDocumentId() {
+		return documentId;
+	}
+	
+	/**
+	 * Set the identity of the CHT document this data was created from.
+	 * 
+	 * @param documentId the identity of the CHT document.
+	 */
+	public void setDocumentId(String documentId) {
+		this.documentId = documentId;
+	}
 }
@@ -0,0 +1,42 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.model;
+
+import java.util.List;
+
+/**
+ * A page of queue, error or archive data read from a cursor, see
+ * {@link org.openmrs.module.afyastat.utils.PageCursor}.
+ */
+public class InfoPage<T extends Info> {
+	
+	private final List<T> data;
+	
+	private final String nextCursor;
+	
+	public InfoPage(final List<T> data, final String nextCursor) {
+		this.data = data;
+		this.nextCursor = nextCursor;
+	}
+	
+	/**
+	 * @return the data of the page, newest first.
+	 */
+	public List<T> getData() {
+		return data;
+	}
+	
+	/**
+	 * @return the cursor of the next page or null when this is the last page.
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
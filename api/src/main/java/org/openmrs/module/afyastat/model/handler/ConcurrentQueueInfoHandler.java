@@ -0,0 +1,22 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.afyastat.model.handler;
+
+/**
+ * Marks a queue data handler which keeps every state of the queue data in the
+ * {@link QueueInfoHandlerContext}, so the queue data processor can run it from several workers at the
+ * same time. The queue data of the other handlers are always processed by a single thread.
+ */
+public interface ConcurrentQueueInfoHandler extends QueueInfoHandler {
+}
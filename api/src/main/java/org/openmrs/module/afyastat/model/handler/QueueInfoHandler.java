@@ -21,11 +21,14 @@ import org.openmrs.module.afyastat.model.AfyaStatQueueData;
 public interface QueueInfoHandler {
 	
 	/**
-	 * Implementation of how the queue data should be processed.
+	 * Implementation of how the queue data should be processed. Implementations must not keep any
+	 * state of the queue data in their fields, so the same handler can process several queue data
+	 * at the same time.
 	 * 
-	 * @param queueData the queued data.
+	 * @param context the context holding the queued data.
+	 * @return the context with the objects created while processing the queue data.
 	 */
-	void process(final AfyaStatQueueData queueData) throws StreamProcessorException;
+	QueueInfoHandlerContext process(final QueueInfoHandlerContext context) throws StreamProcessorException;
 	
 	/**
 	 * Flag whether the current queue data handler can handle the queue data.
@@ -38,10 +41,11 @@ public interface QueueInfoHandler {
 	/**
 	 * Validating the the payload before processing the data
 	 * 
-	 * @param queueData the queue data.
-	 * @return true when payload can be process
+	 * @param context the context holding the queue data.
+	 * @return the context with the objects built from the payload when payload can be process
+	 * @throws StreamProcessorException when the payload can not be processed
 	 */
-	boolean validate(final AfyaStatQueueData queueData);
+	QueueInfoHandlerContext validate(final QueueInfoHandlerContext context) throws StreamProcessorException;
 	
 	/**
 	 * Get the discriminator for this handler
@@ -0,0 +1,109 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.afyastat.model.handler;
+
+import org.openmrs.module.afyastat.exception.StreamProcessorException;
+import org.openmrs.module.afyastat.model.AfyaStatQueueData;
+import org.openmrs.module.afyastat.utils.JsonPayload;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the state of a single validate / process invocation of a {@link QueueInfoHandler}. The
+ * handlers themselves are shared singletons and must not keep any per queue data state in their
+ * fields, everything they build while working on a queue data lives in this object instead.
+ */
+public class QueueInfoHandlerContext {
+	
+	private final AfyaStatQueueData queueData;
+	
+	private final StreamProcessorException exception;
+	
+	private final Map<String, Object> attributes;
+	
+	private JsonPayload parsedPayload;
+	
+	/**
+	 * Create a new context for the queue data.
+	 * 
+	 * @param queueData the queue data to be validated or processed.
+	 */
+	public QueueInfoHandlerContext(final AfyaStatQueueData queueData) {
+		this.queueData = queueData;
+		this.exception = new StreamProcessorException();
+		this.attributes = new HashMap<String, Object>();
+	}
+	
+	/**
+	 * @return the queue data.
+	 */
+	public AfyaStatQueueData getQueueData() {
+		return queueData;
+	}
+	
+	/**
+	 * @return the payload of the queue data.
+	 */
+	public String getPayload() {
+		return queueData.getPayload();
+	}
+	
+	/**
+	 * Get the payload of the queue data parsed into a json document. The payload is parsed once per
+	 * context, and shared by the handler and the queue processor.
+	 * 
+	 * @return the parsed payload of the queue data.
+	 */
+	public JsonPayload getParsedPayload() {
+		if (parsedPayload == null) {
+			parsedPayload = new JsonPayload(queueData.getPayload());
+		}
+		return parsedPayload;
+	}
+	
+	/**
+	 * @return the exception collecting all the errors found while working on the queue data.
+	 */
+	public StreamProcessorException getException() {
+		return exception;
+	}
+	
+	/**
+	 * @return true when any error was found while working on the queue data.
+	 */
+	public boolean anyExceptions() {
+		return exception.anyExceptions();
+	}
+	
+	/**
+	 * Get an object built by the handler while working on the queue data.
+	 * 
+	 * @param name the name of the object.
+	 * @return the object or null when no object with the name was set.
+	 */
+	public Object getAttribute(final String name) {
+		return attributes.get(name);
+	}
+	
+	/**
+	 * Set an object built by the handler while working on the queue data.
+	 * 
+	 * @param name the name of the object.
+	 * @param value the object.
+	 */
+	public void setAttribute(final String name, final Object value) {
+		attributes.put(name, value);
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.task;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.DateTime;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.api.service.InfoService;
+import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Moves the archive data archived more than <code>medic.archiveRetentionDays</code> days ago to the
+ * cold storage files in the <code>afyastat/archive</code> application data directory, one file per
+ * month, and deletes them from the database in batches of <code>medic.archivePurgeBatchSize</code>.
+ * It does nothing while the retention is 0. Support staff can restore the archive data of a form
+ * data uuid with {@link InfoService#rehydrateArchiveData(String)}.
+ * <p>
+ * When the archive table is partitioned by month on <code>date_archived</code>, the task keeps
+ * {@link #MONTHS_AHEAD} empty monthly partitions ahead and drops the partitions whose archive data
+ * are all past the retention window once they are copied to the cold storage, instead of deleting
+ * the rows one by one. The archive data of a partition are then kept until its last day is past the
+ * retention window.
+ */
+public class ArchiveRetentionTask extends AbstractTask {
+	
+	private static final int DEFAULT_BATCH_SIZE = 500;
+	
+	private static final int MONTHS_AHEAD = 3;
+	
+	private final Log log = LogFactory.getLog(ArchiveRetentionTask.class);
+	
+	/**
+	 * @see org.openmrs.scheduler.Task#execute()
+	 */
+	@Override
+	public void execute() {
+		Context.openSession();
+		try {
+			if (!Context.isAuthenticated()) {
+				authenticate();
+			}
+			InfoService infoService = Context.getService(InfoService.class);
+			Map<String, Date> partitions = infoService.getArchivePartitions();
+			if (!partitions.isEmpty()) {
+				int added = infoService.addArchivePartitions(new DateTime().plusMonths(MONTHS_AHEAD).toDate());
+				if (added > 0) {
+					log.info("Added " + added + " monthly partitions to the archive");
+				}
+			}
+			
+			AdministrationService administrationService = Context.getAdministrationService();
+			int retentionDays = NumberUtils.toInt(administrationService
+			        .getGlobalProperty(AfyaStatMetadata.MEDIC_ARCHIVE_RETENTION_DAYS));
+			if (retentionDays <= 0) {
+				return;
+			}
+			int batchSize = NumberUtils.toInt(administrationService
+			        .getGlobalProperty(AfyaStatMetadata.MEDIC_ARCHIVE_PURGE_BATCH_SIZE), DEFAULT_BATCH_SIZE);
+			if (batchSize <= 0) {
+				batchSize = DEFAULT_BATCH_SIZE;
+			}
+			Date archivedBefore = new DateTime().minusDays(retentionDays).toDate();
+			if (partitions.isEmpty()) {
+				moveArchiveData(infoService, archivedBefore, batchSize);
+			} else {
+				dropArchivePartitions(infoService, partitions, archivedBefore, batchSize);
+			}
+		}
+		finally {
+			Context.closeSession();
+		}
+	}
+	
+	private void moveArchiveData(final InfoService infoService, final Date archivedBefore, final int batchSize) {
+		int moved = 0;
+		int batchMoved;
+		do {
+			batchMoved = infoService.moveArchiveDataToColdStorage(archivedBefore, batchSize);
+			// the payloads of the moved archive data are not needed anymore.
+			Context.clearSession();
+			moved += batchMoved;
+		} while (batchMoved > 0);
+		if (moved > 0) {
+			log.info("Moved " + moved + " archive data archived before " + archivedBefore + " to the cold storage");
+		}
+	}
+	
+	private void dropArchivePartitions(final InfoService infoService, final Map<String, Date> partitions,
+	        final Date archivedBefore, final int batchSize) {
+		for (Map.Entry<String, Date> partition : partitions.entrySet()) {
+			Date partitionArchivedBefore = partition.getValue();
+			if (partitionArchivedBefore == null || partitionArchivedBefore.after(archivedBefore)) {
+				break;
+			}
+			// the older partitions are already dropped, so the archive data before the date are all in this one.
+			Integer lastId = infoService.exportArchiveDataToColdStorage(partitionArchivedBefore, 0, batchSize);
+			while (lastId != null) {
+				Context.clearSession();
+				lastId = infoService.exportArchiveDataToColdStorage(partitionArchivedBefore, lastId, batchSize);
+			}
+			infoService.dropArchivePartition(partition.getKey());
+			log.info("Moved the archive partition " + partition.getKey() + " to the cold storage");
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.task;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.api.AfyastatService;
+import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
+import org.openmrs.module.afyastat.utils.PayloadCompression;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compresses the payloads of the queue, archive and error data written before the compression of
+ * the payloads was enabled, a chunk of <code>medic.payloadCompressionChunkSize</code> rows per
+ * transaction. It does nothing, and stops, while <code>medic.compressPayloads</code> is false. The
+ * task remembers how far it got in each table, so the following runs only read the rows added since.
+ */
+public class CompressPayloadsTask extends AbstractTask {
+	
+	private static final String[] TABLES = { "medic_queue_data", "medic_error_data", "medic_archive_data" };
+	
+	private static final int DEFAULT_CHUNK_SIZE = 500;
+	
+	private final Log log = LogFactory.getLog(CompressPayloadsTask.class);
+	
+	private final Map<String, Integer> lastIds = new HashMap<String, Integer>();
+	
+	/**
+	 * @see org.openmrs.scheduler.Task#execute()
+	 */
+	@Override
+	public void execute() {
+		Context.openSession();
+		try {
+			if (!Context.isAuthenticated()) {
+				authenticate();
+			}
+			if (!PayloadCompression.isEnabled()) {
+				return;
+			}
+			int chunkSize = NumberUtils.toInt(Context.getAdministrationService().getGlobalProperty(
+			    AfyaStatMetadata.MEDIC_PAYLOAD_COMPRESSION_CHUNK_SIZE), DEFAULT_CHUNK_SIZE);
+			for (String table : TABLES) {
+				compress(table, chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE);
+			}
+		}
+		finally {
+			Context.closeSession();
+		}
+	}
+	
+	private void compress(final String table, final int chunkSize) {
+		AfyastatService afyastatService = Context.getService(AfyastatService.class);
+		Integer lastId = lastIds.containsKey(table) ? lastIds.get(table) : 0;
+		int chunks = 0;
+		while (PayloadCompression.isEnabled()) {
+			Integer chunkLastId = afyastatService.compressPayloads(table, lastId, chunkSize);
+			Context.clearSession();
+			if (chunkLastId == null) {
+				break;
+			}
+			lastId = chunkLastId;
+			lastIds.put(table, lastId);
+			chunks++;
+		}
+		if (chunks > 0) {
+			log.info("Compressed the payloads of " + chunks + " chunks of " + table + " up to the id " + lastId);
+		}
+	}
+}
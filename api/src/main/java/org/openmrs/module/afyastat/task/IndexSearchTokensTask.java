@@ -0,0 +1,83 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.task;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.api.AfyastatService;
+import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Indexes the queue, archive and error data written before their search tokens were maintained by
+ * the daos, a chunk of <code>medic.searchIndexChunkSize</code> rows per transaction. The data saved,
+ * moved or deleted since are indexed in the transaction which writes them, so every run only reads
+ * the rows which have no tokens yet, and nothing once a table is fully indexed.
+ */
+public class IndexSearchTokensTask extends AbstractTask {
+	
+	private static final String[] TABLES = { "medic_queue_data", "medic_error_data", "medic_archive_data" };
+	
+	private static final int DEFAULT_CHUNK_SIZE = 500;
+	
+	private final Log log = LogFactory.getLog(IndexSearchTokensTask.class);
+	
+	/**
+	 * The tables whose existing rows are all indexed since the module started.
+	 */
+	private final Set<String> indexedTables = new HashSet<String>();
+	
+	/**
+	 * @see org.openmrs.scheduler.Task#execute()
+	 */
+	@Override
+	public void execute() {
+		if (indexedTables.size() == TABLES.length) {
+			return;
+		}
+		Context.openSession();
+		try {
+			if (!Context.isAuthenticated()) {
+				authenticate();
+			}
+			int chunkSize = NumberUtils.toInt(Context.getAdministrationService().getGlobalProperty(
+			    AfyaStatMetadata.MEDIC_SEARCH_INDEX_CHUNK_SIZE), DEFAULT_CHUNK_SIZE);
+			for (String table : TABLES) {
+				if (!indexedTables.contains(table)) {
+					index(table, chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE);
+				}
+			}
+		}
+		finally {
+			Context.closeSession();
+		}
+	}
+	
+	private void index(final String table, final int chunkSize) {
+		AfyastatService afyastatService = Context.getService(AfyastatService.class);
+		Integer lastId = 0;
+		int chunks = 0;
+		Integer chunkLastId;
+		while ((chunkLastId = afyastatService.indexSearchTokens(table, lastId, chunkSize)) != null) {
+			Context.clearSession();
+			lastId = chunkLastId;
+			chunks++;
+		}
+		indexedTables.add(table);
+		if (chunks > 0) {
+			log.info("Indexed " + chunks + " chunks of the existing rows of " + table);
+		}
+	}
+}
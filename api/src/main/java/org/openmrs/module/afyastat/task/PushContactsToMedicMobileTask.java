@@ -16,6 +16,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
@@ -25,6 +26,7 @@ import org.openmrs.GlobalProperty;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
 import org.openmrs.module.afyastat.util.MedicDataExchange;
+import org.openmrs.module.afyastat.util.Utils;
 import org.openmrs.scheduler.tasks.AbstractTask;
 
 import java.util.List;
@@ -89,7 +91,7 @@ public class PushContactsToMedicMobileTask extends AbstractTask {
 				
 			}
 			
-			MedicDataExchange e = new MedicDataExchange();
+			MedicDataExchange e = Context.getRegisteredComponent("medicDataExchange", MedicDataExchange.class);
 			
 			// check if there are item(s) to post
 			ObjectNode contactWrapper = e.getContacts(gpLastContactId, lastId, gpLastPatientId, lastPatientId);
@@ -105,6 +107,8 @@ public class PushContactsToMedicMobileTask extends AbstractTask {
 			
 			if (serverUrl != null && username != null && pwd != null && hasData) {
 				String payload = contactWrapper.toString();
+				boolean compressRequest = Boolean.parseBoolean(Context.getAdministrationService().getGlobalProperty(
+				    AfyaStatMetadata.MEDIC_COMPRESS_PUSH_REQUESTS));
 				CloseableHttpClient httpClient = HttpClients.createDefault();
 				
 				try {
@@ -119,9 +123,17 @@ public class PushContactsToMedicMobileTask extends AbstractTask {
 					String authHeader = "Basic " + new String(encodedAuth);
 					postRequest.setHeader(HttpHeaders.AUTHORIZATION, authHeader);
 					
-					//Set the request post body
-					StringEntity userEntity = new StringEntity(payload);
-					postRequest.setEntity(userEntity);
+					//Set the request post body, gzipped when enabled as the contacts compress well
+					if (compressRequest) {
+						ByteArrayEntity compressedEntity = new ByteArrayEntity(Utils.gzip(payload.getBytes("UTF-8")));
+						compressedEntity.setContentEncoding("gzip");
+						postRequest.setEntity(compressedEntity);
+						log.info("Pushing " + docs.size() + " contacts as " + compressedEntity.getContentLength()
+						        + " gzipped bytes");
+					} else {
+						StringEntity userEntity = new StringEntity(payload);
+						postRequest.setEntity(userEntity);
+					}
 					
 					//Send the request; It will immediately return the response in HttpResponse object if any
 					HttpResponse response = httpClient.execute(postRequest);
@@ -14,22 +14,41 @@
 package org.openmrs.module.afyastat.task;
 
 import com.jayway.jsonpath.JsonPath;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
 import org.openmrs.Form;
 import org.openmrs.Location;
 import org.openmrs.Provider;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
 import org.openmrs.module.afyastat.api.service.InfoService;
 import org.openmrs.module.afyastat.exception.StreamProcessorException;
+import org.openmrs.module.afyastat.handler.QueueInfoHandlerRegistry;
+import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
 import org.openmrs.module.afyastat.model.AfyaStatQueueData;
-import org.openmrs.module.afyastat.model.ArchiveInfo;
 import org.openmrs.module.afyastat.model.ErrorInfo;
 import org.openmrs.module.afyastat.model.ErrorMessagesInfo;
+import org.openmrs.module.afyastat.model.handler.ConcurrentQueueInfoHandler;
 import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
-import org.openmrs.util.HandlerUtil;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
+import org.openmrs.module.afyastat.utils.JsonPayload;
+import org.openmrs.module.afyastat.utils.PayloadPaths;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.*;
 
 /**
@@ -38,86 +57,444 @@ public class QueueInfoProcessor {
 	
 	private final Log log = LogFactory.getLog(QueueInfoProcessor.class);
 	
-	private static Boolean isRunning = false;
+	private static final int DEFAULT_CHUNK_SIZE = 500;
+	
+	private static final int DEFAULT_LEASE_SECONDS = 900;
+	
+	private static final int CLAIM_RENEWAL_SIZE = 50;
+	
+	private static volatile DaemonToken daemonToken;
+	
+	/**
+	 * Set the token of the module, used to run the workers in daemon threads with their own session
+	 * and user context. The queue data are processed by the thread of the task while no token is set.
+	 * 
+	 * @param daemonToken the token of the module or null when the module is stopped.
+	 */
+	public static void setDaemonToken(final DaemonToken daemonToken) {
+		QueueInfoProcessor.daemonToken = daemonToken;
+	}
 	
 	public void processQueueData() {
-		if (!isRunning) {
-			processAllQueueData();
-		} else {
-			log.info("Queue data processor aborting (another processor already running)!");
-		}
+		processAllQueueData();
 	}
 	
 	private void processAllQueueData() {
 		Context.openSession();
+		InfoService infoService = Context.getService(InfoService.class);
+		// processors on the same or on other nodes only work on the queue data they claimed, so any number
+		// of processors can drain the queue at the same time without processing the same queue data twice.
+		String leaseOwner = createLeaseOwner();
 		try {
-			isRunning = true;
-			log.info("Starting up queue data processor ...");
-			InfoService infoService = Context.getService(InfoService.class);
-			List<AfyaStatQueueData> queueDataList = infoService.getAllQueueData();
-			List<QueueInfoHandler> queueDataHandlers = HandlerUtil.getHandlersForType(QueueInfoHandler.class,
-			    AfyaStatQueueData.class);
-			for (QueueInfoHandler queueDataHandler : queueDataHandlers) {
-				Iterator<AfyaStatQueueData> queueDataIterator = queueDataList.iterator();
-				while (queueDataIterator.hasNext()) {
-					AfyaStatQueueData afyaStatQueueData = queueDataIterator.next();
-					try {
-						if (queueDataHandler.accept(afyaStatQueueData)) {
-							queueDataHandler.process(afyaStatQueueData);
-							queueDataIterator.remove();
-							// archive them after we're done processing the queue data.
-							createArchiveData(afyaStatQueueData, "Queue data processed successfully!");
-							infoService.purgeQueueData(afyaStatQueueData);
+			log.info("Starting up queue data processor " + leaseOwner + " ...");
+			int chunkSize = getChunkSize();
+			int leaseSeconds = getLeaseSeconds();
+			int batchSize = getBatchSize();
+			int workerCount = daemonToken == null ? 1 : getWorkerCount();
+			List<String> queuedDiscriminators = infoService.getQueuedDiscriminators();
+			// walk the discriminators in handler order so that e.g. registrations are processed before encounters.
+			for (String discriminator : QueueInfoHandlerRegistry.getDiscriminators()) {
+				if (Thread.currentThread().isInterrupted()) {
+					log.info("Queue data processor " + leaseOwner + " was interrupted, stopping the processing");
+					break;
+				}
+				if (!queuedDiscriminators.contains(discriminator)) {
+					continue;
+				}
+				QueueInfoHandler queueDataHandler = QueueInfoHandlerRegistry.getHandler(discriminator);
+				// a handler keeping the state of the queue data in its fields is only run by a single thread.
+				boolean parallel = workerCount > 1 && queueDataHandler instanceof ConcurrentQueueInfoHandler;
+				// drain the queue in chunks using the id of the last row as the cursor (keyset paging),
+				// so only a single chunk of queue data is held in the session at any time. queue data
+				// claimed by another processor are skipped.
+				Integer lastId = null;
+				while (!Thread.currentThread().isInterrupted()
+				        && infoService.claimQueueData(discriminator, lastId, chunkSize, leaseOwner, leaseSeconds) > 0) {
+					List<AfyaStatQueueData> queueDataList = infoService.getClaimedQueueData(discriminator, lastId,
+					    leaseOwner);
+					if (queueDataList.isEmpty()) {
+						break;
+					}
+					lastId = queueDataList.get(queueDataList.size() - 1).getId();
+					if (!parallel) {
+						List<Integer> queueDataIds = new ArrayList<Integer>();
+						for (AfyaStatQueueData afyaStatQueueData : queueDataList) {
+							queueDataIds.add(afyaStatQueueData.getId());
 						}
+						processQueueData(queueDataHandler, queueDataIds, batchSize, leaseOwner, leaseSeconds);
+					} else {
+						processQueueDataInParallel(workerCount, batchSize, leaseOwner, leaseSeconds, queueDataHandler,
+						    queueDataList);
 					}
-					catch (Exception e) {
-						log.error("Unable to process queue data due to: " + e.getMessage(), e);
-						if (afyaStatQueueData.getLocation() == null) {
-							Location location = extractLocationFromPayload(afyaStatQueueData.getPayload());
-							afyaStatQueueData.setLocation(location);
+					Context.flushSession();
+					Context.clearSession();
+				}
+			}
+		}
+		finally {
+			// hand back whatever was claimed but not processed, instead of waiting for the lease to expire.
+			infoService.releaseQueueData(leaseOwner);
+			log.info("Reference data cache statistics: " + ReferenceDataCache.getCaches());
+			log.info("Stopping up queue data processor " + leaseOwner + " ...");
+		}
+	}
+	
+	/**
+	 * Create a unique name for this run of the processor, used to claim the queue data.
+	 * 
+	 * @return the host name of this node followed by a random uuid.
+	 */
+	private String createLeaseOwner() {
+		String hostName;
+		try {
+			hostName = InetAddress.getLocalHost().getHostName();
+		}
+		catch (UnknownHostException e) {
+			hostName = "unknown";
+		}
+		return StringUtils.left(hostName, 200) + ":" + UUID.randomUUID().toString();
+	}
+	
+	/**
+	 * Process a chunk of queue data using a worker per partition, see
+	 * {@link #partitionQueueData(List, int)}. Every worker runs in a daemon thread with its own session
+	 * and user context. The method only returns once every worker is done with the chunk. When the
+	 * processor is interrupted, the workers are interrupted too and the method still waits for all of
+	 * them to stop, so no worker is left holding queue data when the claims are released.
+	 * 
+	 * @param workerCount the number of workers.
+	 * @param batchSize the number of queue data committed together by a worker.
+	 * @param leaseOwner the processor holding the claim on the chunk.
+	 * @param leaseSeconds the number of seconds the claim is extended before every batch.
+	 * @param queueDataHandler the handler for the queue data, safe to be run by several workers.
+	 * @param queueDataList the chunk of queue data ordered by id.
+	 */
+	private void processQueueDataInParallel(final int workerCount, final int batchSize, final String leaseOwner,
+	        final int leaseSeconds, final QueueInfoHandler queueDataHandler, final List<AfyaStatQueueData> queueDataList) {
+		List<Thread> workers = new ArrayList<Thread>();
+		for (List<Integer> partition : partitionQueueData(queueDataList, workerCount)) {
+			if (!partition.isEmpty()) {
+				QueueInfoWorker worker = new QueueInfoWorker(queueDataHandler, partition, batchSize, leaseOwner,
+				        leaseSeconds);
+				workers.add(Daemon.runInDaemonThread(worker, daemonToken));
+			}
+		}
+		boolean interrupted = false;
+		for (Thread worker : workers) {
+			while (worker.isAlive()) {
+				try {
+					worker.join();
+				}
+				catch (InterruptedException e) {
+					if (!interrupted) {
+						log.error("Interrupted while waiting for the queue data workers, stopping the workers", e);
+						interrupted = true;
+						// the workers stop after the queue data or the batch they are processing.
+						for (Thread other : workers) {
+							other.interrupt();
 						}
-						if (afyaStatQueueData.getProvider() == null) {
-							Provider provider = extractProviderFromPayload(afyaStatQueueData.getPayload());
-							afyaStatQueueData.setProvider(provider);
+					}
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Partition a chunk of queue data by the patient uuid, so all queue data for the same patient are
+	 * processed by a single worker in the order they were queued, as they are processed by a single
+	 * thread, while different patients are processed concurrently.
+	 * 
+	 * @param queueDataList the chunk of queue data ordered by id.
+	 * @param workerCount the number of workers.
+	 * @return the ids of the queue data of every worker, in the order of the chunk.
+	 */
+	static List<List<Integer>> partitionQueueData(final List<AfyaStatQueueData> queueDataList, final int workerCount) {
+		List<List<Integer>> partitions = new ArrayList<List<Integer>>();
+		for (int i = 0; i < workerCount; i++) {
+			partitions.add(new ArrayList<Integer>());
+		}
+		for (AfyaStatQueueData afyaStatQueueData : queueDataList) {
+			String patientUuid = StringUtils.defaultString(afyaStatQueueData.getPatientUuid());
+			int partition = (patientUuid.hashCode() & Integer.MAX_VALUE) % workerCount;
+			partitions.get(partition).add(afyaStatQueueData.getId());
+		}
+		return partitions;
+	}
+	
+	/**
+	 * Process the queue data in the order of the ids, either one at a time or in batches committed
+	 * together. The lease on the queue data is extended before every batch, and the queue data whose
+	 * lease expired and which were claimed by another processor in the meantime are skipped. Stops
+	 * before the next queue data or batch once the thread is interrupted.
+	 * 
+	 * @param queueDataHandler the handler for the queue data.
+	 * @param queueDataIds the ids of the queue data.
+	 * @param batchSize the number of queue data committed together, 1 or less processes the queue data
+	 *            one at a time.
+	 * @param leaseOwner the processor holding the claim on the queue data.
+	 * @param leaseSeconds the number of seconds the claim is extended before every batch.
+	 */
+	private void processQueueData(final QueueInfoHandler queueDataHandler, final List<Integer> queueDataIds,
+	        final int batchSize, final String leaseOwner, final int leaseSeconds) {
+		InfoService infoService = Context.getService(InfoService.class);
+		int renewalSize = batchSize > 1 ? batchSize : CLAIM_RENEWAL_SIZE;
+		for (int i = 0; i < queueDataIds.size() && !Thread.currentThread().isInterrupted(); i += renewalSize) {
+			List<Integer> batch = queueDataIds.subList(i, Math.min(i + renewalSize, queueDataIds.size()));
+			List<Integer> claimedIds = infoService.renewQueueDataClaim(new ArrayList<Integer>(batch), leaseOwner,
+			    leaseSeconds);
+			if (claimedIds.size() < batch.size()) {
+				log.warn("Queue data processor " + leaseOwner + " lost the claim on " + (batch.size() - claimedIds.size())
+				        + " queue data, skipping them");
+			}
+			if (batchSize > 1) {
+				processQueueDataBatch(queueDataHandler, claimedIds);
+			} else {
+				processQueueDataOneAtATime(queueDataHandler, claimedIds);
+			}
+		}
+	}
+	
+	private void processQueueDataOneAtATime(final QueueInfoHandler queueDataHandler, final List<Integer> queueDataIds) {
+		InfoService infoService = Context.getService(InfoService.class);
+		for (Integer queueDataId : queueDataIds) {
+			if (Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			AfyaStatQueueData afyaStatQueueData = infoService.getQueueData(queueDataId);
+			if (afyaStatQueueData != null) {
+				processQueueData(queueDataHandler, afyaStatQueueData, infoService);
+			}
+		}
+	}
+	
+	/**
+	 * Process a batch of queue data in a single transaction. Every queue data is processed behind its
+	 * own savepoint, so a failing queue data is rolled back on its own. The failed queue data are then
+	 * moved to the error queue and the rest of the batch to the archive, each with a single insert
+	 * select and delete.
+	 * <p>
+	 * When a service called by the handler fails, the whole transaction is marked for rollback and a
+	 * savepoint can't recover it anymore. The batch is then rolled back and processed again one queue
+	 * data at a time.
+	 * 
+	 * @param queueDataHandler the handler for the queue data.
+	 * @param queueDataIds the ids of the queue data in the batch.
+	 */
+	private void processQueueDataBatch(final QueueInfoHandler queueDataHandler, final List<Integer> queueDataIds) {
+		if (queueDataIds.isEmpty()) {
+			return;
+		}
+		final SessionFactory sessionFactory = Context.getRegisteredComponent("sessionFactory", SessionFactory.class);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(Context.getRegisteredComponent(
+		    "transactionManager", PlatformTransactionManager.class));
+		Boolean committed;
+		try {
+			committed = transactionTemplate.execute(new TransactionCallback<Boolean>() {
+				
+				@Override
+				public Boolean doInTransaction(final TransactionStatus status) {
+					InfoService infoService = Context.getService(InfoService.class);
+					List<Integer> processedIds = new ArrayList<Integer>();
+					Map<Integer, ErrorInfo> failed = new LinkedHashMap<Integer, ErrorInfo>();
+					for (Integer queueDataId : queueDataIds) {
+						AfyaStatQueueData afyaStatQueueData = infoService.getQueueData(queueDataId);
+						if (afyaStatQueueData == null) {
+							continue;
 						}
-						if (afyaStatQueueData.getFormName() == null) {
-							String formName = extractFormNameFromPayload(afyaStatQueueData.getPayload());
-							afyaStatQueueData.setFormName(formName);
+						QueueInfoHandlerContext context = new QueueInfoHandlerContext(afyaStatQueueData);
+						Savepoint savepoint = setSavepoint(sessionFactory);
+						try {
+							queueDataHandler.process(context);
+							sessionFactory.getCurrentSession().flush();
+							releaseSavepoint(sessionFactory, savepoint);
+							processedIds.add(queueDataId);
 						}
-						if (afyaStatQueueData.getPatientUuid() == null) {
-							String patientUuid = extractPatientUuidFromPayload(afyaStatQueueData.getPayload());
-							if (patientUuid == null) {
-								afyaStatQueueData.setPatientUuid("");
+						catch (Exception e) {
+							log.error("Unable to process queue data due to: " + e.getMessage(), e);
+							rollbackToSavepoint(sessionFactory, savepoint);
+							// everything before the savepoint is already flushed, only the objects of the failed
+							// queue data are left in the session.
+							sessionFactory.getCurrentSession().clear();
+							if (status.isRollbackOnly()) {
+								return Boolean.FALSE;
 							}
-							afyaStatQueueData.setPatientUuid(patientUuid);
+							// the error details are read from the payload parsed by the handler.
+							failed.put(queueDataId, createErrorInfo(afyaStatQueueData, context.getParsedPayload(),
+							    toStreamProcessorException(e)));
 						}
-						createErrorData(afyaStatQueueData, (StreamProcessorException) e);
-						infoService.purgeQueueData(afyaStatQueueData);
 					}
+					infoService.archiveQueueData(processedIds, "Queue data processed successfully!");
+					infoService.moveQueueDataToError(failed);
+					sessionFactory.getCurrentSession().flush();
+					sessionFactory.getCurrentSession().clear();
+					return Boolean.TRUE;
 				}
+			});
+		}
+		catch (RuntimeException e) {
+			log.error("Unable to commit queue data batch due to: " + e.getMessage(), e);
+			committed = Boolean.FALSE;
+		}
+		
+		if (!Boolean.TRUE.equals(committed)) {
+			log.info("Queue data batch was rolled back, processing the batch one queue data at a time");
+			Context.clearSession();
+			processQueueDataOneAtATime(queueDataHandler, queueDataIds);
+		}
+	}
+	
+	private Savepoint setSavepoint(final SessionFactory sessionFactory) {
+		final Savepoint[] savepoint = new Savepoint[1];
+		sessionFactory.getCurrentSession().doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				savepoint[0] = connection.setSavepoint();
 			}
+		});
+		return savepoint[0];
+	}
+	
+	private void releaseSavepoint(final SessionFactory sessionFactory, final Savepoint savepoint) {
+		sessionFactory.getCurrentSession().doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				connection.releaseSavepoint(savepoint);
+			}
+		});
+	}
+	
+	private void rollbackToSavepoint(final SessionFactory sessionFactory, final Savepoint savepoint) {
+		sessionFactory.getCurrentSession().doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				connection.rollback(savepoint);
+			}
+		});
+	}
+	
+	private StreamProcessorException toStreamProcessorException(final Exception e) {
+		if (e instanceof StreamProcessorException) {
+			return (StreamProcessorException) e;
 		}
-		finally {
-			isRunning = false;
-			log.info("Stopping up queue data processor ...");
+		StreamProcessorException exception = new StreamProcessorException();
+		exception.addException(e);
+		return exception;
+	}
+	
+	private void processQueueData(final QueueInfoHandler queueDataHandler, final AfyaStatQueueData afyaStatQueueData,
+	        final InfoService infoService) {
+		QueueInfoHandlerContext context = new QueueInfoHandlerContext(afyaStatQueueData);
+		try {
+			queueDataHandler.process(context);
+			// archive them after we're done processing the queue data.
+			infoService.archiveQueueData(Collections.singletonList(afyaStatQueueData.getId()),
+			    "Queue data processed successfully!");
+			Context.evictFromSession(afyaStatQueueData);
+		}
+		catch (Exception e) {
+			log.error("Unable to process queue data due to: " + e.getMessage(), e);
+			ErrorInfo errorInfo = createErrorInfo(afyaStatQueueData, context.getParsedPayload(),
+			    toStreamProcessorException(e));
+			// the queue data itself is copied and deleted inside the database and is never modified in the session.
+			infoService.moveQueueDataToError(afyaStatQueueData.getId(), errorInfo);
+			Context.evictFromSession(afyaStatQueueData);
+		}
+	}
+	
+	/**
+	 * Create the error info for a queue data which failed. Only the details missing from the queue
+	 * data are extracted from the payload, reusing the payload already parsed by the handler.
+	 * 
+	 * @param afyaStatQueueData the queue data which failed.
+	 * @param payload the parsed payload of the queue data.
+	 * @param exception the errors raised while processing the queue data.
+	 * @return the error info.
+	 */
+	private ErrorInfo createErrorInfo(final AfyaStatQueueData afyaStatQueueData, final JsonPayload payload,
+	        final StreamProcessorException exception) {
+		ErrorInfo errorInfo = createErrorInfo(exception);
+		if (afyaStatQueueData.getLocation() == null) {
+			Location location = extractLocationFromPayload(payload);
+			errorInfo.setLocation(location);
 		}
+		if (afyaStatQueueData.getProvider() == null) {
+			Provider provider = extractProviderFromPayload(payload);
+			errorInfo.setProvider(provider);
+		}
+		if (afyaStatQueueData.getFormName() == null) {
+			String formName = extractFormNameFromPayload(payload);
+			errorInfo.setFormName(formName);
+		}
+		if (afyaStatQueueData.getPatientUuid() == null) {
+			String patientUuid = extractPatientUuidFromPayload(payload);
+			errorInfo.setPatientUuid(patientUuid);
+		}
+		return errorInfo;
+	}
+	
+	/**
+	 * Read the number of queue data to be loaded at a time from the global property.
+	 * 
+	 * @return the configured chunk size or the default chunk size when not set.
+	 */
+	private int getChunkSize() {
+		String chunkSize = Context.getAdministrationService().getGlobalProperty(
+		    AfyaStatMetadata.MEDIC_QUEUE_PROCESSING_CHUNK_SIZE);
+		int size = NumberUtils.toInt(chunkSize, DEFAULT_CHUNK_SIZE);
+		return size > 0 ? size : DEFAULT_CHUNK_SIZE;
+	}
+	
+	/**
+	 * Read the number of seconds a claim on the queue data is held from the global property. The lease
+	 * is extended before every batch, so it should be longer than the time needed to process a batch of
+	 * queue data.
+	 * 
+	 * @return the configured lease or the default lease when not set.
+	 */
+	private int getLeaseSeconds() {
+		String leaseSeconds = Context.getAdministrationService().getGlobalProperty(
+		    AfyaStatMetadata.MEDIC_QUEUE_PROCESSING_LEASE_SECONDS);
+		int seconds = NumberUtils.toInt(leaseSeconds, DEFAULT_LEASE_SECONDS);
+		return seconds > 0 ? seconds : DEFAULT_LEASE_SECONDS;
+	}
+	
+	/**
+	 * Read the number of queue data committed together in one transaction from the global property.
+	 * 
+	 * @return the configured batch size or 1 (no batching) when not set.
+	 */
+	private int getBatchSize() {
+		String batchSize = Context.getAdministrationService().getGlobalProperty(
+		    AfyaStatMetadata.MEDIC_QUEUE_PROCESSING_BATCH_SIZE);
+		int size = NumberUtils.toInt(batchSize, 1);
+		return size > 0 ? size : 1;
 	}
 	
-	private void createArchiveData(final AfyaStatQueueData queueData, final String message) {
-		ArchiveInfo archiveInfo = new ArchiveInfo(queueData);
-		archiveInfo.setMessage(message);
-		archiveInfo.setDateArchived(new Date());
-		Context.getService(InfoService.class).saveArchiveData(archiveInfo);
+	/**
+	 * Read the number of workers processing the queue data from the global property.
+	 * 
+	 * @return the configured number of workers or 1 (serial processing) when not set.
+	 */
+	private int getWorkerCount() {
+		String workerCount = Context.getAdministrationService().getGlobalProperty(
+		    AfyaStatMetadata.MEDIC_QUEUE_PROCESSING_WORKERS);
+		int count = NumberUtils.toInt(workerCount, 1);
+		return count > 0 ? count : 1;
 	}
 	
-	private void createErrorData(final AfyaStatQueueData queueData, StreamProcessorException exception) {
-		ErrorInfo errorInfo = new ErrorInfo(queueData);
+	private ErrorInfo createErrorInfo(final StreamProcessorException exception) {
+		ErrorInfo errorInfo = new ErrorInfo();
 		errorInfo.setDateProcessed(new Date());
-		Set errorMessage = new HashSet();
+		Set<ErrorMessagesInfo> errorMessage = new HashSet<ErrorMessagesInfo>();
 		for (Exception e : exception.getAllException()) {
 			ErrorMessagesInfo error = new ErrorMessagesInfo();
 			String message = e.getMessage();
-			System.out.println("message=================" + message);
 			if (message == null) {
 				message = "Queue data was processed but the processor unable to determine the cause of the error.";
 			}
@@ -126,23 +503,23 @@ public class QueueInfoProcessor {
 		}
 		errorInfo.setMessage("Unable to process queue data");
 		errorInfo.setErrorMessages(errorMessage);
-		Context.getService(InfoService.class).saveErrorData(errorInfo);
+		return errorInfo;
 	}
 	
-	private Provider extractProviderFromPayload(String payload) {
-		String providerString = readAsString(payload, "$['encounter']['encounter.provider_id']");
-		return Context.getProviderService().getProviderByIdentifier(providerString);
+	private Provider extractProviderFromPayload(JsonPayload payload) {
+		String providerString = readAsString(payload, PayloadPaths._Encounter.PROVIDER_ID);
+		return ReferenceDataCache.getProviderByIdentifier(providerString);
 	}
 	
-	private Location extractLocationFromPayload(String payload) {
-		String locationString = readAsString(payload, "$['encounter']['encounter.location_id']");
+	private Location extractLocationFromPayload(JsonPayload payload) {
+		String locationString = readAsString(payload, PayloadPaths._Encounter.LOCATION_ID);
 		int locationId = NumberUtils.toInt(locationString, -999);
-		return Context.getLocationService().getLocation(locationId);
+		return ReferenceDataCache.getLocation(locationId);
 	}
 	
-	private String extractFormNameFromPayload(String payload) {
-		String formUuid = readAsString(payload, "$['encounter']['encounter.form_uuid']");
-		Form form = Context.getFormService().getFormByUuid(formUuid);
+	private String extractFormNameFromPayload(JsonPayload payload) {
+		String formUuid = readAsString(payload, PayloadPaths._Encounter.FORM_UUID);
+		Form form = ReferenceDataCache.getFormByUuid(formUuid);
 		if (form != null && form.getName() != null) {
 			return form.getName();
 		} else {
@@ -151,26 +528,62 @@ public class QueueInfoProcessor {
 		
 	}
 	
-	private String extractPatientUuidFromPayload(String payload) {
-		return readAsString(payload, "$['patient']['patient.uuid']");
+	private String extractPatientUuidFromPayload(JsonPayload payload) {
+		return readAsString(payload, PayloadPaths._Patient.UUID);
 	}
 	
 	/**
-	 * Read string value from the json object.
+	 * Read string value from the parsed payload.
 	 * 
-	 * @param jsonObject the json object.
-	 * @param path the path inside the json object.
-	 * @return the string value in the json object. When the path is invalid, by default will return
-	 *         null.
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @return the string value in the payload. When the path is invalid, by default will return null.
 	 */
-	private String readAsString(final String jsonObject, final String path) {
+	private String readAsString(final JsonPayload payload, final JsonPath path) {
 		String returnedString = null;
 		try {
-			returnedString = JsonPath.read(jsonObject, path);
+			returnedString = payload.read(path);
 		}
 		catch (Exception e) {
-			log.info("Unable to read string value with path: " + path + " from: " + String.valueOf(jsonObject));
+			log.info("Unable to read string value with path: " + path.getPath() + " from: " + String.valueOf(payload));
 		}
 		return returnedString;
 	}
+	
+	/**
+	 * Worker processing a partition of a chunk of queue data in its own transaction. The daemon thread
+	 * running the worker opens and closes the session and the user context of the worker.
+	 */
+	private class QueueInfoWorker implements Runnable {
+		
+		private final QueueInfoHandler queueDataHandler;
+		
+		private final List<Integer> queueDataIds;
+		
+		private final int batchSize;
+		
+		private final String leaseOwner;
+		
+		private final int leaseSeconds;
+		
+		private QueueInfoWorker(final QueueInfoHandler queueDataHandler, final List<Integer> queueDataIds,
+		        final int batchSize, final String leaseOwner, final int leaseSeconds) {
+			this.queueDataHandler = queueDataHandler;
+			this.queueDataIds = queueDataIds;
+			this.batchSize = batchSize;
+			this.leaseOwner = leaseOwner;
+			this.leaseSeconds = leaseSeconds;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				// the queue data are reloaded by id, the chunk was loaded in the session of the processor thread.
+				processQueueData(queueDataHandler, queueDataIds, batchSize, leaseOwner, leaseSeconds);
+			}
+			catch (RuntimeException e) {
+				log.error("Queue data worker failed due to: " + e.getMessage(), e);
+			}
+		}
+	}
 }
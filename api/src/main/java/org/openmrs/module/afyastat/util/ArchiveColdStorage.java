@@ -0,0 +1,235 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.util;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.openmrs.User;
+import org.openmrs.module.afyastat.model.AfyaDataSource;
+import org.openmrs.module.afyastat.model.ArchiveInfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold storage of the archive data past the retention window. The archive data are written as
+ * newline delimited json to one gzipped file per month they were archived in, named
+ * <code>medic_archive_data-yyyy-MM.ndjson.gz</code>. Every write appends a complete gzip member to
+ * the file and syncs it to the disk, so the files can be read with <code>zcat</code> and a batch is
+ * never lost once {@link #write(List)} returns.
+ * <p>
+ * A batch written again after a failed delete is read back once, the lines are matched by uuid.
+ */
+public class ArchiveColdStorage {
+	
+	private static final String FILE_PREFIX = "medic_archive_data-";
+	
+	private static final String FILE_SUFFIX = ".ndjson.gz";
+	
+	private static final String CHARSET = "UTF-8";
+	
+	private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormat.forPattern("yyyy-MM");
+	
+	private static final DateTimeFormatter DATE_FORMAT = ISODateTimeFormat.dateTime();
+	
+	private static final DateTimeFormatter DATE_PARSER = ISODateTimeFormat.dateTimeParser();
+	
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	private final File directory;
+	
+	/**
+	 * Create a cold storage writing its files to the directory.
+	 * 
+	 * @param directory the cold storage directory, created when it doesn't exist.
+	 * @throws IOException when the directory can't be created.
+	 */
+	public ArchiveColdStorage(final File directory) throws IOException {
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create the archive cold storage directory " + directory);
+		}
+	}
+	
+	/**
+	 * Append the archive data to the files of the months they were archived in. The payloads are
+	 * written as json, whether they are stored compressed or not.
+	 * 
+	 * @param archiveData the archive data.
+	 * @throws IOException when the archive data can't be written.
+	 */
+	public void write(final List<ArchiveInfo> archiveData) throws IOException {
+		Map<String, List<ArchiveInfo>> months = new TreeMap<String, List<ArchiveInfo>>();
+		for (ArchiveInfo archiveInfo : archiveData) {
+			String month = MONTH_FORMAT.print(archiveInfo.getDateArchived().getTime());
+			List<ArchiveInfo> monthData = months.get(month);
+			if (monthData == null) {
+				monthData = new ArrayList<ArchiveInfo>();
+				months.put(month, monthData);
+			}
+			monthData.add(archiveInfo);
+		}
+		for (Map.Entry<String, List<ArchiveInfo>> month : months.entrySet()) {
+			append(new File(directory, FILE_PREFIX + month.getKey() + FILE_SUFFIX), month.getValue());
+		}
+	}
+	
+	/**
+	 * Read back the archive data with the form data uuid from all the files. The data source and the
+	 * creator of the archive data returned only carry their ids.
+	 * 
+	 * @param formDataUuid the form data uuid.
+	 * @return the archive data with the form data uuid, in the order they were written.
+	 * @throws IOException when a file can't be read.
+	 */
+	public List<ArchiveInfo> findByFormDataUuid(final String formDataUuid) throws IOException {
+		Map<String, ArchiveInfo> archiveData = new LinkedHashMap<String, ArchiveInfo>();
+		for (File file : listFiles()) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(
+			        file)), CHARSET));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					// the cheap check skips parsing the lines of the other forms.
+					if (!line.contains(formDataUuid)) {
+						continue;
+					}
+					JsonNode jsonNode = mapper.readTree(line);
+					if (formDataUuid.equals(jsonNode.path("form_data_uuid").getTextValue())) {
+						ArchiveInfo archiveInfo = read(jsonNode);
+						archiveData.put(archiveInfo.getUuid(), archiveInfo);
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		return new ArrayList<ArchiveInfo>(archiveData.values());
+	}
+	
+	/**
+	 * @return the cold storage files, oldest month first.
+	 */
+	public List<File> listFiles() {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+			}
+		});
+		if (files == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+	
+	private void append(final File file, final List<ArchiveInfo> archiveData) throws IOException {
+		FileOutputStream outputStream = new FileOutputStream(file, true);
+		try {
+			GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+			Writer writer = new OutputStreamWriter(gzipOutputStream, CHARSET);
+			for (ArchiveInfo archiveInfo : archiveData) {
+				writer.write(mapper.writeValueAsString(write(archiveInfo)));
+				writer.write('\n');
+			}
+			writer.flush();
+			gzipOutputStream.finish();
+			outputStream.getFD().sync();
+		}
+		finally {
+			outputStream.close();
+		}
+	}
+	
+	private ObjectNode write(final ArchiveInfo archiveInfo) {
+		ObjectNode line = JsonNodeFactory.instance.objectNode();
+		putInteger(line, "id", archiveInfo.getId());
+		line.put("uuid", archiveInfo.getUuid());
+		line.put("discriminator", archiveInfo.getDiscriminator());
+		putInteger(line, "data_source", archiveInfo.getDataSource() == null ? null : archiveInfo.getDataSource().getId());
+		line.put("payload", archiveInfo.getPayload());
+		line.put("message", archiveInfo.getMessage());
+		line.put("date_archived", format(archiveInfo.getDateArchived()));
+		putInteger(line, "creator", archiveInfo.getCreator() == null ? null : archiveInfo.getCreator().getUserId());
+		line.put("date_created", format(archiveInfo.getDateCreated()));
+		line.put("patient_uuid", archiveInfo.getPatientUuid());
+		line.put("form_data_uuid", archiveInfo.getFormDataUuid());
+		line.put("document_id", archiveInfo.getDocumentId());
+		return line;
+	}
+	
+	private ArchiveInfo read(final JsonNode line) {
+		ArchiveInfo archiveInfo = new ArchiveInfo();
+		archiveInfo.setId(getInteger(line, "id"));
+		archiveInfo.setUuid(line.path("uuid").getTextValue());
+		archiveInfo.setDiscriminator(line.path("discriminator").getTextValue());
+		if (getInteger(line, "data_source") != null) {
+			AfyaDataSource dataSource = new AfyaDataSource();
+			dataSource.setId(getInteger(line, "data_source"));
+			archiveInfo.setDataSource(dataSource);
+		}
+		archiveInfo.setPayload(line.path("payload").getTextValue());
+		archiveInfo.setMessage(line.path("message").getTextValue());
+		archiveInfo.setDateArchived(parse(line.path("date_archived").getTextValue()));
+		if (getInteger(line, "creator") != null) {
+			archiveInfo.setCreator(new User(getInteger(line, "creator")));
+		}
+		archiveInfo.setDateCreated(parse(line.path("date_created").getTextValue()));
+		archiveInfo.setPatientUuid(line.path("patient_uuid").getTextValue());
+		archiveInfo.setFormDataUuid(line.path("form_data_uuid").getTextValue());
+		archiveInfo.setDocumentId(line.path("document_id").getTextValue());
+		return archiveInfo;
+	}
+	
+	private void putInteger(final ObjectNode line, final String field, final Integer value) {
+		if (value == null) {
+			line.putNull(field);
+		} else {
+			line.put(field, value.intValue());
+		}
+	}
+	
+	private Integer getInteger(final JsonNode line, final String field) {
+		JsonNode value = line.get(field);
+		return value == null || value.isNull() ? null : value.getIntValue();
+	}
+	
+	private String format(final Date date) {
+		return date == null ? null : DATE_FORMAT.print(date.getTime());
+	}
+	
+	private Date parse(final String date) {
+		return date == null ? null : DATE_PARSER.parseDateTime(date).toDate();
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write ahead journal of the documents accepted by the asynchronous ingestion. Every document is
+ * written to its own file and synced to the disk before it is acknowledged, and the file is removed
+ * once the queue data of the document is saved. The files left in the journal directory are the
+ * documents which were accepted but not saved yet, they are read back when the ingestion starts.
+ * <p>
+ * The documents which can't be transformed into queue data are moved to the <code>failed</code>
+ * sub directory of the journal, where they are kept for inspection.
+ */
+public class IngestionJournal {
+	
+	private static final Log log = LogFactory.getLog(IngestionJournal.class);
+	
+	private static final String ENTRY_SUFFIX = ".json";
+	
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	private final AtomicLong sequence = new AtomicLong();
+	
+	private final File directory;
+	
+	private final File failedDirectory;
+	
+	/**
+	 * Create a journal writing its entries to the directory.
+	 * 
+	 * @param directory the journal directory, created when it doesn't exist.
+	 * @throws IOException when the directory can't be created.
+	 */
+	public IngestionJournal(final File directory) throws IOException {
+		this.directory = directory;
+		this.failedDirectory = new File(directory, "failed");
+		if (!failedDirectory.isDirectory() && !failedDirectory.mkdirs()) {
+			throw new IOException("Unable to create the ingestion journal directory " + failedDirectory);
+		}
+	}
+	
+	/**
+	 * Write the document to the journal. The entry is complete on the disk when this method returns.
+	 * 
+	 * @param type the type of the document.
+	 * @param document the document.
+	 * @return the journal entry of the document.
+	 * @throws IOException when the entry can't be written.
+	 */
+	public File append(final String type, final ObjectNode document) throws IOException {
+		String name = String.format("%013d-%09d", System.currentTimeMillis(), sequence.incrementAndGet() % 1000000000);
+		File temporary = new File(directory, name + TEMPORARY_SUFFIX);
+		File entry = new File(directory, name + ENTRY_SUFFIX);
+		
+		ObjectNode envelope = JsonNodeFactory.instance.objectNode();
+		envelope.put("type", type);
+		envelope.put("document", document);
+		FileOutputStream outputStream = new FileOutputStream(temporary);
+		try {
+			mapper.writeValue(outputStream, envelope);
+			outputStream.getFD().sync();
+		}
+		finally {
+			outputStream.close();
+		}
+		if (!temporary.renameTo(entry)) {
+			temporary.delete();
+			throw new IOException("Unable to complete the ingestion journal entry " + entry);
+		}
+		return entry;
+	}
+	
+	/**
+	 * Read back the type and the document of a journal entry.
+	 * 
+	 * @param entry the journal entry.
+	 * @return the envelope holding the type and the document.
+	 * @throws IOException when the entry can't be read.
+	 */
+	public ObjectNode read(final File entry) throws IOException {
+		JsonNode envelope = mapper.readTree(entry);
+		if (envelope == null || !envelope.isObject() || !envelope.path("document").isObject()) {
+			throw new IOException("Invalid ingestion journal entry " + entry);
+		}
+		return (ObjectNode) envelope;
+	}
+	
+	/**
+	 * Remove the entry of a document which has been saved.
+	 * 
+	 * @param entry the journal entry.
+	 */
+	public void remove(final File entry) {
+		if (!entry.delete() && entry.exists()) {
+			log.warn("Unable to remove the ingestion journal entry " + entry + ", it will be ingested again");
+		}
+	}
+	
+	/**
+	 * Move the entry of a document which can't be ingested out of the journal.
+	 * 
+	 * @param entry the journal entry.
+	 */
+	public void markFailed(final File entry) {
+		if (!entry.renameTo(new File(failedDirectory, entry.getName()))) {
+			log.warn("Unable to move the failed ingestion journal entry " + entry);
+		}
+	}
+	
+	/**
+	 * Get the entries of the journal, oldest first.
+	 * 
+	 * @return the journal entries.
+	 */
+	public List<File> getEntries() {
+		File[] entries = directory.listFiles(new FilenameFilter() {
+			
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.endsWith(ENTRY_SUFFIX);
+			}
+		});
+		if (entries == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(entries);
+		return new ArrayList<File>(Arrays.asList(entries));
+	}
+}
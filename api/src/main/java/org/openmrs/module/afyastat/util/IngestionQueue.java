@@ -0,0 +1,500 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.util;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.afyastat.api.AfyastatService;
+import org.openmrs.module.afyastat.api.service.InfoService;
+import org.openmrs.module.afyastat.api.service.MedicQueData;
+import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
+import org.openmrs.util.OpenmrsUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous ingestion of the CHT documents. The endpoints place the documents in a bounded in
+ * memory queue and acknowledge them right away, a small pool of workers transforms them into queue
+ * data and saves them in batches. When the queue is full the documents are refused, so the sender
+ * backs off instead of piling up requests.
+ * <p>
+ * Every accepted document is first written to the {@link IngestionJournal}, so the documents still
+ * in the queue when the server stops are ingested when the module is started again. A batch which
+ * fails to save is ingested again one document at a time, and the documents which still fail are
+ * queued again after a delay which doubles with every failed batch in a row, so an acknowledged
+ * document is retried until it is saved without waiting for a restart. The ingestion is started
+ * with the module when <code>medic.asyncIngestion</code> is true.
+ */
+public class IngestionQueue {
+	
+	private static final Log log = LogFactory.getLog(IngestionQueue.class);
+	
+	/**
+	 * Outcome of submitting a document.
+	 */
+	public enum Result {
+		/**
+		 * The document is journaled and will be ingested.
+		 */
+		ACCEPTED,
+		/**
+		 * The document is not a valid envelope for its type.
+		 */
+		INVALID,
+		/**
+		 * The queue is full, the document should be sent again later.
+		 */
+		FULL,
+		/**
+		 * The asynchronous ingestion is not running or the document can't be journaled.
+		 */
+		UNAVAILABLE
+	}
+	
+	/**
+	 * Delay before the documents of a failed batch are queued again, doubled for every failed batch
+	 * in a row up to {@link #MAX_RETRY_BACKOFF} times.
+	 */
+	private static final long RETRY_DELAY_MILLIS = 5000L;
+	
+	private static final int MAX_RETRY_BACKOFF = 6;
+	
+	/**
+	 * Time given to the workers of a stopped ingestion to finish their batch when the ingestion is
+	 * started again.
+	 */
+	private static final long STOP_TIMEOUT_SECONDS = 60L;
+	
+	private static volatile IngestionQueue instance;
+	
+	private static IngestionQueue stopped;
+	
+	private final BlockingQueue<Entry> queue;
+	
+	private final IngestionJournal journal;
+	
+	private final int batchSize;
+	
+	private final long retryDelay;
+	
+	/**
+	 * The documents of the failed batches, waiting to be queued again.
+	 */
+	private final List<Entry> retries = new ArrayList<Entry>();
+	
+	/**
+	 * Number of failed batches in a row.
+	 */
+	private final AtomicInteger failures = new AtomicInteger();
+	
+	/**
+	 * Counted down by the workers and the recovery thread when they are done.
+	 */
+	private final CountDownLatch finished;
+	
+	private volatile boolean running = true;
+	
+	IngestionQueue(final IngestionJournal journal, final int capacity, final int batchSize, final long retryDelay,
+	        final int threads) {
+		this.journal = journal;
+		this.queue = new ArrayBlockingQueue<Entry>(capacity);
+		this.batchSize = batchSize;
+		this.retryDelay = retryDelay;
+		this.finished = new CountDownLatch(threads);
+	}
+	
+	/**
+	 * Start the asynchronous ingestion when it is enabled, reading back the documents left in the
+	 * journal. When the ingestion was stopped in this JVM, the workers of the previous run are waited
+	 * for first, the documents they are saving are still in the journal and would be saved twice.
+	 * 
+	 * @param daemonToken the token of the module, used to run the workers as the daemon user.
+	 */
+	public static synchronized void start(final DaemonToken daemonToken) {
+		if (instance != null || !Boolean.parseBoolean(getGlobalProperty(AfyaStatMetadata.MEDIC_ASYNC_INGESTION))) {
+			return;
+		}
+		int capacity = getGlobalPropertyValue(AfyaStatMetadata.MEDIC_ASYNC_INGESTION_QUEUE_CAPACITY, 1000);
+		int workers = getGlobalPropertyValue(AfyaStatMetadata.MEDIC_ASYNC_INGESTION_WORKERS, 2);
+		int batchSize = getGlobalPropertyValue(AfyaStatMetadata.MEDIC_ASYNC_INGESTION_BATCH_SIZE, 50);
+		IngestionJournal journal;
+		try {
+			journal = new IngestionJournal(OpenmrsUtil.getDirectoryInApplicationDataDirectory(AfyaStatMetadata.MODULE_ID
+			        + File.separator + "ingestion"));
+		}
+		catch (IOException e) {
+			log.error("Unable to open the ingestion journal, the asynchronous ingestion is not started", e);
+			return;
+		}
+		boolean recover = true;
+		if (stopped != null && !stopped.awaitTermination(STOP_TIMEOUT_SECONDS)) {
+			log.warn("The workers of the previous asynchronous ingestion are still saving documents, the ingestion "
+			        + "journal is recovered on the next start");
+			recover = false;
+		}
+		stopped = null;
+		
+		final IngestionQueue ingestionQueue = new IngestionQueue(journal, capacity, batchSize, RETRY_DELAY_MILLIS,
+		        workers + 1);
+		// listed before any new document can be journaled, so only the documents of earlier runs are recovered.
+		final List<File> files = recover ? journal.getEntries() : new ArrayList<File>();
+		Daemon.runInDaemonThread(new Runnable() {
+			
+			@Override
+			public void run() {
+				try {
+					ingestionQueue.recover(files);
+					ingestionQueue.retry();
+				}
+				finally {
+					ingestionQueue.finished.countDown();
+				}
+			}
+		}, daemonToken);
+		for (int i = 0; i < workers; i++) {
+			Daemon.runInDaemonThread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						ingestionQueue.work();
+					}
+					finally {
+						ingestionQueue.finished.countDown();
+					}
+				}
+			}, daemonToken);
+		}
+		instance = ingestionQueue;
+		log.info("Started the asynchronous ingestion with " + workers + " workers and a queue of " + capacity
+		        + " documents");
+	}
+	
+	/**
+	 * Stop the workers, they finish the batch they are ingesting. The documents still in the queue
+	 * or waiting to be retried are in the journal and are ingested on the next start.
+	 */
+	public static synchronized void stop() {
+		IngestionQueue ingestionQueue = instance;
+		instance = null;
+		if (ingestionQueue != null) {
+			ingestionQueue.shutdown();
+			stopped = ingestionQueue;
+		}
+	}
+	
+	/**
+	 * @return true when the asynchronous ingestion is running.
+	 */
+	public static boolean isStarted() {
+		return instance != null;
+	}
+	
+	/**
+	 * Submit a document for asynchronous ingestion. An accepted document is on the disk when this
+	 * method returns.
+	 * 
+	 * @param type the type of the document, the name of the endpoint which received it.
+	 * @param document the document.
+	 * @return the outcome of the submission.
+	 */
+	public static Result submit(final String type, final ObjectNode document) {
+		IngestionQueue ingestionQueue = instance;
+		if (ingestionQueue == null) {
+			return Result.UNAVAILABLE;
+		}
+		return ingestionQueue.offer(type, document);
+	}
+	
+	/**
+	 * Journal the document and place it in the queue.
+	 * 
+	 * @param type the type of the document.
+	 * @param document the document.
+	 * @return the outcome of the submission.
+	 */
+	Result offer(final String type, final ObjectNode document) {
+		if (MedicDataExchange.getDocument(type, document) == null) {
+			return Result.INVALID;
+		}
+		if (queue.remainingCapacity() == 0) {
+			return Result.FULL;
+		}
+		File file;
+		try {
+			file = journal.append(type, document);
+		}
+		catch (IOException e) {
+			log.error("Unable to journal a document of type " + type, e);
+			return Result.UNAVAILABLE;
+		}
+		if (!queue.offer(new Entry(type, document, file))) {
+			journal.remove(file);
+			return Result.FULL;
+		}
+		return Result.ACCEPTED;
+	}
+	
+	/**
+	 * Stop the workers and the recovery, without waiting for them.
+	 */
+	void shutdown() {
+		running = false;
+	}
+	
+	/**
+	 * Wait for the workers and the recovery to finish after the ingestion is stopped.
+	 * 
+	 * @param timeout the maximum number of seconds to wait.
+	 * @return true when they are all finished.
+	 */
+	boolean awaitTermination(final long timeout) {
+		try {
+			return finished.await(timeout, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * Read the documents left in the journal back into the queue, waiting for room in the queue.
+	 * 
+	 * @param files the journal entries left by the earlier runs.
+	 */
+	void recover(final List<File> files) {
+		if (!files.isEmpty()) {
+			log.info("Recovering " + files.size() + " documents from the ingestion journal");
+		}
+		try {
+			for (File file : files) {
+				if (!running) {
+					return;
+				}
+				try {
+					ObjectNode envelope = journal.read(file);
+					Entry entry = new Entry(envelope.path("type").getTextValue(), (ObjectNode) envelope.get("document"),
+					        file);
+					if (!put(entry)) {
+						return;
+					}
+				}
+				catch (IOException e) {
+					log.error("Unable to read the ingestion journal entry " + file, e);
+					journal.markFailed(file);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Queue the documents of the failed batches again after the retry delay, until the ingestion is
+	 * stopped.
+	 */
+	void retry() {
+		try {
+			while (running) {
+				long retryAt = System.currentTimeMillis() + getRetryDelay();
+				while (running && System.currentTimeMillis() < retryAt) {
+					Thread.sleep(Math.min(1000L, Math.max(1L, retryAt - System.currentTimeMillis())));
+				}
+				List<Entry> entries;
+				synchronized (retries) {
+					entries = new ArrayList<Entry>(retries);
+					retries.clear();
+				}
+				for (Entry entry : entries) {
+					if (!put(entry)) {
+						return;
+					}
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Take the documents from the queue and ingest them a batch at a time, until the ingestion is
+	 * stopped.
+	 */
+	void work() {
+		while (running) {
+			List<Entry> entries = new ArrayList<Entry>();
+			try {
+				Entry entry = queue.poll(1, TimeUnit.SECONDS);
+				if (entry == null) {
+					continue;
+				}
+				entries.add(entry);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			queue.drainTo(entries, batchSize - 1);
+			ingestOrRetry(entries);
+		}
+	}
+	
+	private void ingestOrRetry(final List<Entry> entries) {
+		Exception error;
+		try {
+			ingest(entries);
+			failures.set(0);
+			return;
+		}
+		catch (Exception e) {
+			error = e;
+		}
+		List<Entry> failed = new ArrayList<Entry>();
+		if (entries.size() > 1) {
+			// a document failing its batch doesn't hold back the other documents of the batch.
+			for (Entry entry : entries) {
+				try {
+					ingest(Collections.singletonList(entry));
+				}
+				catch (Exception e) {
+					error = e;
+					failed.add(entry);
+				}
+			}
+		} else {
+			failed.addAll(entries);
+		}
+		if (failed.isEmpty()) {
+			failures.set(0);
+			return;
+		}
+		failures.incrementAndGet();
+		log.error("Unable to ingest " + failed.size() + " documents, they are retried in " + getRetryDelay() / 1000
+		        + " seconds", error);
+		synchronized (retries) {
+			retries.addAll(failed);
+		}
+	}
+	
+	/**
+	 * Transform the documents into queue data and save them in one transaction, then remove them from
+	 * the journal.
+	 * 
+	 * @param entries the documents.
+	 */
+	void ingest(final List<Entry> entries) {
+		try {
+			save(entries);
+		}
+		finally {
+			Context.clearSession();
+		}
+	}
+	
+	private void save(final List<Entry> entries) {
+		MedicDataExchange medicDataExchange = Context.getRegisteredComponent("medicDataExchange", MedicDataExchange.class);
+		List<MedicQueData> queueData = new ArrayList<MedicQueData>();
+		List<Entry> transformed = new ArrayList<Entry>();
+		Set<String> documentIds = new HashSet<String>();
+		for (Entry entry : entries) {
+			String documentId = MedicDataExchange.getDocumentId(entry.type, entry.document);
+			if (documentId != null) {
+				documentIds.add(documentId);
+			}
+		}
+		Set<String> receivedDocumentIds = Context.getService(InfoService.class).getExistingDocumentIds(documentIds);
+		for (Entry entry : entries) {
+			String documentId = MedicDataExchange.getDocumentId(entry.type, entry.document);
+			if (documentId != null && !receivedDocumentIds.add(documentId)) {
+				log.info("Ignoring the journaled document " + entry.file.getName() + ", it was already received");
+				journal.remove(entry.file);
+				continue;
+			}
+			MedicQueData medicQueData = null;
+			try {
+				medicQueData = medicDataExchange.createQueueData(entry.type, entry.document);
+			}
+			catch (Exception e) {
+				log.error("Unable to transform the document " + entry.file.getName() + " of type " + entry.type, e);
+			}
+			if (medicQueData == null) {
+				journal.markFailed(entry.file);
+			} else {
+				queueData.add(medicQueData);
+				transformed.add(entry);
+			}
+		}
+		if (!queueData.isEmpty()) {
+			Context.getService(AfyastatService.class).saveQueDataBatch(queueData);
+		}
+		for (Entry entry : transformed) {
+			journal.remove(entry.file);
+		}
+	}
+	
+	private boolean put(final Entry entry) throws InterruptedException {
+		while (!queue.offer(entry, 1, TimeUnit.SECONDS)) {
+			if (!running) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private long getRetryDelay() {
+		return retryDelay << Math.min(Math.max(failures.get() - 1, 0), MAX_RETRY_BACKOFF);
+	}
+	
+	private static String getGlobalProperty(final String property) {
+		return Context.getAdministrationService().getGlobalProperty(property);
+	}
+	
+	private static int getGlobalPropertyValue(final String property, final int defaultValue) {
+		int value = NumberUtils.toInt(getGlobalProperty(property), defaultValue);
+		return value > 0 ? value : defaultValue;
+	}
+	
+	/**
+	 * A document of the queue and its journal entry.
+	 */
+	static class Entry {
+		
+		final String type;
+		
+		final ObjectNode document;
+		
+		final File file;
+		
+		Entry(final String type, final ObjectNode document, final File file) {
+			this.type = type;
+			this.document = document;
+			this.file = file;
+		}
+	}
+}
@@ -38,30 +38,46 @@ import org.openmrs.module.afyastat.api.service.InfoService;
 import org.openmrs.module.afyastat.api.service.MedicQueData;
 import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
 import org.openmrs.module.afyastat.model.AfyaDataSource;
-import org.openmrs.module.kenyaemr.api.KenyaEmrService;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
 import org.openmrs.module.kenyaemr.metadata.HivMetadata;
 import org.openmrs.module.kenyaemr.util.EmrUtils;
 import org.openmrs.module.metadatadeploy.MetadataUtils;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
 
 import java.io.IOException;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
 public class MedicDataExchange {
 
-	AfyastatService afyastatService = Context.getService(AfyastatService.class);
-	InfoService dataService = Context.getService(InfoService.class);
+	private static final ObjectMapper MAPPER = new ObjectMapper();
 	
-	PersonService personService = Context.getPersonService();
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormat.forPattern("dd-MM-yyyy");
 	
-	PersonAttributeType phoneNumberAttrType = personService.getPersonAttributeTypeByUuid(AfyaStatMetadata.TELEPHONE_CONTACT);
+	private static final DateTimeFormatter DATE_PARSER = ISODateTimeFormat.dateTimeParser();
 	
-	static SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd-MM-yyyy");
+	private final Log log = LogFactory.getLog(MedicDataExchange.class);
 	
-	private Integer locationId = Context.getService(KenyaEmrService.class).getDefaultLocation().getLocationId();
+	public static final String BATCH_STATUS_QUEUED = "queued";
 	
-	private final Log log = LogFactory.getLog(MedicDataExchange.class);
+	public static final String BATCH_STATUS_FAILED = "failed";
+	
+	public static final String BATCH_STATUS_DUPLICATE = "duplicate";
+	
+	public static final String DUPLICATE_DOCUMENT_MESSAGE = "Document already received, ignored as a duplicate";
+	
+	private static final Map<String, String> DOCUMENT_FIELDS = new HashMap<String, String>();
+	
+	static {
+		DOCUMENT_FIELDS.put("medicformsdata", "encData");
+		DOCUMENT_FIELDS.put("medicregistration", "registration");
+		DOCUMENT_FIELDS.put("medicdemographicupdates", "demographicUpdate");
+		DOCUMENT_FIELDS.put("medicpeercalendar", "peerCalendarData");
+		DOCUMENT_FIELDS.put("mediccontactsdata", "formData");
+		DOCUMENT_FIELDS.put("mediccontacttracedata", "traceData");
+	}
 	
 	/**
 	 * processes results from cht *
@@ -70,114 +86,109 @@ public class MedicDataExchange {
 	 * @return
 	 */
 	public String processIncomingFormData(String resultPayload) {
+		return processIncomingFormData(readPayload(resultPayload));
+	}
+	
+	/**
+	 * processes results from cht already parsed from the request body
+	 * 
+	 * @param jsonNode the parsed form data
+	 * @return
+	 */
+	public String processIncomingFormData(ObjectNode jsonNode) {
 		Integer statusCode;
 		String statusMsg;
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode jsonNode = null;
-		try {
-			jsonNode = (ObjectNode) mapper.readTree(resultPayload);
-			
-		}
-		catch (IOException e) {
-			e.printStackTrace();
-		}
-		if (jsonNode != null) {
-			
-			ObjectNode formNode = processFormPayload(jsonNode);
-			String payload = formNode.toString();
-			String discriminator = formNode.path("discriminator").path("discriminator").getTextValue();
-			String formDataUuid = formNode.path("encounter").path("encounter.form_uuid").getTextValue();
-			String patientUuid = formNode.path("patient").path("patient.uuid").getTextValue();
-			Integer locationId = Integer.parseInt(formNode.path("encounter").path("encounter.location_id").getTextValue());
-			String providerString = formNode.path("encounter").path("encounter.provider_id").getTextValue();
-			String userName = formNode.path("encounter").path("encounter.user_system_id").getTextValue();
-			saveMedicDataQueue(payload, locationId, providerString, patientUuid, discriminator, formDataUuid, userName);
+		if (jsonNode != null && !saveQueueData("medicformsdata", jsonNode)) {
+			return DUPLICATE_DOCUMENT_MESSAGE;
 		}
 		return "Data queue form created successfully";
 	}
 	
+	/**
+	 * transforms form data from cht into queue data, without saving it
+	 * 
+	 * @param jsonNode the parsed form data
+	 * @return the queue data
+	 */
+	public MedicQueData createFormQueueData(ObjectNode jsonNode) {
+		return createMedicDataQueue(processFormPayload(jsonNode));
+	}
+	
 	public String processIncomingRegistration(String resultPayload) {
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode jsonNode = null;
-		try {
-			jsonNode = (ObjectNode) mapper.readTree(resultPayload);
-			
-		}
-		catch (IOException e) {
-			e.printStackTrace();
-		}
-		if (jsonNode != null) {
-			ObjectNode registrationNode = processRegistrationPayload(jsonNode);
-			String payload = registrationNode.toString();
-			String discriminator = registrationNode.path("discriminator").path("discriminator").getTextValue();
-			String formDataUuid = registrationNode.path("encounter").path("encounter.form_uuid").getTextValue();
-			String patientUuid = registrationNode.path("patient").path("patient.uuid").getTextValue();
-			Integer locationId = Integer.parseInt(registrationNode.path("encounter").path("encounter.location_id")
-			        .getTextValue());
-			String providerString = registrationNode.path("encounter").path("encounter.provider_id").getTextValue();
-			String userName = registrationNode.path("encounter").path("encounter.user_system_id").getTextValue();
-			saveMedicDataQueue(payload, locationId, providerString, patientUuid, discriminator, formDataUuid, userName);
+		return processIncomingRegistration(readPayload(resultPayload));
+	}
+	
+	public String processIncomingRegistration(ObjectNode jsonNode) {
+		if (jsonNode != null && !saveQueueData("medicregistration", jsonNode)) {
+			return DUPLICATE_DOCUMENT_MESSAGE;
 		}
 		return "Data queue registration created successfully";
 	}
 	
+	public MedicQueData createRegistrationQueueData(ObjectNode jsonNode) {
+		return createMedicDataQueue(processRegistrationPayload(jsonNode));
+	}
+	
 	public String processDemographicsUpdate(String resultPayload) {
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode jsonNode = null;
-		try {
-			jsonNode = (ObjectNode) mapper.readTree(resultPayload);
-			
-		}
-		catch (IOException e) {
-			e.printStackTrace();
-		}
-		if (jsonNode != null) {
-			ObjectNode demographicUpdateNode = processDemographicUpdatePayload(jsonNode);
-			String payload = demographicUpdateNode.toString();
-			String discriminator = demographicUpdateNode.path("discriminator").path("discriminator").getTextValue();
-			String formDataUuid = demographicUpdateNode.path("encounter").path("encounter.form_uuid").getTextValue();
-			String patientUuid = demographicUpdateNode.path("patient").path("patient.uuid").getTextValue();
-			Integer locationId = Integer.parseInt(demographicUpdateNode.path("encounter").path("encounter.location_id")
-			        .getTextValue());
-			String providerString = demographicUpdateNode.path("encounter").path("encounter.provider_id").getTextValue();
-			String userName = demographicUpdateNode.path("encounter").path("encounter.user_system_id").getTextValue();
-			saveMedicDataQueue(payload, locationId, providerString, patientUuid, discriminator, formDataUuid, userName);
+		return processDemographicsUpdate(readPayload(resultPayload));
+	}
+	
+	public String processDemographicsUpdate(ObjectNode jsonNode) {
+		if (jsonNode != null && !saveQueueData("medicdemographicupdates", jsonNode)) {
+			return DUPLICATE_DOCUMENT_MESSAGE;
 		}
 		return "Data queue demographics updates created successfully";
 	}
 	
+	public MedicQueData createDemographicsUpdateQueueData(ObjectNode jsonNode) {
+		return createMedicDataQueue(processDemographicUpdatePayload(jsonNode));
+	}
+	
 	public String processPeerCalenderFormData(String resultPayload) {
-		ObjectMapper mapper = new ObjectMapper();
+		return processPeerCalenderFormData(readPayload(resultPayload));
+	}
+	
+	public String processPeerCalenderFormData(ObjectNode jsonNode) {
+		if (jsonNode != null && !saveQueueData("medicpeercalendar", jsonNode)) {
+			return DUPLICATE_DOCUMENT_MESSAGE;
+		}
+		return "Data queue form created successfully";
+	}
+	
+	public MedicQueData createPeerCalenderQueueData(ObjectNode jsonNode) {
+		return createMedicDataQueue(processPeerCalenderPayload(jsonNode));
+	}
+	
+	private ObjectNode readPayload(String resultPayload) {
 		ObjectNode jsonNode = null;
 		try {
-			jsonNode = (ObjectNode) mapper.readTree(resultPayload);
+			jsonNode = (ObjectNode) MAPPER.readTree(resultPayload);
 			
 		}
 		catch (IOException e) {
 			e.printStackTrace();
 		}
-		if (jsonNode != null) {
-			
-			ObjectNode formNode = processPeerCalenderPayload(jsonNode);
-			String payload = formNode.toString();
-			String discriminator = formNode.path("discriminator").path("discriminator").getTextValue();
-			String formDataUuid = formNode.path("encounter").path("encounter.form_uuid").getTextValue();
-			String patientUuid = formNode.path("patient").path("patient.uuid").getTextValue();
-			Integer locationId = Integer.parseInt(formNode.path("encounter").path("encounter.location_id").getTextValue());
-			String providerString = formNode.path("encounter").path("encounter.provider_id").getTextValue();
-			String userName = formNode.path("encounter").path("encounter.user_system_id").getTextValue();
-			saveMedicDataQueue(payload, locationId, providerString, patientUuid, discriminator, formDataUuid, userName);
-		}
-		return "Data queue form created successfully";
+		return jsonNode;
 	}
 	
-	private void saveMedicDataQueue(String payload, Integer locationId, String providerString, String patientUuid,
-	        String discriminator, String formUuid, String userString) {
-		AfyaDataSource dataSource = dataService.getDataSource(1);
-		Provider provider = Context.getProviderService().getProviderByIdentifier(providerString);
-		User user = Context.getUserService().getUserByUsername(userString);
-		Location location = Context.getLocationService().getLocation(locationId);
-		Form form = Context.getFormService().getFormByUuid(formUuid);
+	private MedicQueData createMedicDataQueue(ObjectNode formNode) {
+		String payload = formNode.toString();
+		String discriminator = formNode.path("discriminator").path("discriminator").getTextValue();
+		String formDataUuid = formNode.path("encounter").path("encounter.form_uuid").getTextValue();
+		String patientUuid = formNode.path("patient").path("patient.uuid").getTextValue();
+		Integer locationId = Integer.parseInt(formNode.path("encounter").path("encounter.location_id").getTextValue());
+		String providerString = formNode.path("encounter").path("encounter.provider_id").getTextValue();
+		String userName = formNode.path("encounter").path("encounter.user_system_id").getTextValue();
+		return createMedicDataQueue(payload, locationId, providerString, patientUuid, discriminator, formDataUuid, userName);
+	}
+	
+	private MedicQueData createMedicDataQueue(String payload, Integer locationId, String providerString,
+	        String patientUuid, String discriminator, String formUuid, String userString) {
+		AfyaDataSource dataSource = getInfoService().getDataSource(1);
+		Provider provider = ReferenceDataCache.getProviderByIdentifier(providerString);
+		User user = ReferenceDataCache.getUserByUsername(userString);
+		Location location = ReferenceDataCache.getLocation(locationId);
+		Form form = ReferenceDataCache.getFormByUuid(formUuid);
 		
 		MedicQueData medicQueData = new MedicQueData();
 		if (form != null && form.getName() != null) {
@@ -193,7 +204,7 @@ public class MedicDataExchange {
 		medicQueData.setLocation(location);
 		medicQueData.setDataSource(dataSource);
 		medicQueData.setCreator(user);
-		afyastatService.saveQueData(medicQueData);
+		return medicQueData;
 	}
 	
 	private ObjectNode processRegistrationPayload(ObjectNode jNode) {
@@ -296,7 +307,7 @@ public class MedicDataExchange {
 		Long longDate = jsonNode.get("reported_date") != null ? jsonNode.get("reported_date").getLongValue() : date
 		        .getTime();
 		
-		encounter.put("encounter.location_id", locationId != null ? locationId.toString() : null);
+		encounter.put("encounter.location_id", getDefaultLocationId());
 		encounter.put("encounter.provider_id_select", providerId != null ? providerId : " ");
 		encounter.put("encounter.provider_id", providerId != null ? providerId : " ");
 		encounter.put("encounter.encounter_datetime", convertTime(longDate));
@@ -319,15 +330,14 @@ public class MedicDataExchange {
 		ObjectNode discriminator = JsonNodeFactory.instance.objectNode();
 		ObjectNode encounter = JsonNodeFactory.instance.objectNode();
 		ObjectNode patientNode = JsonNodeFactory.instance.objectNode();
-		ObjectMapper mapper = new ObjectMapper();
 		ObjectNode obsNodes = null;
 		ObjectNode jsonNodes = null;
 		String json = null;
 		try {
-			jsonNodes = (ObjectNode) mapper.readTree(jsonNode.path("fields").path("observation").toString());
-			json = new ObjectMapper().writeValueAsString(jsonNodes);
+			jsonNodes = (ObjectNode) MAPPER.readTree(jsonNode.path("fields").path("observation").toString());
+			json = MAPPER.writeValueAsString(jsonNodes);
 			if (json != null) {
-				obsNodes = (ObjectNode) mapper.readTree(json.replace("_", "^"));
+				obsNodes = (ObjectNode) MAPPER.readTree(json.replace("_", "^"));
 			}
 		}
 		catch (IOException e) {
@@ -344,7 +354,7 @@ public class MedicDataExchange {
 		String providerIdentifier = checkProviderNameExists(creator);
 		String systemId = confirmUserNameExists(creator);
 		discriminator.put("discriminator", "json-encounter");
-		encounter.put("encounter.location_id", locationId != null ? locationId.toString() : null);
+		encounter.put("encounter.location_id", getDefaultLocationId());
 		encounter.put("encounter.provider_id_select", providerIdentifier != null ? providerIdentifier : " ");
 		encounter.put("encounter.provider_id", providerIdentifier != null ? providerIdentifier : " ");
 		encounter.put("encounter.encounter_datetime", encounterDate);
@@ -392,15 +402,14 @@ public class MedicDataExchange {
 		ObjectNode discriminator = JsonNodeFactory.instance.objectNode();
 		ObjectNode encounter = JsonNodeFactory.instance.objectNode();
 		ObjectNode patientNode = JsonNodeFactory.instance.objectNode();
-		ObjectMapper mapper = new ObjectMapper();
 		ObjectNode obsNodes = null;
 		ObjectNode jsonNodes = null;
 		String json = null;
 		try {
-			jsonNodes = (ObjectNode) mapper.readTree(jsonNode.path("fields").path("observation").toString());
-			json = new ObjectMapper().writeValueAsString(jsonNodes);
+			jsonNodes = (ObjectNode) MAPPER.readTree(jsonNode.path("fields").path("observation").toString());
+			json = MAPPER.writeValueAsString(jsonNodes);
 			if (json != null) {
-				obsNodes = (ObjectNode) mapper.readTree(json.replace("_", "^"));
+				obsNodes = (ObjectNode) MAPPER.readTree(json.replace("_", "^"));
 			}
 		}
 		catch (IOException e) {
@@ -417,7 +426,7 @@ public class MedicDataExchange {
 		String providerIdentifier = checkProviderNameExists(creator);
 		String systemId = confirmUserNameExists(creator);
 		discriminator.put("discriminator", "json-peerCalendar");
-		encounter.put("encounter.location_id", locationId != null ? locationId.toString() : null);
+		encounter.put("encounter.location_id", getDefaultLocationId());
 		encounter.put("encounter.provider_id_select", providerIdentifier != null ? providerIdentifier : " ");
 		encounter.put("encounter.provider_id", providerIdentifier != null ? providerIdentifier : " ");
 		encounter.put("encounter.encounter_datetime", encounterDate);
@@ -455,7 +464,7 @@ public class MedicDataExchange {
 				
 				String[] conceptElements = org.apache.commons.lang.StringUtils.split(entry.getKey(), "\\^");
 				int conceptId = Integer.parseInt(conceptElements[0]);
-				Concept concept = Context.getConceptService().getConcept(conceptId);
+				Concept concept = ReferenceDataCache.getConcept(conceptId);
 				
 				if (concept == null) {
 					log.info("Unable to find Concept for Question with ID:: " + conceptId);
@@ -466,10 +475,10 @@ public class MedicDataExchange {
 						
 						try {
 							if (entry.getValue().isObject()) {
-								jsonObsNodes = (ObjectNode) mapper.readTree(entry.getValue().toString());
-								jsonObsGroup = new ObjectMapper().writeValueAsString(jsonObsNodes);
+								jsonObsNodes = (ObjectNode) MAPPER.readTree(entry.getValue().toString());
+								jsonObsGroup = MAPPER.writeValueAsString(jsonObsNodes);
 								if (jsonObsGroup != null) {
-									obsGroupNode = (ObjectNode) mapper.readTree(jsonObsGroup);
+									obsGroupNode = (ObjectNode) MAPPER.readTree(jsonObsGroup);
 								}
 							}
 						}
@@ -513,52 +522,239 @@ public class MedicDataExchange {
 	}
 	
 	public String addContactListToDataqueue(String resultPayload) {
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode jsonNode = null;
-		try {
-			jsonNode = (ObjectNode) mapper.readTree(resultPayload);
-			jsonNode = (ObjectNode) jsonNode.get("formData");
-		}
-		catch (IOException e) {
-			e.printStackTrace();
-		}
-		if (jsonNode != null) {
-			String payload = jsonNode.toString();
-			String discriminator = "json-patientcontact";
-			String patientContactUuid = jsonNode.get("_id") != null ? jsonNode.get("_id").getTextValue() : "";
-			Integer locationId = Context.getService(KenyaEmrService.class).getDefaultLocation().getLocationId();
-			String creator = jsonNode.path("meta").path("created_by") != null ? jsonNode.path("meta").path("created_by")
-			        .getTextValue() : "";
-			String providerString = checkProviderNameExists(creator);
-			String userName = confirmUserNameExists(creator);
-			saveMedicDataQueue(payload, locationId, providerString, patientContactUuid, discriminator, "", userName);
+		return addContactListToDataqueue(readPayload(resultPayload));
+	}
+	
+	public String addContactListToDataqueue(ObjectNode resultNode) {
+		if (resultNode != null && !saveQueueData("mediccontactsdata", resultNode)) {
+			return DUPLICATE_DOCUMENT_MESSAGE;
 		}
 		return "Queue data for contact created successfully";
 	}
 	
+	public MedicQueData createContactListQueueData(ObjectNode resultNode) {
+		ObjectNode jsonNode = resultNode != null ? (ObjectNode) resultNode.get("formData") : null;
+		if (jsonNode == null) {
+			return null;
+		}
+		String payload = jsonNode.toString();
+		String discriminator = "json-patientcontact";
+		String patientContactUuid = jsonNode.get("_id") != null ? jsonNode.get("_id").getTextValue() : "";
+		Location defaultLocation = ReferenceDataCache.getDefaultLocation();
+		Integer locationId = defaultLocation != null ? defaultLocation.getLocationId() : null;
+		String creator = jsonNode.path("meta").path("created_by") != null ? jsonNode.path("meta").path("created_by")
+		        .getTextValue() : "";
+		String providerString = checkProviderNameExists(creator);
+		String userName = confirmUserNameExists(creator);
+		return createMedicDataQueue(payload, locationId, providerString, patientContactUuid, discriminator, "", userName);
+	}
+	
 	public String addContactTraceToDataqueue(String resultPayload) {
-		ObjectMapper mapper = new ObjectMapper();
-		ObjectNode jsonNode = null;
-		try {
-			jsonNode = (ObjectNode) mapper.readTree(resultPayload);
-			jsonNode = (ObjectNode) jsonNode.get("traceData");
+		return addContactTraceToDataqueue(readPayload(resultPayload));
+	}
+	
+	public String addContactTraceToDataqueue(ObjectNode resultNode) {
+		if (resultNode != null && !saveQueueData("mediccontacttracedata", resultNode)) {
+			return DUPLICATE_DOCUMENT_MESSAGE;
 		}
-		catch (IOException e) {
-			e.printStackTrace();
+		return "Queue data for contact trace created successfully";
+	}
+	
+	public MedicQueData createContactTraceQueueData(ObjectNode resultNode) {
+		ObjectNode jsonNode = resultNode != null ? (ObjectNode) resultNode.get("traceData") : null;
+		if (jsonNode == null) {
+			return null;
+		}
+		String discriminator = "json-contacttrace";
+		String payload = jsonNode.toString();
+		String patientContactUuid = jsonNode.get("_id") != null ? jsonNode.get("_id").getTextValue() : "";
+		Location defaultLocation = ReferenceDataCache.getDefaultLocation();
+		Integer locationId = defaultLocation != null ? defaultLocation.getLocationId() : null;
+		String creator = jsonNode.path("fields").path("audit_trail").path("created_by") != null
+		        && jsonNode.path("fields").path("audit_trail").path("created_by").getTextValue() != null ? jsonNode
+		        .path("fields").path("audit_trail").path("created_by").getTextValue() : "";
+		String providerString = checkProviderNameExists(creator);
+		String userName = confirmUserNameExists(creator);
+		return createMedicDataQueue(payload, locationId, providerString, patientContactUuid, discriminator, "", userName);
+	}
+	
+	/**
+	 * processes a batch of cht documents. Each element of the batch names the type of the document,
+	 * which is the name of the endpoint accepting it on its own (medicformsdata, medicregistration,
+	 * medicdemographicupdates, medicpeercalendar, mediccontactsdata or mediccontacttracedata), and
+	 * holds the document as it would be posted to that endpoint:
+	 * <code>{"type": "medicformsdata", "document": {"encData": {...}}}</code>. The documents which
+	 * could be transformed are saved together in one transaction, the documents which were already
+	 * received, before or earlier in the same batch, are reported as duplicates and skipped.
+	 * 
+	 * @param documents the batch of documents
+	 * @return the status of each document, in the order of the batch
+	 */
+	public List<Map<String, Object>> processBatch(ArrayNode documents) {
+		List<Map<String, Object>> statuses = new ArrayList<Map<String, Object>>();
+		List<MedicQueData> queueData = new ArrayList<MedicQueData>();
+		List<Map<String, Object>> queuedStatuses = new ArrayList<Map<String, Object>>();
+		String[] documentIds = new String[documents.size()];
+		Set<String> batchDocumentIds = new HashSet<String>();
+		for (int i = 0; i < documents.size(); i++) {
+			JsonNode document = documents.get(i).get("document");
+			if (document instanceof ObjectNode) {
+				documentIds[i] = getDocumentId(documents.get(i).path("type").getTextValue(), (ObjectNode) document);
+			}
+			if (documentIds[i] != null) {
+				batchDocumentIds.add(documentIds[i]);
+			}
+		}
+		// one lookup for the whole batch, the set also catches a document repeated within the batch.
+		Set<String> receivedDocumentIds = getInfoService().getExistingDocumentIds(batchDocumentIds);
+		for (int i = 0; i < documents.size(); i++) {
+			JsonNode element = documents.get(i);
+			String type = element.path("type").getTextValue();
+			Map<String, Object> status = new LinkedHashMap<String, Object>();
+			status.put("index", i);
+			status.put("type", type);
+			statuses.add(status);
+			if (documentIds[i] != null && !receivedDocumentIds.add(documentIds[i])) {
+				status.put("status", BATCH_STATUS_DUPLICATE);
+				status.put("message", DUPLICATE_DOCUMENT_MESSAGE);
+				continue;
+			}
+			try {
+				JsonNode document = element.get("document");
+				MedicQueData medicQueData = document instanceof ObjectNode ? createQueueData(type, (ObjectNode) document)
+				        : null;
+				if (medicQueData == null) {
+					status.put("status", BATCH_STATUS_FAILED);
+					status.put("message", "Unsupported document type or empty document");
+				} else {
+					status.put("uuid", medicQueData.getUuid());
+					queueData.add(medicQueData);
+					queuedStatuses.add(status);
+				}
+			}
+			catch (Exception e) {
+				log.error("Unable to transform document " + i + " of type " + type + " in the batch", e);
+				status.put("status", BATCH_STATUS_FAILED);
+				status.put("message", "Unable to transform the document: " + e.getMessage());
+			}
+		}
+		
+		String queuedStatus = BATCH_STATUS_QUEUED;
+		String queuedMessage = null;
+		if (!queueData.isEmpty()) {
+			try {
+				getAfyastatService().saveQueDataBatch(queueData);
+			}
+			catch (Exception e) {
+				log.error("Unable to save the batch of " + queueData.size() + " queue data", e);
+				queuedStatus = BATCH_STATUS_FAILED;
+				queuedMessage = "Unable to save the batch: " + e.getMessage();
+			}
 		}
-		if (jsonNode != null) {
-			String discriminator = "json-contacttrace";
-			String payload = jsonNode.toString();
-			String patientContactUuid = jsonNode.get("_id") != null ? jsonNode.get("_id").getTextValue() : "";
-			Integer locationId = Context.getService(KenyaEmrService.class).getDefaultLocation().getLocationId();
-			String creator = jsonNode.path("fields").path("audit_trail").path("created_by") != null
-			        && jsonNode.path("fields").path("audit_trail").path("created_by").getTextValue() != null ? jsonNode
-			        .path("fields").path("audit_trail").path("created_by").getTextValue() : "";
-			String providerString = checkProviderNameExists(creator);
-			String userName = confirmUserNameExists(creator);
-			saveMedicDataQueue(payload, locationId, providerString, patientContactUuid, discriminator, "", userName);
+		for (Map<String, Object> status : queuedStatuses) {
+			status.put("status", queuedStatus);
+			if (queuedMessage != null) {
+				status.put("message", queuedMessage);
+			}
 		}
-		return "Queue data for contact trace created successfully";
+		return statuses;
+	}
+	
+	/**
+	 * transforms a cht document into queue data, without saving it
+	 * 
+	 * @param type the type of the document, the name of the endpoint accepting it
+	 * @param document the document
+	 * @return the queue data or null when the type is not supported or the document is empty
+	 */
+	public MedicQueData createQueueData(String type, ObjectNode document) {
+		MedicQueData medicQueData = null;
+		if ("medicformsdata".equals(type)) {
+			medicQueData = createFormQueueData(document);
+		} else if ("medicregistration".equals(type)) {
+			medicQueData = createRegistrationQueueData(document);
+		} else if ("medicdemographicupdates".equals(type)) {
+			medicQueData = createDemographicsUpdateQueueData(document);
+		} else if ("medicpeercalendar".equals(type)) {
+			medicQueData = createPeerCalenderQueueData(document);
+		} else if ("mediccontactsdata".equals(type)) {
+			medicQueData = createContactListQueueData(document);
+		} else if ("mediccontacttracedata".equals(type)) {
+			medicQueData = createContactTraceQueueData(document);
+		}
+		if (medicQueData != null) {
+			medicQueData.setDocumentId(getDocumentId(type, document));
+		}
+		return medicQueData;
+	}
+	
+	/**
+	 * gets the cht document held by the body posted to an endpoint, e.g. the encData of the form data
+	 * 
+	 * @param type the type of the document, the name of the endpoint accepting it
+	 * @param body the body posted to the endpoint
+	 * @return the cht document or null when the type is not supported or the body has no document
+	 */
+	public static ObjectNode getDocument(String type, ObjectNode body) {
+		String field = type != null ? DOCUMENT_FIELDS.get(type) : null;
+		if (field == null || body == null || !body.path(field).isObject()) {
+			return null;
+		}
+		return (ObjectNode) body.get(field);
+	}
+	
+	/**
+	 * gets the identity of a cht document, its _id followed by its _rev when it has one. A retried
+	 * submission has the same identity, while an edit of the document gets a new _rev and is queued
+	 * again.
+	 * 
+	 * @param type the type of the document, the name of the endpoint accepting it
+	 * @param body the body posted to the endpoint
+	 * @return the identity of the document or null when the document has no _id
+	 */
+	public static String getDocumentId(String type, ObjectNode body) {
+		ObjectNode document = getDocument(type, body);
+		String id = document != null ? document.path("_id").getTextValue() : null;
+		if (StringUtils.isBlank(id)) {
+			return null;
+		}
+		String revision = document.path("_rev").getTextValue();
+		return StringUtils.isBlank(revision) ? id : id + "/" + revision;
+	}
+	
+	/**
+	 * saves the queue data of a cht document, unless the document was already received
+	 * 
+	 * @param type the type of the document, the name of the endpoint accepting it
+	 * @param document the body posted to the endpoint
+	 * @return false when the document was already received
+	 */
+	private boolean saveQueueData(String type, ObjectNode document) {
+		String documentId = getDocumentId(type, document);
+		if (isReceived(documentId)) {
+			log.info("Ignoring the cht document " + documentId + " of type " + type + ", it was already received");
+			return false;
+		}
+		MedicQueData medicQueData = createQueueData(type, document);
+		if (medicQueData == null) {
+			return true;
+		}
+		try {
+			getAfyastatService().saveQueData(medicQueData);
+		}
+		catch (RuntimeException e) {
+			// a retry racing this submission past the check is refused by the unique index on the document id.
+			if (isReceived(documentId)) {
+				log.info("Ignoring the cht document " + documentId + " of type " + type + ", it was already received");
+				return false;
+			}
+			throw e;
+		}
+		return true;
+	}
+	
+	private boolean isReceived(String documentId) {
+		return documentId != null && !getInfoService().getExistingDocumentIds(Collections.singleton(documentId)).isEmpty();
 	}
 	
 	private ArrayNode handleMultiSelectFields(String listOfItems) {
@@ -648,65 +844,37 @@ public class MedicDataExchange {
 	private String formatStringDate(String dob) {
 		String date = null;
 		try {
-			SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy");
-			SimpleDateFormat sdf2 = new SimpleDateFormat("yyyy-MM-dd");
-			date = sdf.format(sdf2.parse(dob));
+			date = DATE_FORMAT.print(DATE_PARSER.parseLocalDate(dob));
 		}
-		catch (ParseException e) {
-			e.printStackTrace();
+		catch (IllegalArgumentException e) {
+			log.warn("Unable to parse the date " + dob, e);
 		}
 		return date;
 	}
 	
 	private String convertTime(long time) {
-		Date date = new Date(time);
-		return DATE_FORMAT.format(date);
+		return DATE_FORMAT.print(time);
+	}
+	
+	private AfyastatService getAfyastatService() {
+		return Context.getService(AfyastatService.class);
+	}
+	
+	private InfoService getInfoService() {
+		return Context.getService(InfoService.class);
+	}
+	
+	private String getDefaultLocationId() {
+		Location location = ReferenceDataCache.getDefaultLocation();
+		return location != null ? location.getLocationId().toString() : null;
 	}
 	
 	private String checkProviderNameExists(String username) {
-		String providerIdentifier = null;
-		User user = null;
-		if (username != null && !username.equalsIgnoreCase("")) {
-			user = Context.getUserService().getUserByUsername(username);
-		}
-		
-		Provider unknownProvider = Context.getProviderService().getAllProviders().get(0);
-		User superUser = Context.getUserService().getUser(1);
-		if (user != null) {
-			Provider s = EmrUtils.getProvider(user);
-			// check if the user is a provider
-			if (s != null) {
-				providerIdentifier = s.getIdentifier();
-			} else {
-				providerIdentifier = unknownProvider.getIdentifier();
-			}
-		} else {
-			Provider p = EmrUtils.getProvider(superUser);
-			if (p != null) {
-				providerIdentifier = p.getIdentifier();
-				
-			} else {
-				providerIdentifier = unknownProvider.getIdentifier();
-			}
-		}
-		
-		return providerIdentifier;
+		return ReferenceDataCache.getProviderIdentifierForUsername(username);
 	}
 	
 	private String confirmUserNameExists(String username) {
-		String systemUserName = null;
-		User user = null;
-		User superUser = Context.getUserService().getUser(1);
-		if (username != null && !username.equalsIgnoreCase("")) {
-			user = Context.getUserService().getUserByUsername(username);
-		}
-		if (user != null) {
-			systemUserName = user.getUsername();
-			
-		} else {
-			systemUserName = superUser.getUsername();
-		}
-		return systemUserName;
+		return ReferenceDataCache.getSystemUsername(username);
 	}
 	
 	/**
@@ -868,7 +1036,7 @@ public class MedicDataExchange {
 		Program kpProgram = MetadataUtils.existing(Program.class, KP_PROGRAM_UUID);
 		Program hivProgram = MetadataUtils.existing(Program.class, HivMetadata._Program.HIV);
 		ProgramWorkflowService programWorkflowService = Context.getProgramWorkflowService();
-		PersonAttributeType chtPersonAttributeType = personService
+		PersonAttributeType chtPersonAttributeType = ReferenceDataCache
 		        .getPersonAttributeTypeByUuid(CHTUSERNAME_ATTRIBUTETYPE_UUID);
 		
 		JsonNodeFactory factory = getJsonNodeFactory();
@@ -893,7 +1061,7 @@ public class MedicDataExchange {
 				        .getPatient(ptId), kpProgram, null, null, null, null, true);
 				String peerEducatorHivStatus = getClientHIVStatusCapturedOnKpClinicalEnrollment(ptId);
 				Patient patient = Context.getPatientService().getPatient(ptId);
-				Person p = personService.getPerson(ptId);
+				Person p = Context.getPersonService().getPerson(ptId);
 				
 				String fullPeerEducatorName = "";
 				String peerEducatorAssignee = "";
@@ -1112,7 +1280,8 @@ public class MedicDataExchange {
 		fields.put("patient_birthDate",
 		    patient.getBirthdate() != null ? getSimpleDateFormat(dateFormat).format(patient.getBirthdate()) : "");
 		fields.put("patient_dobKnown", "_1066_No_99DCT");
-		fields.put("patient_telephone", getPersonAttributeByType(patient, phoneNumberAttrType));
+		fields.put("patient_telephone", getPersonAttributeByType(patient,
+		    ReferenceDataCache.getPersonAttributeTypeByUuid(AfyaStatMetadata.TELEPHONE_CONTACT)));
 		fields.put("patient_nationality", nationality);
 		fields.put("patient_county", county);
 		fields.put("patient_subcounty", subCounty);
@@ -1460,7 +1629,7 @@ public class MedicDataExchange {
 		String providerId = checkProviderNameExists(creator);
 		String systemId = confirmUserNameExists(creator);
 		
-		encounter.put("encounter.location_id", locationId != null ? locationId.toString() : null);
+		encounter.put("encounter.location_id", getDefaultLocationId());
 		encounter.put("encounter.provider_id_select", providerId != null ? providerId : " ");
 		encounter.put("encounter.provider_id", providerId != null ? providerId : " ");
 		encounter.put("encounter.encounter_datetime", convertTime(jsonNode.get("reported_date").getLongValue()));
@@ -1,7 +1,21 @@
 package org.openmrs.module.afyastat.util;
 
+import org.apache.commons.lang.math.NumberUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
+
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 public class Utils {
 	
@@ -48,14 +62,20 @@ public class Utils {
 	
 	public static final String NATIONAL_UNIQUE_PATIENT_IDENTIFIER = "f85081e2-b4be-4e48-b3a4-7994b69bb101";
 	
+	/**
+	 * Default maximum size in bytes of a request body, used when the global property is not set.
+	 */
+	public static final int DEFAULT_MAX_REQUEST_BODY_SIZE = 33554432;
+	
+	private static final ObjectMapper REQUEST_BODY_MAPPER = new ObjectMapper();
+	
 	public static String fetchRequestBody(BufferedReader reader) {
-		String requestBodyJsonStr = "";
+		StringBuilder requestBodyJsonStr = new StringBuilder();
 		try {
-			
-			BufferedReader br = new BufferedReader(reader);
-			String output = "";
-			while ((output = reader.readLine()) != null) {
-				requestBodyJsonStr += output;
+			char[] buffer = new char[8192];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				requestBodyJsonStr.append(buffer, 0, read);
 			}
 			
 		}
@@ -64,7 +84,144 @@ public class Utils {
 			System.out.println("IOException: " + e.getMessage());
 			
 		}
-		return requestBodyJsonStr;
+		return requestBodyJsonStr.toString();
+	}
+	
+	/**
+	 * Parse the json request body straight from the request stream, without building the body
+	 * string first. The body is limited to <code>medic.maxRequestBodySize</code> bytes.
+	 * 
+	 * @param inputStream the request stream.
+	 * @return the json object of the body or null when the body is empty or not a json object.
+	 * @throws IOException when the body can't be read, is not valid json or is too large.
+	 */
+	public static ObjectNode readRequestBody(InputStream inputStream) throws IOException {
+		JsonNode jsonNode = readRequestBodyTree(inputStream);
+		if (jsonNode != null && jsonNode.isObject()) {
+			return (ObjectNode) jsonNode;
+		}
+		return null;
+	}
+	
+	/**
+	 * Parse the json array request body straight from the request stream.
+	 * 
+	 * @param inputStream the request stream.
+	 * @return the json array of the body or null when the body is empty or not a json array.
+	 * @throws IOException when the body can't be read, is not valid json or is too large.
+	 * @see #readRequestBody(InputStream)
+	 */
+	public static ArrayNode readRequestBodyArray(InputStream inputStream) throws IOException {
+		JsonNode jsonNode = readRequestBodyTree(inputStream);
+		if (jsonNode != null && jsonNode.isArray()) {
+			return (ArrayNode) jsonNode;
+		}
+		return null;
+	}
+	
+	/**
+	 * Decode the request stream according to the Content-Encoding of the request, so a compressed body
+	 * is inflated as it is parsed. The size limit of the body applies to the decoded bytes.
+	 * 
+	 * @param inputStream the request stream.
+	 * @param contentEncoding the Content-Encoding header of the request, may be null.
+	 * @return the stream of the decoded body.
+	 * @throws IOException when the encoding is not supported or the gzip header can't be read.
+	 */
+	public static InputStream decodeRequestBody(InputStream inputStream, String contentEncoding) throws IOException {
+		String encoding = contentEncoding != null ? contentEncoding.trim().toLowerCase() : "";
+		if (encoding.length() == 0 || "identity".equals(encoding)) {
+			return inputStream;
+		}
+		if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+			return new GZIPInputStream(inputStream);
+		}
+		if ("deflate".equals(encoding)) {
+			return new InflaterInputStream(inputStream);
+		}
+		throw new IOException("Unsupported request Content-Encoding " + contentEncoding);
+	}
+	
+	/**
+	 * Gzip a request body before it is sent.
+	 * 
+	 * @param body the body.
+	 * @return the compressed body.
+	 * @throws IOException when the body can't be compressed.
+	 */
+	public static byte[] gzip(byte[] body) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(body.length / 4, 64));
+		GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+		try {
+			gzipOutputStream.write(body);
+		}
+		finally {
+			gzipOutputStream.close();
+		}
+		return outputStream.toByteArray();
+	}
+	
+	private static JsonNode readRequestBodyTree(InputStream inputStream) throws IOException {
+		return REQUEST_BODY_MAPPER.readTree(new SizeLimitedInputStream(inputStream, getMaxRequestBodySize()));
+	}
+	
+	private static long getMaxRequestBodySize() {
+		String maxSize = Context.getAdministrationService().getGlobalProperty(
+		    AfyaStatMetadata.MEDIC_MAX_REQUEST_BODY_SIZE);
+		long size = NumberUtils.toLong(maxSize, DEFAULT_MAX_REQUEST_BODY_SIZE);
+		return size > 0 ? size : DEFAULT_MAX_REQUEST_BODY_SIZE;
+	}
+	
+	/**
+	 * Stream failing the read once more than the allowed number of bytes have been read.
+	 */
+	private static class SizeLimitedInputStream extends FilterInputStream {
+		
+		private final long maxSize;
+		
+		private long count;
+		
+		private SizeLimitedInputStream(final InputStream inputStream, final long maxSize) {
+			super(inputStream);
+			this.maxSize = maxSize;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int read = super.read();
+			if (read != -1) {
+				count(1);
+			}
+			return read;
+		}
+		
+		@Override
+		public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				count(read);
+			}
+			return read;
+		}
+		
+		@Override
+		public long skip(final long n) throws IOException {
+			long skipped = super.skip(n);
+			count(skipped);
+			return skipped;
+		}
+		
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+		
+		private void count(final long read) throws IOException {
+			count += read;
+			if (count > maxSize) {
+				throw new IOException("Request body is larger than the maximum of " + maxSize + " bytes");
+			}
+		}
 	}
 	
 }
@@ -0,0 +1,165 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read through cache holding at most a fixed number of values, each for a limited time. When the
+ * cache is full the least recently used value is dropped. Values which can't be loaded (null) are
+ * not cached, so they are looked up again on the next read.
+ * <p>
+ * The cache is safe to be shared between threads, the loader is called outside of the lock and two
+ * threads missing the same key at the same time may both load it.
+ */
+public class BoundedCache<K, V> {
+	
+	/**
+	 * Loads the value of a key which is not in the cache.
+	 */
+	public interface Loader<K, V> {
+		
+		V load(K key);
+	}
+	
+	private final String name;
+	
+	private final long timeToLive;
+	
+	private final Map<K, Entry<V>> entries;
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Create a new cache.
+	 * 
+	 * @param name the name of the cache, used when reporting the statistics.
+	 * @param maxSize the maximum number of values kept in the cache.
+	 * @param timeToLive the number of milliseconds a value is kept in the cache.
+	 */
+	public BoundedCache(final String name, final int maxSize, final long timeToLive) {
+		this.name = name;
+		this.timeToLive = timeToLive;
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+			
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Get the value of the key, loading and caching it when it is not cached or has expired.
+	 * 
+	 * @param key the key.
+	 * @param loader the loader for the value of the key.
+	 * @return the value of the key or null when the loader can't find it.
+	 */
+	public V get(final K key, final Loader<K, V> loader) {
+		if (key == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		synchronized (entries) {
+			Entry<V> entry = entries.get(key);
+			if (entry != null) {
+				if (entry.expires > now) {
+					hits.incrementAndGet();
+					return entry.value;
+				}
+				entries.remove(key);
+			}
+		}
+		misses.incrementAndGet();
+		V value = loader.load(key);
+		if (value != null) {
+			synchronized (entries) {
+				entries.put(key, new Entry<V>(value, now + timeToLive));
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * Drop the cached value of the key.
+	 * 
+	 * @param key the key.
+	 */
+	public void invalidate(final K key) {
+		synchronized (entries) {
+			entries.remove(key);
+		}
+	}
+	
+	/**
+	 * Drop all the cached values. The hit and miss counters are not reset.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+	
+	/**
+	 * @return the name of the cache.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @return the number of values in the cache, including the expired values not dropped yet.
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+	
+	/**
+	 * @return the number of reads served from the cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return the number of reads which had to call the loader.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	@Override
+	public String toString() {
+		return name + "[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+	}
+	
+	private static class Entry<V> {
+		
+		private final V value;
+		
+		private final long expires;
+		
+		private Entry(final V value, final long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+}
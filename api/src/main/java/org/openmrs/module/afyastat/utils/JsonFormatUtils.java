@@ -70,6 +70,18 @@ public class JsonFormatUtils {
 		return returnedBoolean;
 	}
 	
+	/**
+	 * Read boolean value from the parsed payload.
+	 * 
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @return the boolean value in the payload. When the path is invalid, by default will return
+	 *         false.
+	 */
+	public static boolean readAsBoolean(final JsonPayload payload, final JsonPath path) {
+		return Boolean.valueOf(readAsString(payload, path));
+	}
+	
 	/**
 	 * Write numeric value into the json object. The method will only write the numeric value if the
 	 * object passed as the first argument is an instance of <code>{@link JSONObject}</code>.
@@ -104,6 +116,24 @@ public class JsonFormatUtils {
 		return returnedString;
 	}
 	
+	/**
+	 * Read numeric value from the parsed payload.
+	 * 
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @return the numeric value in the payload. When the path is invalid, by default will return 0.
+	 */
+	public static double readAsNumeric(final JsonPayload payload, final JsonPath path) {
+		double returnedNumeric = 0;
+		try {
+			returnedNumeric = (Double) payload.read(path);
+		}
+		catch (Exception e) {
+			logger.error("Unable to read numeric value with path: " + path.getPath() + " from: " + String.valueOf(payload));
+		}
+		return returnedNumeric;
+	}
+	
 	/**
 	 * Write string value into the json object. The method will only write the string value if the
 	 * object passed as the first argument is an instance of <code>{@link JSONObject}</code>.
@@ -138,6 +168,25 @@ public class JsonFormatUtils {
 		return returnedString;
 	}
 	
+	/**
+	 * Read string value from the parsed payload without parsing the payload string again.
+	 * 
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @return the string value in the payload. When the path is invalid, by default will return
+	 *         null.
+	 */
+	public static String readAsString(final JsonPayload payload, final JsonPath path) {
+		String returnedString = null;
+		try {
+			returnedString = payload.read(path);
+		}
+		catch (Exception e) {
+			logger.error("Unable to read string value with path: " + path.getPath() + " from: " + String.valueOf(payload));
+		}
+		return returnedString;
+	}
+	
 	/**
 	 * Utility method for parsing LinkedHashMap return by calling jsonutil.readAsObject to a
 	 * net.minidev.JSONObject.
@@ -205,6 +254,31 @@ public class JsonFormatUtils {
 		return returnedDate;
 	}
 	
+	/**
+	 * Read date value from the parsed payload. The value for the path must conform to the ISO-8601
+	 * standard date format.
+	 * 
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @return the date value in the payload. When the path is invalid, by default will return null.
+	 */
+	public static Date readAsDateTime(final JsonPayload payload, final JsonPath path) {
+		Date returnedDate = null;
+		try {
+			String dateAsString = readAsString(payload, path);
+			Calendar calendar = ISO8601StandardUtil.toCalendar(dateAsString);
+			returnedDate = calendar.getTime();
+		}
+		catch (ParseException e) {
+			logger.error("Unable to convert string value from path: " + path.getPath() + " from: "
+			        + String.valueOf(payload));
+		}
+		catch (Exception e) {
+			logger.error("Unable to create date value from path: " + path.getPath() + " from: " + String.valueOf(payload));
+		}
+		return returnedDate;
+	}
+	
 	/**
 	 * Read object value from the json object.
 	 * 
@@ -224,6 +298,26 @@ public class JsonFormatUtils {
 		return object;
 	}
 	
+	/**
+	 * Read object value from the parsed payload. The object is part of the parsed payload and must
+	 * not be modified.
+	 * 
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @return the object value in the payload. When the path is invalid, by default will return
+	 *         null.
+	 */
+	public static Object readAsObject(final JsonPayload payload, final JsonPath path) {
+		Object object = null;
+		try {
+			object = payload.read(path);
+		}
+		catch (Exception e) {
+			logger.error("Unable to read object value with path: " + path.getPath() + " from: " + String.valueOf(payload));
+		}
+		return object;
+	}
+	
 	public static JSONArray toJsonArray(JSONObject jsonObject) {
 		Set keys = jsonObject.keySet();
 		Iterator iterator = keys.iterator();
@@ -285,6 +379,25 @@ public class JsonFormatUtils {
 		return objects;
 	}
 	
+	/**
+	 * Read list of object value from the parsed payload.
+	 * 
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @return the list of object values in the payload. When the path is invalid, by default will
+	 *         return empty list.
+	 */
+	public static List<Object> readAsObjectList(final JsonPayload payload, final JsonPath path) {
+		List<Object> objects = new ArrayList<Object>();
+		try {
+			objects = payload.read(path);
+		}
+		catch (Exception e) {
+			logger.error("Unable to read object value with path: " + path.getPath() + " from: " + String.valueOf(payload));
+		}
+		return objects;
+	}
+	
 	/**
 	 * Write the day string of the date value into the json object. The method will only write the
 	 * date value if the object passed as the first argument is an instance of
@@ -313,19 +426,19 @@ public class JsonFormatUtils {
 	 *         null.
 	 */
 	public static Date readAsDate(String serialized, String path) {
-		String dateAsString = readAsString(serialized, path);
-		if (dateAsString == null || dateAsString.length() == 0) {
-			return null;
-		}
-		try {
-			if (dateAsString.contains("/"))
-				return new SimpleDateFormat(DATE_PATTERN).parse(dateAsString.replace("/", "-"));
-			return new SimpleDateFormat(DATE_PATTERN).parse(dateAsString);
-		}
-		catch (ParseException e) {
-			logger.error("Unable to convert string value from path: " + path + " from: " + String.valueOf(serialized));
-		}
-		return null;
+		return parseDate(readAsString(serialized, path), DATE_PATTERN, path, serialized);
+	}
+	
+	/**
+	 * Read date value from the parsed payload. The value for the path must conform to the
+	 * "dd-MM-yyyy" date format.
+	 * 
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @return the date value in the payload. When the path is invalid, by default will return null.
+	 */
+	public static Date readAsDate(final JsonPayload payload, final JsonPath path) {
+		return parseDate(readAsString(payload, path), DATE_PATTERN, path.getPath(), payload);
 	}
 	
 	/**
@@ -338,9 +451,28 @@ public class JsonFormatUtils {
 	 */
 	public static Date readAsDateTime(final String jsonObject, final String path, final DateFormat dateFormat,
 	        final String jsonPayloadTimezone) {
+		return parseDateTime(readAsString(jsonObject, path), dateFormat, jsonPayloadTimezone, path, jsonObject);
+	}
+	
+	/**
+	 * Read date value from the parsed payload.
+	 * 
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @param dateFormat the format of the date value.
+	 * @param jsonPayloadTimezone the timezone of the date value, null to use the default timezone.
+	 * @return the date Time value in the payload. When the path is invalid, by default will return
+	 *         null.
+	 */
+	public static Date readAsDateTime(final JsonPayload payload, final JsonPath path, final DateFormat dateFormat,
+	        final String jsonPayloadTimezone) {
+		return parseDateTime(readAsString(payload, path), dateFormat, jsonPayloadTimezone, path.getPath(), payload);
+	}
+	
+	private static Date parseDateTime(String dateAsString, final DateFormat dateFormat, final String jsonPayloadTimezone,
+	        final String path, final Object source) {
 		Date returnedDate = null;
 		try {
-			String dateAsString = readAsString(jsonObject, path);
 			if (dateAsString.length() == 10) {
 				dateAsString = dateAsString + " 00:00";
 			}
@@ -352,7 +484,7 @@ public class JsonFormatUtils {
 			}
 		}
 		catch (Exception e) {
-			logger.error("Unable to create date value from path: " + path + " from: " + String.valueOf(jsonObject));
+			logger.error("Unable to create date value from path: " + path + " from: " + String.valueOf(source));
 		}
 		return returnedDate;
 	}
@@ -365,17 +497,33 @@ public class JsonFormatUtils {
 	}
 	
 	public static Date readAsDate(String serialized, String path, String datePatternMedic) {
-		String dateAsString = readAsString(serialized, path);
+		return parseDate(readAsString(serialized, path), datePatternMedic, path, serialized);
+	}
+	
+	/**
+	 * Read date value from the parsed payload using the date pattern.
+	 * 
+	 * @param payload the parsed payload.
+	 * @param path the compiled path inside the payload.
+	 * @param datePattern the pattern of the date value.
+	 * @return the date value in the payload. When the path is invalid, by default will return null.
+	 */
+	public static Date readAsDate(final JsonPayload payload, final JsonPath path, final String datePattern) {
+		return parseDate(readAsString(payload, path), datePattern, path.getPath(), payload);
+	}
+	
+	private static Date parseDate(final String dateAsString, final String datePattern, final String path,
+	        final Object source) {
 		if (dateAsString == null || dateAsString.length() == 0) {
 			return null;
 		}
 		try {
 			if (dateAsString.contains("/"))
-				return new SimpleDateFormat(datePatternMedic).parse(dateAsString.replace("/", "-"));
-			return new SimpleDateFormat(datePatternMedic).parse(dateAsString);
+				return new SimpleDateFormat(datePattern).parse(dateAsString.replace("/", "-"));
+			return new SimpleDateFormat(datePattern).parse(dateAsString);
 		}
 		catch (ParseException e) {
-			logger.error("Unable to convert string value from path: " + path + " from: " + String.valueOf(serialized));
+			logger.error("Unable to convert string value from path: " + path + " from: " + String.valueOf(source));
 		}
 		return null;
 	}
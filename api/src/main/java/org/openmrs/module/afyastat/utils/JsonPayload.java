@@ -0,0 +1,138 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.spi.JsonProviderFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Payload of a queue data parsed into a json document. The payload string is parsed only once, on
+ * the first read, and every later read evaluates a compiled path against the parsed document. The
+ * value of each compiled path is cached, so reading the same field again is a map lookup.
+ * <p>
+ * The values returned are part of the parsed document and are shared between the reads, callers
+ * must not modify them. A payload is not thread safe and must only be read by the thread working on
+ * its queue data.
+ */
+public class JsonPayload {
+	
+	private static final ConcurrentMap<String, JsonPath> compiledPaths = new ConcurrentHashMap<String, JsonPath>();
+	
+	private final String payload;
+	
+	private final Map<JsonPath, Object> values;
+	
+	private Object document;
+	
+	private RuntimeException parseException;
+	
+	/**
+	 * Create a new parsed payload, the payload is parsed on the first read.
+	 * 
+	 * @param payload the json payload string.
+	 */
+	public JsonPayload(final String payload) {
+		this.payload = payload;
+		this.values = new HashMap<JsonPath, Object>();
+	}
+	
+	/**
+	 * @return the json payload string.
+	 */
+	public String getPayload() {
+		return payload;
+	}
+	
+	/**
+	 * Read the value of the path from the parsed payload.
+	 * 
+	 * @param path the path inside the payload.
+	 * @return the value of the path.
+	 * @throws RuntimeException when the payload is not a valid json document or the path can't be
+	 *             read from the payload.
+	 */
+	public <T> T read(final String path) {
+		return read(compile(path));
+	}
+	
+	/**
+	 * Read the value of the compiled path from the parsed payload. The values are cached by the
+	 * compiled path, so the paths should come from {@link PayloadPaths} or {@link #compile(String)}.
+	 * 
+	 * @param jsonPath the compiled path.
+	 * @return the value of the path.
+	 * @throws RuntimeException when the payload is not a valid json document or the path can't be
+	 *             read from the payload.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T read(final JsonPath jsonPath) {
+		if (values.containsKey(jsonPath)) {
+			return (T) values.get(jsonPath);
+		}
+		T value = (T) jsonPath.read(getDocument());
+		values.put(jsonPath, value);
+		return value;
+	}
+	
+	/**
+	 * Get the parsed json document, parsing the payload string if it was not parsed yet. A payload
+	 * which failed to parse is not parsed again.
+	 * 
+	 * @return the parsed json document.
+	 */
+	public Object getDocument() {
+		if (document == null) {
+			if (parseException != null) {
+				throw parseException;
+			}
+			try {
+				document = JsonProviderFactory.createProvider().parse(payload);
+			}
+			catch (RuntimeException e) {
+				parseException = e;
+				throw e;
+			}
+		}
+		return document;
+	}
+	
+	/**
+	 * Get the compiled path for the path string. The paths are compiled once and shared by every
+	 * payload.
+	 * 
+	 * @param path the path string.
+	 * @return the compiled path.
+	 */
+	public static JsonPath compile(final String path) {
+		JsonPath jsonPath = compiledPaths.get(path);
+		if (jsonPath == null) {
+			jsonPath = JsonPath.compile(path);
+			JsonPath existing = compiledPaths.putIfAbsent(path, jsonPath);
+			if (existing != null) {
+				jsonPath = existing;
+			}
+		}
+		return jsonPath;
+	}
+	
+	@Override
+	public String toString() {
+		return payload;
+	}
+}
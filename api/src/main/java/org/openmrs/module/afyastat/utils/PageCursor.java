@@ -0,0 +1,111 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.openmrs.BaseOpenmrsData;
+import org.openmrs.api.APIException;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Date;
+
+/**
+ * Position of a page of data ordered by date created then id, newest first. The next page holds the
+ * data created before the date created and id of the last data of the page, so it is read from the
+ * (date_created, id) order without skipping the data of the previous pages. The pages of the archive
+ * are ordered by date archived instead, which is then the date of the cursor.
+ * <p>
+ * The cursor is passed to the clients as an opaque url safe string, which is only read back by
+ * {@link #decode(String)}.
+ */
+public class PageCursor {
+	
+	private static final String CHARSET = "UTF-8";
+	
+	private static final char SEPARATOR = ':';
+	
+	private final Date date;
+	
+	private final Integer id;
+	
+	/**
+	 * Create the cursor of the page following the data.
+	 * 
+	 * @param date the date created, or the date archived, of the last data of the page.
+	 * @param id the id of the last data of the page.
+	 */
+	public PageCursor(final Date date, final Integer id) {
+		this.date = date;
+		this.id = id;
+	}
+	
+	/**
+	 * @return the date created, or the date archived, of the last data of the previous page.
+	 */
+	public Date getDate() {
+		return date;
+	}
+	
+	/**
+	 * @return the id of the last data of the previous page.
+	 */
+	public Integer getId() {
+		return id;
+	}
+	
+	/**
+	 * @param data the last data of a page.
+	 * @return the opaque cursor of the page following the data.
+	 */
+	public static String encode(final BaseOpenmrsData data) {
+		return encode(data.getDateCreated(), data.getId());
+	}
+	
+	/**
+	 * @param date the date created, or the date archived, of the last data of a page.
+	 * @param id the id of the last data of a page.
+	 * @return the opaque cursor of the page following the data.
+	 */
+	public static String encode(final Date date, final Integer id) {
+		String position = date.getTime() + String.valueOf(SEPARATOR) + id;
+		try {
+			return Base64.encodeBase64URLSafeString(position.getBytes(CHARSET));
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(CHARSET + " is not supported", e);
+		}
+	}
+	
+	/**
+	 * @param cursor the opaque cursor, empty for the first page.
+	 * @return the cursor or null for the first page.
+	 * @throws APIException when the cursor was not returned by {@link #encode(BaseOpenmrsData)}.
+	 */
+	public static PageCursor decode(final String cursor) {
+		if (StringUtils.isBlank(cursor)) {
+			return null;
+		}
+		String position;
+		try {
+			position = new String(Base64.decodeBase64(cursor.getBytes(CHARSET)), CHARSET);
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(CHARSET + " is not supported", e);
+		}
+		String date = StringUtils.substringBefore(position, String.valueOf(SEPARATOR));
+		String id = StringUtils.substringAfter(position, String.valueOf(SEPARATOR));
+		if (!NumberUtils.isDigits(date) || !NumberUtils.isDigits(id) || id.length() > 9) {
+			throw new APIException("Invalid page cursor " + cursor);
+		}
+		return new PageCursor(new Date(Long.parseLong(date)), Integer.valueOf(id));
+	}
+}
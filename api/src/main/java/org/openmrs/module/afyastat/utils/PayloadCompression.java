@@ -0,0 +1,179 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.GlobalPropertyListener;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed storage format of the payloads of the queue, archive and error data. A compressed
+ * payload is stored as the {@link #MARKER} followed by the base64 of the gzipped json, which keeps it
+ * in the existing text column. A json payload never starts with the marker, so the rows written
+ * before the compression was enabled are read as they are.
+ * <p>
+ * The payloads are compressed when they are written while <code>medic.compressPayloads</code> is
+ * true, payloads shorter than {@link #MIN_COMPRESSED_LENGTH} characters are left as they are. The
+ * payloads of the existing rows are compressed in chunks by the CompressPayloadsTask.
+ */
+public class PayloadCompression {
+	
+	/**
+	 * Prefix of a compressed payload, followed by the base64 of the gzipped payload.
+	 */
+	public static final String MARKER = "gz1:";
+	
+	/**
+	 * Length under which a payload is not worth compressing.
+	 */
+	public static final int MIN_COMPRESSED_LENGTH = 512;
+	
+	private static final String CHARSET = "UTF-8";
+	
+	private static volatile boolean enabled;
+	
+	private static final GlobalPropertyListener LISTENER = new GlobalPropertyListener() {
+		
+		@Override
+		public boolean supportsPropertyName(final String propertyName) {
+			return AfyaStatMetadata.MEDIC_COMPRESS_PAYLOADS.equals(propertyName);
+		}
+		
+		@Override
+		public void globalPropertyChanged(final GlobalProperty newValue) {
+			enabled = Boolean.parseBoolean(newValue.getPropertyValue());
+		}
+		
+		@Override
+		public void globalPropertyDeleted(final String propertyName) {
+			enabled = false;
+		}
+	};
+	
+	private PayloadCompression() {
+	}
+	
+	/**
+	 * Read <code>medic.compressPayloads</code> and follow its changes.
+	 */
+	public static void initialize() {
+		enabled = Boolean.parseBoolean(Context.getAdministrationService().getGlobalProperty(
+		    AfyaStatMetadata.MEDIC_COMPRESS_PAYLOADS));
+		Context.getAdministrationService().addGlobalPropertyListener(LISTENER);
+	}
+	
+	/**
+	 * Stop following <code>medic.compressPayloads</code>, the payloads are written uncompressed.
+	 */
+	public static void clear() {
+		enabled = false;
+		Context.getAdministrationService().removeGlobalPropertyListener(LISTENER);
+	}
+	
+	/**
+	 * @return true when the payloads are compressed as they are written.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Enable or disable the compression until <code>medic.compressPayloads</code> changes.
+	 * 
+	 * @param compress true to compress the payloads as they are written.
+	 */
+	public static void setEnabled(final boolean compress) {
+		enabled = compress;
+	}
+	
+	/**
+	 * Get the stored form of a payload, compressed when the compression is enabled.
+	 * 
+	 * @param payload the json payload.
+	 * @return the value to store.
+	 */
+	public static String encode(final String payload) {
+		return enabled ? compress(payload) : payload;
+	}
+	
+	/**
+	 * Compress a payload, unless it is already compressed or too short to gain from it.
+	 * 
+	 * @param payload the json payload.
+	 * @return the compressed payload, or the payload itself when compressing doesn't make it shorter.
+	 */
+	public static String compress(final String payload) {
+		if (payload == null || payload.length() < MIN_COMPRESSED_LENGTH || isCompressed(payload)) {
+			return payload;
+		}
+		try {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream(payload.length() / 4);
+			GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+			try {
+				gzipOutputStream.write(payload.getBytes(CHARSET));
+			}
+			finally {
+				gzipOutputStream.close();
+			}
+			String compressed = MARKER + new String(Base64.encodeBase64(outputStream.toByteArray()), "US-ASCII");
+			return compressed.length() < payload.length() ? compressed : payload;
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to compress a payload", e);
+		}
+	}
+	
+	/**
+	 * Get the json payload of a stored value.
+	 * 
+	 * @param stored the stored value, compressed or not.
+	 * @return the json payload.
+	 */
+	public static String decode(final String stored) {
+		if (!isCompressed(stored)) {
+			return stored;
+		}
+		try {
+			byte[] compressed = Base64.decodeBase64(stored.substring(MARKER.length()).getBytes("US-ASCII"));
+			GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed));
+			try {
+				ByteArrayOutputStream outputStream = new ByteArrayOutputStream(compressed.length * 8);
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = inputStream.read(buffer)) != -1) {
+					outputStream.write(buffer, 0, read);
+				}
+				return outputStream.toString(CHARSET);
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to decompress a payload", e);
+		}
+	}
+	
+	/**
+	 * @param stored the stored value.
+	 * @return true when the stored value is a compressed payload.
+	 */
+	public static boolean isCompressed(final String stored) {
+		return stored != null && stored.startsWith(MARKER);
+	}
+}
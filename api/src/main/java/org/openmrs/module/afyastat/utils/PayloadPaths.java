@@ -0,0 +1,298 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import com.jayway.jsonpath.JsonPath;
+
+/**
+ * Registry of the compiled json paths read from the queue data payloads by the handlers and the
+ * queue processor. Every path is compiled once when its group is first used, so reading a field no
+ * longer tokenizes the path string, and this class is the single place describing the payload
+ * schema the module expects.
+ */
+public class PayloadPaths {
+	
+	public static final JsonPath DEMOGRAPHICS_UPDATE = compile("$['demographicsupdate']");
+	
+	public static final JsonPath DOCUMENT_ID = compile("$['_id']");
+	
+	public static final JsonPath OBSERVATION = compile("$['observation']");
+	
+	public static final JsonPath PATIENT = compile("$['patient']");
+	
+	public static final JsonPath SKIP_PATIENT_MATCHING = compile("$['skipPatientMatching']");
+	
+	/**
+	 * Paths of the encounter section, shared by all the encounter based payloads.
+	 */
+	public static final class _Encounter {
+		
+		public static final JsonPath DEVICE_TIME_ZONE = compile("$['encounter']['encounter.device_time_zone']");
+		
+		public static final JsonPath ENCOUNTER_DATETIME = compile("$['encounter']['encounter.encounter_datetime']");
+		
+		public static final JsonPath FORM_UUID = compile("$['encounter']['encounter.form_uuid']");
+		
+		public static final JsonPath LOCATION_ID = compile("$['encounter']['encounter.location_id']");
+		
+		public static final JsonPath PROVIDER_ID = compile("$['encounter']['encounter.provider_id']");
+		
+		public static final JsonPath PROVIDER_ROLE_UUID = compile("$['encounter']['encounter.provider_role_uuid']");
+		
+		public static final JsonPath TYPE_ID = compile("$['encounter']['encounter.type_id']");
+		
+		public static final JsonPath USER_SYSTEM_ID = compile("$['encounter']['encounter.user_system_id']");
+	}
+	
+	/**
+	 * Paths of the patient section, shared by the registration and the encounter payloads.
+	 */
+	public static final class _Patient {
+		
+		public static final JsonPath ALTERNATE_PHONE_CONTACT = compile("$['patient']['patient.alternate_phone_contact']");
+		
+		public static final JsonPath BIRTHDATE_ESTIMATED = compile("$['patient']['patient.birthdate_estimated']");
+		
+		public static final JsonPath BIRTH_DATE = compile("$['patient']['patient.birth_date']");
+		
+		public static final JsonPath COUNTY = compile("$['patient']['patient.county']");
+		
+		public static final JsonPath EMAIL_ADDRESS = compile("$['patient']['patient.email_address']");
+		
+		public static final JsonPath FAMILY_NAME = compile("$['patient']['patient.family_name']");
+		
+		public static final JsonPath GIVEN_NAME = compile("$['patient']['patient.given_name']");
+		
+		public static final JsonPath GUARDIAN_FIRST_NAME = compile("$['patient']['patient.guardian_first_name']");
+		
+		public static final JsonPath GUARDIAN_LAST_NAME = compile("$['patient']['patient.guardian_last_name']");
+		
+		public static final JsonPath IDENTIFIER_LOCATION = compile("$['patient']['patient.identifier_location']");
+		
+		public static final JsonPath IDENTIFIER_TYPE = compile("$['patient']['patient.identifier_type']");
+		
+		public static final JsonPath LANDMARK = compile("$['patient']['patient.landmark']");
+		
+		public static final JsonPath LOCATION = compile("$['patient']['patient.location']");
+		
+		public static final JsonPath MEDICAL_RECORD_NUMBER = compile("$['patient']['patient.medical_record_number']");
+		
+		public static final JsonPath MIDDLE_NAME = compile("$['patient']['patient.middle_name']");
+		
+		public static final JsonPath MOTHERS_NAME = compile("$['patient']['patient.mothers_name']");
+		
+		public static final JsonPath NEAREST_HEALTH_CENTER = compile("$['patient']['patient.nearest_health_center']");
+		
+		public static final JsonPath NEXT_OF_KIN_ADDRESS = compile("$['patient']['patient.next_of_kin_address']");
+		
+		public static final JsonPath NEXT_OF_KIN_CONTACT = compile("$['patient']['patient.next_of_kin_contact']");
+		
+		public static final JsonPath NEXT_OF_KIN_NAME = compile("$['patient']['patient.next_of_kin_name']");
+		
+		public static final JsonPath NEXT_OF_KIN_RELATIONSHIP = compile("$['patient']['patient.next_of_kin_relationship']");
+		
+		public static final JsonPath OTHER_IDENTIFIER = compile("$['patient']['patient.otheridentifier']");
+		
+		public static final JsonPath PERSON_ADDRESS = compile("$['patient']['patient.personaddress']");
+		
+		public static final JsonPath PERSON_ATTRIBUTE = compile("$['patient']['patient.personattribute']");
+		
+		public static final JsonPath PERSON_DEAD = compile("$['patient']['patient.persondead']");
+		
+		public static final JsonPath PHONE_NUMBER = compile("$['patient']['patient.phone_number']");
+		
+		public static final JsonPath POSTAL_ADDRESS = compile("$['patient']['patient.postal_address']");
+		
+		public static final JsonPath SEX = compile("$['patient']['patient.sex']");
+		
+		public static final JsonPath SUB_COUNTY = compile("$['patient']['patient.sub_county']");
+		
+		public static final JsonPath SUB_LOCATION = compile("$['patient']['patient.sub_location']");
+		
+		public static final JsonPath UUID = compile("$['patient']['patient.uuid']");
+		
+		public static final JsonPath VILLAGE = compile("$['patient']['patient.village']");
+		
+		public static final JsonPath WARD = compile("$['patient']['patient.ward']");
+	}
+	
+	/**
+	 * Paths of the demographics update payload.
+	 */
+	public static final class _DemographicsUpdate {
+		
+		public static final JsonPath ALTERNATE_PHONE_CONTACT = compile(
+		    "$['demographicsupdate']['demographicsupdate.alternate_phone_contact']");
+		
+		public static final JsonPath BIRTHDATE_CHANGE_VALIDATED = compile(
+		    "$['demographicsupdate']['demographicsupdate.birthdate_change_validated']");
+		
+		public static final JsonPath BIRTHDATE_ESTIMATED = compile(
+		    "$['demographicsupdate']['demographicsupdate.birthdate_estimated']");
+		
+		public static final JsonPath BIRTH_DATE = compile("$['demographicsupdate']['demographicsupdate.birth_date']");
+		
+		public static final JsonPath COUNTY = compile("$['demographicsupdate']['demographicsupdate.county']");
+		
+		public static final JsonPath EMAIL_ADDRESS = compile("$['demographicsupdate']['demographicsupdate.email_address']");
+		
+		public static final JsonPath FAMILY_NAME = compile("$['demographicsupdate']['demographicsupdate.family_name']");
+		
+		public static final JsonPath GENDER_CHANGE_VALIDATED = compile(
+		    "$['demographicsupdate']['demographicsupdate.gender_change_validated']");
+		
+		public static final JsonPath GIVEN_NAME = compile("$['demographicsupdate']['demographicsupdate.given_name']");
+		
+		public static final JsonPath LANDMARK = compile("$['demographicsupdate']['demographicsupdate.landmark']");
+		
+		public static final JsonPath LOCATION = compile("$['demographicsupdate']['demographicsupdate.location']");
+		
+		public static final JsonPath MEDICAL_RECORD_NUMBER = compile(
+		    "$['demographicsupdate']['demographicsupdate.medical_record_number']");
+		
+		public static final JsonPath MIDDLE_NAME = compile("$['demographicsupdate']['demographicsupdate.middle_name']");
+		
+		public static final JsonPath MOTHERS_NAME = compile("$['demographicsupdate']['demographicsupdate.mothers_name']");
+		
+		public static final JsonPath NEAREST_HEALTH_CENTER = compile(
+		    "$['demographicsupdate']['demographicsupdate.nearest_health_center']");
+		
+		public static final JsonPath NEXT_OF_KIN_ADDRESS = compile(
+		    "$['demographicsupdate']['demographicsupdate.next_of_kin_address']");
+		
+		public static final JsonPath NEXT_OF_KIN_CONTACT = compile(
+		    "$['demographicsupdate']['demographicsupdate.next_of_kin_contact']");
+		
+		public static final JsonPath NEXT_OF_KIN_NAME = compile(
+		    "$['demographicsupdate']['demographicsupdate.next_of_kin_name']");
+		
+		public static final JsonPath NEXT_OF_KIN_RELATIONSHIP = compile(
+		    "$['demographicsupdate']['demographicsupdate.next_of_kin_relationship']");
+		
+		public static final JsonPath OTHER_IDENTIFIER = compile(
+		    "$['demographicsupdate']['demographicsupdate.otheridentifier']");
+		
+		public static final JsonPath OTHER_IDENTIFIER_TYPE = compile(
+		    "$['demographicsupdate']['demographicsupdate.other_identifier_type']");
+		
+		public static final JsonPath OTHER_IDENTIFIER_VALUE = compile(
+		    "$['demographicsupdate']['demographicsupdate.other_identifier_value']");
+		
+		public static final JsonPath PERSON_ADDRESS = compile("$['demographicsupdate']['demographicsupdate.personaddress']");
+		
+		public static final JsonPath PERSON_ATTRIBUTE = compile(
+		    "$['demographicsupdate']['demographicsupdate.personattribute']");
+		
+		public static final JsonPath PHONE_NUMBER = compile("$['demographicsupdate']['demographicsupdate.phone_number']");
+		
+		public static final JsonPath POSTAL_ADDRESS = compile(
+		    "$['demographicsupdate']['demographicsupdate.postal_address']");
+		
+		public static final JsonPath SEX = compile("$['demographicsupdate']['demographicsupdate.sex']");
+		
+		public static final JsonPath SUB_COUNTY = compile("$['demographicsupdate']['demographicsupdate.sub_county']");
+		
+		public static final JsonPath SUB_LOCATION = compile("$['demographicsupdate']['demographicsupdate.sub_location']");
+		
+		public static final JsonPath TEMPORAL_PATIENT_UUID = compile(
+		    "$['demographicsupdate']['demographicsupdate.temporal_patient_uuid']");
+		
+		public static final JsonPath VILLAGE = compile("$['demographicsupdate']['demographicsupdate.village']");
+		
+		public static final JsonPath WARD = compile("$['demographicsupdate']['demographicsupdate.ward']");
+	}
+	
+	/**
+	 * Paths of the observations read directly by the handlers.
+	 */
+	public static final class _Observation {
+		
+		public static final JsonPath CIVIL_STATUS = compile("$['observation']['1054^CIVIL STATUS^99DCT']");
+		
+		public static final JsonPath HIGHEST_EDUCATION_LEVEL = compile(
+		    "$['observation']['1712^HIGHEST EDUCATION LEVEL^99DCT']");
+		
+		public static final JsonPath OCCUPATION = compile("$['observation']['1542^OCCUPATION^99DCT']");
+	}
+	
+	/**
+	 * Paths of the contact list payload.
+	 */
+	public static final class _ContactList {
+		
+		public static final JsonPath BASELINE_HIV_STATUS = compile("$['baseline_hiv_status']");
+		
+		public static final JsonPath BOOKING_DATE = compile("$['booking_date']");
+		
+		public static final JsonPath CONTACT_RELATIONSHIP = compile("$['contact_relationship']");
+		
+		public static final JsonPath DATE_OF_BIRTH = compile("$['date_of_birth']");
+		
+		public static final JsonPath FAMILY_NAME = compile("$['s_name']");
+		
+		public static final JsonPath GIVEN_NAME = compile("$['f_name']");
+		
+		public static final JsonPath LIVING_WITH_CLIENT = compile("$['living_with_client']");
+		
+		public static final JsonPath MARITAL_STATUS = compile("$['marital_status']");
+		
+		public static final JsonPath MIDDLE_NAME = compile("$['o_name']");
+		
+		public static final JsonPath PARENT_ID = compile("$['parent']['_id']");
+		
+		public static final JsonPath PARENT_KEMR_UUID = compile("$['parent']['kemr_uuid']");
+		
+		public static final JsonPath PHONE = compile("$['phone']");
+		
+		public static final JsonPath PHYSICAL_ADDRESS = compile("$['physical_address']");
+		
+		public static final JsonPath PNS_APPROACH = compile("$['pns_approach']");
+		
+		public static final JsonPath SEX = compile("$['sex']");
+	}
+	
+	/**
+	 * Paths of the contact trace payload.
+	 */
+	public static final class _ContactTrace {
+		
+		public static final JsonPath CONTACT_ID = compile("$['fields']['inputs']['contact']['_id']");
+		
+		public static final JsonPath DATE_LAST_CONTACT = compile("$['fields']['group_follow_up']['date_last_contact']");
+		
+		public static final JsonPath FACILITY_LINKED_TO = compile("$['fields']['group_follow_up']['facility_linked_to']");
+		
+		public static final JsonPath FOLLOW_UP_TYPE = compile("$['fields']['group_follow_up']['follow_up_type']");
+		
+		public static final JsonPath HEALTH_CARE_WORKER_HANDED_TO = compile(
+		    "$['fields']['group_follow_up']['health_care_worker_handed_to']");
+		
+		public static final JsonPath IS_NOT_AVAILABLE_REASON_OTHER = compile(
+		    "$['fields']['group_follow_up']['is_not_available_reason_other']");
+		
+		public static final JsonPath REMARKS = compile("$['fields']['group_follow_up']['remarks']");
+		
+		public static final JsonPath STATUS_VISIT = compile("$['fields']['group_follow_up']['status_visit']");
+		
+		public static final JsonPath UNIQUE_PATIENT_NUMBER = compile(
+		    "$['fields']['group_follow_up']['unique_patient_number']");
+	}
+	
+	private PayloadPaths() {
+	}
+	
+	private static JsonPath compile(final String path) {
+		return JsonPayload.compile(path);
+	}
+}
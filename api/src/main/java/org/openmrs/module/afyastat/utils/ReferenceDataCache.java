@@ -0,0 +1,550 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Hibernate;
+import org.openmrs.Concept;
+import org.openmrs.EncounterRole;
+import org.openmrs.EncounterType;
+import org.openmrs.Form;
+import org.openmrs.Location;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.api.AfyastatService;
+import org.openmrs.module.afyastat.metadata.AfyaStatMetadata;
+import org.openmrs.module.afyastat.utils.BoundedCache.Loader;
+import org.openmrs.module.kenyaemr.api.KenyaEmrService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Module wide read through cache of the metadata looked up for every queue data: concepts, forms,
+ * encounter types, encounter roles, providers, users, locations and person attribute types. It is
+ * shared by the queue data handlers, the queue processor and the ingestion in MedicDataExchange.
+ * <p>
+ * It also resolves the CHT usernames of the ingested data to a provider identifier and a system
+ * username. The fallback provider and super user are looked up once, and the cached users, providers
+ * and resolutions are dropped by {@link #clearUsersAndProviders()} whenever a user or a provider is
+ * changed. Likewise the default location is looked up once and dropped by {@link #clearLocations()},
+ * the person attribute types by {@link #clearPersonAttributeTypes()}, the concepts by
+ * {@link #clearConcepts()}, the forms by {@link #clearForms()} and the encounter types and roles by
+ * {@link #clearEncounterTypesAndRoles()}.
+ * <p>
+ * Each cache holds at most <code>medic.referenceDataCacheSize</code> values for
+ * <code>medic.referenceDataCacheTtlSeconds</code> seconds. The cached objects outlive the session
+ * which loaded them, so the loaders initialize the associations read from them by the handlers.
+ * Callers must not modify the cached objects, and should call {@link #clear()} after changing the
+ * metadata when the change has to be picked up before the values expire.
+ */
+public class ReferenceDataCache {
+	
+	private static final Log log = LogFactory.getLog(ReferenceDataCache.class);
+	
+	private static final int DEFAULT_SIZE = 1000;
+	
+	private static final int DEFAULT_TTL_SECONDS = 600;
+	
+	private static volatile Caches caches;
+	
+	private ReferenceDataCache() {
+	}
+	
+	/**
+	 * Create the caches using the size and time to live from the global properties, dropping any
+	 * value cached before.
+	 */
+	public static synchronized void initialize() {
+		int size = getGlobalPropertyValue(AfyaStatMetadata.MEDIC_REFERENCE_DATA_CACHE_SIZE, DEFAULT_SIZE);
+		int timeToLive = getGlobalPropertyValue(AfyaStatMetadata.MEDIC_REFERENCE_DATA_CACHE_TTL_SECONDS,
+		    DEFAULT_TTL_SECONDS);
+		caches = new Caches(size, timeToLive * 1000L);
+		log.info("Created reference data caches holding " + size + " values for " + timeToLive + " seconds");
+	}
+	
+	/**
+	 * Drop all the caches. They will be created again on the next access.
+	 */
+	public static synchronized void clear() {
+		caches = null;
+	}
+	
+	/**
+	 * Get the concept by its id.
+	 * 
+	 * @param conceptId the concept id.
+	 * @return the concept or null when no concept has the id.
+	 */
+	public static Concept getConcept(final Integer conceptId) {
+		return getCurrent().concepts.get(conceptId, CONCEPT_LOADER);
+	}
+	
+	/**
+	 * Drop the cached concepts, so a change to a concept is picked up right away.
+	 */
+	public static void clearConcepts() {
+		Caches current = caches;
+		if (current != null) {
+			current.concepts.clear();
+		}
+	}
+	
+	/**
+	 * Get the form by its uuid.
+	 * 
+	 * @param uuid the form uuid.
+	 * @return the form or null when no form has the uuid.
+	 */
+	public static Form getFormByUuid(final String uuid) {
+		return getCurrent().forms.get(uuid, FORM_LOADER);
+	}
+	
+	/**
+	 * Drop the cached forms, so a change to a form is picked up right away.
+	 */
+	public static void clearForms() {
+		Caches current = caches;
+		if (current != null) {
+			current.forms.clear();
+		}
+	}
+	
+	/**
+	 * Get the encounter type by its id.
+	 * 
+	 * @param encounterTypeId the encounter type id.
+	 * @return the encounter type or null when no encounter type has the id.
+	 */
+	public static EncounterType getEncounterType(final Integer encounterTypeId) {
+		return getCurrent().encounterTypes.get(encounterTypeId, ENCOUNTER_TYPE_LOADER);
+	}
+	
+	/**
+	 * Get the encounter type by its uuid.
+	 * 
+	 * @param uuid the encounter type uuid.
+	 * @return the encounter type or null when no encounter type has the uuid.
+	 */
+	public static EncounterType getEncounterTypeByUuid(final String uuid) {
+		return getCurrent().encounterTypesByUuid.get(uuid, ENCOUNTER_TYPE_UUID_LOADER);
+	}
+	
+	/**
+	 * Get the encounter role by its uuid.
+	 * 
+	 * @param uuid the encounter role uuid.
+	 * @return the encounter role or null when no encounter role has the uuid.
+	 */
+	public static EncounterRole getEncounterRoleByUuid(final String uuid) {
+		return getCurrent().encounterRoles.get(uuid, ENCOUNTER_ROLE_LOADER);
+	}
+	
+	/**
+	 * Drop the cached encounter types and encounter roles together with the forms, which hold their
+	 * encounter type, so a change to an encounter type or role is picked up right away.
+	 */
+	public static void clearEncounterTypesAndRoles() {
+		Caches current = caches;
+		if (current != null) {
+			current.forms.clear();
+			current.encounterTypes.clear();
+			current.encounterTypesByUuid.clear();
+			current.encounterRoles.clear();
+		}
+	}
+	
+	/**
+	 * Get the provider by its identifier.
+	 * 
+	 * @param identifier the provider identifier.
+	 * @return the provider or null when no provider has the identifier.
+	 */
+	public static Provider getProviderByIdentifier(final String identifier) {
+		return getCurrent().providers.get(identifier, PROVIDER_LOADER);
+	}
+	
+	/**
+	 * Get the user by its username.
+	 * 
+	 * @param username the username.
+	 * @return the user or null when no user has the username.
+	 */
+	public static User getUserByUsername(final String username) {
+		return getCurrent().users.get(username, USER_LOADER);
+	}
+	
+	/**
+	 * Get the identifier of the provider recorded for the data submitted by a CHT user: the provider
+	 * of the user with the username, the first provider when that user is not a provider, and the
+	 * provider of the super user (or else the first provider) when no user has the username.
+	 * 
+	 * @param username the username of the CHT user, may be empty.
+	 * @return the provider identifier or null when there is no provider at all.
+	 */
+	public static String getProviderIdentifierForUsername(final String username) {
+		return getCurrent().providerIdentifiers.get(StringUtils.defaultString(username), PROVIDER_IDENTIFIER_LOADER);
+	}
+	
+	/**
+	 * Get the username recorded for the data submitted by a CHT user: the username itself when a user
+	 * has it, the username of the super user otherwise.
+	 * 
+	 * @param username the username of the CHT user, may be empty.
+	 * @return the system username.
+	 */
+	public static String getSystemUsername(final String username) {
+		User user = StringUtils.isNotEmpty(username) ? getUserByUsername(username) : null;
+		return user != null ? user.getUsername() : getCurrent().getFallback().superUsername;
+	}
+	
+	/**
+	 * Drop the cached users, providers and username resolutions together with the fallback provider,
+	 * so a change to a user or a provider is picked up right away.
+	 */
+	public static void clearUsersAndProviders() {
+		Caches current = caches;
+		if (current != null) {
+			current.fallback = null;
+			current.users.clear();
+			current.providers.clear();
+			current.providerIdentifiers.clear();
+		}
+	}
+	
+	/**
+	 * Get the location by its id.
+	 * 
+	 * @param locationId the location id.
+	 * @return the location or null when no location has the id.
+	 */
+	public static Location getLocation(final Integer locationId) {
+		return getCurrent().locations.get(locationId, LOCATION_LOADER);
+	}
+	
+	/**
+	 * Get the location by its uuid.
+	 * 
+	 * @param uuid the location uuid.
+	 * @return the location or null when no location has the uuid.
+	 */
+	public static Location getLocationByUuid(final String uuid) {
+		return getCurrent().locationsByUuid.get(uuid, LOCATION_UUID_LOADER);
+	}
+	
+	/**
+	 * Get the default location of the facility.
+	 * 
+	 * @return the default location or null when it is not set.
+	 */
+	public static Location getDefaultLocation() {
+		return getCurrent().getDefaultLocation();
+	}
+	
+	/**
+	 * Drop the cached locations together with the default location, so a change to a location or to
+	 * the default location setting is picked up right away.
+	 */
+	public static void clearLocations() {
+		Caches current = caches;
+		if (current != null) {
+			current.defaultLocation = null;
+			current.locations.clear();
+			current.locationsByUuid.clear();
+		}
+	}
+	
+	/**
+	 * Get the person attribute type by its uuid.
+	 * 
+	 * @param uuid the person attribute type uuid.
+	 * @return the person attribute type or null when no person attribute type has the uuid.
+	 */
+	public static PersonAttributeType getPersonAttributeTypeByUuid(final String uuid) {
+		return getCurrent().personAttributeTypes.get(uuid, PERSON_ATTRIBUTE_TYPE_LOADER);
+	}
+	
+	/**
+	 * Drop the cached person attribute types, so a change to a person attribute type is picked up right
+	 * away.
+	 */
+	public static void clearPersonAttributeTypes() {
+		Caches current = caches;
+		if (current != null) {
+			current.personAttributeTypes.clear();
+		}
+	}
+	
+	/**
+	 * Get the caches, to report their size and their hit and miss counters.
+	 * 
+	 * @return the caches.
+	 */
+	public static List<BoundedCache<?, ?>> getCaches() {
+		Caches current = getCurrent();
+		List<BoundedCache<?, ?>> list = new ArrayList<BoundedCache<?, ?>>();
+		Collections.addAll(list, current.concepts, current.forms, current.encounterTypes, current.encounterTypesByUuid,
+		    current.encounterRoles, current.providers, current.users, current.providerIdentifiers, current.locations,
+		    current.locationsByUuid, current.personAttributeTypes);
+		return list;
+	}
+	
+	private static Caches getCurrent() {
+		Caches current = caches;
+		if (current == null) {
+			initialize();
+			current = caches;
+		}
+		return current;
+	}
+	
+	private static int getGlobalPropertyValue(final String property, final int defaultValue) {
+		String value = Context.getAdministrationService().getGlobalProperty(property);
+		int number = NumberUtils.toInt(value, defaultValue);
+		return number > 0 ? number : defaultValue;
+	}
+	
+	/**
+	 * Get the provider of the user, the first provider of the person of the user as
+	 * <code>EmrUtils.getProvider</code> does.
+	 */
+	private static Provider getProvider(final User user) {
+		if (user.getPerson() == null) {
+			return null;
+		}
+		Collection<Provider> providers = Context.getProviderService().getProvidersByPerson(user.getPerson());
+		return providers == null || providers.isEmpty() ? null : providers.iterator().next();
+	}
+	
+	private static Fallback loadFallback() {
+		Provider firstProvider = Context.getService(AfyastatService.class).getFirstProvider();
+		String firstProviderIdentifier = firstProvider != null ? firstProvider.getIdentifier() : null;
+		User superUser = Context.getUserService().getUser(1);
+		Provider superUserProvider = superUser != null ? getProvider(superUser) : null;
+		return new Fallback(firstProviderIdentifier, superUserProvider != null ? superUserProvider.getIdentifier()
+		        : firstProviderIdentifier, superUser != null ? superUser.getUsername() : null);
+	}
+	
+	private static Location loadDefaultLocation() {
+		Location location = Context.getService(KenyaEmrService.class).getDefaultLocation();
+		if (location != null) {
+			initializeLocation(location);
+		}
+		return location;
+	}
+	
+	private static void initializeLocation(final Location location) {
+		Location parent = location.getParentLocation();
+		while (parent != null) {
+			Hibernate.initialize(parent);
+			parent = parent.getParentLocation();
+		}
+	}
+	
+	private static final Loader<Integer, Concept> CONCEPT_LOADER = new Loader<Integer, Concept>() {
+		
+		@Override
+		public Concept load(final Integer conceptId) {
+			Concept concept = Context.getConceptService().getConcept(conceptId);
+			if (concept != null) {
+				Hibernate.initialize(concept.getDatatype());
+			}
+			return concept;
+		}
+	};
+	
+	private static final Loader<String, Form> FORM_LOADER = new Loader<String, Form>() {
+		
+		@Override
+		public Form load(final String uuid) {
+			Form form = Context.getFormService().getFormByUuid(uuid);
+			if (form != null) {
+				Hibernate.initialize(form.getEncounterType());
+			}
+			return form;
+		}
+	};
+	
+	private static final Loader<Integer, EncounterType> ENCOUNTER_TYPE_LOADER = new Loader<Integer, EncounterType>() {
+		
+		@Override
+		public EncounterType load(final Integer encounterTypeId) {
+			return Context.getEncounterService().getEncounterType(encounterTypeId);
+		}
+	};
+	
+	private static final Loader<String, EncounterType> ENCOUNTER_TYPE_UUID_LOADER = new Loader<String, EncounterType>() {
+		
+		@Override
+		public EncounterType load(final String uuid) {
+			return Context.getEncounterService().getEncounterTypeByUuid(uuid);
+		}
+	};
+	
+	private static final Loader<String, EncounterRole> ENCOUNTER_ROLE_LOADER = new Loader<String, EncounterRole>() {
+		
+		@Override
+		public EncounterRole load(final String uuid) {
+			return Context.getEncounterService().getEncounterRoleByUuid(uuid);
+		}
+	};
+	
+	private static final Loader<String, Provider> PROVIDER_LOADER = new Loader<String, Provider>() {
+		
+		@Override
+		public Provider load(final String identifier) {
+			return Context.getProviderService().getProviderByIdentifier(identifier);
+		}
+	};
+	
+	private static final Loader<String, User> USER_LOADER = new Loader<String, User>() {
+		
+		@Override
+		public User load(final String username) {
+			return Context.getUserService().getUserByUsername(username);
+		}
+	};
+	
+	private static final Loader<String, String> PROVIDER_IDENTIFIER_LOADER = new Loader<String, String>() {
+		
+		@Override
+		public String load(final String username) {
+			Fallback fallback = getCurrent().getFallback();
+			User user = username.length() > 0 ? getUserByUsername(username) : null;
+			if (user == null) {
+				return fallback.superUserProviderIdentifier;
+			}
+			Provider provider = getProvider(user);
+			return provider != null ? provider.getIdentifier() : fallback.firstProviderIdentifier;
+		}
+	};
+	
+	private static final Loader<Integer, Location> LOCATION_LOADER = new Loader<Integer, Location>() {
+		
+		@Override
+		public Location load(final Integer locationId) {
+			Location location = Context.getLocationService().getLocation(locationId);
+			if (location != null) {
+				initializeLocation(location);
+			}
+			return location;
+		}
+	};
+	
+	private static final Loader<String, Location> LOCATION_UUID_LOADER = new Loader<String, Location>() {
+		
+		@Override
+		public Location load(final String uuid) {
+			Location location = Context.getLocationService().getLocationByUuid(uuid);
+			if (location != null) {
+				initializeLocation(location);
+			}
+			return location;
+		}
+	};
+	
+	private static final Loader<String, PersonAttributeType> PERSON_ATTRIBUTE_TYPE_LOADER =
+	        new Loader<String, PersonAttributeType>() {
+		        
+		        @Override
+		        public PersonAttributeType load(final String uuid) {
+			        return Context.getPersonService().getPersonAttributeTypeByUuid(uuid);
+		        }
+	        };
+	
+	private static class Caches {
+		
+		private final BoundedCache<Integer, Concept> concepts;
+		
+		private final BoundedCache<String, Form> forms;
+		
+		private final BoundedCache<Integer, EncounterType> encounterTypes;
+		
+		private final BoundedCache<String, EncounterType> encounterTypesByUuid;
+		
+		private final BoundedCache<String, EncounterRole> encounterRoles;
+		
+		private final BoundedCache<String, Provider> providers;
+		
+		private final BoundedCache<String, User> users;
+		
+		private final BoundedCache<String, String> providerIdentifiers;
+		
+		private final BoundedCache<Integer, Location> locations;
+		
+		private final BoundedCache<String, Location> locationsByUuid;
+		
+		private final BoundedCache<String, PersonAttributeType> personAttributeTypes;
+		
+		private volatile Fallback fallback;
+		
+		private volatile Location defaultLocation;
+		
+		private Caches(final int size, final long timeToLive) {
+			concepts = new BoundedCache<Integer, Concept>("concepts", size, timeToLive);
+			forms = new BoundedCache<String, Form>("forms", size, timeToLive);
+			encounterTypes = new BoundedCache<Integer, EncounterType>("encounterTypes", size, timeToLive);
+			encounterTypesByUuid = new BoundedCache<String, EncounterType>("encounterTypesByUuid", size, timeToLive);
+			encounterRoles = new BoundedCache<String, EncounterRole>("encounterRoles", size, timeToLive);
+			providers = new BoundedCache<String, Provider>("providers", size, timeToLive);
+			users = new BoundedCache<String, User>("users", size, timeToLive);
+			providerIdentifiers = new BoundedCache<String, String>("providerIdentifiersByUsername", size, timeToLive);
+			locations = new BoundedCache<Integer, Location>("locations", size, timeToLive);
+			locationsByUuid = new BoundedCache<String, Location>("locationsByUuid", size, timeToLive);
+			personAttributeTypes = new BoundedCache<String, PersonAttributeType>("personAttributeTypesByUuid", size,
+			        timeToLive);
+		}
+		
+		private Fallback getFallback() {
+			Fallback current = fallback;
+			if (current == null) {
+				current = loadFallback();
+				fallback = current;
+			}
+			return current;
+		}
+		
+		private Location getDefaultLocation() {
+			Location current = defaultLocation;
+			if (current == null) {
+				current = loadDefaultLocation();
+				defaultLocation = current;
+			}
+			return current;
+		}
+	}
+	
+	private static class Fallback {
+		
+		private final String firstProviderIdentifier;
+		
+		private final String superUserProviderIdentifier;
+		
+		private final String superUsername;
+		
+		private Fallback(final String firstProviderIdentifier, final String superUserProviderIdentifier,
+		        final String superUsername) {
+			this.firstProviderIdentifier = firstProviderIdentifier;
+			this.superUserProviderIdentifier = superUserProviderIdentifier;
+			this.superUsername = superUsername;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Tokens of the search index of the queue, archive and error data, kept in the
+ * <code>medic_data_search_token</code> table. A token is a lower cased word of at least
+ * {@link #MIN_TOKEN_LENGTH} letters or digits, cut to {@link #MAX_TOKEN_LENGTH} characters. The
+ * search terms are tokenized the same way and every term must match the start of a token of the
+ * data, so the search reads the token index instead of scanning the payloads.
+ * <p>
+ * Only the values of a payload are indexed, not its field names nor the coded values such as
+ * <code>1065^YES^99DCT</code>. A uuid is indexed as one token, its 32 hex digits without the dashes.
+ */
+public class SearchTokens {
+	
+	public static final int MIN_TOKEN_LENGTH = 2;
+	
+	public static final int MAX_TOKEN_LENGTH = 32;
+	
+	private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+	
+	private static final Pattern UUID = Pattern.compile("[0-9a-fA-F]{8}(-[0-9a-fA-F]{4}){3}-[0-9a-fA-F]{12}");
+	
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	private SearchTokens() {
+	}
+	
+	/**
+	 * @param text a search term or the value of a column.
+	 * @return the tokens of the text, in the order they appear.
+	 */
+	public static Set<String> tokenize(final String text) {
+		Set<String> tokens = new LinkedHashSet<String>();
+		addTokens(tokens, text);
+		return tokens;
+	}
+	
+	/**
+	 * Add the tokens of the text. A word repeated in the data is indexed once.
+	 * 
+	 * @param tokens the tokens of the data.
+	 * @param text the value of a column.
+	 */
+	public static void addTokens(final Set<String> tokens, final String text) {
+		if (text == null) {
+			return;
+		}
+		if (isUuid(text)) {
+			tokens.add(text.replace("-", "").toLowerCase(Locale.ENGLISH));
+			return;
+		}
+		for (String word : SEPARATOR.split(text.toLowerCase(Locale.ENGLISH))) {
+			if (word.length() >= MIN_TOKEN_LENGTH) {
+				tokens.add(word.length() > MAX_TOKEN_LENGTH ? word.substring(0, MAX_TOKEN_LENGTH) : word);
+			}
+		}
+	}
+	
+	/**
+	 * Add the tokens of the values of a json payload. A payload which is not json is tokenized as a
+	 * text.
+	 * 
+	 * @param tokens the tokens of the data.
+	 * @param payload the json payload.
+	 */
+	public static void addPayloadTokens(final Set<String> tokens, final String payload) {
+		if (payload == null) {
+			return;
+		}
+		JsonNode jsonNode;
+		try {
+			jsonNode = MAPPER.readTree(payload);
+		}
+		catch (IOException e) {
+			addTokens(tokens, payload);
+			return;
+		}
+		addValueTokens(tokens, jsonNode);
+	}
+	
+	/**
+	 * @param text the search term.
+	 * @return true when the text is a uuid.
+	 */
+	public static boolean isUuid(final String text) {
+		return UUID.matcher(text).matches();
+	}
+	
+	private static void addValueTokens(final Set<String> tokens, final JsonNode jsonNode) {
+		if (jsonNode == null) {
+			return;
+		}
+		if (jsonNode.isContainerNode()) {
+			Iterator<JsonNode> elements = jsonNode.getElements();
+			while (elements.hasNext()) {
+				addValueTokens(tokens, elements.next());
+			}
+		} else if (jsonNode.isTextual()) {
+			String value = jsonNode.getTextValue();
+			if (value.indexOf('^') < 0) {
+				addTokens(tokens, value);
+			}
+		} else if (jsonNode.isNumber()) {
+			addTokens(tokens, jsonNode.asText());
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.api.dao;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.hql.QueryTranslator;
+import org.hibernate.hql.ast.ASTQueryTranslatorFactory;
+import org.hibernate.jdbc.Work;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * It is an integration test (extends BaseModuleContextSensitiveTest), which runs EXPLAIN on the SQL
+ * generated by Hibernate for the hot queries of the queue, archive, error and registration data
+ * and fails when one of them scans the whole table. The in-memory H2 database is created from the
+ * Hibernate mappings, so the indexes are read from the liquibase changesets of the omod module and
+ * created before each test.
+ */
+public class QueryPlanTest extends BaseModuleContextSensitiveTest {
+	
+	private static final String CHANGE_LOG = "../omod/src/main/resources/liquibase.xml";
+	
+	private static final List<String> TABLES = Arrays.asList("medic_queue_data", "medic_archive_data", "medic_error_data",
+	    "medic_registration_data");
+	
+	private static final String MODEL = "org.openmrs.module.afyastat.model.";
+	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
+	@Before
+	public void createIndexes() throws Exception {
+		NodeList indexes = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(CHANGE_LOG))
+		        .getElementsByTagName("createIndex");
+		for (int i = 0; i < indexes.getLength(); i++) {
+			Element index = (Element) indexes.item(i);
+			if (!TABLES.contains(index.getAttribute("tableName"))) {
+				continue;
+			}
+			StringBuilder columns = new StringBuilder();
+			NodeList indexColumns = index.getElementsByTagName("column");
+			for (int j = 0; j < indexColumns.getLength(); j++) {
+				columns.append(j > 0 ? ", " : "").append(((Element) indexColumns.item(j)).getAttribute("name"));
+			}
+			execute("create " + ("true".equals(index.getAttribute("unique")) ? "unique " : "") + "index if not exists "
+			        + index.getAttribute("indexName") + " on " + index.getAttribute("tableName") + " (" + columns + ")");
+		}
+	}
+	
+	@Test
+	public void patientDataLookups_shouldUseAnIndex() {
+		assertIndexed("from AfyaStatQueueData where patientUuid = ?");
+		assertIndexed("from ErrorInfo where patientUuid = ?");
+		assertIndexed("from ArchiveInfo where patientUuid = ?");
+		assertIndexed("from ErrorInfo where patientUuid = ? and discriminator = ?");
+	}
+	
+	@Test
+	public void formDataLookups_shouldUseAnIndex() {
+		assertIndexed("from AfyaStatQueueData where formDataUuid = ?");
+		assertIndexed("from ErrorInfo where formDataUuid = ?");
+		assertIndexed("from ArchiveInfo where formDataUuid = ?");
+		assertIndexed("from AfyaStatQueueData where documentId = ?");
+	}
+	
+	@Test
+	public void queueProcessing_shouldUseAnIndex() {
+		assertIndexed("from AfyaStatQueueData where discriminator = ? and id > ? order by id");
+		assertIndexed("from AfyaStatQueueData where discriminator = ? and claimedBy = ? and id > ? order by id");
+		assertIndexed("from AfyaStatQueueData where claimedBy = ?");
+	}
+	
+	@Test
+	public void dataPages_shouldUseAnIndex() {
+		assertIndexed("from ArchiveInfo where dateArchived <= ? and (dateArchived < ? or id < ?) "
+		        + "order by dateArchived desc, id desc");
+		assertIndexed("from ErrorInfo where dateCreated <= ? and (dateCreated < ? or id < ?) "
+		        + "order by dateCreated desc, id desc");
+	}
+	
+	@Test
+	public void registrationLookups_shouldUseAnIndex() {
+		assertIndexed("from RegistrationInfo where temporaryUuid = ? and voided = ?");
+		assertIndexed("from RegistrationInfo where assignedUuid = ? and voided = ?");
+	}
+	
+	private void assertIndexed(final String hql) {
+		QueryTranslator translator = new ASTQueryTranslatorFactory().createQueryTranslator(hql, hql.replaceFirst(
+		    "from (\\w+)", "from " + MODEL + "$1"), Collections.EMPTY_MAP, (SessionFactoryImplementor) sessionFactory);
+		translator.compile(Collections.EMPTY_MAP, false);
+		String plan = explain(translator.getSQLString());
+		// H2 shows the index read by the plan, or tableScan when it reads all the rows.
+		assertFalse(hql + " scans the table: " + plan, plan.contains(".tableScan"));
+	}
+	
+	private String explain(final String sql) {
+		final StringBuilder plan = new StringBuilder();
+		sessionFactory.getCurrentSession().doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				PreparedStatement statement = connection.prepareStatement("explain " + sql);
+				try {
+					int parameters = statement.getParameterMetaData().getParameterCount();
+					for (int i = 1; i <= parameters; i++) {
+						statement.setNull(i, Types.VARCHAR);
+					}
+					ResultSet resultSet = statement.executeQuery();
+					while (resultSet.next()) {
+						plan.append(resultSet.getString(1));
+					}
+				}
+				finally {
+					statement.close();
+				}
+			}
+		});
+		return plan.toString();
+	}
+	
+	private void execute(final String sql) {
+		sessionFactory.getCurrentSession().doWork(new Work() {
+			
+			@Override
+			public void execute(final Connection connection) throws SQLException {
+				Statement statement = connection.createStatement();
+				try {
+					statement.execute(sql);
+				}
+				finally {
+					statement.close();
+				}
+			}
+		});
+	}
+}
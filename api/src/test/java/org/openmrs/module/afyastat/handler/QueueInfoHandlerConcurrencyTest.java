@@ -0,0 +1,361 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Concept;
+import org.openmrs.ConceptDatatype;
+import org.openmrs.Encounter;
+import org.openmrs.EncounterRole;
+import org.openmrs.EncounterType;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAttributeType;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.FormService;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.PersonService;
+import org.openmrs.api.ProviderService;
+import org.openmrs.api.UserService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.api.service.RegistrationInfoService;
+import org.openmrs.module.afyastat.model.AfyaStatQueueData;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandler;
+import org.openmrs.module.afyastat.model.handler.QueueInfoHandlerContext;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
+import org.openmrs.module.hivtestingservices.api.ContactTrace;
+import org.openmrs.module.hivtestingservices.api.HTSService;
+import org.openmrs.module.hivtestingservices.api.PatientContact;
+import org.openmrs.module.idgen.service.IdentifierSourceService;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * This is a unit test, which verifies that a single handler instance can validate different queue
+ * data from several threads at the same time without leaking state between the invocations.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class QueueInfoHandlerConcurrencyTest {
+	
+	private static final int THREADS = 4;
+	
+	private static final int ITERATIONS = 500;
+	
+	private static final int CONCEPT_ID = 5;
+	
+	private ExecutorService executorService;
+	
+	@Before
+	public void setUp() {
+		mockStatic(Context.class);
+		when(Context.getService(HTSService.class)).thenReturn(mock(HTSService.class));
+		when(Context.getService(RegistrationInfoService.class)).thenReturn(mock(RegistrationInfoService.class));
+		when(Context.getAdministrationService()).thenReturn(mock(AdministrationService.class));
+		mockPatientService();
+		mockReferenceDataServices();
+		executorService = Executors.newFixedThreadPool(THREADS);
+		ReferenceDataCache.clear();
+	}
+	
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+		ReferenceDataCache.clear();
+	}
+	
+	/**
+	 * Run the contact trace and the contact list handlers on different payloads concurrently, every
+	 * context must only contain the data read from its own payload.
+	 */
+	@Test
+	public void validate_shouldKeepStateOfConcurrentInvocationsSeparate() throws Exception {
+		final QueueInfoHandler contactTraceHandler = new JsonContactTraceQueueDataHandler();
+		final QueueInfoHandler contactListHandler = new JsonContactListQueueDataHandler();
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < THREADS; i++) {
+			final String id = "document-" + i;
+			if (i % 2 == 0) {
+				futures.add(executorService.submit(new Callable<Integer>() {
+					
+					@Override
+					public Integer call() throws Exception {
+						startSignal.await();
+						for (int j = 0; j < ITERATIONS; j++) {
+							String uuid = id + "-" + j;
+							QueueInfoHandlerContext context = contactTraceHandler.validate(createContext(
+							    createContactTracePayload(uuid)));
+							ContactTrace contactTrace = (ContactTrace) context.getAttribute("unsavedContactTrace");
+							assertEquals(uuid, contactTrace.getUuid());
+							assertEquals(uuid, contactTrace.getRemarks());
+						}
+						return ITERATIONS;
+					}
+				}));
+			} else {
+				futures.add(executorService.submit(new Callable<Integer>() {
+					
+					@Override
+					public Integer call() throws Exception {
+						startSignal.await();
+						for (int j = 0; j < ITERATIONS; j++) {
+							String uuid = id + "-" + j;
+							QueueInfoHandlerContext context = contactListHandler.validate(createContext(
+							    createContactListPayload(uuid)));
+							PatientContact patientContact = (PatientContact) context
+							        .getAttribute("unsavedPatientContact");
+							assertEquals(uuid, patientContact.getUuid());
+							assertEquals(uuid, patientContact.getFirstName());
+						}
+						return ITERATIONS;
+					}
+				}));
+			}
+		}
+		
+		startSignal.countDown();
+		for (Future<Integer> future : futures) {
+			assertEquals(Integer.valueOf(ITERATIONS), future.get(1, TimeUnit.MINUTES));
+		}
+		executorService.shutdown();
+		assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+	}
+	
+	/**
+	 * Run the encounter and the registration handlers on different payloads concurrently, every
+	 * context must only contain the encounter or the patient read from its own payload.
+	 */
+	@Test
+	public void validate_shouldKeepEncountersAndRegistrationsOfConcurrentInvocationsSeparate() throws Exception {
+		final QueueInfoHandler encounterHandler = new JsonEncounterQueueInfoHandler();
+		final QueueInfoHandler registrationHandler = new JsonRegistrationQueueInfoHandler();
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < THREADS; i++) {
+			final String id = "document-" + i;
+			// the reference data differ between the threads, e.g. every thread reads its own location.
+			final int locationId = 100 + i;
+			final String provider = "provider-" + i;
+			if (i % 2 == 0) {
+				futures.add(executorService.submit(new Callable<Integer>() {
+					
+					@Override
+					public Integer call() throws Exception {
+						startSignal.await();
+						for (int j = 0; j < ITERATIONS; j++) {
+							String uuid = id + "-" + j;
+							QueueInfoHandlerContext context = encounterHandler.validate(createContext(
+							    createEncounterPayload(uuid, locationId, provider)));
+							Encounter encounter = (Encounter) context.getAttribute("encounter");
+							assertEquals(uuid, encounter.getPatient().getUuid());
+							assertEquals(Integer.valueOf(locationId), encounter.getLocation().getLocationId());
+							assertEquals(Integer.valueOf(locationId), encounter.getEncounterType().getEncounterTypeId());
+							assertEquals(provider, encounter.getCreator().getUsername());
+							assertEquals(1, encounter.getAllObs().size());
+							for (Obs obs : encounter.getAllObs()) {
+								assertEquals(uuid, obs.getValueText());
+							}
+						}
+						return ITERATIONS;
+					}
+				}));
+			} else {
+				futures.add(executorService.submit(new Callable<Integer>() {
+					
+					@Override
+					public Integer call() throws Exception {
+						startSignal.await();
+						for (int j = 0; j < ITERATIONS; j++) {
+							String uuid = id + "-" + j;
+							QueueInfoHandlerContext context = registrationHandler.validate(createContext(
+							    createRegistrationPayload(uuid, locationId, provider)));
+							Patient patient = (Patient) context.getAttribute("unsavedPatient");
+							assertEquals(uuid, patient.getGivenName());
+							assertEquals(uuid, patient.getPersonAddress().getCityVillage());
+							assertEquals(uuid, patient.getAttribute("Telephone contact").getValue());
+							assertEquals(Integer.valueOf(locationId), patient.getPatientIdentifier().getLocation()
+							        .getLocationId());
+							assertEquals(provider, patient.getCreator().getUsername());
+						}
+						return ITERATIONS;
+					}
+				}));
+			}
+		}
+		
+		startSignal.countDown();
+		for (Future<Integer> future : futures) {
+			assertEquals(Integer.valueOf(ITERATIONS), future.get(1, TimeUnit.MINUTES));
+		}
+		executorService.shutdown();
+		assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+	}
+	
+	private void mockPatientService() {
+		PatientService patientService = mock(PatientService.class);
+		when(Context.getPatientService()).thenReturn(patientService);
+		when(patientService.getPatientByUuid(anyString())).thenAnswer(new Answer<Patient>() {
+			
+			@Override
+			public Patient answer(final InvocationOnMock invocation) {
+				Patient patient = new Patient();
+				patient.setUuid((String) invocation.getArguments()[0]);
+				return patient;
+			}
+		});
+		PatientIdentifierType identifierType = new PatientIdentifierType(1);
+		when(patientService.getPatientIdentifierTypeByUuid(anyString())).thenReturn(identifierType);
+		IdentifierSourceService identifierSourceService = mock(IdentifierSourceService.class);
+		when(Context.getService(IdentifierSourceService.class)).thenReturn(identifierSourceService);
+		when(identifierSourceService.generateIdentifier(any(PatientIdentifierType.class), anyString())).thenReturn("M4E2");
+		
+		PersonService personService = mock(PersonService.class);
+		when(Context.getPersonService()).thenReturn(personService);
+		Answer<PersonAttributeType> attributeType = new Answer<PersonAttributeType>() {
+			
+			@Override
+			public PersonAttributeType answer(final InvocationOnMock invocation) {
+				String key = (String) invocation.getArguments()[0];
+				PersonAttributeType personAttributeType = new PersonAttributeType(key.hashCode() & Integer.MAX_VALUE);
+				personAttributeType.setName(key);
+				return personAttributeType;
+			}
+		};
+		when(personService.getPersonAttributeTypeByName(anyString())).thenAnswer(attributeType);
+		when(personService.getPersonAttributeTypeByUuid(anyString())).thenAnswer(attributeType);
+	}
+	
+	private void mockReferenceDataServices() {
+		LocationService locationService = mock(LocationService.class);
+		when(Context.getLocationService()).thenReturn(locationService);
+		when(locationService.getLocation(anyInt())).thenAnswer(new Answer<Location>() {
+			
+			@Override
+			public Location answer(final InvocationOnMock invocation) {
+				return new Location((Integer) invocation.getArguments()[0]);
+			}
+		});
+		EncounterService encounterService = mock(EncounterService.class);
+		when(Context.getEncounterService()).thenReturn(encounterService);
+		when(encounterService.getEncounterType(anyInt())).thenAnswer(new Answer<EncounterType>() {
+			
+			@Override
+			public EncounterType answer(final InvocationOnMock invocation) {
+				return new EncounterType((Integer) invocation.getArguments()[0]);
+			}
+		});
+		when(encounterService.getEncounterRoleByUuid(anyString())).thenReturn(new EncounterRole(1));
+		when(Context.getFormService()).thenReturn(mock(FormService.class));
+		
+		ProviderService providerService = mock(ProviderService.class);
+		when(Context.getProviderService()).thenReturn(providerService);
+		when(providerService.getProviderByIdentifier(anyString())).thenAnswer(new Answer<Provider>() {
+			
+			@Override
+			public Provider answer(final InvocationOnMock invocation) {
+				Provider provider = new Provider();
+				provider.setIdentifier((String) invocation.getArguments()[0]);
+				return provider;
+			}
+		});
+		UserService userService = mock(UserService.class);
+		when(Context.getUserService()).thenReturn(userService);
+		when(userService.getUserByUsername(anyString())).thenAnswer(new Answer<User>() {
+			
+			@Override
+			public User answer(final InvocationOnMock invocation) {
+				User user = new User();
+				user.setUsername((String) invocation.getArguments()[0]);
+				return user;
+			}
+		});
+		
+		ConceptDatatype text = new ConceptDatatype();
+		text.setUuid(ConceptDatatype.TEXT_UUID);
+		Concept concept = new Concept(CONCEPT_ID);
+		concept.setDatatype(text);
+		ConceptService conceptService = mock(ConceptService.class);
+		when(Context.getConceptService()).thenReturn(conceptService);
+		when(conceptService.getConcept(CONCEPT_ID)).thenReturn(concept);
+	}
+	
+	private QueueInfoHandlerContext createContext(final String payload) {
+		AfyaStatQueueData queueData = new AfyaStatQueueData();
+		queueData.setPayload(payload);
+		return new QueueInfoHandlerContext(queueData);
+	}
+	
+	private String createContactTracePayload(final String uuid) {
+		return "{\"_id\":\"" + uuid + "\",\"fields\":{\"group_follow_up\":{\"date_last_contact\":\"10-01-2020\","
+		        + "\"follow_up_type\":\"phone\",\"status_visit\":\"available\","
+		        + "\"is_not_available_reason_other\":\"other\",\"remarks\":\"" + uuid + "\"},"
+		        + "\"inputs\":{\"contact\":{\"_id\":\"contact-" + uuid + "\"}}}}";
+	}
+	
+	private String createContactListPayload(final String uuid) {
+		return "{\"_id\":\"" + uuid + "\",\"f_name\":\"" + uuid + "\",\"s_name\":\"Contact\","
+		        + "\"contact_relationship\":\"partner\",\"baseline_hiv_status\":\"unknown\",\"sex\":\"female\","
+		        + "\"marital_status\":\"Single\",\"living_with_client\":\"yes\",\"pns_approach\":\"dual_referral\","
+		        + "\"parent\":{\"_id\":\"parent-" + uuid + "\"}}";
+	}
+	
+	private String createEncounterPayload(final String uuid, final int locationId, final String provider) {
+		return "{\"_id\":\"" + uuid + "\",\"patient\":{\"patient.uuid\":\"" + uuid + "\"},\"encounter\":{"
+		        + "\"encounter.form_uuid\":\"no-form\",\"encounter.type_id\":\"" + locationId + "\","
+		        + "\"encounter.provider_id\":\"" + provider + "\",\"encounter.provider_role_uuid\":\"role\","
+		        + "\"encounter.user_system_id\":\"" + provider + "\",\"encounter.location_id\":\"" + locationId
+		        + "\",\"encounter.encounter_datetime\":\"10-01-2020 10:00\","
+		        + "\"encounter.device_time_zone\":\"Africa/Nairobi\"},"
+		        + "\"observation\":{\"" + CONCEPT_ID + "^REMARKS^99DCT\":\"" + uuid + "\"}}";
+	}
+	
+	private String createRegistrationPayload(final String uuid, final int locationId, final String provider) {
+		return "{\"_id\":\"" + uuid + "\",\"skipPatientMatching\":\"true\",\"patient\":{\"patient.uuid\":\""
+		        + uuid + "\",\"patient.given_name\":\"" + uuid + "\",\"patient.middle_name\":\"\","
+		        + "\"patient.family_name\":\"Patient\",\"patient.sex\":\"F\",\"patient.birth_date\":\"01-01-2000\","
+		        + "\"patient.birthdate_estimated\":\"false\",\"patient.village\":\"" + uuid + "\","
+		        + "\"patient.phone_number\":\"" + uuid + "\"},\"encounter\":{\"encounter.location_id\":\""
+		        + locationId + "\",\"encounter.user_system_id\":\"" + provider + "\",\"encounter.provider_id\":\""
+		        + provider + "\"}}";
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.task;
+
+import org.junit.Test;
+import org.openmrs.module.afyastat.handler.DemographicsUpdateQueueInfoHandler;
+import org.openmrs.module.afyastat.handler.JsonContactListQueueDataHandler;
+import org.openmrs.module.afyastat.handler.JsonContactTraceQueueDataHandler;
+import org.openmrs.module.afyastat.handler.JsonEncounterQueueInfoHandler;
+import org.openmrs.module.afyastat.handler.JsonGenericRegistrationQueueInfoHandler;
+import org.openmrs.module.afyastat.handler.JsonPeerCalenderEncounterQueueDataHandler;
+import org.openmrs.module.afyastat.handler.JsonRegistrationQueueInfoHandler;
+import org.openmrs.module.afyastat.handler.ObsQueueInfoHandler;
+import org.openmrs.module.afyastat.model.AfyaStatQueueData;
+import org.openmrs.module.afyastat.model.handler.ConcurrentQueueInfoHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This is a unit test, which verifies that the workers of the queue data processor process the
+ * queue data of every patient in the same order as a single thread does.
+ */
+public class QueueInfoProcessorTest {
+	
+	private static final int QUEUE_DATA = 1000;
+	
+	private static final int PATIENTS = 37;
+	
+	@Test
+	public void partitionQueueData_shouldProcessThePatientsInTheSerialOrder() {
+		List<AfyaStatQueueData> queueDataList = new ArrayList<AfyaStatQueueData>();
+		for (int i = 1; i <= QUEUE_DATA; i++) {
+			AfyaStatQueueData queueData = new AfyaStatQueueData();
+			queueData.setId(i);
+			// some queue data have no patient yet, e.g. the registrations of new patients.
+			queueData.setPatientUuid(i % 10 == 0 ? null : "patient-" + (i * 7 % PATIENTS));
+			queueDataList.add(queueData);
+		}
+		List<List<Integer>> serial = QueueInfoProcessor.partitionQueueData(queueDataList, 1);
+		assertEquals(1, serial.size());
+		Map<Integer, String> patients = getPatients(queueDataList);
+		Map<String, List<Integer>> serialOrder = getOrderByPatient(serial, patients);
+		
+		for (int workerCount = 2; workerCount <= 8; workerCount++) {
+			List<List<Integer>> partitions = QueueInfoProcessor.partitionQueueData(queueDataList, workerCount);
+			assertEquals(workerCount, partitions.size());
+			int processed = 0;
+			for (List<Integer> partition : partitions) {
+				processed += partition.size();
+			}
+			assertEquals(QUEUE_DATA, processed);
+			assertEquals(serialOrder, getOrderByPatient(partitions, patients));
+			// the queue data of a patient are never split between two workers.
+			for (List<Integer> patientQueueData : serialOrder.values()) {
+				assertTrue(containsAll(partitions, patientQueueData));
+			}
+		}
+	}
+	
+	@Test
+	public void handlers_shouldBeSafeToRunFromSeveralWorkers() {
+		List<Class<?>> handlers = Arrays.<Class<?>> asList(DemographicsUpdateQueueInfoHandler.class,
+		    JsonContactListQueueDataHandler.class, JsonContactTraceQueueDataHandler.class,
+		    JsonEncounterQueueInfoHandler.class, JsonGenericRegistrationQueueInfoHandler.class,
+		    JsonPeerCalenderEncounterQueueDataHandler.class, JsonRegistrationQueueInfoHandler.class,
+		    ObsQueueInfoHandler.class);
+		for (Class<?> handler : handlers) {
+			assertTrue(handler.getSimpleName(), ConcurrentQueueInfoHandler.class.isAssignableFrom(handler));
+		}
+	}
+	
+	private Map<Integer, String> getPatients(final List<AfyaStatQueueData> queueDataList) {
+		Map<Integer, String> patients = new LinkedHashMap<Integer, String>();
+		for (AfyaStatQueueData queueData : queueDataList) {
+			patients.put(queueData.getId(), String.valueOf(queueData.getPatientUuid()));
+		}
+		return patients;
+	}
+	
+	private Map<String, List<Integer>> getOrderByPatient(final List<List<Integer>> partitions,
+	        final Map<Integer, String> patients) {
+		Map<String, List<Integer>> order = new LinkedHashMap<String, List<Integer>>();
+		for (List<Integer> partition : partitions) {
+			for (Integer queueDataId : partition) {
+				String patient = patients.get(queueDataId);
+				if (!order.containsKey(patient)) {
+					order.put(patient, new ArrayList<Integer>());
+				}
+				order.get(patient).add(queueDataId);
+			}
+		}
+		return order;
+	}
+	
+	private boolean containsAll(final List<List<Integer>> partitions, final List<Integer> queueDataIds) {
+		for (List<Integer> partition : partitions) {
+			if (partition.containsAll(queueDataIds)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.util;
+
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openmrs.User;
+import org.openmrs.module.afyastat.model.AfyaDataSource;
+import org.openmrs.module.afyastat.model.ArchiveInfo;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This is a unit test, which verifies the archive data written to the cold storage files are read
+ * back as they were archived.
+ */
+public class ArchiveColdStorageTest {
+	
+	private static final String FORM_DATA_UUID = "8898c6e1-5df1-409f-b8ed-c88e6e0f24e9";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void write_shouldWriteOneFilePerMonth() throws Exception {
+		ArchiveColdStorage coldStorage = new ArchiveColdStorage(folder.getRoot());
+		coldStorage.write(Arrays.asList(createArchiveInfo(1, 2019, 1, FORM_DATA_UUID),
+		    createArchiveInfo(2, 2019, 2, FORM_DATA_UUID)));
+		coldStorage.write(Arrays.asList(createArchiveInfo(3, 2019, 2, FORM_DATA_UUID)));
+		
+		assertEquals(2, coldStorage.listFiles().size());
+		assertEquals("medic_archive_data-2019-01.ndjson.gz", coldStorage.listFiles().get(0).getName());
+		assertEquals("medic_archive_data-2019-02.ndjson.gz", coldStorage.listFiles().get(1).getName());
+	}
+	
+	@Test
+	public void findByFormDataUuid_shouldReadBackTheArchiveDataOfTheForm() throws Exception {
+		ArchiveColdStorage coldStorage = new ArchiveColdStorage(folder.getRoot());
+		ArchiveInfo archived = createArchiveInfo(1, 2019, 1, FORM_DATA_UUID);
+		coldStorage.write(Arrays.asList(archived, createArchiveInfo(2, 2019, 1, "another-form")));
+		// appended as a second gzip member of the same file, and written twice as after a failed delete.
+		coldStorage.write(Arrays.asList(createArchiveInfo(3, 2019, 1, FORM_DATA_UUID)));
+		coldStorage.write(Arrays.asList(createArchiveInfo(3, 2019, 1, FORM_DATA_UUID)));
+		
+		List<ArchiveInfo> found = coldStorage.findByFormDataUuid(FORM_DATA_UUID);
+		assertEquals(2, found.size());
+		ArchiveInfo restored = found.get(0);
+		assertEquals(archived.getId(), restored.getId());
+		assertEquals(archived.getUuid(), restored.getUuid());
+		assertEquals(archived.getPayload(), restored.getPayload());
+		assertEquals(archived.getDiscriminator(), restored.getDiscriminator());
+		assertEquals(archived.getMessage(), restored.getMessage());
+		assertEquals(archived.getDateArchived(), restored.getDateArchived());
+		assertEquals(archived.getDateCreated(), restored.getDateCreated());
+		assertEquals(archived.getPatientUuid(), restored.getPatientUuid());
+		assertEquals(archived.getDocumentId(), restored.getDocumentId());
+		assertEquals(archived.getDataSource().getId(), restored.getDataSource().getId());
+		assertEquals(archived.getCreator().getUserId(), restored.getCreator().getUserId());
+		assertEquals(Integer.valueOf(3), found.get(1).getId());
+		assertTrue(coldStorage.findByFormDataUuid("unknown-form").isEmpty());
+	}
+	
+	private ArchiveInfo createArchiveInfo(final int id, final int year, final int month, final String formDataUuid) {
+		AfyaDataSource dataSource = new AfyaDataSource();
+		dataSource.setId(1);
+		ArchiveInfo archiveInfo = new ArchiveInfo();
+		archiveInfo.setId(id);
+		archiveInfo.setUuid("archive-" + id);
+		archiveInfo.setDiscriminator("json-registration");
+		archiveInfo.setDataSource(dataSource);
+		archiveInfo.setPayload("{\"patient\":{\"patient.given_name\":\"W\u00e9nd\u00e9\"},"
+		        + "\"encounter\":{\"encounter.form_uuid\":\"" + formDataUuid + "\"}}");
+		archiveInfo.setMessage("Successfully processed");
+		archiveInfo.setDateArchived(new DateTime(year, month, 15, 10, 30, 0, 0).toDate());
+		archiveInfo.setCreator(new User(1));
+		archiveInfo.setDateCreated(new DateTime(year, month, 14, 8, 0, 0, 0).toDate());
+		archiveInfo.setPatientUuid("patient-" + id);
+		archiveInfo.setFormDataUuid(formDataUuid);
+		archiveInfo.setDocumentId("document-" + id);
+		return archiveInfo;
+	}
+}
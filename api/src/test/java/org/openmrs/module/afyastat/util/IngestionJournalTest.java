@@ -0,0 +1,90 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.util;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This is a unit test, which verifies that the documents written to the ingestion journal are read
+ * back and that the failed documents are moved out of it.
+ */
+public class IngestionJournalTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	@Test
+	public void append_shouldWriteAnEntryWhichIsReadBack() throws Exception {
+		IngestionJournal journal = new IngestionJournal(folder.getRoot());
+		ObjectNode document = read("{\"encData\": {\"_id\": \"a1\", \"fields\": {}}}");
+		File entry = journal.append("medicformsdata", document);
+		
+		assertEquals(Arrays.asList(entry), journal.getEntries());
+		ObjectNode envelope = journal.read(entry);
+		assertEquals("medicformsdata", envelope.path("type").getTextValue());
+		assertEquals(document, envelope.get("document"));
+	}
+	
+	@Test
+	public void getEntries_shouldListTheCompleteEntriesOldestFirst() throws Exception {
+		IngestionJournal journal = new IngestionJournal(folder.getRoot());
+		File first = journal.append("medicformsdata", read("{\"encData\": {\"_id\": \"a1\"}}"));
+		File second = journal.append("medicformsdata", read("{\"encData\": {\"_id\": \"a2\"}}"));
+		// an entry whose write was interrupted is never read back.
+		assertTrue(new File(folder.getRoot(), "0000000000001-000000001.tmp").createNewFile());
+		
+		assertEquals(Arrays.asList(first, second), journal.getEntries());
+	}
+	
+	@Test
+	public void markFailed_shouldMoveTheEntryOutOfTheJournal() throws Exception {
+		IngestionJournal journal = new IngestionJournal(folder.getRoot());
+		File entry = journal.append("medicformsdata", read("{\"encData\": {\"_id\": \"a1\"}}"));
+		journal.markFailed(entry);
+		
+		assertTrue(journal.getEntries().isEmpty());
+		assertTrue(new File(new File(folder.getRoot(), "failed"), entry.getName()).isFile());
+	}
+	
+	@Test
+	public void remove_shouldDeleteTheEntry() throws Exception {
+		IngestionJournal journal = new IngestionJournal(folder.getRoot());
+		File entry = journal.append("medicformsdata", read("{\"encData\": {\"_id\": \"a1\"}}"));
+		journal.remove(entry);
+		
+		List<File> entries = journal.getEntries();
+		assertTrue(entries.isEmpty());
+	}
+	
+	@Test(expected = IOException.class)
+	public void read_shouldRejectAnEntryWithoutADocument() throws Exception {
+		File entry = new File(folder.getRoot(), "0000000000001-000000001.json");
+		mapper.writeValue(entry, read("{\"type\": \"medicformsdata\"}"));
+		new IngestionJournal(folder.getRoot()).read(entry);
+	}
+	
+	private ObjectNode read(final String json) throws Exception {
+		return (ObjectNode) mapper.readTree(json);
+	}
+}
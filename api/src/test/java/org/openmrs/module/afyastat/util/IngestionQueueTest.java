@@ -0,0 +1,155 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.util;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This is a unit test, which verifies that the asynchronous ingestion refuses the documents it has
+ * no room for, retries the documents of a failed batch and ingests the documents left in the
+ * journal by a crash. The saving of the documents is replaced by a recording of their ids.
+ */
+public class IngestionQueueTest {
+	
+	private static final long TIMEOUT_MILLIS = 10000L;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	@Test
+	public void offer_shouldRefuseTheDocumentsWhenTheQueueIsFull() throws Exception {
+		IngestionJournal journal = new IngestionJournal(folder.getRoot());
+		IngestionQueue ingestionQueue = new IngestionQueue(journal, 1, 10, 10L, 0);
+		
+		assertEquals(IngestionQueue.Result.ACCEPTED, ingestionQueue.offer("medicformsdata", document("a1")));
+		// the endpoints answer 429 and the sender sends the document again, it is not journaled.
+		assertEquals(IngestionQueue.Result.FULL, ingestionQueue.offer("medicformsdata", document("a2")));
+		assertEquals(1, journal.getEntries().size());
+	}
+	
+	@Test
+	public void offer_shouldRefuseAnInvalidDocument() throws Exception {
+		IngestionJournal journal = new IngestionJournal(folder.getRoot());
+		IngestionQueue ingestionQueue = new IngestionQueue(journal, 1, 10, 10L, 0);
+		
+		assertEquals(IngestionQueue.Result.INVALID, ingestionQueue.offer("medicregistration", document("a1")));
+		assertTrue(journal.getEntries().isEmpty());
+	}
+	
+	@Test
+	public void work_shouldRetryTheDocumentsOfAFailedBatch() throws Exception {
+		IngestionJournal journal = new IngestionJournal(folder.getRoot());
+		// the batch fails, then the first document alone fails and is retried after the delay.
+		RecordingIngestionQueue ingestionQueue = new RecordingIngestionQueue(journal, 2);
+		for (String id : Arrays.asList("a1", "a2", "a3")) {
+			assertEquals(IngestionQueue.Result.ACCEPTED, ingestionQueue.offer("medicformsdata", document(id)));
+		}
+		ingestionQueue.run(3);
+		
+		assertEquals(3, ingestionQueue.ingested.size());
+		assertTrue(ingestionQueue.ingested.containsAll(Arrays.asList("a1", "a2", "a3")));
+		assertTrue(journal.getEntries().isEmpty());
+	}
+	
+	@Test
+	public void recover_shouldIngestTheDocumentsLeftInTheJournalByACrash() throws Exception {
+		IngestionJournal crashedJournal = new IngestionJournal(folder.getRoot());
+		crashedJournal.append("medicformsdata", document("a1"));
+		crashedJournal.append("medicformsdata", document("a2"));
+		assertTrue(new File(folder.getRoot(), "0000000000001-000000001.tmp").createNewFile());
+		
+		// the module is started again over the journal directory.
+		IngestionJournal journal = new IngestionJournal(folder.getRoot());
+		RecordingIngestionQueue ingestionQueue = new RecordingIngestionQueue(journal, 0);
+		ingestionQueue.recover(journal.getEntries());
+		ingestionQueue.run(2);
+		
+		assertEquals(Arrays.asList("a1", "a2"), ingestionQueue.ingested);
+		assertTrue(journal.getEntries().isEmpty());
+	}
+	
+	private ObjectNode document(final String id) throws Exception {
+		return (ObjectNode) mapper.readTree("{\"encData\": {\"_id\": \"" + id + "\", \"fields\": {}}}");
+	}
+	
+	/**
+	 * Records the ids of the ingested documents instead of saving them, after failing the given
+	 * number of times.
+	 */
+	private static class RecordingIngestionQueue extends IngestionQueue {
+		
+		private final List<String> ingested = new CopyOnWriteArrayList<String>();
+		
+		private final AtomicInteger failures;
+		
+		private final IngestionJournal journal;
+		
+		private RecordingIngestionQueue(final IngestionJournal journal, final int failures) {
+			super(journal, 10, 10, 10L, 2);
+			this.journal = journal;
+			this.failures = new AtomicInteger(failures);
+		}
+		
+		@Override
+		void ingest(final List<Entry> entries) {
+			if (failures.getAndDecrement() > 0) {
+				throw new IllegalStateException("The database is not available");
+			}
+			for (Entry entry : entries) {
+				ingested.add(entry.document.path("encData").path("_id").getTextValue());
+				journal.remove(entry.file);
+			}
+		}
+		
+		/**
+		 * Run a worker and the retries until the number of documents are ingested.
+		 */
+		private void run(final int documents) throws InterruptedException {
+			Thread worker = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					work();
+				}
+			});
+			Thread retrier = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					retry();
+				}
+			});
+			worker.start();
+			retrier.start();
+			long timeout = System.currentTimeMillis() + TIMEOUT_MILLIS;
+			while (ingested.size() < documents && System.currentTimeMillis() < timeout) {
+				Thread.sleep(10L);
+			}
+			shutdown();
+			worker.join();
+			retrier.join();
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.util;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openmrs.Location;
+import org.openmrs.Person;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.FormService;
+import org.openmrs.api.LocationService;
+import org.openmrs.api.PatientService;
+import org.openmrs.api.ProviderService;
+import org.openmrs.api.UserService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.api.AfyastatService;
+import org.openmrs.module.afyastat.api.service.InfoService;
+import org.openmrs.module.afyastat.api.service.MedicQueData;
+import org.openmrs.module.afyastat.model.AfyaDataSource;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
+import org.openmrs.module.kenyaemr.api.KenyaEmrService;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * This is a unit test, which verifies that a single MedicDataExchange instance can transform
+ * different CHT documents from several threads at the same time without leaking state between the
+ * invocations, and that the default location is looked up once rather than for every document.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class MedicDataExchangeConcurrencyTest {
+	
+	private static final int THREADS = 8;
+	
+	private static final int ITERATIONS = 500;
+	
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	private ExecutorService executorService;
+	
+	private KenyaEmrService kenyaEmrService;
+	
+	private Location defaultLocation;
+	
+	@Before
+	public void setUp() {
+		defaultLocation = new Location(7);
+		Provider provider = new Provider(1);
+		provider.setIdentifier("P-1");
+		User superUser = new User(new Person(1));
+		superUser.setUsername("admin");
+		InfoService infoService = mock(InfoService.class);
+		AfyastatService afyastatService = mock(AfyastatService.class);
+		kenyaEmrService = mock(KenyaEmrService.class);
+		LocationService locationService = mock(LocationService.class);
+		UserService userService = mock(UserService.class);
+		ProviderService providerService = mock(ProviderService.class);
+		
+		mockStatic(Context.class);
+		when(Context.getAdministrationService()).thenReturn(mock(AdministrationService.class));
+		when(Context.getService(InfoService.class)).thenReturn(infoService);
+		when(Context.getService(AfyastatService.class)).thenReturn(afyastatService);
+		when(Context.getService(KenyaEmrService.class)).thenReturn(kenyaEmrService);
+		when(Context.getLocationService()).thenReturn(locationService);
+		when(Context.getFormService()).thenReturn(mock(FormService.class));
+		when(Context.getUserService()).thenReturn(userService);
+		when(Context.getProviderService()).thenReturn(providerService);
+		when(Context.getPatientService()).thenReturn(mock(PatientService.class));
+		when(infoService.getDataSource(1)).thenReturn(new AfyaDataSource());
+		when(afyastatService.getFirstProvider()).thenReturn(provider);
+		when(kenyaEmrService.getDefaultLocation()).thenReturn(defaultLocation);
+		when(locationService.getLocation(7)).thenReturn(defaultLocation);
+		when(userService.getUser(1)).thenReturn(superUser);
+		when(providerService.getProviderByIdentifier("P-1")).thenReturn(provider);
+		ReferenceDataCache.clear();
+		executorService = Executors.newFixedThreadPool(THREADS);
+	}
+	
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+		ReferenceDataCache.clear();
+	}
+	
+	/**
+	 * Transform registrations, contact lists and contact traces concurrently with one instance, every
+	 * queue data must only contain the data read from its own document.
+	 */
+	@Test
+	public void createQueueData_shouldKeepStateOfConcurrentInvocationsSeparate() throws Exception {
+		final MedicDataExchange medicDataExchange = new MedicDataExchange();
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < THREADS; i++) {
+			final int thread = i;
+			futures.add(executorService.submit(new Callable<Integer>() {
+				
+				@Override
+				public Integer call() throws Exception {
+					startSignal.await();
+					for (int j = 0; j < ITERATIONS; j++) {
+						String uuid = "document-" + thread + "-" + j;
+						switch ((thread + j) % 3) {
+							case 0:
+								verifyRegistration(medicDataExchange, uuid, j % 28 + 1, 1500000000000L + thread * 86400000L
+								        * 31 + j);
+								break;
+							case 1:
+								verifyContactList(medicDataExchange, uuid);
+								break;
+							default:
+								verifyContactTrace(medicDataExchange, uuid);
+						}
+					}
+					return ITERATIONS;
+				}
+			}));
+		}
+		
+		startSignal.countDown();
+		for (Future<Integer> future : futures) {
+			assertEquals(Integer.valueOf(ITERATIONS), future.get(1, TimeUnit.MINUTES));
+		}
+		executorService.shutdown();
+		assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+		verify(kenyaEmrService, atMost(THREADS)).getDefaultLocation();
+	}
+	
+	private void verifyRegistration(final MedicDataExchange medicDataExchange, final String uuid, final int day,
+	        final long reportedDate) throws Exception {
+		String dateOfBirth = String.format("1990-03-%02d", day);
+		ObjectNode body = read("{\"registration\": {\"_id\": \"" + uuid + "\", \"patient_dobKnown\": \"_1065_Yes_99DCT\", "
+		        + "\"patient_dateOfBirth\": \"" + dateOfBirth + "\", \"patient_firstName\": \"" + uuid + "\", "
+		        + "\"reported_date\": " + reportedDate + ", \"meta\": {\"created_by\": \"chw\"}}}");
+		MedicQueData queueData = medicDataExchange.createQueueData("medicregistration", body);
+		JsonNode payload = mapper.readTree(queueData.getPayload());
+		
+		assertEquals(uuid, queueData.getPatientUuid());
+		assertEquals(uuid, queueData.getDocumentId());
+		assertEquals(uuid, payload.path("patient").path("patient.given_name").getTextValue());
+		assertEquals(String.format("%02d-03-1990", day), payload.path("patient").path("patient.birth_date").getTextValue());
+		assertEquals(new SimpleDateFormat("dd-MM-yyyy").format(new Date(reportedDate)),
+		    payload.path("encounter").path("encounter.encounter_datetime").getTextValue());
+		assertEquals("7", payload.path("encounter").path("encounter.location_id").getTextValue());
+		assertEquals("P-1", payload.path("encounter").path("encounter.provider_id").getTextValue());
+		assertEquals("admin", payload.path("encounter").path("encounter.user_system_id").getTextValue());
+		assertSame(defaultLocation, queueData.getLocation());
+	}
+	
+	private void verifyContactList(final MedicDataExchange medicDataExchange, final String uuid) throws Exception {
+		ObjectNode body = read("{\"formData\": {\"_id\": \"" + uuid + "\", \"_rev\": \"1-a\", \"f_name\": \"" + uuid
+		        + "\", \"meta\": {\"created_by\": \"chw\"}}}");
+		MedicQueData queueData = medicDataExchange.createQueueData("mediccontactsdata", body);
+		
+		assertEquals(uuid, queueData.getPatientUuid());
+		assertEquals(uuid + "/1-a", queueData.getDocumentId());
+		assertEquals("json-patientcontact", queueData.getDiscriminator());
+		assertEquals(uuid, mapper.readTree(queueData.getPayload()).path("f_name").getTextValue());
+		assertSame(defaultLocation, queueData.getLocation());
+	}
+	
+	private void verifyContactTrace(final MedicDataExchange medicDataExchange, final String uuid) throws Exception {
+		ObjectNode body = read("{\"traceData\": {\"_id\": \"" + uuid + "\", \"fields\": {\"remarks\": \"" + uuid
+		        + "\", \"audit_trail\": {\"created_by\": \"chw\"}}}}");
+		MedicQueData queueData = medicDataExchange.createQueueData("mediccontacttracedata", body);
+		
+		assertEquals(uuid, queueData.getPatientUuid());
+		assertEquals(uuid, queueData.getDocumentId());
+		assertEquals("json-contacttrace", queueData.getDiscriminator());
+		assertEquals(uuid, mapper.readTree(queueData.getPayload()).path("fields").path("remarks").getTextValue());
+		assertSame(defaultLocation, queueData.getLocation());
+	}
+	
+	private ObjectNode read(final String json) throws Exception {
+		return (ObjectNode) mapper.readTree(json);
+	}
+}
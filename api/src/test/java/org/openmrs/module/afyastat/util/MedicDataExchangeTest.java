@@ -0,0 +1,49 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.util;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * This is a unit test, which verifies the identity given to the CHT documents to recognise retried
+ * submissions.
+ */
+public class MedicDataExchangeTest {
+	
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	@Test
+	public void getDocumentId_shouldCombineTheIdAndTheRevisionOfTheDocument() throws Exception {
+		ObjectNode body = read("{\"encData\": {\"_id\": \"a1\", \"_rev\": \"2-b3\", \"fields\": {}}}");
+		assertEquals("a1/2-b3", MedicDataExchange.getDocumentId("medicformsdata", body));
+	}
+	
+	@Test
+	public void getDocumentId_shouldUseTheIdWhenTheDocumentHasNoRevision() throws Exception {
+		ObjectNode body = read("{\"traceData\": {\"_id\": \"c4\"}}");
+		assertEquals("c4", MedicDataExchange.getDocumentId("mediccontacttracedata", body));
+	}
+	
+	@Test
+	public void getDocumentId_shouldReturnNullWithoutAnId() throws Exception {
+		assertNull(MedicDataExchange.getDocumentId("medicregistration", read("{\"registration\": {\"_id\": \"\"}}")));
+		assertNull(MedicDataExchange.getDocumentId("medicregistration", read("{\"encData\": {\"_id\": \"a1\"}}")));
+		assertNull(MedicDataExchange.getDocumentId("unknown", read("{\"encData\": {\"_id\": \"a1\"}}")));
+	}
+	
+	private ObjectNode read(final String json) throws Exception {
+		return (ObjectNode) mapper.readTree(json);
+	}
+}
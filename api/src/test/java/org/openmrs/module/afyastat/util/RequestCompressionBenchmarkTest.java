@@ -0,0 +1,173 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This is a benchmark of the bytes sent over the wire and the end to end latency of posting CHT
+ * registrations uncompressed and gzipped, over a link modelled on the mobile data connections of
+ * the facilities. It also verifies the decoding and the size of the compressed request bodies.
+ * <p>
+ * The benchmark only logs timings and is ignored in the unit suite. Remove its @Ignore and run
+ * <code>mvn test -Dtest=RequestCompressionBenchmarkTest</code> in the api module to print them.
+ */
+public class RequestCompressionBenchmarkTest {
+	
+	private static final Log log = LogFactory.getLog(RequestCompressionBenchmarkTest.class);
+	
+	private static final int WARM_UP_REQUESTS = 200;
+	
+	private static final int REQUESTS = 500;
+	
+	private static final int BATCH_SIZE = 100;
+	
+	private static final long ROUND_TRIP_MILLIS = 600;
+	
+	private static final long LINK_BITS_PER_SECOND = 256000;
+	
+	private final ObjectMapper mapper = new ObjectMapper();
+	
+	@Test
+	public void decodeRequestBody_shouldInflateGzipAndDeflateBodies() throws Exception {
+		byte[] body = createRegistration(1).getBytes("UTF-8");
+		JsonNode expected = mapper.readTree(new ByteArrayInputStream(body));
+		
+		assertEquals(expected, read(Utils.gzip(body), "gzip"));
+		assertEquals(expected, read(Utils.gzip(body), " X-GZIP "));
+		assertEquals(expected, read(deflate(body), "deflate"));
+		assertEquals(expected, read(body, null));
+		assertEquals(expected, read(body, "identity"));
+	}
+	
+	@Test(expected = IOException.class)
+	public void decodeRequestBody_shouldRejectAnUnsupportedEncoding() throws Exception {
+		Utils.decodeRequestBody(new ByteArrayInputStream(new byte[0]), "br");
+	}
+	
+	@Test
+	public void gzip_shouldShrinkABatchOfRegistrations() throws Exception {
+		byte[] body = createBatch();
+		assertTrue(Utils.gzip(body).length * 4 < body.length);
+		assertEquals(mapper.readTree(new ByteArrayInputStream(body)), read(Utils.gzip(body), "gzip"));
+	}
+	
+	/**
+	 * Send single registrations and batches of registrations both ways. The compressed requests must
+	 * be smaller, the bytes and the modelled latencies are only logged.
+	 */
+	@Test
+	@Ignore("Timing only benchmark, see the class comment on how to run it")
+	public void benchmark_shouldReportBytesOnTheWireAndLatency() throws Exception {
+		for (int i = 0; i < WARM_UP_REQUESTS; i++) {
+			send(createRegistration(i).getBytes("UTF-8"), true);
+		}
+		
+		long[] plain = new long[2];
+		long[] compressed = new long[2];
+		for (int i = 0; i < REQUESTS; i++) {
+			byte[] body = createRegistration(i).getBytes("UTF-8");
+			add(plain, send(body, false));
+			add(compressed, send(body, true));
+		}
+		assertTrue(compressed[0] < plain[0]);
+		report("single registration", plain, compressed, REQUESTS);
+		
+		byte[] body = createBatch();
+		long[] plainBatch = send(body, false);
+		long[] compressedBatch = send(body, true);
+		assertTrue(compressedBatch[0] * 4 < plainBatch[0]);
+		report("batch of " + BATCH_SIZE + " registrations", plainBatch, compressedBatch, 1);
+	}
+	
+	/**
+	 * Encode the body as the client would, read it back as the endpoint does and model the time spent
+	 * on the link.
+	 * 
+	 * @return the bytes on the wire and the end to end latency in microseconds.
+	 */
+	private long[] send(final byte[] body, final boolean compress) throws IOException {
+		long start = System.nanoTime();
+		byte[] wire = compress ? Utils.gzip(body) : body;
+		JsonNode jsonNode = read(wire, compress ? "gzip" : null);
+		long cpuMicros = (System.nanoTime() - start) / 1000;
+		assertTrue(jsonNode.size() > 0);
+		long linkMicros = ROUND_TRIP_MILLIS * 1000 + wire.length * 8L * 1000000 / LINK_BITS_PER_SECOND;
+		return new long[] { wire.length, cpuMicros + linkMicros };
+	}
+	
+	private JsonNode read(final byte[] wire, final String contentEncoding) throws IOException {
+		return mapper.readTree(Utils.decodeRequestBody(new ByteArrayInputStream(wire), contentEncoding));
+	}
+	
+	private void add(final long[] total, final long[] request) {
+		total[0] += request[0];
+		total[1] += request[1];
+	}
+	
+	private void report(final String request, final long[] plain, final long[] compressed, final int requests) {
+		log.info("Posting a " + request + " over " + LINK_BITS_PER_SECOND / 1000 + " kbit/s with a " + ROUND_TRIP_MILLIS
+		        + " ms round trip: " + plain[0] / requests + " bytes and " + plain[1] / requests / 1000
+		        + " ms uncompressed, " + compressed[0] / requests + " bytes and " + compressed[1] / requests / 1000
+		        + " ms gzipped (" + (plain[0] * 10 / compressed[0]) / 10.0 + "x smaller)");
+	}
+	
+	private byte[] deflate(final byte[] body) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(outputStream);
+		deflaterOutputStream.write(body);
+		deflaterOutputStream.close();
+		return outputStream.toByteArray();
+	}
+	
+	private byte[] createBatch() throws IOException {
+		StringBuilder batch = new StringBuilder("[");
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			batch.append(i > 0 ? "," : "").append("{\"type\":\"medicregistration\",\"document\":")
+			        .append(createRegistration(i)).append("}");
+		}
+		return batch.append("]").toString().getBytes("UTF-8");
+	}
+	
+	private String createRegistration(final int row) {
+		return "{\"registration\":{\"_id\":\"" + row + "-5a1c7e2b-0d2e-4f1a-9c3b-cht\",\"_rev\":\"1-" + row
+		        + "\",\"type\":\"data_record\",\"form\":\"registration\",\"patient_firstName\":\"Name" + row
+		        + "\",\"patient_middleName\":\"Middle\",\"patient_familyName\":\"Family" + row % 50
+		        + "\",\"patient_sex\":\"" + (row % 2 == 0 ? "female" : "male") + "\","
+		        + "\"patient_dobKnown\":\"_1065_Yes_99DCT\","
+		        + "\"patient_dateOfBirth\":\"1990-03-" + (row % 28 + 10) + "\",\"patient_county\":\"Kisumu\","
+		        + "\"patient_subcounty\":\"Kisumu East\",\"patient_ward\":\"Kajulu\",\"patient_sublocation\":\"Kajulu\","
+		        + "\"patient_location\":\"Kajulu\",\"patient_village\":\"Village" + row % 20
+		        + "\",\"patient_landmark\":\"Market\",\"patient_telephone\":\"07000" + row
+		        + "\",\"patient_marital_status\":\"_1057_NEVER MARRIED_99DCT\","
+		        + "\"patient_occupation\":\"_1538_FARMER_99DCT\",\"patient_education_level\":\"_1714_SECONDARY_99DCT\","
+		        + "\"patient_nextofkin\":\"Kin" + row + "\",\"patient_nextofkinRelationship\":\"Sibling\","
+		        + "\"reported_date\":" + (1600000000000L + row) + ",\"meta\":{\"created_by\":\"chw" + row % 30
+		        + "\"},\"observation\":{\"1542^OCCUPATION^99DCT\":\"1538^FARMER^99DCT\","
+		        + "\"1054^CIVIL STATUS^99DCT\":\"1057^NEVER MARRIED^99DCT\","
+		        + "\"1712^HIGHEST EDUCATION LEVEL^99DCT\":\"1714^SECONDARY^99DCT\"},"
+		        + "\"encounter\":{\"encounter.location_id\":\"7\",\"encounter.provider_id\":\"P-1\","
+		        + "\"encounter.form_uuid\":\"8898c6e1-5df1-409f-b8ed-c88e6e0f24e9\","
+		        + "\"encounter.setup_config_uuid\":\"2107eab5-5b3a-4de8-9e02-9d97bce635d2\"}}}";
+	}
+}
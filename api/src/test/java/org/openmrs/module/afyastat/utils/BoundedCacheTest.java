@@ -0,0 +1,99 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * This is a unit test, which verifies the bound, the expiry and the counters of the cache.
+ */
+public class BoundedCacheTest {
+	
+	/**
+	 * Reading the 200 obs of a form which only uses 20 distinct concepts must only load each concept
+	 * once.
+	 */
+	@Test
+	public void get_shouldOnlyLoadEachKeyOnce() {
+		CountingLoader loader = new CountingLoader();
+		BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>("concepts", 100, 60000);
+		for (int i = 0; i < 200; i++) {
+			assertEquals("concept-" + (i % 20), cache.get(i % 20, loader));
+		}
+		assertEquals(20, loader.loads.get());
+		assertEquals(20, cache.getMisses());
+		assertEquals(180, cache.getHits());
+		assertEquals(20, cache.size());
+	}
+	
+	@Test
+	public void get_shouldDropTheLeastRecentlyUsedValueWhenFull() {
+		CountingLoader loader = new CountingLoader();
+		BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>("concepts", 2, 60000);
+		cache.get(1, loader);
+		cache.get(2, loader);
+		cache.get(1, loader);
+		cache.get(3, loader);
+		assertEquals(2, cache.size());
+		cache.get(1, loader);
+		assertEquals(3, loader.loads.get());
+		cache.get(2, loader);
+		assertEquals(4, loader.loads.get());
+	}
+	
+	@Test
+	public void get_shouldLoadTheValueAgainWhenExpired() throws Exception {
+		CountingLoader loader = new CountingLoader();
+		BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>("concepts", 10, 1);
+		cache.get(1, loader);
+		Thread.sleep(5);
+		cache.get(1, loader);
+		assertEquals(2, loader.loads.get());
+		assertEquals(0, cache.getHits());
+	}
+	
+	@Test
+	public void get_shouldNotCacheMissingValues() {
+		CountingLoader loader = new CountingLoader();
+		BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>("concepts", 10, 60000);
+		assertNull(cache.get(-1, loader));
+		assertNull(cache.get(-1, loader));
+		assertEquals(2, loader.loads.get());
+		assertEquals(0, cache.size());
+	}
+	
+	@Test
+	public void invalidate_shouldLoadTheValueAgain() {
+		CountingLoader loader = new CountingLoader();
+		BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>("concepts", 10, 60000);
+		cache.get(1, loader);
+		cache.invalidate(1);
+		cache.get(1, loader);
+		cache.clear();
+		cache.get(1, loader);
+		assertEquals(3, loader.loads.get());
+	}
+	
+	private static class CountingLoader implements BoundedCache.Loader<Integer, String> {
+		
+		private final AtomicInteger loads = new AtomicInteger();
+		
+		@Override
+		public String load(final Integer key) {
+			loads.incrementAndGet();
+			return key < 0 ? null : "concept-" + key;
+		}
+	}
+}
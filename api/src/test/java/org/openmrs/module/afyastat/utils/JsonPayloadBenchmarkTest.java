@@ -0,0 +1,152 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import com.jayway.jsonpath.JsonPath;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * This is a benchmark of the per row cost of reading the fields of a demographics update payload,
+ * once by parsing the payload string on every read and once by parsing the payload a single time and
+ * reading it with precompiled paths. It also verifies that both read the same values.
+ * <p>
+ * The benchmark only logs timings and is ignored in the unit suite. Remove its @Ignore and run
+ * <code>mvn test -Dtest=JsonPayloadBenchmarkTest</code> in the api module to print them.
+ */
+public class JsonPayloadBenchmarkTest {
+	
+	private static final Log log = LogFactory.getLog(JsonPayloadBenchmarkTest.class);
+	
+	private static final int WARM_UP_ROWS = 200;
+	
+	private static final int ROWS = 1000;
+	
+	private static final String[] FIELDS = { "temporal_patient_uuid", "given_name", "middle_name", "family_name", "sex",
+	        "birth_date", "birthdate_estimated", "county", "sub_county", "ward", "landmark", "postal_address", "location",
+	        "sub_location", "village", "mothers_name", "phone_number", "nearest_health_center", "alternate_phone_contact",
+	        "email_address", "next_of_kin_name", "next_of_kin_contact", "next_of_kin_address", "next_of_kin_relationship",
+	        "national_id", "birth_certificate", "passport_number", "huduma_number", "alien_number", "occupation",
+	        "education", "marital_status", "tribe", "religion", "dead", "death_date", "cause_of_death", "upn",
+	        "cccNumber", "kdod_service_number" };
+	
+	@Test
+	public void readAsString_shouldReturnTheSameValuesForTheStringAndTheParsedPayload() {
+		String payload = createPayload(0);
+		JsonPayload parsedPayload = new JsonPayload(payload);
+		for (String path : createPaths()) {
+			JsonPath jsonPath = JsonPayload.compile(path);
+			assertEquals(JsonFormatUtils.readAsString(payload, path), JsonFormatUtils.readAsString(parsedPayload, jsonPath));
+			// the second read is served from the cached value.
+			assertEquals(JsonFormatUtils.readAsString(payload, path), JsonFormatUtils.readAsString(parsedPayload, jsonPath));
+		}
+		assertEquals(JsonFormatUtils.readAsDate(payload, "$['demographicsupdate']['demographicsupdate.birth_date']"),
+		    JsonFormatUtils.readAsDate(parsedPayload, PayloadPaths._DemographicsUpdate.BIRTH_DATE));
+		assertEquals(JsonFormatUtils.readAsObject(payload, "$['observation']"),
+		    JsonFormatUtils.readAsObject(parsedPayload, PayloadPaths.OBSERVATION));
+	}
+	
+	@Test
+	public void readAsString_shouldReturnNullForAnInvalidPayload() {
+		JsonPayload parsedPayload = new JsonPayload("{\"demographicsupdate\":");
+		assertNull(JsonFormatUtils.readAsString(parsedPayload, PayloadPaths._DemographicsUpdate.SEX));
+		assertNull(JsonFormatUtils.readAsString(parsedPayload, PayloadPaths._DemographicsUpdate.WARD));
+	}
+	
+	/**
+	 * Read every field of every row, first parsing the payload string for each field and then parsing
+	 * each payload once. Both runs must read the same values, the timings are only logged.
+	 */
+	@Test
+	@Ignore("Timing only benchmark, see the class comment on how to run it")
+	public void benchmark_shouldReadAllFieldsOfEveryRow() {
+		List<String> paths = createPaths();
+		List<String> payloads = new ArrayList<String>();
+		for (int i = 0; i < WARM_UP_ROWS + ROWS; i++) {
+			payloads.add(createPayload(i));
+		}
+		readFromString(payloads.subList(0, WARM_UP_ROWS), paths);
+		List<JsonPath> jsonPaths = new ArrayList<JsonPath>();
+		for (String path : paths) {
+			jsonPaths.add(JsonPayload.compile(path));
+		}
+		readFromParsedPayload(payloads.subList(0, WARM_UP_ROWS), jsonPaths);
+		
+		List<String> rows = payloads.subList(WARM_UP_ROWS, payloads.size());
+		long start = System.nanoTime();
+		int stringValues = readFromString(rows, paths);
+		long stringNanos = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		int parsedValues = readFromParsedPayload(rows, jsonPaths);
+		long parsedNanos = System.nanoTime() - start;
+		
+		assertEquals(stringValues, parsedValues);
+		log.info("Reading " + paths.size() + " fields per row: " + (stringNanos / ROWS / 1000)
+		        + " us per row parsing the payload string for each field, " + (parsedNanos / ROWS / 1000)
+		        + " us per row parsing the payload once");
+	}
+	
+	private int readFromString(final List<String> payloads, final List<String> paths) {
+		int values = 0;
+		for (String payload : payloads) {
+			for (String path : paths) {
+				if (JsonFormatUtils.readAsString(payload, path) != null) {
+					values++;
+				}
+			}
+		}
+		return values;
+	}
+	
+	private int readFromParsedPayload(final List<String> payloads, final List<JsonPath> paths) {
+		int values = 0;
+		for (String payload : payloads) {
+			JsonPayload parsedPayload = new JsonPayload(payload);
+			for (JsonPath path : paths) {
+				if (JsonFormatUtils.readAsString(parsedPayload, path) != null) {
+					values++;
+				}
+			}
+		}
+		return values;
+	}
+	
+	private List<String> createPaths() {
+		List<String> paths = new ArrayList<String>();
+		for (String field : FIELDS) {
+			paths.add("$['demographicsupdate']['demographicsupdate." + field + "']");
+		}
+		return paths;
+	}
+	
+	private String createPayload(final int row) {
+		StringBuilder builder = new StringBuilder("{\"demographicsupdate\":{");
+		for (String field : FIELDS) {
+			String value = "birth_date".equals(field) ? "12-05-1985" : field + "-" + row;
+			builder.append("\"demographicsupdate.").append(field).append("\":\"").append(value).append("\",");
+		}
+		builder.append("\"demographicsupdate.otheridentifier\":[{\"identifier_type_name\":\"National ID\","
+		        + "\"identifier_value\":\"").append(row).append("\"}]},");
+		builder.append("\"observation\":{\"1542^OCCUPATION^99DCT\":\"1538^FARMER^99DCT\","
+		        + "\"1054^CIVIL STATUS^99DCT\":\"1057^NEVER MARRIED^99DCT\"},");
+		builder.append("\"encounter\":{\"encounter.location_id\":\"").append(row % 10)
+		        .append("\",\"encounter.provider_id\":\"admin\",\"encounter.user_system_id\":\"admin\"}}");
+		return builder.toString();
+	}
+}
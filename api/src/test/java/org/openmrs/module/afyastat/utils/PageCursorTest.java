@@ -0,0 +1,58 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import org.junit.Test;
+import org.openmrs.api.APIException;
+import org.openmrs.module.afyastat.model.ArchiveInfo;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This is a unit test, which verifies that the page cursors are read back as they were written.
+ */
+public class PageCursorTest {
+	
+	@Test
+	public void decode_shouldReturnThePositionOfTheEncodedData() {
+		ArchiveInfo archiveInfo = new ArchiveInfo();
+		archiveInfo.setId(1234);
+		archiveInfo.setDateCreated(new Date(1604300000000L));
+		String cursor = PageCursor.encode(archiveInfo);
+		assertTrue(cursor.matches("[A-Za-z0-9_-]+"));
+		
+		PageCursor position = PageCursor.decode(cursor);
+		assertEquals(archiveInfo.getDateCreated(), position.getDate());
+		assertEquals(archiveInfo.getId(), position.getId());
+	}
+	
+	@Test
+	public void decode_shouldReturnThePositionOfTheEncodedDateArchived() {
+		Date dateArchived = new Date(1604400000000L);
+		PageCursor position = PageCursor.decode(PageCursor.encode(dateArchived, 1234));
+		assertEquals(dateArchived, position.getDate());
+		assertEquals(Integer.valueOf(1234), position.getId());
+	}
+	
+	@Test
+	public void decode_shouldReturnNullForTheFirstPage() {
+		assertNull(PageCursor.decode(null));
+		assertNull(PageCursor.decode(" "));
+	}
+	
+	@Test(expected = APIException.class)
+	public void decode_shouldRejectAnInvalidCursor() {
+		PageCursor.decode("not-a-cursor");
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This is a unit test, which verifies the compressed storage format of the payloads and that the
+ * payloads stored before the compression was enabled are read as they are.
+ */
+public class PayloadCompressionTest {
+	
+	@After
+	public void tearDown() {
+		PayloadCompression.setEnabled(false);
+	}
+	
+	@Test
+	public void encode_shouldCompressOnlyWhenEnabled() {
+		String payload = createPayload(40);
+		assertSame(payload, PayloadCompression.encode(payload));
+		
+		PayloadCompression.setEnabled(true);
+		String stored = PayloadCompression.encode(payload);
+		assertTrue(PayloadCompression.isCompressed(stored));
+		assertTrue(stored.length() * 4 < payload.length());
+		assertEquals(payload, PayloadCompression.decode(stored));
+		// a payload is never compressed twice.
+		assertSame(stored, PayloadCompression.encode(stored));
+	}
+	
+	@Test
+	public void compress_shouldLeaveShortPayloadsAsTheyAre() {
+		String payload = createPayload(1);
+		assertTrue(payload.length() < PayloadCompression.MIN_COMPRESSED_LENGTH);
+		assertSame(payload, PayloadCompression.compress(payload));
+	}
+	
+	@Test
+	public void decode_shouldReadUncompressedPayloadsAsTheyAre() {
+		String payload = createPayload(40);
+		assertFalse(PayloadCompression.isCompressed(payload));
+		assertSame(payload, PayloadCompression.decode(payload));
+		assertEquals(null, PayloadCompression.decode(null));
+	}
+	
+	@Test
+	public void decode_shouldRestoreNonAsciiCharacters() {
+		String payload = createPayload(40).replace("Kajulu", "Kajul\u00fa W\u00e9nd\u00e9");
+		assertEquals(payload, PayloadCompression.decode(PayloadCompression.compress(payload)));
+	}
+	
+	private String createPayload(final int observations) {
+		StringBuilder builder = new StringBuilder("{\"patient\":{\"patient.village\":\"Kajulu\"},\"observation\":{");
+		for (int i = 0; i < observations; i++) {
+			builder.append(i > 0 ? "," : "").append("\"").append(1000 + i).append("^QUESTION^99DCT\":\"1065^YES^99DCT\"");
+		}
+		return builder.append("},\"encounter\":{\"encounter.location_id\":\"7\"}}").toString();
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openmrs.Person;
+import org.openmrs.Provider;
+import org.openmrs.User;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.ProviderService;
+import org.openmrs.api.UserService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.api.AfyastatService;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * This is a unit test, which verifies that the CHT usernames are resolved to a provider without
+ * loading the providers of a system holding 10000 of them.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Context.class)
+public class ReferenceDataCacheProviderTest {
+	
+	private static final int PROVIDERS = 10000;
+	
+	private static final int USERS = 300;
+	
+	private final Map<String, User> users = new HashMap<String, User>();
+	
+	private final Map<Integer, Provider> providersByPerson = new HashMap<Integer, Provider>();
+	
+	private UserService userService;
+	
+	private ProviderService providerService;
+	
+	private AfyastatService afyastatService;
+	
+	@Before
+	public void setUp() {
+		List<Provider> providers = new ArrayList<Provider>();
+		for (int i = 1; i <= PROVIDERS; i++) {
+			Provider provider = new Provider(i);
+			provider.setIdentifier("P-" + i);
+			provider.setPerson(new Person(i));
+			providers.add(provider);
+			providersByPerson.put(i, provider);
+		}
+		for (int i = 1; i <= USERS; i++) {
+			// the community health workers are providers, the clerks are not.
+			addUser("chw" + i, i);
+			addUser("clerk" + i, PROVIDERS + i);
+		}
+		User superUser = addUser("admin", PROVIDERS);
+		
+		mockStatic(Context.class);
+		userService = mock(UserService.class);
+		providerService = mock(ProviderService.class);
+		afyastatService = mock(AfyastatService.class);
+		when(Context.getAdministrationService()).thenReturn(mock(AdministrationService.class));
+		when(Context.getUserService()).thenReturn(userService);
+		when(Context.getProviderService()).thenReturn(providerService);
+		when(Context.getService(AfyastatService.class)).thenReturn(afyastatService);
+		when(userService.getUser(1)).thenReturn(superUser);
+		when(userService.getUserByUsername(anyString())).thenAnswer(new Answer<User>() {
+			
+			@Override
+			public User answer(final InvocationOnMock invocation) {
+				return users.get(invocation.getArguments()[0]);
+			}
+		});
+		when(providerService.getProvidersByPerson(any(Person.class))).thenAnswer(new Answer<List<Provider>>() {
+			
+			@Override
+			public List<Provider> answer(final InvocationOnMock invocation) {
+				Provider provider = providersByPerson.get(((Person) invocation.getArguments()[0]).getPersonId());
+				return provider == null ? Collections.<Provider> emptyList() : Collections.singletonList(provider);
+			}
+		});
+		when(providerService.getAllProviders()).thenReturn(providers);
+		when(afyastatService.getFirstProvider()).thenReturn(providers.get(0));
+		ReferenceDataCache.clear();
+	}
+	
+	@After
+	public void tearDown() {
+		ReferenceDataCache.clear();
+	}
+	
+	@Test
+	public void getProviderIdentifierForUsername_shouldResolveWithoutLoadingAllProviders() {
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 1; i <= USERS; i++) {
+				assertEquals("P-" + i, ReferenceDataCache.getProviderIdentifierForUsername("chw" + i));
+				assertEquals("P-1", ReferenceDataCache.getProviderIdentifierForUsername("clerk" + i));
+				assertEquals("P-" + PROVIDERS, ReferenceDataCache.getProviderIdentifierForUsername("unknown" + i));
+				assertEquals("chw" + i, ReferenceDataCache.getSystemUsername("chw" + i));
+				assertEquals("admin", ReferenceDataCache.getSystemUsername("unknown" + i));
+			}
+		}
+		assertEquals("P-" + PROVIDERS, ReferenceDataCache.getProviderIdentifierForUsername(null));
+		
+		verify(providerService, never()).getAllProviders();
+		verify(afyastatService, times(1)).getFirstProvider();
+		verify(userService, times(1)).getUser(1);
+		verify(userService, times(1)).getUserByUsername("chw1");
+		verify(providerService, times(1)).getProvidersByPerson(users.get("chw1").getPerson());
+	}
+	
+	@Test
+	public void clearUsersAndProviders_shouldPickUpAChangedProvider() {
+		assertEquals("P-1", ReferenceDataCache.getProviderIdentifierForUsername("clerk1"));
+		
+		Provider provider = new Provider(PROVIDERS + 1);
+		provider.setIdentifier("P-clerk1");
+		providersByPerson.put(PROVIDERS + 1, provider);
+		assertEquals("P-1", ReferenceDataCache.getProviderIdentifierForUsername("clerk1"));
+		
+		ReferenceDataCache.clearUsersAndProviders();
+		assertEquals("P-clerk1", ReferenceDataCache.getProviderIdentifierForUsername("clerk1"));
+		verify(afyastatService, times(2)).getFirstProvider();
+	}
+	
+	private User addUser(final String username, final int personId) {
+		User user = new User(new Person(personId));
+		user.setUsername(username);
+		users.put(username, user);
+		return user;
+	}
+}
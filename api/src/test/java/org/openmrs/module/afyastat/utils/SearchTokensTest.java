@@ -0,0 +1,66 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.afyastat.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This is a unit test, which verifies the tokens indexed for the search of the queue, archive and
+ * error data.
+ */
+public class SearchTokensTest {
+	
+	@Test
+	public void tokenize_shouldLowerCaseAndSplitOnNonAlphanumerics() {
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("john", "doe", "12")), SearchTokens.tokenize("John O'Doe-12"));
+		assertTrue(SearchTokens.tokenize(" ").isEmpty());
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("6f3c2a8e6b1d4e0f9a57d2c81b9e7f36")),
+		    SearchTokens.tokenize("6F3C2A8E-6B1D-4E0F-9A57-D2C81B9E7F36"));
+	}
+	
+	@Test
+	public void addPayloadTokens_shouldIndexOnlyTheValues() {
+		Set<String> tokens = new LinkedHashSet<String>();
+		SearchTokens.addPayloadTokens(tokens, "{\"patient\":{\"patient.family_name\":\"Otieno\","
+		        + "\"patient.village\":\"Kajul\u00fa\"},\"observation\":{\"1000^QUESTION^99DCT\":\"1065^YES^99DCT\"},"
+		        + "\"encounter\":{\"encounter.location_id\":7}}");
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("otieno", "kajul\u00fa")), tokens);
+		assertFalse(tokens.contains("patient"));
+	}
+	
+	@Test
+	public void addPayloadTokens_shouldIndexTheLastValuesOfALargePayload() {
+		StringBuilder payload = new StringBuilder("{\"patient\":{");
+		for (int i = 0; i < 1000; i++) {
+			payload.append("\"patient.field_").append(i).append("\":\"value").append(i).append(" common\",");
+		}
+		payload.append("\"patient.village\":\"Kajulu\"}}");
+		Set<String> tokens = new LinkedHashSet<String>();
+		SearchTokens.addPayloadTokens(tokens, payload.toString());
+		// every distinct word is indexed once, however many times the payload repeats it.
+		assertEquals(1002, tokens.size());
+		assertTrue(tokens.contains("value999"));
+		assertTrue(tokens.contains("kajulu"));
+	}
+	
+	@Test
+	public void addTokens_shouldCutTheLongWords() {
+		assertEquals(SearchTokens.MAX_TOKEN_LENGTH, SearchTokens.tokenize("x12345678901234567890123456789012345")
+		        .iterator().next().length());
+	}
+}
@@ -2,18 +2,32 @@ package org.openmrs.module.afyastat.web.controller;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.afyastat.api.service.InfoService;
+import org.openmrs.module.afyastat.model.FormInfoStatus;
+import org.openmrs.module.afyastat.util.IngestionQueue;
 import org.openmrs.module.afyastat.util.MedicDataExchange;
 import org.openmrs.module.afyastat.util.Utils;
+import org.openmrs.module.afyastat.utils.BoundedCache;
+import org.openmrs.module.afyastat.utils.ReferenceDataCache;
 import org.openmrs.module.webservices.rest.SimpleObject;
 import org.openmrs.module.webservices.rest.web.RestConstants;
 import org.openmrs.module.webservices.rest.web.v1_0.controller.BaseRestController;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The main controller.
@@ -24,21 +38,28 @@ public class MobileApplicationRestController extends BaseRestController {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+	
+	@Autowired
+	private MedicDataExchange medicDataExchange;
+	
 	@RequestMapping(method = RequestMethod.POST, value = "/medicregistration")
 	@ResponseBody
-	public Object receiveSHR(HttpServletRequest request) {
+	public Object receiveSHR(HttpServletRequest request, HttpServletResponse response) {
 		
-		String requestBody = null;
+		ObjectNode requestBody = null;
 		try {
-			requestBody = Utils.fetchRequestBody(request.getReader());
+			requestBody = Utils.readRequestBody(getRequestBody(request));
 		}
 		catch (IOException e) {
 			return new SimpleObject().add("ServerResponse", "Error extracting request body");
 		}
 		
 		if (requestBody != null) {
-			MedicDataExchange shr = new MedicDataExchange();
-			return shr.processIncomingRegistration(requestBody);
+			if (IngestionQueue.isStarted()) {
+				return submitAsync("medicregistration", requestBody, response);
+			}
+			return medicDataExchange.processIncomingRegistration(requestBody);
 			
 		}
 		return new SimpleObject().add("Report", "The request could not be interpreted properly");
@@ -53,18 +74,20 @@ public class MobileApplicationRestController extends BaseRestController {
 	@RequestMapping(method = RequestMethod.POST, value = "/medicformsdata")
 	// end point for medic queue data
 	@ResponseBody
-	public Object processMedicQueueData(HttpServletRequest request) {
-		String requestBody = null;
+	public Object processMedicQueueData(HttpServletRequest request, HttpServletResponse response) {
+		ObjectNode requestBody = null;
 		try {
-			requestBody = Utils.fetchRequestBody(request.getReader());
+			requestBody = Utils.readRequestBody(getRequestBody(request));
 		}
 		catch (IOException e) {
 			return new SimpleObject().add("ServerResponse", "Error extracting request body");
 		}
 		
 		if (requestBody != null) {
-			MedicDataExchange shr = new MedicDataExchange();
-			return shr.processIncomingFormData(requestBody);
+			if (IngestionQueue.isStarted()) {
+				return submitAsync("medicformsdata", requestBody, response);
+			}
+			return medicDataExchange.processIncomingFormData(requestBody);
 			
 		}
 		return new SimpleObject().add("Report", "The request could not be interpreted properly");
@@ -79,18 +102,20 @@ public class MobileApplicationRestController extends BaseRestController {
 	@RequestMapping(method = RequestMethod.POST, value = "/mediccontactsdata")
 	// end point for medic contacts data
 	@ResponseBody
-	public Object processMedicContactsData(HttpServletRequest request) {
-		String requestBody = null;
+	public Object processMedicContactsData(HttpServletRequest request, HttpServletResponse response) {
+		ObjectNode requestBody = null;
 		try {
-			requestBody = Utils.fetchRequestBody(request.getReader());
+			requestBody = Utils.readRequestBody(getRequestBody(request));
 		}
 		catch (IOException e) {
 			return new SimpleObject().add("ServerResponse", "Error extracting request body");
 		}
 		
 		if (requestBody != null) {
-			MedicDataExchange shr = new MedicDataExchange();
-			return shr.addContactListToDataqueue(requestBody);
+			if (IngestionQueue.isStarted()) {
+				return submitAsync("mediccontactsdata", requestBody, response);
+			}
+			return medicDataExchange.addContactListToDataqueue(requestBody);
 			
 		}
 		return new SimpleObject().add("Report", "The request could not be interpreted properly");
@@ -105,18 +130,20 @@ public class MobileApplicationRestController extends BaseRestController {
 	@RequestMapping(method = RequestMethod.POST, value = "/mediccontacttracedata")
 	// end point for medic contact trace data
 	@ResponseBody
-	public Object processMedicContactTraceData(HttpServletRequest request) {
-		String requestBody = null;
+	public Object processMedicContactTraceData(HttpServletRequest request, HttpServletResponse response) {
+		ObjectNode requestBody = null;
 		try {
-			requestBody = Utils.fetchRequestBody(request.getReader());
+			requestBody = Utils.readRequestBody(getRequestBody(request));
 		}
 		catch (IOException e) {
 			return new SimpleObject().add("ServerResponse", "Error extracting request body");
 		}
 		
 		if (requestBody != null) {
-			MedicDataExchange shr = new MedicDataExchange();
-			return shr.addContactTraceToDataqueue(requestBody);
+			if (IngestionQueue.isStarted()) {
+				return submitAsync("mediccontacttracedata", requestBody, response);
+			}
+			return medicDataExchange.addContactTraceToDataqueue(requestBody);
 			
 		}
 		return new SimpleObject().add("Report", "The request could not be interpreted properly");
@@ -131,18 +158,20 @@ public class MobileApplicationRestController extends BaseRestController {
 	@RequestMapping(method = RequestMethod.POST, value = "/medicdemographicupdates")
 	// end point for processing demographic updates
 	@ResponseBody
-	public Object processDemographicUpdates(HttpServletRequest request) {
-		String requestBody = null;
+	public Object processDemographicUpdates(HttpServletRequest request, HttpServletResponse response) {
+		ObjectNode requestBody = null;
 		try {
-			requestBody = Utils.fetchRequestBody(request.getReader());
+			requestBody = Utils.readRequestBody(getRequestBody(request));
 		}
 		catch (IOException e) {
 			return new SimpleObject().add("ServerResponse", "Error extracting request body");
 		}
 		
 		if (requestBody != null) {
-			MedicDataExchange shr = new MedicDataExchange();
-			return shr.processDemographicsUpdate(requestBody);
+			if (IngestionQueue.isStarted()) {
+				return submitAsync("medicdemographicupdates", requestBody, response);
+			}
+			return medicDataExchange.processDemographicsUpdate(requestBody);
 			
 		}
 		return new SimpleObject().add("Report", "The request could not be interpreted properly");
@@ -157,20 +186,129 @@ public class MobileApplicationRestController extends BaseRestController {
 	@RequestMapping(method = RequestMethod.POST, value = "/medicpeercalendar")
 	// end point for processing peer calender information
 	@ResponseBody
-	public Object processPeerCalenderForm(HttpServletRequest request) {
-		String requestBody = null;
+	public Object processPeerCalenderForm(HttpServletRequest request, HttpServletResponse response) {
+		ObjectNode requestBody = null;
 		try {
-			requestBody = Utils.fetchRequestBody(request.getReader());
+			requestBody = Utils.readRequestBody(getRequestBody(request));
 		}
 		catch (IOException e) {
 			return new SimpleObject().add("ServerResponse", "Error extracting request body");
 		}
 		
 		if (requestBody != null) {
-			MedicDataExchange shr = new MedicDataExchange();
-			return shr.processPeerCalenderFormData(requestBody);
+			if (IngestionQueue.isStarted()) {
+				return submitAsync("medicpeercalendar", requestBody, response);
+			}
+			return medicDataExchange.processPeerCalenderFormData(requestBody);
 			
 		}
 		return new SimpleObject().add("Report", "The request could not be interpreted properly");
 	}
+	
+	/**
+	 * processes a batch of medic documents of mixed types, saving their queue data in one
+	 * transaction
+	 * 
+	 * @param request
+	 * @return the status of each document in the batch
+	 * @see MedicDataExchange#processBatch(ArrayNode)
+	 */
+	@RequestMapping(method = RequestMethod.POST, value = "/medicbatch")
+	// end point for batches of medic documents
+	@ResponseBody
+	public Object processMedicBatch(HttpServletRequest request) {
+		ArrayNode requestBody = null;
+		try {
+			requestBody = Utils.readRequestBodyArray(getRequestBody(request));
+		}
+		catch (IOException e) {
+			return new SimpleObject().add("ServerResponse", "Error extracting request body");
+		}
+		
+		if (requestBody != null) {
+			return new SimpleObject().add("documents", medicDataExchange.processBatch(requestBody));
+			
+		}
+		return new SimpleObject().add("Report", "The request could not be interpreted properly");
+	}
+	
+	/**
+	 * reports whether a cht document was received and where its data is, so a client can tell a lost
+	 * submission from one which is already queued, archived or errored
+	 * 
+	 * @param documentId the _id of the cht document, followed by /_rev when the document has one
+	 * @return the status of the document: archived, errored, queued or unknown
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/medicdocumentstatus")
+	@ResponseBody
+	public Object getDocumentStatus(@RequestParam("documentId") String documentId) {
+		FormInfoStatus status = Context.getService(InfoService.class).getFormDataStatusByDocumentId(documentId);
+		return new SimpleObject().add("documentId", documentId).add("status", status.getStatus());
+	}
+	
+	/**
+	 * reports the size and the hit and miss counters of the reference data caches
+	 * 
+	 * @return the statistics of each cache
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/referencedatacache")
+	@ResponseBody
+	public Object getReferenceDataCacheStatistics() {
+		List<SimpleObject> statistics = new ArrayList<SimpleObject>();
+		for (BoundedCache<?, ?> cache : ReferenceDataCache.getCaches()) {
+			statistics.add(new SimpleObject().add("name", cache.getName()).add("size", cache.size())
+			        .add("hits", cache.getHits()).add("misses", cache.getMisses()));
+		}
+		return new SimpleObject().add("caches", statistics);
+	}
+	
+	/**
+	 * drops all the cached reference data, to pick up metadata changes before the cached values expire
+	 * 
+	 * @return the server response
+	 */
+	@RequestMapping(method = RequestMethod.POST, value = "/referencedatacache/clear")
+	@ResponseBody
+	public Object clearReferenceDataCache() {
+		ReferenceDataCache.clear();
+		return new SimpleObject().add("ServerResponse", "Reference data cache cleared");
+	}
+	
+	/**
+	 * gets the request body stream, inflated as it is read when the client sent it with a gzip or
+	 * deflate Content-Encoding
+	 * 
+	 * @param request the request
+	 * @return the stream of the decoded body
+	 * @throws IOException when the encoding is not supported
+	 */
+	private InputStream getRequestBody(HttpServletRequest request) throws IOException {
+		return Utils.decodeRequestBody(request.getInputStream(), request.getHeader("Content-Encoding"));
+	}
+	
+	/**
+	 * hands a document over to the asynchronous ingestion and acknowledges it without waiting for it
+	 * to be saved
+	 * 
+	 * @param type the endpoint which received the document
+	 * @param requestBody the document
+	 * @param response used to set the status reflecting the outcome
+	 * @return the server response
+	 */
+	private Object submitAsync(String type, ObjectNode requestBody, HttpServletResponse response) {
+		IngestionQueue.Result result = IngestionQueue.submit(type, requestBody);
+		if (result == IngestionQueue.Result.ACCEPTED) {
+			response.setStatus(HttpServletResponse.SC_ACCEPTED);
+			return new SimpleObject().add("ServerResponse", "Document accepted for processing");
+		} else if (result == IngestionQueue.Result.FULL) {
+			response.setStatus(SC_TOO_MANY_REQUESTS);
+			response.setHeader("Retry-After", "30");
+			return new SimpleObject().add("ServerResponse", "The server is busy, please send the document again later");
+		} else if (result == IngestionQueue.Result.INVALID) {
+			response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+			return new SimpleObject().add("Report", "The request could not be interpreted properly");
+		}
+		response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		return new SimpleObject().add("ServerResponse", "The document could not be accepted, please send it again later");
+	}
 }